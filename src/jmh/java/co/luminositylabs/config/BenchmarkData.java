@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Generates the property names and values used by the benchmarks.
+ *
+ * @author Phillip Ross
+ */
+final class BenchmarkData {
+
+
+    /** The suffixes of the names of the properties of each service of a tenant. */
+    private static final String[] SERVICE_PROPERTY_SUFFIXES = {
+        "enabled", "host", "port", "pool.size", "timeout.millis", "retries", "url", "region"
+    };
+
+    /** The number of services of each tenant. */
+    private static final int SERVICES_PER_TENANT = 4;
+
+    /** The number of distinct hosts shared by the tenants. */
+    private static final int HOST_COUNT = 50;
+
+    /** The distinct values of the numeric properties. */
+    private static final int NUMBER_COUNT = 16;
+
+    /** The regions shared by the tenants. */
+    private static final String[] REGIONS = {"us-east-1", "us-west-2", "eu-west-1", "ap-southeast-2"};
+
+
+    /** Prevents instantiation of this utility class. */
+    private BenchmarkData() {
+    }
+
+
+    /**
+     * Generates property names.
+     *
+     * @param prefix the prefix of the names
+     * @param count the number of names
+     * @return the names
+     */
+    static String[] names(final String prefix, final int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = prefix + i;
+        }
+        return names;
+    }
+
+
+    /**
+     * Generates the value of the property with the specified index.
+     *
+     * @param index the index of the property
+     * @return the value
+     */
+    static String value(final int index) {
+        return "value-" + index;
+    }
+
+
+    /**
+     * Generates properties with the specified names.
+     *
+     * @param names the names
+     * @return the properties, in the order of the names
+     */
+    static Map<String, String> properties(final String... names) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            properties.put(names[i], value(i));
+        }
+        return properties;
+    }
+
+
+    /**
+     * Generates the properties of a multi-tenant deployment, whose names share the prefixes of their tenants and
+     * services, and most of whose values repeat, such as flags, small numbers, shared host names and regions.  The
+     * URLs differ between all services.
+     *
+     * @param count the number of properties
+     * @return the properties
+     */
+    static Map<String, String> tenantProperties(final int count) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        int perTenant = SERVICES_PER_TENANT * SERVICE_PROPERTY_SUFFIXES.length;
+        for (int i = 0; i < count; i++) {
+            int tenant = i / perTenant;
+            int service = i % perTenant / SERVICE_PROPERTY_SUFFIXES.length;
+            String suffix = SERVICE_PROPERTY_SUFFIXES[i % SERVICE_PROPERTY_SUFFIXES.length];
+            String host = "db-" + (tenant + service) % HOST_COUNT + ".internal";
+            String value;
+            switch (suffix) {
+                case "enabled":
+                    value = Boolean.toString(tenant % 2 == 0);
+                    break;
+                case "host":
+                    value = host;
+                    break;
+                case "url":
+                    value = "https://" + host + "/tenants/" + tenant + "/services/" + service;
+                    break;
+                case "region":
+                    value = REGIONS[tenant % REGIONS.length];
+                    break;
+                default:
+                    value = Integer.toString((tenant + service) % NUMBER_COUNT);
+                    break;
+            }
+            properties.put("tenant." + tenant + ".service." + service + "." + suffix, value);
+        }
+        return properties;
+    }
+
+
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+
+/**
+ * Measures the memory retained by the properties of a multi-tenant configuration, held in a {@code Properties} object
+ * and in a {@link Configuration} in each {@link ConfigurationStorageMode}.
+ * <p>
+ * The retained memory is the growth of the heap, and of direct memory, between garbage collections before and after
+ * the properties are built, so the figures are approximate and should be compared between each other rather than
+ * taken as exact.  Run with a heap large enough for the largest count, for example:
+ * <pre>
+ * ./mvnw -Pjmh test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-Xmx4g -classpath %classpath co.luminositylabs.config.ConfigurationFootprint 1000000"
+ * </pre>
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationFootprint {
+
+    /** The number of properties measured when no count is specified. */
+    private static final int DEFAULT_PROPERTY_COUNT = 1_000_000;
+
+    /** The number of garbage collections requested before each measurement. */
+    private static final int COLLECTIONS = 4;
+
+    /** The pause, in milliseconds, after each garbage collection requested. */
+    private static final long COLLECTION_PAUSE_MILLIS = 100L;
+
+    /** The number of bytes in a mebibyte. */
+    private static final double BYTES_PER_MEBIBYTE = 1024.0 * 1024.0;
+
+
+    /** Prevents instantiation. */
+    private ConfigurationFootprint() {
+    }
+
+
+    /**
+     * Measures the footprints and prints them.
+     *
+     * @param args the number of properties, optionally
+     * @throws InterruptedException if interrupted while waiting for garbage collection
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        int count = DEFAULT_PROPERTY_COUNT;
+        if (args.length > 0) {
+            count = Integer.parseInt(args[0]);
+        }
+        final int propertyCount = count;
+        System.out.printf("%-20s %12s %12s %12s%n", "storage", "heap MiB", "direct MiB", "bytes/entry");
+        measure("Properties", propertyCount, () -> {
+            Properties properties = new Properties();
+            properties.putAll(BenchmarkData.tenantProperties(propertyCount));
+            return properties;
+        });
+        for (ConfigurationStorageMode storageMode : ConfigurationStorageMode.values()) {
+            measure(storageMode.name(), propertyCount, () -> {
+                Configuration configuration = new Configuration();
+                configuration.setStorageMode(storageMode);
+                configuration.putAll(BenchmarkData.tenantProperties(propertyCount));
+                return configuration;
+            });
+        }
+    }
+
+
+    /**
+     * Measures the memory retained by the object built by the specified builder, and prints it.
+     *
+     * @param label the label of the measurement
+     * @param count the number of properties
+     * @param builder the builder of the object holding the properties
+     * @throws InterruptedException if interrupted while waiting for garbage collection
+     */
+    private static void measure(final String label, final int count, final Supplier<Object> builder)
+            throws InterruptedException {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirectMemory();
+        Object retained = builder.get();
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirectMemory() - directBefore;
+        System.out.printf("%-20s %12.1f %12.1f %12.1f%n", label, heap / BYTES_PER_MEBIBYTE,
+                direct / BYTES_PER_MEBIBYTE, (double)(heap + direct) / count);
+        Reference.reachabilityFence(retained);
+    }
+
+
+    /**
+     * Gets the heap used after collecting garbage.
+     *
+     * @return the heap used, in bytes
+     * @throws InterruptedException if interrupted while waiting for garbage collection
+     */
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < COLLECTIONS; i++) {
+            System.gc();
+            Thread.sleep(COLLECTION_PAUSE_MILLIS);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+
+    /**
+     * Gets the direct memory used.
+     *
+     * @return the direct memory used, in bytes
+     */
+    private static long usedDirectMemory() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                used += pool.getMemoryUsed();
+            }
+        }
+        return used;
+    }
+
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmarks looking up properties by prefix for various numbers of properties and proportions of matching
+ * properties.
+ *
+ * @author Phillip Ross
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigurationPrefixBenchmark {
+
+    /** The prefix of the matching properties. */
+    private static final String MATCHING_PREFIX = "app.matching.";
+
+    /** The prefix of the other properties. */
+    private static final String OTHER_PREFIX = "app.other.";
+
+    /** The number of properties in the configuration. */
+    @Param({"1000", "10000", "100000"})
+    private int keyCount;
+
+    /** The proportion of the properties whose names begin with the prefix looked up. */
+    @Param({"0.01", "0.1", "0.5"})
+    private double matchRatio;
+
+    /** The configuration being read. */
+    private Configuration configuration;
+
+
+    /** Populates the configuration. */
+    @Setup(Level.Trial)
+    public void setUp() {
+        int matchingCount = (int)Math.round(keyCount * matchRatio);
+        configuration = new Configuration();
+        configuration.putAll(BenchmarkData.properties(BenchmarkData.names(MATCHING_PREFIX, matchingCount)));
+        configuration.putAll(BenchmarkData.properties(BenchmarkData.names(OTHER_PREFIX, keyCount - matchingCount)));
+    }
+
+
+    /**
+     * Copies the matching properties.
+     *
+     * @return the matching properties
+     */
+    @Benchmark
+    public Properties getPropertiesWithPrefix() {
+        return configuration.getPropertiesWithPrefix(MATCHING_PREFIX);
+    }
+
+
+    /**
+     * Iterates over a view of the matching properties.
+     *
+     * @param blackhole the sink of the visited properties
+     */
+    @Benchmark
+    public void getPropertiesWithPrefixView(final Blackhole blackhole) {
+        for (Map.Entry<String, String> entry : configuration.getPropertiesWithPrefixView(MATCHING_PREFIX).entrySet()) {
+            blackhole.consume(entry.getValue());
+        }
+    }
+
+
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmarks reading single properties, alone and while other threads write.
+ * <p>
+ * The number of reader threads of {@link #getProperty(ReaderState)} can be varied with the JMH {@code -t} option,
+ * and the number of reader and writer threads of the {@code readWrite} group with the {@code -tg} option, for example
+ * {@code -tg 8,1}.
+ *
+ * @author Phillip Ross
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigurationReadBenchmark {
+
+    /** The number of properties in the configuration. */
+    @Param({"100", "10000"})
+    private int keyCount;
+
+    /** The way in which the properties are stored. */
+    @Param({"STANDARD", "COMPACT"})
+    private ConfigurationStorageMode storageMode;
+
+    /** The configuration being read. */
+    private Configuration configuration;
+
+    /** The names of the properties in the configuration. */
+    private String[] names;
+
+
+    /** Populates the configuration. */
+    @Setup(Level.Trial)
+    public void setUp() {
+        configuration = new Configuration();
+        configuration.setStorageMode(storageMode);
+        names = BenchmarkData.names("app.property.", keyCount);
+        configuration.putAll(BenchmarkData.properties(names));
+    }
+
+
+    /**
+     * Reads a property without concurrent writers.
+     *
+     * @param reader the state of the reading thread
+     * @return the value read
+     */
+    @Benchmark
+    @Threads(1)
+    public String getProperty(final ReaderState reader) {
+        return configuration.getProperty(names[reader.nextIndex(keyCount)]);
+    }
+
+
+    /**
+     * Reads a property while the writers of the group update properties.
+     *
+     * @param reader the state of the reading thread
+     * @return the value read
+     */
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public String readWhileWriting(final ReaderState reader) {
+        return configuration.getProperty(names[reader.nextIndex(keyCount)]);
+    }
+
+
+    /**
+     * Updates a property while the readers of the group read properties.
+     *
+     * @param reader the state of the writing thread
+     * @return the previous value
+     */
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public Object writeWhileReading(final ReaderState reader) {
+        int index = reader.nextIndex(keyCount);
+        return configuration.put(names[index], BenchmarkData.value(index));
+    }
+
+
+    /** The state of a single thread, which visits the properties in a pseudo-random order. */
+    @State(Scope.Thread)
+    public static class ReaderState {
+
+        /** The multiplier of the linear congruential generator. */
+        private static final int MULTIPLIER = 1_103_515_245;
+
+        /** The increment of the linear congruential generator. */
+        private static final int INCREMENT = 12_345;
+
+        /** The state of the linear congruential generator. */
+        private int seed = ThreadLocalRandom.current().nextInt();
+
+
+        /**
+         * Chooses the index of the next property to be visited.
+         *
+         * @param bound the number of properties
+         * @return the index
+         */
+        int nextIndex(final int bound) {
+            seed = seed * MULTIPLIER + INCREMENT;
+            return (seed >>> 1) % bound;
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmarks reading the configuration file for small and large files, with and without the compiled cache.
+ *
+ * @author Phillip Ross
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigurationReloadBenchmark {
+
+    /** The interval between commented properties, and between properties whose values are continued. */
+    private static final int DECORATION_INTERVAL = 10;
+
+    /** The number of properties in the configuration file. */
+    @Param({"100", "100000"})
+    private int keyCount;
+
+    /** Whether the configuration file is loaded through its compiled cache. */
+    @Param({"false", "true"})
+    private boolean compiledCache;
+
+    /** The configuration file. */
+    private Path configFile;
+
+    /** The configuration being reloaded. */
+    private Configuration configuration;
+
+
+    /**
+     * Writes the configuration file and points the configuration at it.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        configFile = Files.createTempFile("configuration-benchmark", ".properties");
+        try (Writer writer = Files.newBufferedWriter(configFile, StandardCharsets.ISO_8859_1)) {
+            for (int i = 0; i < keyCount; i++) {
+                if (i % DECORATION_INTERVAL == 0) {
+                    writer.write("# Property " + i + "\n");
+                    writer.write("app.property." + i + " = " + BenchmarkData.value(i) + ", \\\n    continued\n");
+                } else {
+                    writer.write("app.property." + i + "=" + BenchmarkData.value(i) + "\n");
+                }
+            }
+        }
+        System.setProperty(Configuration.DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME, configFile.toString());
+        System.setProperty(Configuration.CONFIG_CACHE_PROPERTY_NAME, Boolean.toString(compiledCache));
+        configuration = new Configuration();
+    }
+
+
+    /**
+     * Removes the configuration file and its compiled cache.
+     *
+     * @throws IOException if the files cannot be removed
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.clearProperty(Configuration.DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME);
+        System.clearProperty(Configuration.CONFIG_CACHE_PROPERTY_NAME);
+        Files.deleteIfExists(configFile);
+        Files.deleteIfExists(CompiledPropertiesCache.cachePath(configFile));
+    }
+
+
+    /**
+     * Reads the configuration file, replacing the properties.
+     *
+     * @return the resulting snapshot
+     */
+    @Benchmark
+    public ConfigurationSnapshot readProperties() {
+        configuration.readProperties();
+        return configuration.getSnapshot();
+    }
+
+
+}
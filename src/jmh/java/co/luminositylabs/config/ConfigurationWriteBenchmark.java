@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Benchmarks copying or visiting all properties and writing batches of properties into configurations of various sizes.
+ *
+ * @author Phillip Ross
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigurationWriteBenchmark {
+
+    /** The number of distinct batches written in turn, so consecutive batches change the configuration. */
+    private static final int BATCH_COUNT = 8;
+
+    /** The number of properties in the configuration. */
+    @Param({"100", "10000"})
+    private int keyCount;
+
+    /** The number of properties written by each batch. */
+    @Param({"1", "10", "100", "1000"})
+    private int batchSize;
+
+    /** The configuration being written. */
+    private Configuration configuration;
+
+    /** The batches written in turn. */
+    private List<Map<String, String>> batches;
+
+    /** The index of the next batch to be written. */
+    private int nextBatch;
+
+
+    /** Populates the configuration and prepares the batches. */
+    @Setup(Level.Trial)
+    public void setUp() {
+        configuration = new Configuration();
+        String[] names = BenchmarkData.names("app.property.", keyCount);
+        configuration.putAll(BenchmarkData.properties(names));
+        batches = new ArrayList<>();
+        for (int batch = 0; batch < BATCH_COUNT; batch++) {
+            String[] batchNames = BenchmarkData.names("app.batch" + batch + ".", batchSize);
+            batches.add(BenchmarkData.properties(batchNames));
+        }
+    }
+
+
+    /**
+     * Copies all properties.
+     *
+     * @return the copy
+     */
+    @Benchmark
+    public Properties getProperties() {
+        return configuration.getProperties();
+    }
+
+
+    /**
+     * Visits all properties without copying them, as an alternative to {@link #getProperties()}.
+     *
+     * @param blackhole the sink of the visited properties
+     */
+    @Benchmark
+    public void forEach(final Blackhole blackhole) {
+        configuration.forEach((name, value) -> blackhole.consume(value));
+    }
+
+
+    /**
+     * Counts the properties through a stream, as an alternative to {@link #getProperties()}.
+     *
+     * @return the number of properties
+     */
+    @Benchmark
+    public long stream() {
+        return configuration.stream().count();
+    }
+
+
+    /**
+     * Writes a batch of properties, replacing the values written by the same batch earlier.
+     *
+     * @return the version of the resulting snapshot
+     */
+    @Benchmark
+    public long putAll() {
+        configuration.putAll(batches.get(nextBatch));
+        nextBatch = (nextBatch + 1) % BATCH_COUNT;
+        return configuration.getSnapshot().getVersion();
+    }
+
+
+}
@@ -0,0 +1,555 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * An immutable map of snapshot entries stored with a far smaller footprint than a hash map.
+ * <p>
+ * A {@link java.util.HashMap} spends a node object on every entry, in addition to the key and value, and stores
+ * equal values as separate strings.  Configurations of many tenants or services consist largely of names sharing a
+ * handful of prefixes and of values which repeat, such as {@code true}, {@code 1} or host names.  This map stores
+ * string entries in flat arrays, in name order:
+ * <ul>
+ * <li>Each name is split after its last dot into a prefix and a suffix, and each distinct prefix and suffix is stored
+ * once, so a name costs two array slots rather than a string.</li>
+ * <li>Each distinct value is stored once, either as a string or, off the heap, as encoded characters.</li>
+ * <li>Names are found through an open-addressing table of positions, probed with the cached hash code of the name
+ * being looked up and compared against the stored prefix and suffix without creating any string.</li>
+ * </ul>
+ * The rare entries whose key or value is not a string are kept in a separate hash map.  Since the string entries are
+ * in name order, the map also serves as the {@link PrefixIndex} of its names, through {@link #prefixIndex()}.
+ * <p>
+ * The map is serialized as a hash map of its entries, from which it is rebuilt when deserialized.
+ *
+ * @author Phillip Ross
+ */
+final class CompactEntries extends AbstractMap<Object, Object> implements Serializable {
+
+    private static final long serialVersionUID = -8017390462261409522L;
+
+    /** The character after whose last occurrence names are split into a prefix and a suffix. */
+    private static final char NAME_SEPARATOR = '.';
+
+    /** The maximum load factor of the table of positions. */
+    private static final float TABLE_LOAD_FACTOR = 0.75f;
+
+    /** The number of bits by which the high bits of hash codes are folded into the low bits. */
+    private static final int HASH_SPREAD_SHIFT = 16;
+
+    /** The distinct prefixes and suffixes of the names. */
+    private final transient String[] nameParts;
+
+    /** The index within {@link #nameParts} of the prefix of the name at each position. */
+    private final transient int[] namePrefixes;
+
+    /** The index within {@link #nameParts} of the suffix of the name at each position. */
+    private final transient int[] nameSuffixes;
+
+    /** The hash code of the name at each position. */
+    private final transient int[] nameHashes;
+
+    /** The open-addressing table of positions, each incremented by one so that zero marks an empty slot. */
+    private final transient int[] table;
+
+    /** The index of the distinct value of the entry at each position. */
+    private final transient int[] valueIds;
+
+    /** The distinct values, or null if the values are stored off the heap. */
+    private final transient String[] values;
+
+    /** The encoded distinct values stored off the heap, or null if the values are stored on the heap. */
+    private final transient ByteBuffer offHeapValues;
+
+    /** The offset within {@link #offHeapValues} of each distinct value, or null if values are stored on the heap. */
+    private final transient int[] valueOffsets;
+
+    /** The entries whose key or value is not a string. */
+    private final transient Map<Object, Object> otherEntries;
+
+    /** The index of the names of the string entries. */
+    private final transient PrefixIndex prefixIndex;
+
+
+    /**
+     * Instantiates a new map of the specified entries.
+     *
+     * @param sortedNames the sorted names of the string entries
+     * @param entries the entries
+     * @param otherEntries the entries whose key or value is not a string
+     * @param offHeap whether the distinct values are stored off the heap
+     */
+    private CompactEntries(final String[] sortedNames,
+                           final Map<Object, Object> entries,
+                           final Map<Object, Object> otherEntries,
+                           final boolean offHeap) {
+        int size = sortedNames.length;
+        Map<String, Integer> namePartIds = new HashMap<>();
+        List<String> distinctNameParts = new ArrayList<>();
+        Map<String, Integer> valueIdsByValue = new HashMap<>();
+        List<String> distinctValues = new ArrayList<>();
+        namePrefixes = new int[size];
+        nameSuffixes = new int[size];
+        nameHashes = new int[size];
+        valueIds = new int[size];
+        table = new int[tableCapacity(size)];
+        for (int position = 0; position < size; position++) {
+            String name = sortedNames[position];
+            int split = name.lastIndexOf(NAME_SEPARATOR) + 1;
+            namePrefixes[position] = pooledId(name.substring(0, split), namePartIds, distinctNameParts);
+            nameSuffixes[position] = pooledId(name.substring(split), namePartIds, distinctNameParts);
+            nameHashes[position] = name.hashCode();
+            valueIds[position] = pooledId((String)entries.get(name), valueIdsByValue, distinctValues);
+            int mask = table.length - 1;
+            int slot = spread(nameHashes[position]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = position + 1;
+        }
+        nameParts = distinctNameParts.toArray(new String[0]);
+        if (offHeap) {
+            List<byte[]> encodedValues = new ArrayList<>(distinctValues.size());
+            int encodedSize = 0;
+            for (String value : distinctValues) {
+                byte[] encodedValue = CompiledPropertiesCache.encode(value);
+                encodedValues.add(encodedValue);
+                encodedSize = Math.addExact(encodedSize, encodedValue.length);
+            }
+            offHeapValues = ByteBuffer.allocateDirect(encodedSize);
+            valueOffsets = new int[encodedValues.size()];
+            for (int id = 0; id < encodedValues.size(); id++) {
+                valueOffsets[id] = offHeapValues.position();
+                offHeapValues.put(encodedValues.get(id));
+            }
+            values = null;
+        } else {
+            values = distinctValues.toArray(new String[0]);
+            offHeapValues = null;
+            valueOffsets = null;
+        }
+        this.otherEntries = otherEntries;
+        this.prefixIndex = new Names(this);
+    }
+
+
+    /**
+     * Creates a compact map of the specified entries.
+     *
+     * @param entries the entries
+     * @param offHeap whether the distinct values are stored off the heap
+     * @return the map
+     */
+    static CompactEntries of(final Map<Object, Object> entries, final boolean offHeap) {
+        List<String> names = new ArrayList<>(entries.size());
+        Map<Object, Object> otherEntries = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            if (PrefixIndex.isIndexed(entry.getKey(), entry.getValue())) {
+                names.add((String)entry.getKey());
+            } else {
+                otherEntries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (otherEntries.isEmpty()) {
+            otherEntries = Collections.emptyMap();
+        }
+        String[] sortedNames = names.toArray(new String[0]);
+        Arrays.sort(sortedNames);
+        return new CompactEntries(sortedNames, entries, otherEntries, offHeap);
+    }
+
+
+    /**
+     * Gets the index of the names of the string entries of this map, whose positions are those of the entries.
+     *
+     * @return the index
+     */
+    PrefixIndex prefixIndex() {
+        return prefixIndex;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return nameHashes.length + otherEntries.size();
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(final Object key) {
+        if (key instanceof String && position((String)key) >= 0) {
+            return true;
+        }
+        return otherEntries.containsKey(key);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Object get(final Object key) {
+        if (key instanceof String) {
+            int position = position((String)key);
+            if (position >= 0) {
+                return value(position);
+            }
+        }
+        return otherEntries.get(key);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        return new EntrySet();
+    }
+
+
+    /**
+     * Finds the position of the string entry with the specified name.
+     *
+     * @param name the name
+     * @return the position, or -1 if there is no string entry with the name
+     */
+    private int position(final String name) {
+        int hash = name.hashCode();
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        int entry = table[slot];
+        while (entry != 0) {
+            int position = entry - 1;
+            if (nameHashes[position] == hash && nameEquals(position, name)) {
+                return position;
+            }
+            slot = (slot + 1) & mask;
+            entry = table[slot];
+        }
+        return -1;
+    }
+
+
+    /**
+     * Gets the name of the string entry at the specified position.
+     *
+     * @param position the position
+     * @return the name
+     */
+    private String name(final int position) {
+        String prefix = nameParts[namePrefixes[position]];
+        String suffix = nameParts[nameSuffixes[position]];
+        if (prefix.isEmpty()) {
+            return suffix;
+        }
+        return prefix.concat(suffix);
+    }
+
+
+    /**
+     * Determines whether the name of the string entry at the specified position equals the specified string.
+     *
+     * @param position the position
+     * @param string the string
+     * @return true if the name equals the string, false otherwise
+     */
+    private boolean nameEquals(final int position, final String string) {
+        String prefix = nameParts[namePrefixes[position]];
+        String suffix = nameParts[nameSuffixes[position]];
+        return string.length() == prefix.length() + suffix.length()
+                && string.startsWith(prefix)
+                && string.startsWith(suffix, prefix.length());
+    }
+
+
+    /**
+     * Compares the name of the string entry at the specified position with the specified string lexicographically,
+     * as {@link String#compareTo(String)} does.
+     *
+     * @param position the position
+     * @param string the string
+     * @return a negative integer, zero, or a positive integer as the name is less than, equal to, or greater than the
+     *         string
+     */
+    private int compareName(final int position, final String string) {
+        String prefix = nameParts[namePrefixes[position]];
+        String suffix = nameParts[nameSuffixes[position]];
+        int prefixLength = Math.min(prefix.length(), string.length());
+        for (int i = 0; i < prefixLength; i++) {
+            int difference = prefix.charAt(i) - string.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        int suffixLength = Math.min(suffix.length(), string.length() - prefixLength);
+        for (int i = 0; i < suffixLength; i++) {
+            int difference = suffix.charAt(i) - string.charAt(prefixLength + i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return prefix.length() + suffix.length() - string.length();
+    }
+
+
+    /**
+     * Determines whether the name of the string entry at the specified position begins with the specified prefix.
+     *
+     * @param position the position
+     * @param namePrefix the prefix
+     * @return true if the name begins with the prefix, false otherwise
+     */
+    private boolean nameStartsWith(final int position, final String namePrefix) {
+        String prefix = nameParts[namePrefixes[position]];
+        if (namePrefix.length() <= prefix.length()) {
+            return prefix.startsWith(namePrefix);
+        }
+        String suffix = nameParts[nameSuffixes[position]];
+        int remainingLength = namePrefix.length() - prefix.length();
+        return remainingLength <= suffix.length()
+                && namePrefix.startsWith(prefix)
+                && suffix.regionMatches(0, namePrefix, prefix.length(), remainingLength);
+    }
+
+
+    /**
+     * Gets the value of the string entry at the specified position.
+     *
+     * @param position the position
+     * @return the value
+     */
+    private String value(final int position) {
+        int id = valueIds[position];
+        if (values != null) {
+            return values[id];
+        }
+        int offset = valueOffsets[id];
+        int length = offHeapValues.getInt(offset);
+        byte[] characters = new byte[CompiledPropertiesCache.encodedLength(length)];
+        offHeapValues.get(offset + Integer.BYTES, characters);
+        return new String(characters, CompiledPropertiesCache.charset(length));
+    }
+
+
+    /**
+     * Replaces this map with its serialized form when it is serialized.
+     *
+     * @return the serialized form
+     */
+    private Object writeReplace() {
+        return new SerializedForm(new HashMap<>(this), offHeapValues != null);
+    }
+
+
+    /**
+     * Gets the identifier of the specified string within a pool of distinct strings, adding the string to the pool
+     * if it is not already present.
+     *
+     * @param string the string
+     * @param ids the identifiers of the strings in the pool
+     * @param pool the strings in the pool, in order of their identifiers
+     * @return the identifier
+     */
+    private static int pooledId(final String string, final Map<String, Integer> ids, final List<String> pool) {
+        Integer id = ids.get(string);
+        if (id == null) {
+            id = pool.size();
+            ids.put(string, id);
+            pool.add(string);
+        }
+        return id;
+    }
+
+
+    /**
+     * Gets the capacity of a table of positions holding the specified number of positions.
+     *
+     * @param size the number of positions
+     * @return a power of two leaving empty slots in the table
+     */
+    private static int tableCapacity(final int size) {
+        int minimumCapacity = (int)(size / TABLE_LOAD_FACTOR) + 1;
+        return Integer.highestOneBit(minimumCapacity) << 1;
+    }
+
+
+    /**
+     * Folds the high bits of a hash code into its low bits, which select the slot of the table.
+     *
+     * @param hash the hash code
+     * @return the spread hash code
+     */
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> HASH_SPREAD_SHIFT);
+    }
+
+
+    /** The index of the names of the string entries of a compact map. */
+    private static final class Names extends PrefixIndex {
+
+        private static final long serialVersionUID = 2962581380264926394L;
+
+        /** The map whose names are indexed. */
+        private final CompactEntries entries;
+
+
+        /**
+         * Instantiates a new index of the names of the specified map.
+         *
+         * @param entries the map
+         */
+        Names(final CompactEntries entries) {
+            this.entries = entries;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        int size() {
+            return entries.nameHashes.length;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        String name(final int position) {
+            return entries.name(position);
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        int compareName(final int position, final String string) {
+            return entries.compareName(position, string);
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        boolean nameStartsWith(final int position, final String prefix) {
+            return entries.nameStartsWith(position, prefix);
+        }
+
+
+    }
+
+
+    /** The entries of a compact map, the string entries in name order followed by the other entries. */
+    private final class EntrySet extends AbstractSet<Map.Entry<Object, Object>> {
+
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            return CompactEntries.this.size();
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Iterator<Map.Entry<Object, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+
+    }
+
+
+    /** An iterator over the entries of a compact map. */
+    private final class EntryIterator implements Iterator<Map.Entry<Object, Object>> {
+
+        /** The iterator over the entries whose key or value is not a string. */
+        private final Iterator<Map.Entry<Object, Object>> otherIterator =
+                Collections.unmodifiableMap(otherEntries).entrySet().iterator();
+
+        /** The position of the next string entry. */
+        private int position;
+
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasNext() {
+            return position < nameHashes.length || otherIterator.hasNext();
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Map.Entry<Object, Object> next() {
+            if (position >= nameHashes.length) {
+                return otherIterator.next();
+            }
+            Map.Entry<Object, Object> entry = new AbstractMap.SimpleImmutableEntry<>(name(position), value(position));
+            position++;
+            return entry;
+        }
+
+
+    }
+
+
+    /** The serialized form of a compact map. */
+    private static final class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = 4481035873920714263L;
+
+        /** The entries of the map. */
+        private final HashMap<Object, Object> entries;
+
+        /** Whether the distinct values of the map are stored off the heap. */
+        private final boolean offHeap;
+
+
+        /**
+         * Instantiates a new serialized form.
+         *
+         * @param entries the entries of the map
+         * @param offHeap whether the distinct values of the map are stored off the heap
+         */
+        SerializedForm(final HashMap<Object, Object> entries, final boolean offHeap) {
+            this.entries = entries;
+            this.offHeap = offHeap;
+        }
+
+
+        /**
+         * Rebuilds the map when it is deserialized.
+         *
+         * @return the map
+         */
+        private Object readResolve() {
+            return of(entries, offHeap);
+        }
+
+
+    }
+
+
+}
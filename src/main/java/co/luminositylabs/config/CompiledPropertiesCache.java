@@ -0,0 +1,436 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+
+/**
+ * A cache of parsed properties files, stored in a compact binary form next to each source file.
+ * <p>
+ * Loading a properties file through this cache reads the source file and computes its checksum, which is far cheaper
+ * than parsing it.  When a cache file recorded for a source of the same size, modification time and checksum exists,
+ * it is memory-mapped and its entries are decoded with one bulk copy per string, without parsing the source.
+ * Otherwise the source is parsed and the cache file is rebuilt, being written to a temporary file which atomically
+ * replaces any previous cache file, so readers never observe a partially written cache.  A cache file which cannot be
+ * written, such as next to a source in a read-only directory, is simply not used.
+ * <p>
+ * A cache file consists of a header recording the format, the size, modification time and CRC-32C checksum of the
+ * source, the CRC-32C checksum of the payload and the number of entries, followed by the payload of alternating keys
+ * and values.  Each string is stored as a length followed by its characters, encoded as ISO-8859-1 when every
+ * character allows it, and as UTF-16 otherwise.
+ *
+ * @author Phillip Ross
+ */
+final class CompiledPropertiesCache {
+
+    /** The static logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(CompiledPropertiesCache.class);
+
+    /** The suffix appended to the name of a source file to name its cache file. */
+    static final String CACHE_FILE_SUFFIX = ".cache";
+
+    /** The value identifying a cache file. */
+    private static final int MAGIC = 0x4C4C4346;
+
+    /** The version of the format of cache files. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** The size in bytes of the header of a cache file. */
+    private static final int HEADER_SIZE = 36;
+
+    /** The load factor of the resulting map. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** The greatest character which can be encoded as ISO-8859-1. */
+    private static final int MAX_LATIN1_CHAR = 0xFF;
+
+
+    /**
+     * Prevents instantiation.
+     */
+    private CompiledPropertiesCache() {
+    }
+
+
+    /**
+     * Loads the properties file at the specified path, using its cache file if it is current and rebuilding it
+     * otherwise.
+     *
+     * @param path the path of the properties file
+     * @return the entries, in a mutable map owned by the caller
+     * @throws IOException if the properties file cannot be read
+     * @throws IllegalArgumentException if the properties file contains a malformed unicode escape
+     */
+    static Map<Object, Object> load(final Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            content = PropertiesParser.read(channel, path);
+        }
+        SourceStamp stamp = new SourceStamp(
+                content.limit(), attributes.lastModifiedTime().toMillis(), checksum(content)
+        );
+        Path cachePath = cachePath(path);
+        Map<Object, Object> entries = readCache(cachePath, stamp);
+        if (entries != null) {
+            logger.debug("Loaded {} properties of {} from cache file {}", entries.size(), path, cachePath);
+            return entries;
+        }
+        entries = PropertiesParser.parse(content.array(), content.limit());
+        writeCache(cachePath, stamp, entries);
+        return entries;
+    }
+
+
+    /**
+     * Gets the path of the cache file of the specified properties file.
+     *
+     * @param path the path of the properties file
+     * @return the path of the cache file
+     */
+    static Path cachePath(final Path path) {
+        return path.resolveSibling(path.getFileName() + CACHE_FILE_SUFFIX);
+    }
+
+
+    /**
+     * Reads the entries of a cache file if it is valid and was built from a source with the specified stamp.
+     *
+     * @param cachePath the path of the cache file
+     * @param stamp the stamp of the source
+     * @return the entries, in a mutable map owned by the caller, or null if the cache file cannot be used
+     */
+    private static Map<Object, Object> readCache(final Path cachePath, final SourceStamp stamp) {
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                logger.debug("Ignoring cache file {} of invalid size {}", cachePath, size);
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                logger.debug("Ignoring cache file {} of unknown format", cachePath);
+                return null;
+            }
+            if (!stamp.equals(new SourceStamp(buffer.getLong(), buffer.getLong(), buffer.getInt()))) {
+                logger.debug("Ignoring cache file {} built from a different source", cachePath);
+                return null;
+            }
+            int payloadChecksum = buffer.getInt();
+            int entryCount = buffer.getInt();
+            if (checksum(buffer.slice()) != payloadChecksum || entryCount < 0) {
+                logger.debug("Ignoring corrupt cache file {}", cachePath);
+                return null;
+            }
+            return decodeEntries(buffer, entryCount);
+        } catch (NoSuchFileException nsfe) {
+            return null;
+        } catch (IOException | BufferUnderflowException e) {
+            logger.debug("Unable to read cache file {}", cachePath, e);
+            return null;
+        } catch (InternalError ie) {
+            // Accessing a mapping of a file truncated after it was mapped faults.
+            logger.debug("Cache file {} was truncated while being read", cachePath, ie);
+            return null;
+        }
+    }
+
+
+    /**
+     * Decodes the entries of the payload of a cache file.
+     *
+     * @param buffer the buffer positioned at the beginning of the payload
+     * @param entryCount the number of entries
+     * @return the entries, in a mutable map owned by the caller
+     */
+    private static Map<Object, Object> decodeEntries(final ByteBuffer buffer, final int entryCount) {
+        Map<Object, Object> entries = new HashMap<>((int)(entryCount / LOAD_FACTOR) + 1);
+        byte[] scratch = new byte[0];
+        for (int i = 0; i < entryCount; i++) {
+            int keyLength = buffer.getInt();
+            scratch = readBytes(buffer, keyLength, scratch);
+            String key = new String(scratch, 0, encodedLength(keyLength), charset(keyLength));
+            int valueLength = buffer.getInt();
+            scratch = readBytes(buffer, valueLength, scratch);
+            entries.put(key, new String(scratch, 0, encodedLength(valueLength), charset(valueLength)));
+        }
+        return entries;
+    }
+
+
+    /**
+     * Reads the encoded characters of a string.
+     *
+     * @param buffer the buffer positioned at the characters
+     * @param length the stored length of the string
+     * @param scratch the array which receives the characters, if it is large enough
+     * @return the array holding the characters, either the scratch array or a larger replacement
+     */
+    private static byte[] readBytes(final ByteBuffer buffer, final int length, final byte[] scratch) {
+        int encodedLength = encodedLength(length);
+        byte[] bytes = scratch;
+        if (bytes.length < encodedLength) {
+            bytes = new byte[Math.max(encodedLength, bytes.length * 2)];
+        }
+        buffer.get(bytes, 0, encodedLength);
+        return bytes;
+    }
+
+
+    /**
+     * Writes a cache file holding the specified entries, replacing any previous cache file.  Failures are logged and
+     * otherwise ignored.
+     *
+     * @param cachePath the path of the cache file
+     * @param stamp the stamp of the source of the entries
+     * @param entries the entries
+     */
+    private static void writeCache(final Path cachePath, final SourceStamp stamp, final Map<Object, Object> entries) {
+        List<byte[]> strings = new ArrayList<>(entries.size() * 2);
+        long payloadSize = 0;
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String)) {
+                logger.debug("Not caching properties containing an entry which is not a string: {}", entry);
+                return;
+            }
+            byte[] key = encode((String)entry.getKey());
+            byte[] value = encode((String)entry.getValue());
+            strings.add(key);
+            strings.add(value);
+            payloadSize += key.length + value.length;
+        }
+        if (HEADER_SIZE + payloadSize > Integer.MAX_VALUE) {
+            logger.debug("Not caching properties too large for a cache file: {}", cachePath);
+            return;
+        }
+        ByteBuffer payload = ByteBuffer.allocate((int)payloadSize);
+        for (byte[] string : strings) {
+            payload.put(string);
+        }
+        payload.flip();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION);
+        header.putLong(stamp.getSize()).putLong(stamp.getModifiedMillis()).putInt(stamp.getChecksum());
+        header.putInt(checksum(payload)).putInt(entries.size());
+        header.flip();
+        Path temporaryPath = null;
+        try {
+            temporaryPath = Files.createTempFile(cachePath.toAbsolutePath().getParent(), cachePath.getFileName() + ".",
+                    ".tmp");
+            try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = {header, payload};
+                while (header.hasRemaining() || payload.hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+            Files.move(temporaryPath, cachePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            logger.debug("Wrote {} properties to cache file {}", entries.size(), cachePath);
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            logger.debug("Unable to write cache file {}", cachePath, e);
+            deleteQuietly(temporaryPath);
+        }
+    }
+
+
+    /**
+     * Encodes a string as its stored length followed by its characters.  The stored length is the number of bytes
+     * encoding the characters when they are encoded as ISO-8859-1, and its complement when they are encoded as UTF-16.
+     *
+     * @param string the string
+     * @return the encoded string
+     */
+    static byte[] encode(final String string) {
+        boolean latin1 = true;
+        for (int i = 0; latin1 && i < string.length(); i++) {
+            latin1 = string.charAt(i) <= MAX_LATIN1_CHAR;
+        }
+        byte[] characters;
+        int length;
+        if (latin1) {
+            characters = string.getBytes(StandardCharsets.ISO_8859_1);
+            length = characters.length;
+        } else {
+            characters = string.getBytes(StandardCharsets.UTF_16BE);
+            length = ~characters.length;
+        }
+        return ByteBuffer.allocate(Integer.BYTES + characters.length).putInt(length).put(characters).array();
+    }
+
+
+    /**
+     * Gets the number of bytes encoding the characters of a string with the specified stored length.
+     *
+     * @param length the stored length
+     * @return the number of bytes
+     */
+    static int encodedLength(final int length) {
+        if (length < 0) {
+            return ~length;
+        }
+        return length;
+    }
+
+
+    /**
+     * Gets the charset encoding the characters of a string with the specified stored length.
+     *
+     * @param length the stored length
+     * @return the charset
+     */
+    static Charset charset(final int length) {
+        if (length < 0) {
+            return StandardCharsets.UTF_16BE;
+        }
+        return StandardCharsets.ISO_8859_1;
+    }
+
+
+    /**
+     * Computes the CRC-32C checksum of the remaining content of a buffer, without changing its position.
+     *
+     * @param buffer the buffer
+     * @return the checksum
+     */
+    static int checksum(final ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate());
+        return (int)crc.getValue();
+    }
+
+
+    /**
+     * Deletes a temporary file, ignoring failures.
+     *
+     * @param path the path of the file, or null
+     */
+    static void deleteQuietly(final Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.debug("Unable to delete temporary file {}", path, e);
+        }
+    }
+
+
+    /** The size, modification time and checksum of a source file, which together identify its content. */
+    private static final class SourceStamp {
+
+        /** The size of the source in bytes. */
+        private final long size;
+
+        /** The modification time of the source in milliseconds since the epoch. */
+        private final long modifiedMillis;
+
+        /** The CRC-32C checksum of the content of the source. */
+        private final int checksum;
+
+
+        /**
+         * Instantiates a new stamp.
+         *
+         * @param size the size of the source in bytes
+         * @param modifiedMillis the modification time of the source in milliseconds since the epoch
+         * @param checksum the CRC-32C checksum of the content of the source
+         */
+        SourceStamp(final long size, final long modifiedMillis, final int checksum) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.checksum = checksum;
+        }
+
+
+        /**
+         * Gets the size of the source.
+         *
+         * @return the size in bytes
+         */
+        long getSize() {
+            return size;
+        }
+
+
+        /**
+         * Gets the modification time of the source.
+         *
+         * @return the modification time in milliseconds since the epoch
+         */
+        long getModifiedMillis() {
+            return modifiedMillis;
+        }
+
+
+        /**
+         * Gets the checksum of the content of the source.
+         *
+         * @return the CRC-32C checksum
+         */
+        int getChecksum() {
+            return checksum;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SourceStamp)) {
+                return false;
+            }
+            SourceStamp other = (SourceStamp)o;
+            return size == other.size && modifiedMillis == other.modifiedMillis && checksum == other.checksum;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, modifiedMillis, checksum);
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,351 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+
+/**
+ * A typed handle to a configuration property, intended to be declared once as a constant and read on hot paths.
+ * <p>
+ * A key caches the value it last resolved along with the snapshot it was resolved from.  While the configuration is
+ * unchanged, {@link #get()} costs a single volatile read of the current snapshot and a reference comparison; no
+ * hashing, string comparison, locking or conversion takes place.  When the snapshot changes, the key looks up the
+ * property again and only converts it if its string value differs from the one previously resolved.
+ * <pre>
+ * private static final ConfigKey&lt;Integer&gt; POOL_SIZE = ConfigKey.ofInt("pool.size", 10);
+ * ...
+ * int poolSize = POOL_SIZE.get();
+ * </pre>
+ *
+ * @param <T> the type of the property value
+ * @author Phillip Ross
+ */
+public final class ConfigKey<T> {
+
+    /** The configuration read by {@link #get()}, registered when a configuration bean is initialized. */
+    private static final AtomicReference<Configuration> DEFAULT_CONFIGURATION = new AtomicReference<>();
+
+    /** The name of the property. */
+    private final String name;
+
+    /** The converter applied to the string value of the property. */
+    private final Function<String, ? extends T> converter;
+
+    /** The value of the key when the property does not exist. */
+    private final T defaultValue;
+
+    /**
+     * The most recent resolution against the default configuration.  This field is deliberately not volatile: a
+     * resolution only has final fields and is therefore safely published, and a thread which observes an older
+     * resolution merely resolves again.
+     */
+    private Resolution<T> defaultResolution;
+
+    /** The most recent resolution against an explicitly specified configuration, published like the above. */
+    private Resolution<T> boundResolution;
+
+
+    /**
+     * Instantiates a new key.
+     *
+     * @param name the name of the property
+     * @param converter the converter applied to the string value of the property
+     * @param defaultValue the value of the key when the property does not exist
+     */
+    private ConfigKey(final String name, final Function<String, ? extends T> converter, final T defaultValue) {
+        this.name = Objects.requireNonNull(name);
+        this.converter = Objects.requireNonNull(converter);
+        this.defaultValue = defaultValue;
+    }
+
+
+    /**
+     * Creates a key whose value is converted by the specified converter.
+     *
+     * @param name the name of the property
+     * @param converter the converter applied to the string value of the property
+     * @param defaultValue the value of the key when the property does not exist
+     * @param <T> the type of the property value
+     * @return the key
+     */
+    public static <T> ConfigKey<T> of(final String name,
+                                      final Function<String, ? extends T> converter,
+                                      final T defaultValue) {
+        return new ConfigKey<>(name, converter, defaultValue);
+    }
+
+
+    /**
+     * Creates a key whose value is the string value of the property.
+     *
+     * @param name the name of the property
+     * @param defaultValue the value of the key when the property does not exist
+     * @return the key
+     */
+    public static ConfigKey<String> ofString(final String name, final String defaultValue) {
+        return new ConfigKey<>(name, Function.identity(), defaultValue);
+    }
+
+
+    /**
+     * Creates a key whose value is converted to an {@code Integer}.
+     *
+     * @param name the name of the property
+     * @param defaultValue the value of the key when the property does not exist
+     * @return the key
+     */
+    public static ConfigKey<Integer> ofInt(final String name, final int defaultValue) {
+        return new ConfigKey<>(name, Converters.INTEGER, defaultValue);
+    }
+
+
+    /**
+     * Creates a key whose value is converted to a {@code Long}.
+     *
+     * @param name the name of the property
+     * @param defaultValue the value of the key when the property does not exist
+     * @return the key
+     */
+    public static ConfigKey<Long> ofLong(final String name, final long defaultValue) {
+        return new ConfigKey<>(name, Converters.LONG, defaultValue);
+    }
+
+
+    /**
+     * Creates a key whose value is converted to a {@code Double}.
+     *
+     * @param name the name of the property
+     * @param defaultValue the value of the key when the property does not exist
+     * @return the key
+     */
+    public static ConfigKey<Double> ofDouble(final String name, final double defaultValue) {
+        return new ConfigKey<>(name, Converters.DOUBLE, defaultValue);
+    }
+
+
+    /**
+     * Creates a key whose value is converted to a {@code Boolean}.
+     *
+     * @param name the name of the property
+     * @param defaultValue the value of the key when the property does not exist
+     * @return the key
+     */
+    public static ConfigKey<Boolean> ofBoolean(final String name, final boolean defaultValue) {
+        return new ConfigKey<>(name, Converters.BOOLEAN, defaultValue);
+    }
+
+
+    /**
+     * Creates a key whose value is converted from an ISO-8601 representation to a {@code Duration}.
+     *
+     * @param name the name of the property
+     * @param defaultValue the value of the key when the property does not exist
+     * @return the key
+     */
+    public static ConfigKey<Duration> ofDuration(final String name, final Duration defaultValue) {
+        return new ConfigKey<>(name, Converters.DURATION, defaultValue);
+    }
+
+
+    /**
+     * Creates a key whose value is converted to a constant of the specified enum type.
+     *
+     * @param name the name of the property
+     * @param enumType the enum type
+     * @param defaultValue the value of the key when the property does not exist
+     * @param <E> the enum type
+     * @return the key
+     */
+    public static <E extends Enum<E>> ConfigKey<E> ofEnum(final String name,
+                                                          final Class<E> enumType,
+                                                          final E defaultValue) {
+        return new ConfigKey<>(name, Converters.forEnum(enumType), defaultValue);
+    }
+
+
+    /**
+     * Creates a key whose value is split on commas into a list of its trimmed, non-empty elements.
+     *
+     * @param name the name of the property
+     * @return the key, whose value is an empty list when the property does not exist
+     */
+    public static ConfigKey<List<String>> ofList(final String name) {
+        return new ConfigKey<>(name, Converters.LIST, Collections.emptyList());
+    }
+
+
+    /**
+     * Gets the name of the property.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Gets the value of the property from the default configuration, which is the most recently initialized
+     * {@link Configuration} bean.
+     *
+     * @return the value
+     * @throws IllegalStateException if no configuration bean has been initialized
+     */
+    public T get() {
+        Resolution<T> current = defaultResolution;
+        if (current != null && current.snapshot == current.configuration.getSnapshot()) {
+            return current.value;
+        }
+        Configuration configuration = DEFAULT_CONFIGURATION.get();
+        if (configuration == null) {
+            throw new IllegalStateException("No configuration has been initialized to resolve " + name);
+        }
+        Resolution<T> next = resolve(configuration, current);
+        defaultResolution = next;
+        return next.value;
+    }
+
+
+    /**
+     * Gets the value of the property from the specified configuration.
+     *
+     * @param configuration the configuration
+     * @return the value
+     */
+    public T get(final Configuration configuration) {
+        Resolution<T> current = boundResolution;
+        if (current != null
+                && current.configuration == configuration
+                && current.snapshot == configuration.getSnapshot()) {
+            return current.value;
+        }
+        Resolution<T> next = resolve(configuration, current);
+        boundResolution = next;
+        return next.value;
+    }
+
+
+    /**
+     * Resolves the value of the property against the current snapshot of the specified configuration.
+     *
+     * @param configuration the configuration
+     * @param previous the previous resolution, or null if there is none
+     * @return the resolution
+     */
+    private Resolution<T> resolve(final Configuration configuration, final Resolution<T> previous) {
+        ConfigurationSnapshot snapshot = configuration.getSnapshot();
+        String source = snapshot.getProperty(name);
+        T value;
+        // Compared by content, since snapshots storing their values off the heap decode a new string on every read.
+        if (previous != null && Objects.equals(previous.source, source)) {
+            value = previous.value;
+        } else if (source == null) {
+            value = defaultValue;
+        } else {
+            value = converter.apply(source);
+        }
+        return new Resolution<>(configuration, snapshot, source, value);
+    }
+
+
+    /**
+     * Gets the configuration read by {@link #get()}.
+     *
+     * @return the configuration, or null if no configuration bean has been initialized
+     */
+    static Configuration getDefaultConfiguration() {
+        return DEFAULT_CONFIGURATION.get();
+    }
+
+
+    /**
+     * Registers the specified configuration as the configuration read by {@link #get()}.
+     *
+     * @param configuration the configuration
+     */
+    static void registerDefaultConfiguration(final Configuration configuration) {
+        DEFAULT_CONFIGURATION.set(configuration);
+    }
+
+
+    /**
+     * Unregisters the specified configuration if it is the configuration read by {@link #get()}.
+     *
+     * @param configuration the configuration
+     */
+    static void unregisterDefaultConfiguration(final Configuration configuration) {
+        DEFAULT_CONFIGURATION.compareAndSet(configuration, null);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigKey{" + name + '}';
+    }
+
+
+    /**
+     * A value resolved from a snapshot of a configuration.
+     *
+     * @param <T> the type of the value
+     */
+    private static final class Resolution<T> {
+
+        /** The configuration the value was resolved from. */
+        private final Configuration configuration;
+
+        /** The snapshot the value was resolved from. */
+        private final ConfigurationSnapshot snapshot;
+
+        /** The string value the value was converted from, or null if the property did not exist. */
+        private final String source;
+
+        /** The resolved value. */
+        private final T value;
+
+
+        /**
+         * Instantiates a new resolution.
+         *
+         * @param configuration the configuration the value was resolved from
+         * @param snapshot the snapshot the value was resolved from
+         * @param source the string value the value was converted from
+         * @param value the resolved value
+         */
+        Resolution(final Configuration configuration,
+                   final ConfigurationSnapshot snapshot,
+                   final String source,
+                   final T value) {
+            this.configuration = configuration;
+            this.snapshot = snapshot;
+            this.source = source;
+            this.value = value;
+        }
+
+
+    }
+
+
+}
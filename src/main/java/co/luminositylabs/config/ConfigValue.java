@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import jakarta.enterprise.util.Nonbinding;
+import jakarta.inject.Qualifier;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Qualifies an injection point receiving the value of a property of the {@link Configuration} bean, converted to the
+ * type of the injection point:
+ * <pre>
+ * &#64;Inject &#64;ConfigValue("pool.size") int poolSize;
+ * &#64;Inject &#64;ConfigValue(value = "pool.timeout", defaultValue = "PT30S") Supplier&lt;Duration&gt; poolTimeout;
+ * </pre>
+ * The supported types are {@code String}, {@code int}, {@code long}, {@code double}, {@code boolean}, their wrappers,
+ * {@code Duration} and {@code List<String>}.  A {@code Supplier} or {@code Provider} of any of these, and a
+ * {@code Supplier} of an enum, is dynamic, returning the current value of the property each time it is called.  Other
+ * injection points receive the value of the property when the bean is created.
+ * <p>
+ * Injection points are type-checked when the application is deployed, failing the deployment if their type is not
+ * supported or their default value cannot be converted to it.  A property without a default value which does not
+ * exist when its value is injected or supplied causes an {@link IllegalStateException}.
+ *
+ * @author Phillip Ross
+ */
+@Qualifier
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER})
+public @interface ConfigValue {
+
+
+    /** The default value denoting that a property has no default value. */
+    String NO_DEFAULT_VALUE = "co.luminositylabs.config.ConfigValue.NO_DEFAULT_VALUE";
+
+
+    /**
+     * Gets the name of the property.
+     *
+     * @return the name of the property
+     */
+    @Nonbinding
+    String value();
+
+
+    /**
+     * Gets the string form of the value injected when the property does not exist.
+     *
+     * @return the default value, or {@link #NO_DEFAULT_VALUE} if the property is required
+     */
+    @Nonbinding
+    String defaultValue() default NO_DEFAULT_VALUE;
+
+
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import jakarta.enterprise.inject.spi.AnnotatedParameter;
+import jakarta.enterprise.inject.spi.InjectionPoint;
+import jakarta.inject.Provider;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Member;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+
+/**
+ * The property bound to a {@link ConfigValue} injection point, compiled into a {@link ConfigKey} whose converter is
+ * chosen, and whose default value is converted, once for the injection point.  Resolving the binding therefore costs
+ * a comparison of the current snapshot with the snapshot the key last resolved, unless the snapshot changed.
+ *
+ * @author Phillip Ross
+ */
+final class ConfigValueBinding {
+
+    /** The converters of the supported types of injection points, keyed by type. */
+    private static final Map<Type, Function<String, ?>> CONVERTERS = new HashMap<>();
+
+    static {
+        CONVERTERS.put(String.class, Function.identity());
+        CONVERTERS.put(Integer.class, Converters.INTEGER);
+        CONVERTERS.put(int.class, Converters.INTEGER);
+        CONVERTERS.put(Long.class, Converters.LONG);
+        CONVERTERS.put(long.class, Converters.LONG);
+        CONVERTERS.put(Double.class, Converters.DOUBLE);
+        CONVERTERS.put(double.class, Converters.DOUBLE);
+        CONVERTERS.put(Boolean.class, Converters.BOOLEAN);
+        CONVERTERS.put(boolean.class, Converters.BOOLEAN);
+        CONVERTERS.put(Duration.class, Converters.DURATION);
+    }
+
+    /** The name of the property. */
+    private final String name;
+
+    /** The description of the injection point, used in error messages. */
+    private final String injectionPoint;
+
+    /** Whether the property is required, having no default value. */
+    private final boolean required;
+
+    /** The key resolving the value of the property. */
+    private final ConfigKey<?> key;
+
+
+    /**
+     * Instantiates a new binding.
+     *
+     * @param name the name of the property
+     * @param injectionPoint the description of the injection point
+     * @param required whether the property is required
+     * @param key the key resolving the value of the property
+     */
+    private ConfigValueBinding(final String name,
+                               final String injectionPoint,
+                               final boolean required,
+                               final ConfigKey<?> key) {
+        this.name = name;
+        this.injectionPoint = injectionPoint;
+        this.required = required;
+        this.key = key;
+    }
+
+
+    /**
+     * Compiles the binding of the specified injection point.
+     *
+     * @param injectionPoint the injection point, qualified by {@link ConfigValue}
+     * @return the binding
+     * @throws IllegalArgumentException if the injection point is not qualified by {@link ConfigValue}, has an empty
+     *         property name or an unsupported type, or has a default value which cannot be converted to its type
+     */
+    static ConfigValueBinding of(final InjectionPoint injectionPoint) {
+        String description = describe(injectionPoint);
+        ConfigValue configValue = null;
+        for (Annotation qualifier : injectionPoint.getQualifiers()) {
+            if (qualifier instanceof ConfigValue) {
+                configValue = (ConfigValue)qualifier;
+            }
+        }
+        if (configValue == null) {
+            throw new IllegalArgumentException("Injection point " + description + " is not qualified by @ConfigValue");
+        }
+        String name = configValue.value();
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("@ConfigValue injection point " + description
+                    + " does not name a property");
+        }
+        Type valueType = injectionPoint.getType();
+        boolean supplier = false;
+        if (valueType instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType)valueType;
+            Type rawType = parameterizedType.getRawType();
+            if (rawType == Supplier.class
+                    || (rawType instanceof Class && Provider.class.isAssignableFrom((Class<?>)rawType))) {
+                supplier = rawType == Supplier.class;
+                valueType = parameterizedType.getActualTypeArguments()[0];
+            }
+        }
+        Function<String, ?> converter = converter(valueType, supplier);
+        if (converter == null) {
+            throw new IllegalArgumentException("@ConfigValue injection point " + description
+                    + " has unsupported type " + injectionPoint.getType().getTypeName());
+        }
+        boolean required = ConfigValue.NO_DEFAULT_VALUE.equals(configValue.defaultValue());
+        Object defaultValue = null;
+        if (!required) {
+            try {
+                defaultValue = converter.apply(configValue.defaultValue());
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("@ConfigValue injection point " + description + " has default value "
+                        + configValue.defaultValue() + " which is not a valid " + valueType.getTypeName(), e);
+            }
+        }
+        return new ConfigValueBinding(name, description, required, ConfigKey.of(name, converter, defaultValue));
+    }
+
+
+    /**
+     * Resolves the current value of the property.
+     *
+     * @param configuration the configuration holding the property
+     * @return the value, or null if the property does not exist and its default value is null
+     * @throws IllegalStateException if the property is required and does not exist
+     * @throws IllegalArgumentException if the value of the property cannot be converted
+     */
+    Object resolve(final Configuration configuration) {
+        Object value = key.get(configuration);
+        if (value == null && required) {
+            throw new IllegalStateException("Property " + name + " required by @ConfigValue injection point "
+                    + injectionPoint + " does not exist");
+        }
+        return value;
+    }
+
+
+    /**
+     * Gets the converter for the specified type of value.
+     *
+     * @param valueType the type of value
+     * @param supplier whether the value is supplied by a {@code Supplier}, which allows enums.  A {@code Provider}
+     *                 does not, since the container provides it by looking up a bean of the enum type, which is not
+     *                 produced.
+     * @return the converter, or null if the type is not supported
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Function<String, ?> converter(final Type valueType, final boolean supplier) {
+        Function<String, ?> converter = CONVERTERS.get(valueType);
+        if (converter != null) {
+            return converter;
+        }
+        if (supplier && valueType instanceof Class && ((Class<?>)valueType).isEnum()) {
+            return Converters.forEnum((Class)valueType);
+        }
+        if (valueType instanceof ParameterizedType
+                && ((ParameterizedType)valueType).getRawType() == List.class
+                && ((ParameterizedType)valueType).getActualTypeArguments()[0] == String.class) {
+            return Converters.LIST;
+        }
+        return null;
+    }
+
+
+    /**
+     * Describes the specified injection point for error messages.
+     *
+     * @param injectionPoint the injection point
+     * @return the description
+     */
+    private static String describe(final InjectionPoint injectionPoint) {
+        Member member = injectionPoint.getMember();
+        if (member == null) {
+            return injectionPoint.toString();
+        }
+        String description = member.getDeclaringClass().getName() + "." + member.getName();
+        if (injectionPoint.getAnnotated() instanceof AnnotatedParameter) {
+            description += "#" + ((AnnotatedParameter<?>)injectionPoint.getAnnotated()).getPosition();
+        }
+        return description;
+    }
+
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.spi.AfterDeploymentValidation;
+import jakarta.enterprise.inject.spi.Extension;
+import jakarta.enterprise.inject.spi.InjectionPoint;
+import jakarta.enterprise.inject.spi.ProcessInjectionPoint;
+import java.lang.annotation.Annotation;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * A CDI portable extension type-checking every {@link ConfigValue} injection point when the application is deployed,
+ * so that an injection point of an unsupported type, or with a default value which cannot be converted to its type,
+ * fails the deployment rather than the first creation of its bean.  The extension is registered with
+ * {@link java.util.ServiceLoader}.
+ *
+ * @author Phillip Ross
+ */
+public class ConfigValueExtension implements Extension {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigValueExtension.class);
+
+    /** The injection points qualified by {@link ConfigValue}. */
+    private final Queue<InjectionPoint> injectionPoints = new ConcurrentLinkedQueue<>();
+
+
+    /**
+     * Collects an injection point if it is qualified by {@link ConfigValue}.
+     *
+     * @param event the event describing the injection point
+     */
+    void collectInjectionPoint(@Observes final ProcessInjectionPoint<?, ?> event) {
+        for (Annotation qualifier : event.getInjectionPoint().getQualifiers()) {
+            if (qualifier instanceof ConfigValue) {
+                injectionPoints.add(event.getInjectionPoint());
+            }
+        }
+    }
+
+
+    /**
+     * Compiles the binding of every collected injection point, reporting each which cannot be compiled as a
+     * deployment problem.
+     *
+     * @param event the event signalling that the deployment has been validated
+     */
+    void validateInjectionPoints(@Observes final AfterDeploymentValidation event) {
+        int valid = 0;
+        for (InjectionPoint injectionPoint : injectionPoints) {
+            try {
+                ConfigValueBinding.of(injectionPoint);
+                valid++;
+            } catch (IllegalArgumentException iae) {
+                event.addDeploymentProblem(iae);
+            }
+        }
+        logger.debug("Validated {} of {} @ConfigValue injection points", valid, injectionPoints.size());
+        injectionPoints.clear();
+    }
+
+
+}
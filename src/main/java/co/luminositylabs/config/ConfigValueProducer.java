@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import jakarta.enterprise.inject.spi.AnnotatedParameter;
+import jakarta.enterprise.inject.spi.InjectionPoint;
+import jakarta.inject.Inject;
+import java.lang.reflect.Member;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+
+/**
+ * An application-scoped CDI managed bean producing the values of {@link ConfigValue} injection points from the
+ * {@link Configuration} bean.
+ * <p>
+ * Each injection point is compiled into a {@link ConfigValueBinding} once and the binding is cached, so producing a
+ * value again, as a {@code Provider} does each time it is called, neither converts the default value nor chooses a
+ * converter again.  A {@code Supplier} holds its binding directly, so calling it costs a comparison of the current
+ * snapshot with the snapshot its value was converted from, unless the configuration changed.
+ *
+ * @author Phillip Ross
+ */
+@ApplicationScoped
+public class ConfigValueProducer {
+
+    /** The configuration bean. */
+    @Inject
+    private Configuration configuration;
+
+    /** The compiled bindings keyed by the member, and parameter position, of their injection points. */
+    private final ConcurrentHashMap<Object, ConfigValueBinding> bindings = new ConcurrentHashMap<>();
+
+
+    /**
+     * Produces the value of a property as a string.
+     *
+     * @param injectionPoint the injection point
+     * @return the value
+     */
+    @Produces
+    @ConfigValue("")
+    public String produceString(final InjectionPoint injectionPoint) {
+        return (String)resolve(injectionPoint);
+    }
+
+
+    /**
+     * Produces the value of a property as an integer.
+     *
+     * @param injectionPoint the injection point
+     * @return the value
+     */
+    @Produces
+    @ConfigValue("")
+    public Integer produceInteger(final InjectionPoint injectionPoint) {
+        return (Integer)resolve(injectionPoint);
+    }
+
+
+    /**
+     * Produces the value of a property as a long.
+     *
+     * @param injectionPoint the injection point
+     * @return the value
+     */
+    @Produces
+    @ConfigValue("")
+    public Long produceLong(final InjectionPoint injectionPoint) {
+        return (Long)resolve(injectionPoint);
+    }
+
+
+    /**
+     * Produces the value of a property as a double.
+     *
+     * @param injectionPoint the injection point
+     * @return the value
+     */
+    @Produces
+    @ConfigValue("")
+    public Double produceDouble(final InjectionPoint injectionPoint) {
+        return (Double)resolve(injectionPoint);
+    }
+
+
+    /**
+     * Produces the value of a property as a boolean.
+     *
+     * @param injectionPoint the injection point
+     * @return the value
+     */
+    @Produces
+    @ConfigValue("")
+    public Boolean produceBoolean(final InjectionPoint injectionPoint) {
+        return (Boolean)resolve(injectionPoint);
+    }
+
+
+    /**
+     * Produces the value of a property as a duration.
+     *
+     * @param injectionPoint the injection point
+     * @return the value
+     */
+    @Produces
+    @ConfigValue("")
+    public Duration produceDuration(final InjectionPoint injectionPoint) {
+        return (Duration)resolve(injectionPoint);
+    }
+
+
+    /**
+     * Produces the value of a property as a list of comma-separated strings.
+     *
+     * @param injectionPoint the injection point
+     * @return the value
+     */
+    @Produces
+    @ConfigValue("")
+    @SuppressWarnings("unchecked")
+    public List<String> produceList(final InjectionPoint injectionPoint) {
+        return (List<String>)resolve(injectionPoint);
+    }
+
+
+    /**
+     * Produces a supplier of the current value of a property.
+     *
+     * @param injectionPoint the injection point
+     * @param <T> the type of the value
+     * @return the supplier
+     */
+    @Produces
+    @ConfigValue("")
+    @SuppressWarnings("unchecked")
+    public <T> Supplier<T> produceSupplier(final InjectionPoint injectionPoint) {
+        final ConfigValueBinding binding = binding(injectionPoint);
+        final Configuration boundConfiguration = configuration;
+        return () -> (T)binding.resolve(boundConfiguration);
+    }
+
+
+    /**
+     * Resolves the current value of the property bound to the specified injection point.
+     *
+     * @param injectionPoint the injection point
+     * @return the value
+     */
+    private Object resolve(final InjectionPoint injectionPoint) {
+        return binding(injectionPoint).resolve(configuration);
+    }
+
+
+    /**
+     * Gets the binding of the specified injection point, compiling it if it has not been compiled yet.
+     *
+     * @param injectionPoint the injection point
+     * @return the binding
+     */
+    private ConfigValueBinding binding(final InjectionPoint injectionPoint) {
+        Member member = injectionPoint.getMember();
+        if (member == null) {
+            return ConfigValueBinding.of(injectionPoint);
+        }
+        Object key = member;
+        if (injectionPoint.getAnnotated() instanceof AnnotatedParameter) {
+            key = Arrays.asList(member, ((AnnotatedParameter<?>)injectionPoint.getAnnotated()).getPosition());
+        }
+        ConfigValueBinding binding = bindings.get(key);
+        if (binding == null) {
+            binding = bindings.computeIfAbsent(key, unused -> ConfigValueBinding.of(injectionPoint));
+        }
+        return binding;
+    }
+
+
+}
@@ -21,24 +21,54 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
-import java.io.FileNotFoundException;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.Serializable;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 
 /**
  * An application-scoped CDI managed bean named which serves as an injectable
  * component for managing configuration parameters.
+ * <p>
+ * The properties are held in an immutable {@link ConfigurationSnapshot} published through a single volatile
+ * reference, so reads never lock.  Writes are serialized, and each write publishes a new snapshot atomically.
+ * <p>
+ * String values may reference other properties with {@code ${name}} placeholders, optionally with a fallback used
+ * when the referenced property does not exist, as in {@code ${name:fallback}}.  Placeholders are resolved when a
+ * snapshot is built rather than when a property is read; a write re-resolves only the properties depending on the
+ * properties it changed.  A placeholder preceded by a backslash is kept literally, and placeholders which cannot be
+ * resolved are left in place.  Properties referencing each other in a cycle, and the properties referencing them,
+ * keep their unresolved values.
  *
  * @author Phillip Ross
  */
@@ -54,19 +84,91 @@ public class Configuration implements Serializable {
     /** The default name of the configuration file. */
     private static final String DEFAULT_CONFIG_FILENAME = "co.luminositylabs.config.properties";
 
+    /** The name of the system property which enables watching the configuration file for changes. */
+    public static final String CONFIG_WATCH_PROPERTY_NAME = "co.luminositylabs.configWatch";
+
+    /** The name of the system property specifying the debounce interval, in milliseconds, of the file watch. */
+    public static final String CONFIG_WATCH_DEBOUNCE_PROPERTY_NAME = "co.luminositylabs.configWatchDebounceMillis";
+
+    /** The name of the system property which enables the compiled cache of the configuration file. */
+    public static final String CONFIG_CACHE_PROPERTY_NAME = "co.luminositylabs.configCache";
+
+    /**
+     * The name of the system property specifying the {@link ConfigurationStorageMode storage mode} of the properties,
+     * such as {@code compact}.
+     */
+    public static final String CONFIG_STORAGE_PROPERTY_NAME = "co.luminositylabs.configStorage";
+
+    /** The name of the system property which enables refreshing the {@link PollingConfigurationSource}s. */
+    public static final String CONFIG_REFRESH_PROPERTY_NAME = "co.luminositylabs.configRefresh";
+
+    /** The name of the system property which enables recording {@link ConfigurationMetrics metrics}. */
+    public static final String CONFIG_METRICS_PROPERTY_NAME = "co.luminositylabs.configMetrics";
+
+    /** The name of the system property specifying the capacity of the {@link #getHistory() history}. */
+    public static final String CONFIG_HISTORY_PROPERTY_NAME = "co.luminositylabs.configHistory";
+
+    /** The name of the system property specifying the path of the journal persisting changes to the properties. */
+    public static final String CONFIG_JOURNAL_PROPERTY_NAME = "co.luminositylabs.configJournal";
+
+    /** The name of the system property specifying the interval in milliseconds at which changes are journaled. */
+    public static final String CONFIG_JOURNAL_SYNC_PROPERTY_NAME = "co.luminositylabs.configJournalSyncMillis";
+
+    /** The default debounce interval, in milliseconds, of the file watch. */
+    private static final long DEFAULT_CONFIG_WATCH_DEBOUNCE_MILLIS = 500L;
+
+    private static final long DEFAULT_CONFIG_JOURNAL_SYNC_MILLIS = 1000L;
+
     private static final long serialVersionUID = 7848558640626834259L;
 
-    /** A lock which handles concurrent access to the properties. */
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /** The lock which serializes writers while they build and publish a new snapshot. */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /** The value of {@link System#nanoTime()} when the write lock was acquired, or 0 if its hold is not timed. */
+    private long writeLockAcquiredNanos;
+
+    /** The metrics of reads, writes and reloads, which are only recorded when enabled. */
+    private final ConfigurationMetrics metrics = new ConfigurationMetrics();
+
+    /** The bounded history of the revisions of the properties. */
+    private final ConfigurationHistory history = new ConfigurationHistory();
 
-    /** The read lock used to handle concurrent access to the properties. */
-    private final Lock readLock = lock.readLock();
+    /**
+     * The current immutable snapshot of the properties.  Readers dereference this field once and never lock; writers
+     * build a successor while holding the write lock and publish it atomically by replacing this reference.
+     */
+    private volatile ConfigurationSnapshot snapshot = ConfigurationSnapshot.EMPTY;
+
+    /** The cache of property values already converted by the typed getters. */
+    private final ParsedValueCache parsedValues = new ParsedValueCache();
+
+    /** The notifier of configuration listeners. */
+    private final ConfigurationChangeNotifier changeNotifier = new ConfigurationChangeNotifier();
+
+    /** The loader of the configuration sources layered with the configuration file. */
+    private final ConfigurationSourceLoader sourceLoader = new ConfigurationSourceLoader();
+
+    /** The CDI event fired after the properties change, or null if this configuration is not a CDI bean. */
+    @Inject
+    private transient Event<ConfigurationChangeEvent> changeEvent;
+
+    /** The source of the tickets which order overlapping reloads. */
+    private final AtomicLong reloadTickets = new AtomicLong();
+
+    /** The ticket of the reload which most recently published, guarded by the write lock. */
+    private long lastPublishedReloadTicket;
 
-    /** The write lock used to handle concurrent access to the properties. */
-    private final Lock writeLock = lock.writeLock();
+    /** The watcher of the configuration file, or null if the file is not being watched. */
+    private transient ConfigurationFileWatcher fileWatcher;
 
-    /** Underlying storage object for the properties. */
-    private final Properties properties = new Properties();
+    /** The refresher polling the polling sources, or null if the sources are not being refreshed. */
+    private transient ConfigurationRefresher refresher;
+
+    /**
+     * The journal persisting changes to the properties, or null if changes are not journaled.  Replaced while holding
+     * both the monitor of this configuration and the write lock.
+     */
+    private transient volatile ConfigurationJournal journal;
 
 
     /** Instantiates a new configuration object. */
@@ -75,39 +177,180 @@ public class Configuration implements Serializable {
 
 
     /**
-     * Gets the properties.
+     * Gets the current immutable snapshot of the properties.
+     * <p>
+     * The returned snapshot is never modified, so callers needing several mutually consistent reads should obtain the
+     * snapshot once and read from it rather than making repeated calls to this configuration.
      *
-     * @return the properties
+     * @return the current snapshot
      */
-    public Properties getProperties() {
-        readLock.lock();
+    public ConfigurationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+
+    /**
+     * Gets the way in which the properties of this configuration are stored.
+     *
+     * @return the storage mode
+     */
+    public ConfigurationStorageMode getStorageMode() {
+        return snapshot.getStorageMode();
+    }
+
+
+    /**
+     * Gets the metrics of this configuration, which are only recorded while they are
+     * {@link ConfigurationMetrics#setEnabled(boolean) enabled}.
+     *
+     * @return the metrics
+     */
+    public ConfigurationMetrics getMetrics() {
+        return metrics;
+    }
+
+
+    /**
+     * Gets the history of the recent revisions of this configuration, which supports reading the properties as of a
+     * retained version, comparing retained versions and {@link #rollback(long) rolling back} to one.
+     *
+     * @return the history
+     */
+    public ConfigurationHistory getHistory() {
+        return history;
+    }
+
+
+    /**
+     * Sets the way in which the properties of this configuration are stored, converting the current properties.
+     * <p>
+     * The {@link ConfigurationStorageMode#COMPACT compact} modes reduce the heap occupied by large configurations
+     * several fold, at the cost of slower reads, of iteration creating property names, and of writes copying every
+     * property into a hash map and compacting the result again.  They suit configurations of many properties which
+     * are mostly read by name and rarely written.
+     *
+     * @param storageMode the storage mode
+     * @throws NullPointerException if the specified storage mode is null
+     */
+    public void setStorageMode(final ConfigurationStorageMode storageMode) {
+        Objects.requireNonNull(storageMode);
+        lockWrites();
         try {
-            return (Properties)properties.clone();
+            if (snapshot.getStorageMode() != storageMode) {
+                ConfigurationSnapshot previousSnapshot = snapshot;
+                snapshot = previousSnapshot.withStorageMode(storageMode);
+                history.republished(previousSnapshot, snapshot);
+                logger.debug("Converted properties to {} storage: {}", storageMode, snapshot);
+            }
         } finally {
-            readLock.unlock();
+            unlockWrites();
         }
     }
 
 
+    /**
+     * Gets the properties.
+     * <p>
+     * The returned object is an independent copy of every property.  Callers which only iterate or look up
+     * properties should use {@link #getPropertiesView()}, {@link #forEach(BiConsumer)} or {@link #stream()}, which
+     * copy nothing.
+     *
+     * @return the properties
+     */
+    public Properties getProperties() {
+        return snapshot.toProperties();
+    }
+
+
+    /**
+     * Gets a read-only map view of the string properties of the current snapshot, ordered by name.
+     * <p>
+     * No properties are copied.  The view is bound to the snapshot which is current when this method is called, so
+     * all of its operations are mutually consistent and it does not reflect subsequent updates.
+     *
+     * @return the view
+     * @see ConfigurationSnapshot#getPropertiesView()
+     */
+    public Map<String, String> getPropertiesView() {
+        return snapshot.getPropertiesView();
+    }
+
+
+    /**
+     * Performs the specified action for each string property of the current snapshot in name order, without copying
+     * the properties or, in the standard {@link #setStorageMode storage mode}, allocating objects per property.
+     *
+     * @param action the action to be performed for each property
+     */
+    public void forEach(final BiConsumer<? super String, ? super String> action) {
+        snapshot.forEach(action);
+    }
+
+
+    /**
+     * Performs the specified action for each string property of the current snapshot whose name begins with the
+     * specified prefix, in name order, without copying the properties or, in the standard
+     * {@link #setStorageMode storage mode}, allocating objects per property.
+     *
+     * @param prefix the prefix
+     * @param action the action to be performed for each matching property
+     */
+    public void forEachWithPrefix(final String prefix, final BiConsumer<? super String, ? super String> action) {
+        snapshot.forEachWithPrefix(prefix, action);
+    }
+
+
+    /**
+     * Creates a stream of the string properties of the current snapshot in name order.  The properties are not
+     * copied, and the stream does not reflect updates made after this method is called.
+     *
+     * @return the stream
+     */
+    public Stream<Map.Entry<String, String>> stream() {
+        return snapshot.stream();
+    }
+
+
     /**
      * Gets the properties that begin with a specified prefix.
+     * <p>
+     * The matching names are located through a sorted index maintained alongside each snapshot, so the cost of this
+     * method depends on the number of matching properties rather than the total number of properties.
      *
      * @param prefix the prefix
      * @return the properties
      */
     public Properties getPropertiesWithPrefix(final String prefix) {
-        readLock.lock();
-        try {
-            Properties propertiesWithPrefix = new Properties();
-            for (String propertyName : properties.stringPropertyNames()) {
-                if (propertyName.startsWith(prefix)) {
-                    propertiesWithPrefix.setProperty(propertyName, properties.getProperty(propertyName));
-                }
-            }
-            return propertiesWithPrefix;
-        } finally {
-            readLock.unlock();
-        }
+        return snapshot.getPropertiesWithPrefix(prefix);
+    }
+
+
+    /**
+     * Gets a live, read-only map view of the properties that begin with a specified prefix.
+     * <p>
+     * Unlike {@link #getPropertiesWithPrefix(String)}, no properties are copied.  Each operation on the view reads
+     * the current snapshot of this configuration, so the view reflects subsequent updates.  Iterating the view reads
+     * a single snapshot from start to finish.
+     *
+     * @param prefix the prefix
+     * @return the view
+     */
+    public Map<String, String> getPropertiesWithPrefixView(final String prefix) {
+        return new PrefixView(this::getSnapshot, prefix);
+    }
+
+
+    /**
+     * Creates an overlay of this configuration, which overrides some of its properties, such as for one tenant of an
+     * application, and reads every other property from this configuration.  The overlay holds only its overrides, so
+     * an overlay per tenant costs memory in proportion to the overrides rather than to the properties, and changes to
+     * this configuration are visible through every overlay.
+     *
+     * @param name the name of the overlay, such as the identifier of a tenant
+     * @return the overlay, initially without overrides
+     */
+    public ConfigurationOverlay overlay(final String name) {
+        return new ConfigurationOverlay(this, name, PersistentHashMap.empty());
     }
 
 
@@ -117,12 +360,16 @@ public class Configuration implements Serializable {
      * @param properties the properties
      */
     public void setProperties(final Properties properties) {
-        writeLock.lock();
+        ConfigurationBulkWriteEvent event = new ConfigurationBulkWriteEvent();
+        event.begin();
+        Map<Object, Object> nextEntries = new HashMap<>(properties);
+        lockWrites();
         try {
-            this.properties.clear();
-            this.properties.putAll(properties);
+            ConfigurationSnapshot next = snapshot.successor(nextEntries);
+            publish(next, null);
+            event.finish("setProperties", next.size(), next.getVersion());
         } finally {
-            writeLock.unlock();
+            unlockWrites();
         }
     }
 
@@ -134,12 +381,7 @@ public class Configuration implements Serializable {
      * @param propertyValue the property value to set the property to
      */
     public void setProperty(final String propertyName, final String propertyValue) {
-        writeLock.lock();
-        try {
-            properties.setProperty(propertyName, propertyValue);
-        } finally {
-            writeLock.unlock();
-        }
+        put(propertyName, propertyValue);
     }
 
 
@@ -150,12 +392,22 @@ public class Configuration implements Serializable {
      * @return the value of the property retrieved
      */
     public String getProperty(final String propertyName) {
-        readLock.lock();
-        try {
-            return properties.getProperty(propertyName);
-        } finally {
-            readLock.unlock();
+        return readProperty(propertyName);
+    }
+
+
+    /**
+     * Gets the value of the property with the specified name as it was set, before its placeholders were resolved.
+     *
+     * @param propertyName the name of the property to get
+     * @return the unresolved value of the property, or {@code null} if the property does not exist
+     */
+    public String getRawProperty(final String propertyName) {
+        Object value = snapshot.getRawValue(propertyName);
+        if (value instanceof String) {
+            return (String)value;
         }
+        return null;
     }
 
 
@@ -168,12 +420,149 @@ public class Configuration implements Serializable {
      * @return the value of the property retrieved
      */
     public String getProperty(final String propertyName, final String defaultValue) {
-        readLock.lock();
-        try {
-            return properties.getProperty(propertyName, defaultValue);
-        } finally {
-            readLock.unlock();
+        String value = readProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+
+    /**
+     * Gets the property value with the specified name converted to an {@code int}.
+     * <p>
+     * This and the other typed getters cache the converted value per property, so repeated reads of an unchanged
+     * property perform no parsing and no allocation.  The cached value is discarded when the property changes or the
+     * configuration is reloaded.
+     *
+     * @param propertyName the name of the property to get
+     * @param defaultValue the value returned if the property does not exist
+     * @return the converted value of the property
+     * @throws NumberFormatException if the value of the property is not a valid {@code int}
+     */
+    public int getIntProperty(final String propertyName, final int defaultValue) {
+        String value = readProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        return parsedValues.get(propertyName, value, Converters.INTEGER);
+    }
+
+
+    /**
+     * Gets the property value with the specified name converted to a {@code long}.
+     *
+     * @param propertyName the name of the property to get
+     * @param defaultValue the value returned if the property does not exist
+     * @return the converted value of the property
+     * @throws NumberFormatException if the value of the property is not a valid {@code long}
+     */
+    public long getLongProperty(final String propertyName, final long defaultValue) {
+        String value = readProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        return parsedValues.get(propertyName, value, Converters.LONG);
+    }
+
+
+    /**
+     * Gets the property value with the specified name converted to a {@code double}.
+     *
+     * @param propertyName the name of the property to get
+     * @param defaultValue the value returned if the property does not exist
+     * @return the converted value of the property
+     * @throws NumberFormatException if the value of the property is not a valid {@code double}
+     */
+    public double getDoubleProperty(final String propertyName, final double defaultValue) {
+        String value = readProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        return parsedValues.get(propertyName, value, Converters.DOUBLE);
+    }
+
+
+    /**
+     * Gets the property value with the specified name converted to a {@code boolean} following the rules of
+     * {@link Boolean#parseBoolean(String)}.
+     *
+     * @param propertyName the name of the property to get
+     * @param defaultValue the value returned if the property does not exist
+     * @return the converted value of the property
+     */
+    public boolean getBooleanProperty(final String propertyName, final boolean defaultValue) {
+        String value = readProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        return parsedValues.get(propertyName, value, Converters.BOOLEAN);
+    }
+
+
+    /**
+     * Gets the property value with the specified name converted from an ISO-8601 representation such as
+     * {@code PT30S} to a {@code Duration}.
+     *
+     * @param propertyName the name of the property to get
+     * @param defaultValue the value returned if the property does not exist
+     * @return the converted value of the property
+     * @throws IllegalArgumentException if the value of the property is not a valid ISO-8601 duration
+     */
+    public Duration getDurationProperty(final String propertyName, final Duration defaultValue) {
+        return getProperty(propertyName, Converters.DURATION, defaultValue);
+    }
+
+
+    /**
+     * Gets the property value with the specified name converted to a constant of the specified enum type.
+     *
+     * @param propertyName the name of the property to get
+     * @param enumType the enum type
+     * @param defaultValue the value returned if the property does not exist
+     * @param <E> the enum type
+     * @return the converted value of the property
+     * @throws IllegalArgumentException if the enum type has no constant named by the value of the property
+     */
+    public <E extends Enum<E>> E getEnumProperty(final String propertyName,
+                                                 final Class<E> enumType,
+                                                 final E defaultValue) {
+        return getProperty(propertyName, Converters.forEnum(enumType), defaultValue);
+    }
+
+
+    /**
+     * Gets the property value with the specified name split on commas into an unmodifiable list of its trimmed,
+     * non-empty elements.
+     *
+     * @param propertyName the name of the property to get
+     * @return the converted value of the property, or an empty list if the property does not exist
+     */
+    public List<String> getListProperty(final String propertyName) {
+        return getProperty(propertyName, Converters.LIST, Collections.emptyList());
+    }
+
+
+    /**
+     * Gets the property value with the specified name converted by the specified converter.
+     * <p>
+     * The converted value is cached per property and distinguished by the identity of the converter, so the
+     * converter should be a shared instance, such as a constant, rather than a lambda created for each call.
+     *
+     * @param propertyName the name of the property to get
+     * @param converter the converter applied to the value of the property
+     * @param defaultValue the value returned if the property does not exist
+     * @param <T> the type of the converted value
+     * @return the converted value of the property
+     */
+    public <T> T getProperty(final String propertyName,
+                             final Function<String, ? extends T> converter,
+                             final T defaultValue) {
+        String value = readProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
         }
+        return parsedValues.get(propertyName, value, converter);
     }
 
 
@@ -186,12 +575,11 @@ public class Configuration implements Serializable {
      * @throws NullPointerException if the specified key is null
      */
     public Object get(final Object key) {
-        readLock.lock();
-        try {
-            return properties.get(key);
-        } finally {
-            readLock.unlock();
+        Object value = snapshot.get(key);
+        if (metrics.isEnabled()) {
+            metrics.recordRead(key, value != null);
         }
+        return value;
     }
 
 
@@ -204,12 +592,11 @@ public class Configuration implements Serializable {
      *         {@code defaultValue} if this map contains no mapping for the key
      */
     public Object getOrDefault(final Object key, final Object defaultValue) {
-        readLock.lock();
-        try {
-            return properties.getOrDefault(key, defaultValue);
-        } finally {
-            readLock.unlock();
+        Object value = get(key);
+        if (value == null) {
+            return defaultValue;
         }
+        return value;
     }
 
 
@@ -224,11 +611,19 @@ public class Configuration implements Serializable {
      *             <code>null</code>
      */
     public Object put(final Object key, final Object value) {
-        writeLock.lock();
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        lockWrites();
         try {
-            return properties.put(key, value);
+            ConfigurationSnapshot current = snapshot;
+            Map<Object, Object> nextEntries = current.copyEntries();
+            Object previousValue = nextEntries.put(key, value);
+            Set<Object> changedKeys = new HashSet<>();
+            changedKeys.add(key);
+            publish(current.successor(nextEntries, changedKeys), changedKeys);
+            return previousValue;
         } finally {
-            writeLock.unlock();
+            unlockWrites();
         }
     }
 
@@ -240,11 +635,23 @@ public class Configuration implements Serializable {
      * @throws NullPointerException if the specified map is null
      */
     public void putAll(final Map<?, ?> map) {
-        writeLock.lock();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            Objects.requireNonNull(entry.getKey());
+            Objects.requireNonNull(entry.getValue());
+        }
+        ConfigurationBulkWriteEvent event = new ConfigurationBulkWriteEvent();
+        event.begin();
+        lockWrites();
         try {
-            properties.putAll(map);
+            ConfigurationSnapshot current = snapshot;
+            Map<Object, Object> nextEntries = current.copyEntries();
+            nextEntries.putAll(map);
+            Set<Object> changedKeys = new HashSet<>(map.keySet());
+            ConfigurationSnapshot next = current.successor(nextEntries, changedKeys);
+            publish(next, changedKeys);
+            event.finish("putAll", changedKeys.size(), next.getVersion());
         } finally {
-            writeLock.unlock();
+            unlockWrites();
         }
     }
 
@@ -260,122 +667,914 @@ public class Configuration implements Serializable {
      *             <code>null</code>
      */
     public Object putIfAbsent(final Object key, final Object value) {
-        writeLock.lock();
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        lockWrites();
         try {
-            return properties.putIfAbsent(key, value);
+            ConfigurationSnapshot current = snapshot;
+            Object existingValue = current.get(key);
+            if (existingValue != null) {
+                return existingValue;
+            }
+            Map<Object, Object> nextEntries = current.copyEntries();
+            nextEntries.put(key, value);
+            Set<Object> changedKeys = new HashSet<>();
+            changedKeys.add(key);
+            publish(current.successor(nextEntries, changedKeys), changedKeys);
+            return null;
         } finally {
-            writeLock.unlock();
+            unlockWrites();
         }
     }
 
 
     /**
-     * Reads in the configuration properties.
-     *
-     * If the {@code co.luminositylabs.configFile} system property exists, the
-     * value of this property is used as the path to read the configuration
-     * from.  If the property does not exist, a path
-     * named {@code co.luminositylabs.config.properties} is used.
-     * <p>
-     * If the configuration pathname does NOT represent an absolute path, the
-     * pathname will be treated as a relative path, and the file will be
-     * searched for in a series of relative locations:
-     * <ol>
-     * <li>First, the file will be searched for at the path relative to the current working directory.
-     * <li>Second, the file will be searched for at the path relative to the home directory.
-     * <li>Lastly, the file will be searched for at the path relative to the classpath.
-     * </ol>
+     * Applies the changes staged by the specified mutator as a single atomic step, publishing one new snapshot.
      * <p>
-     * If the configuration file is not found, an {@code IOException} is thrown.
+     * The mutator runs while holding the write lock, so the snapshot it is given is the current one and no other
+     * write can interleave with it.  Readers see either none or all of its changes.  If the mutator throws, nothing is
+     * published.
+     *
+     * @param mutator the function staging the changes on the update it is given
+     * @return the published snapshot, or the current snapshot if the mutator staged no effective changes
+     * @throws NullPointerException if the mutator is null
      */
-    @PostConstruct
-    public void readProperties() {
-        writeLock.lock();
+    public ConfigurationSnapshot update(final Consumer<ConfigurationUpdate> mutator) {
+        return update(mutator, ConfigurationRevision.Origin.WRITE);
+    }
+
+
+    /**
+     * Applies the changes staged by the specified mutator as a single atomic step, recording the published snapshot in
+     * the history as originating from the specified kind of change.
+     *
+     * @param mutator the function staging the changes on the update it is given
+     * @param origin the kind of change
+     * @return the published snapshot, or the current snapshot if the mutator staged no effective changes
+     * @throws NullPointerException if the mutator is null
+     * @see #update(Consumer)
+     */
+    ConfigurationSnapshot update(final Consumer<ConfigurationUpdate> mutator,
+                                 final ConfigurationRevision.Origin origin) {
+        Objects.requireNonNull(mutator);
+        ConfigurationBulkWriteEvent event = new ConfigurationBulkWriteEvent();
+        event.begin();
+        lockWrites();
         try {
-            logger.debug("default config file path property name: {}", DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME);
-            properties.clear();
-            final String configFileName = configFileName();
-            logger.debug("Looking for {} in filesystem...", configFileName);
-            Path configFilePath = Paths.get(configFileName);
-            // Check to see if this full path points to an existing location on the filesystem.
-            if (Files.exists(configFilePath)) {
-                logger.debug("file exists in filesystem at {}", configFilePath);
-                try (InputStream inputStream = Files.newInputStream(configFilePath)) {
-                    properties.load(inputStream);
-                } catch (IOException ioe) {
-                    logger.debug("Error occurred while trying to read properties from {} on filesystem.",
-                            configFilePath,
-                            ioe
-                    );
-                }
-            } else {
-                String homeDirectoryPathName = System.getProperty("user.home");
-                if (homeDirectoryPathName != null) {
-                    logger.debug("could not find file... checking home directory.");
-                    Path homeDirectoryPath = Paths.get(homeDirectoryPathName);
-                    Path configFilePathRelativeToHomeDirectory = homeDirectoryPath.resolve(configFilePath);
-                    if (Files.exists(configFilePathRelativeToHomeDirectory)) {
-                        logger.debug("Found config file in home directory ({})", configFilePathRelativeToHomeDirectory);
-                        try (InputStream inputStream = Files.newInputStream(configFilePathRelativeToHomeDirectory)) {
-                            readPropertiesFromInputStream(inputStream);
-                        } catch (FileNotFoundException e) {
-                            logger.debug("Did not find config file in home directory");
-                        } catch (IOException ioe) {
-                            logger.debug(
-                                    "Error occurred while trying to read properties from {}.",
-                                    configFilePathRelativeToHomeDirectory,
-                                    ioe
-                            );
-                        }
-                    } else {
-                        logger.debug("Did not find config file in home directory");
-                        logger.debug("Looking for {} in classpath...", configFilePath);
-                        // When the file does not exist at the specified path in the
-                        // filesystem... check to see if it exists relative to the classpath.
-                        try (InputStream inputStream = Thread.currentThread()
-                                .getContextClassLoader()
-                                .getResourceAsStream(configFileName)) {
-                            if (inputStream != null) {
-                                logger.debug("file exists in classpath at {}", configFilePath);
-                                readPropertiesFromInputStream(inputStream);
-                            } else {
-                                logger.debug("Did not find file ({}) in classpath", configFilePath);
-                            }
-                        } catch (IOException ioe) {
-                            logger.debug(
-                                    "Error occurred while trying to read properties from {}.",
-                                    configFileName,
-                                    ioe
-                            );
-                        }
-                    }
-                } else {
-                    logger.debug("user.home system property was not found.");
-                }
+            ConfigurationSnapshot current = snapshot;
+            ConfigurationUpdate update = new ConfigurationUpdate(current);
+            try {
+                mutator.accept(update);
+            } finally {
+                update.close();
             }
+            Set<Object> changedKeys = new HashSet<>();
+            ConfigurationSnapshot next = update.apply(changedKeys);
+            if (next != current) {
+                publish(next, changedKeys, origin);
+            }
+            event.finish("update", changedKeys.size(), next.getVersion());
+            return next;
         } finally {
-            writeLock.unlock();
+            unlockWrites();
         }
     }
 
 
     /**
-     * Get the name of the config file.
-     *
-     * The config file name is determined by first searching for a system property specified by the
-     * DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME constant.  When the system property with that name exists, the value of
-     * that system property is returned as the full path name of the config file.  When the system property with that
-     * name does not exist, then a default config file name specified by the DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME
-     * constant is returned.  This default config file name only specifies the file name and NOT the full path.
+     * Applies the changes staged by the specified mutator as a single atomic step, provided that the current snapshot
+     * still has the specified version.
+     * <p>
+     * The mutator runs, and the new snapshot is built, without holding the write lock, which is only held to compare
+     * the version and publish.  A caller which read the configuration at some version can therefore update it without
+     * blocking other writers and without overwriting changes published after that version.  When this method returns
+     * null, the caller typically reads the current snapshot and retries.
      *
-     * @return the name of the config file.
+     * @param expectedVersion the version the current snapshot must have
+     * @param mutator the function staging the changes on the update it is given
+     * @return the published snapshot, the current snapshot if the mutator staged no effective changes, or null if
+     *         the current snapshot did not have the expected version
+     * @throws NullPointerException if the mutator is null
      */
-    private String configFileName() {
-        // Check the system properties to see if there is a property which specifies the full path of a config file.
-        logger.debug(
-                "Searching system properties for a specified config file path ({})",
-                DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME
-        );
+    public ConfigurationSnapshot compareAndUpdate(final long expectedVersion,
+                                                 final Consumer<ConfigurationUpdate> mutator) {
+        Objects.requireNonNull(mutator);
+        ConfigurationSnapshot current = snapshot;
+        if (current.getVersion() != expectedVersion) {
+            logger.debug("Skipping update of version {} since the current version is {}",
+                    expectedVersion, current.getVersion());
+            return null;
+        }
+        ConfigurationBulkWriteEvent event = new ConfigurationBulkWriteEvent();
+        event.begin();
+        ConfigurationUpdate update = new ConfigurationUpdate(current);
+        try {
+            mutator.accept(update);
+        } finally {
+            update.close();
+        }
+        Set<Object> changedKeys = new HashSet<>();
+        ConfigurationSnapshot next = update.apply(changedKeys);
+        lockWrites();
+        try {
+            if (snapshot != current) {
+                logger.debug("Discarding update of version {} since version {} was published meanwhile",
+                        expectedVersion, snapshot.getVersion());
+                return null;
+            }
+            if (next != current) {
+                publish(next, changedKeys);
+            }
+            event.finish("compareAndUpdate", changedKeys.size(), next.getVersion());
+            return next;
+        } finally {
+            unlockWrites();
+        }
+    }
+
+
+    /**
+     * Restores the properties as of the specified version, which must be retained in the {@link #getHistory() history},
+     * publishing them as one new snapshot.  Only the properties which changed since the version are written, and their
+     * placeholders are resolved again.  Properties restored by a rollback are reported as set programmatically by
+     * {@link #getOrigin(Object)}.
+     *
+     * @param version the version to be restored
+     * @return the published snapshot, or the current snapshot if no property changed since the version
+     * @throws IllegalArgumentException if the version is not retained in the history
+     */
+    public ConfigurationSnapshot rollback(final long version) {
+        ConfigurationBulkWriteEvent event = new ConfigurationBulkWriteEvent();
+        event.begin();
+        lockWrites();
+        try {
+            ConfigurationSnapshot current = snapshot;
+            Map<Object, Object> rawValues = history.rawValuesAt(version, current);
+            if (rawValues.isEmpty()) {
+                return current;
+            }
+            Map<Object, Object> nextEntries = current.copyEntries();
+            for (Map.Entry<Object, Object> entry : rawValues.entrySet()) {
+                if (entry.getValue() == null) {
+                    nextEntries.remove(entry.getKey());
+                } else {
+                    nextEntries.put(entry.getKey(), entry.getValue());
+                }
+            }
+            Set<Object> changedKeys = new HashSet<>(rawValues.keySet());
+            ConfigurationSnapshot next = current.successor(nextEntries, changedKeys);
+            publish(next, changedKeys, ConfigurationRevision.Origin.ROLLBACK);
+            logger.debug("Rolled back configuration to version {}", version);
+            event.finish("rollback", changedKeys.size(), next.getVersion());
+            return next;
+        } finally {
+            unlockWrites();
+        }
+    }
+
+
+    /**
+     * Registers a listener notified after the properties of this configuration change through any of
+     * {@link #setProperty}, {@link #put}, {@link #putAll}, {@link #putIfAbsent}, {@link #update},
+     * {@link #compareAndUpdate}, {@link #setProperties} or a reload.
+     * <p>
+     * Each event carries the keys which were added, removed and changed.  Listeners are notified on the listener
+     * executor, so writers are never delayed by listener work.  A bulk change is reported as a single event, and
+     * changes published while an earlier notification is still pending are coalesced into a single event spanning
+     * all of them.  Events are delivered in the order the changes were published.
+     *
+     * @param listener the listener
+     * @see #setListenerExecutor(Executor)
+     */
+    public void addListener(final ConfigurationListener listener) {
+        changeNotifier.addListener(null, listener);
+    }
+
+
+    /**
+     * Registers a listener notified after properties whose names begin with the specified prefix change.  The events
+     * delivered to the listener only describe changes to such properties, and the listener is not notified of changes
+     * to other properties.
+     *
+     * @param prefix the prefix of the names of the properties the listener is interested in
+     * @param listener the listener
+     * @see #addListener(ConfigurationListener)
+     */
+    public void addListener(final String prefix, final ConfigurationListener listener) {
+        changeNotifier.addListener(Objects.requireNonNull(prefix), listener);
+    }
+
+
+    /**
+     * Unregisters every registration of the specified listener.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(final ConfigurationListener listener) {
+        changeNotifier.removeListener(listener);
+    }
+
+
+    /**
+     * Sets the executor on which listeners and CDI observers are notified of changes.  By default the common
+     * fork-join pool is used; within a container, a managed executor service is usually more appropriate.
+     *
+     * @param executor the executor
+     */
+    public void setListenerExecutor(final Executor executor) {
+        changeNotifier.setExecutor(executor);
+    }
+
+
+    /**
+     * Registers a source of properties to be layered with the configuration file.  The source is loaded by the next
+     * reload, and by every reload after it.
+     *
+     * @param source the source
+     * @see ConfigurationSource
+     */
+    public void addSource(final ConfigurationSource source) {
+        sourceLoader.addSource(source);
+    }
+
+
+    /**
+     * Unregisters a source of properties.  The properties of the source remain until the next reload.
+     *
+     * @param source the source
+     * @return true if the source was registered, false otherwise
+     */
+    public boolean removeSource(final ConfigurationSource source) {
+        return sourceLoader.removeSource(source);
+    }
+
+
+    /**
+     * Gets the registered sources of properties in registration order.  The configuration file is not included.
+     *
+     * @return an unmodifiable list of the sources
+     */
+    public List<ConfigurationSource> getSources() {
+        return sourceLoader.getSources();
+    }
+
+
+    /**
+     * Sets the executor which loads the sources of properties in parallel during a reload.  By default the common
+     * fork-join pool is used; within a container, a managed executor service is usually more appropriate.
+     *
+     * @param executor the executor
+     */
+    public void setSourceLoaderExecutor(final Executor executor) {
+        sourceLoader.setExecutor(executor);
+    }
+
+
+    /**
+     * Gets the name of the source the specified property came from.
+     *
+     * @param key the key of the property
+     * @return the name of the source, or null if the property does not exist or was set programmatically
+     * @see ConfigurationSnapshot#getOrigin(Object)
+     */
+    public String getOrigin(final Object key) {
+        return snapshot.getOrigin(key);
+    }
+
+
+    /**
+     * Initializes this configuration when it is constructed as a CDI managed bean.
+     * <p>
+     * Firing of {@link ConfigurationChangeEvent} CDI events is enabled, so that beans may observe changes with
+     * {@code @Observes ConfigurationChangeEvent}.  Observers are notified on the listener executor rather than on the
+     * writing thread, as described by {@link #addListener(ConfigurationListener)}.
+     * <p>
+     * If the {@code co.luminositylabs.configStorage} system property names a {@link ConfigurationStorageMode}, the
+     * properties are stored in that mode.  Sources provided through {@link java.util.ServiceLoader} are registered,
+     * the configuration properties are read in by {@link #readProperties()}, loading the sources in parallel, and
+     * this configuration becomes the default configuration read by {@link ConfigKey#get()}.  If the
+     * {@code co.luminositylabs.configWatch} system property is {@code true}, the configuration file is then watched
+     * for changes as described by {@link #startWatching()}.  If the {@code co.luminositylabs.configJournal} system
+     * property specifies a path, changes are journaled to it as described by {@link #startJournaling(Path)} before the
+     * properties are read in.
+     */
+    @PostConstruct
+    public void initialize() {
+        if (changeEvent != null) {
+            changeNotifier.setEventSink(changeEvent::fire);
+        }
+        String storageModeName = System.getProperty(CONFIG_STORAGE_PROPERTY_NAME);
+        if (storageModeName != null) {
+            try {
+                setStorageMode(ConfigurationStorageMode.valueOf(storageModeName.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException iae) {
+                logger.warn("Ignoring unknown storage mode {} specified by {}", storageModeName,
+                        CONFIG_STORAGE_PROPERTY_NAME, iae);
+            }
+        }
+        if (Boolean.getBoolean(CONFIG_METRICS_PROPERTY_NAME)) {
+            metrics.setEnabled(true);
+        }
+        String historyCapacity = System.getProperty(CONFIG_HISTORY_PROPERTY_NAME);
+        if (historyCapacity != null) {
+            try {
+                history.setCapacity(Integer.parseInt(historyCapacity.trim()));
+            } catch (IllegalArgumentException iae) {
+                logger.warn("Ignoring invalid history capacity {} specified by {}", historyCapacity,
+                        CONFIG_HISTORY_PROPERTY_NAME, iae);
+            }
+        }
+        String journalPathName = System.getProperty(CONFIG_JOURNAL_PROPERTY_NAME);
+        if (journalPathName != null) {
+            try {
+                startJournaling(Paths.get(journalPathName));
+            } catch (IllegalArgumentException iae) {
+                logger.warn("Ignoring invalid journal path {} specified by {}", journalPathName,
+                        CONFIG_JOURNAL_PROPERTY_NAME, iae);
+            }
+        }
+        sourceLoader.discoverSources();
+        readProperties();
+        ConfigKey.registerDefaultConfiguration(this);
+        if (Boolean.getBoolean(CONFIG_WATCH_PROPERTY_NAME)) {
+            startWatching();
+        }
+        if (Boolean.getBoolean(CONFIG_REFRESH_PROPERTY_NAME)) {
+            startRefreshing();
+        }
+    }
+
+
+    /**
+     * Releases this configuration when it is destroyed as a CDI managed bean.
+     * <p>
+     * Watching of the configuration file is stopped, and any journal is closed after appending the changes not yet
+     * journaled.  The current snapshot is republished with unchanged properties,
+     * so that any {@link ConfigKey} which cached a value from this configuration resolves its value again, against
+     * whichever configuration is the default.
+     */
+    @PreDestroy
+    public void destroy() {
+        stopWatching();
+        stopRefreshing();
+        stopJournaling();
+        ConfigKey.unregisterDefaultConfiguration(this);
+        lockWrites();
+        try {
+            ConfigurationSnapshot previousSnapshot = snapshot;
+            snapshot = previousSnapshot.successor();
+            history.republished(previousSnapshot, snapshot);
+        } finally {
+            unlockWrites();
+        }
+    }
+
+
+    /**
+     * Starts watching the configuration file for changes, using the debounce interval specified in milliseconds by
+     * the {@code co.luminositylabs.configWatchDebounceMillis} system property, or 500 milliseconds by default.
+     *
+     * @return true if the configuration file is being watched, false if it could not be watched
+     * @see #startWatching(Duration)
+     */
+    public boolean startWatching() {
+        long debounceMillis = Long.getLong(CONFIG_WATCH_DEBOUNCE_PROPERTY_NAME, DEFAULT_CONFIG_WATCH_DEBOUNCE_MILLIS);
+        return startWatching(Duration.ofMillis(debounceMillis));
+    }
+
+
+    /**
+     * Starts watching the configuration file for changes.
+     * <p>
+     * The watched file is the file located by the same search performed by {@link #readProperties()}.  Only a file
+     * residing in the filesystem can be watched, which includes a classpath resource loaded from a directory but not
+     * one loaded from an archive.  Once the file has changed and no further changes have occurred for the specified
+     * debounce interval, it is parsed without holding any lock and its properties replace the current properties in
+     * a single atomic publish.  If the file cannot be read, or changes while being read, the current properties are
+     * retained.  Readers are never blocked by the reload and never observe an empty or partially loaded configuration.
+     * <p>
+     * Calling this method while already watching restarts the watch with the specified debounce interval.
+     *
+     * @param debounce the quiet period which must elapse after the last change before the file is reloaded
+     * @return true if the configuration file is being watched, false if it could not be watched
+     */
+    public synchronized boolean startWatching(final Duration debounce) {
+        stopWatching();
+        final Path configFilePath = ConfigurationSources.toFilePath(locateConfigFile());
+        if (configFilePath == null) {
+            logger.debug("Configuration file is not located in the filesystem and cannot be watched.");
+            return false;
+        }
+        try {
+            fileWatcher = new ConfigurationFileWatcher(configFilePath, debounce, this::reloadWatchedFile);
+            return true;
+        } catch (IOException ioe) {
+            logger.warn("Unable to watch configuration file {} for changes.", configFilePath, ioe);
+            return false;
+        }
+    }
+
+
+    /** Stops watching the configuration file for changes, if it is being watched. */
+    public synchronized void stopWatching() {
+        if (fileWatcher != null) {
+            fileWatcher.close();
+            fileWatcher = null;
+        }
+    }
+
+
+    /**
+     * Determines whether the configuration file is being watched for changes.
+     *
+     * @return true if the configuration file is being watched, false otherwise
+     */
+    public synchronized boolean isWatching() {
+        return fileWatcher != null;
+    }
+
+
+    /**
+     * Starts polling the registered {@link PollingConfigurationSource polling sources} for changes, each at its own
+     * interval.
+     * <p>
+     * Each poll fetches its source conditionally, without parsing it again if it has not changed.  When it has, its
+     * new properties are merged with the properties last loaded from the other sources, which are not loaded again,
+     * and published in a single atomic publish, as by a reload.  Polls run on virtual threads, their intervals are
+     * randomized slightly, and the interval of a source whose polls fail grows exponentially until a poll succeeds.
+     * Only sources loaded by a previous reload are refreshed.
+     * <p>
+     * Calling this method while already refreshing restarts the polls of the currently registered sources.
+     *
+     * @return true if any polling source is being refreshed, false if none is registered
+     */
+    public synchronized boolean startRefreshing() {
+        stopRefreshing();
+        List<PollingConfigurationSource> pollingSources = new ArrayList<>();
+        for (ConfigurationSource source : sourceLoader.getSources()) {
+            if (source instanceof PollingConfigurationSource) {
+                pollingSources.add((PollingConfigurationSource)source);
+            }
+        }
+        if (pollingSources.isEmpty()) {
+            logger.debug("No polling configuration sources are registered to be refreshed.");
+            return false;
+        }
+        refresher = new ConfigurationRefresher(pollingSources, this::refreshSource);
+        return true;
+    }
+
+
+    /** Stops polling the polling sources for changes, if they are being polled. */
+    public synchronized void stopRefreshing() {
+        if (refresher != null) {
+            refresher.close();
+            refresher = null;
+        }
+    }
+
+
+    /**
+     * Determines whether the polling sources are being polled for changes.
+     *
+     * @return true if the polling sources are being polled, false otherwise
+     */
+    public synchronized boolean isRefreshing() {
+        return refresher != null;
+    }
+
+
+    /**
+     * Starts journaling changes to the properties, appending them at the interval specified in milliseconds by the
+     * {@code co.luminositylabs.configJournalSyncMillis} system property, or every second by default.
+     *
+     * @param journalPath the path of the journal file
+     * @return true if changes are being journaled, false if the journal could not be opened
+     * @see #startJournaling(Path, Duration)
+     */
+    public boolean startJournaling(final Path journalPath) {
+        long syncMillis = Long.getLong(CONFIG_JOURNAL_SYNC_PROPERTY_NAME, DEFAULT_CONFIG_JOURNAL_SYNC_MILLIS);
+        return startJournaling(journalPath, Duration.ofMillis(syncMillis));
+    }
+
+
+    /**
+     * Starts journaling changes to the properties, so that they survive a restart.
+     * <p>
+     * Every change made through {@link #setProperty}, {@link #put}, {@link #putAll}, {@link #putIfAbsent},
+     * {@link #update}, {@link #compareAndUpdate}, {@link #setProperties} or {@link #rollback}, or received from
+     * cluster peers, is recorded in an in-memory batch without blocking the writer.  The batch is appended to the
+     * append-only journal file and forced to the storage device at the specified interval, so a crash loses at most
+     * the changes of the last interval.  The journal is periodically compacted into a snapshot file next to it, named
+     * after the journal file with a {@code .snapshot} suffix, which is replaced atomically.  Reloads are not journaled.
+     * <p>
+     * The changes already persisted in the snapshot and journal files are replayed and applied to the current
+     * properties, and are applied over the properties read by every later reload, as described by
+     * {@link #readProperties()}.  Properties set from the journal are reported as set programmatically by
+     * {@link #getOrigin(Object)}.  Calling this method while already journaling closes the current journal first.
+     *
+     * @param journalPath the path of the journal file
+     * @param syncInterval the interval at which changes are appended and forced to the storage device
+     * @return true if changes are being journaled, false if the journal could not be opened
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    public synchronized boolean startJournaling(final Path journalPath, final Duration syncInterval) {
+        stopJournaling();
+        final ConfigurationJournal nextJournal;
+        try {
+            nextJournal = new ConfigurationJournal(journalPath, syncInterval);
+        } catch (IOException ioe) {
+            logger.warn("Unable to open configuration journal {}, changes will not be persisted.", journalPath, ioe);
+            return false;
+        }
+        lockWrites();
+        try {
+            ConfigurationSnapshot current = snapshot;
+            Map<Object, Object> nextEntries = current.copyEntries();
+            Set<Object> changedKeys = nextJournal.applyTo(nextEntries);
+            if (!changedKeys.isEmpty()) {
+                publish(current.successor(nextEntries, changedKeys), changedKeys, ConfigurationRevision.Origin.RELOAD);
+            }
+            journal = nextJournal;
+        } finally {
+            unlockWrites();
+        }
+        logger.debug("Journaling changes to {} after replaying changes to {} properties", journalPath,
+                nextJournal.getChangeCount());
+        return true;
+    }
+
+
+    /** Stops journaling changes to the properties, after appending the changes not yet journaled, if journaling. */
+    public synchronized void stopJournaling() {
+        final ConfigurationJournal currentJournal;
+        lockWrites();
+        try {
+            currentJournal = journal;
+            journal = null;
+        } finally {
+            unlockWrites();
+        }
+        if (currentJournal != null) {
+            currentJournal.close();
+        }
+    }
+
+
+    /**
+     * Determines whether changes to the properties are being journaled.
+     *
+     * @return true if changes are being journaled, false otherwise
+     */
+    public boolean isJournaling() {
+        return journal != null;
+    }
+
+
+    /**
+     * Appends the changes not yet journaled to the journal and forces them to the storage device, without waiting for
+     * the interval to elapse.
+     *
+     * @return true if every change published before this method was called is persisted, false if changes are not
+     *         being journaled or could not be appended
+     */
+    public boolean flushJournal() {
+        ConfigurationJournal currentJournal = journal;
+        if (currentJournal == null) {
+            return false;
+        }
+        try {
+            currentJournal.flush();
+            return true;
+        } catch (IOException ioe) {
+            logger.warn("Unable to append changes to configuration journal {}", currentJournal.getPath(), ioe);
+            return false;
+        }
+    }
+
+
+    /**
+     * Reads in the configuration properties.
+     *
+     * If the {@code co.luminositylabs.configFile} system property exists, the
+     * value of this property is used as the path to read the configuration
+     * from.  If the property does not exist, a path
+     * named {@code co.luminositylabs.config.properties} is used.
+     * <p>
+     * If the configuration pathname does NOT represent an absolute path, the
+     * pathname will be treated as a relative path, and the file will be
+     * searched for in a series of relative locations:
+     * <ol>
+     * <li>First, the file will be searched for at the path relative to the current working directory.
+     * <li>Second, the file will be searched for at the path relative to the home directory.
+     * <li>Lastly, the file will be searched for at the path relative to the classpath.
+     * </ol>
+     * <p>
+     * The properties of the configuration file are layered with the properties of any registered
+     * {@link ConfigurationSource sources}.  The file and the sources are loaded without holding any lock, the sources
+     * in parallel, and merged into a single flat snapshot which replaces the current properties in a single atomic
+     * publish, so readers are never blocked by the I/O.  If neither the configuration file nor any source is found,
+     * or if any of them cannot be read, the current properties are retained.
+     * <p>
+     * If the {@code co.luminositylabs.configCache} system property is {@code true}, a configuration file on the
+     * filesystem is parsed only when it changes: its properties are stored in a compact binary cache file next to
+     * it, which is memory-mapped and decoded directly while the size, modification time and checksum of the
+     * configuration file are unchanged, and rebuilt otherwise.
+     * <p>
+     * If changes are being {@link #startJournaling(Path) journaled}, the changes persisted in the snapshot and journal
+     * files are applied over the properties read, so that properties written through this configuration are not
+     * reverted by the reload.
+     *
+     * @see #reload()
+     */
+    public void readProperties() {
+        reload();
+    }
+
+
+    /**
+     * Reads in the configuration properties as described by {@link #readProperties()}, reporting the outcome.
+     * <p>
+     * When reloads overlap, the properties read by a reload are only published if no reload which started later has
+     * already published, so an older file is never published over a newer one.
+     *
+     * @return the outcome of the reload
+     */
+    public ConfigurationReloadResult reload() {
+        final long reloadTicket = reloadTickets.incrementAndGet();
+        final long startNanos = System.nanoTime();
+        final ConfigurationReloadEvent event = new ConfigurationReloadEvent();
+        event.begin();
+        logger.debug("default config file path property name: {}", DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME);
+        final URL configFileUrl = locateConfigFile();
+        ConfigurationSource configFileSource = null;
+        if (configFileUrl != null) {
+            configFileSource = ConfigurationSources.configFile(
+                    configFileUrl, Boolean.getBoolean(CONFIG_CACHE_PROPERTY_NAME)
+            );
+        }
+        final ConfigurationSourceLoader.Merged merged;
+        try {
+            merged = sourceLoader.load(configFileSource);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Unable to read properties from {}, retaining current properties.", configFileUrl, e);
+            return reloadResult(ConfigurationReloadResult.Outcome.FAILED, configFileUrl, 0, startNanos, event, e);
+        }
+        if (merged == null) {
+            logger.debug("Config file was not found, retaining current properties.");
+            return reloadResult(ConfigurationReloadResult.Outcome.NOT_FOUND, null, 0, startNanos, event, null);
+        }
+        final int propertyCount = merged.getEntries().size();
+        ConfigurationReloadResult.Outcome outcome = publishReload(reloadTicket, merged,
+                ConfigurationRevision.Origin.RELOAD);
+        return reloadResult(outcome, configFileUrl, propertyCount, startNanos, event, null);
+    }
+
+
+    /**
+     * Reads in the configuration properties asynchronously in the common fork-join pool.
+     *
+     * @return a future completed with the outcome of the reload
+     * @see #reload()
+     */
+    public CompletableFuture<ConfigurationReloadResult> reloadAsync() {
+        return CompletableFuture.supplyAsync(this::reload);
+    }
+
+
+    /**
+     * Reads in the configuration properties asynchronously using the specified executor, such as a container
+     * managed executor service.
+     *
+     * @param executor the executor which performs the reload
+     * @return a future completed with the outcome of the reload
+     * @see #reload()
+     */
+    public CompletableFuture<ConfigurationReloadResult> reloadAsync(final Executor executor) {
+        return CompletableFuture.supplyAsync(this::reload, executor);
+    }
+
+
+    /**
+     * Locates the configuration file by searching the current working directory, the home directory and the
+     * classpath in turn, as described by {@link #readProperties()}.
+     *
+     * @return the location of the configuration file, or null if it was not found
+     */
+    private URL locateConfigFile() {
+        final String configFileName = configFileName();
+        logger.debug("Looking for {} in filesystem...", configFileName);
+        Path configFilePath = Paths.get(configFileName);
+        try {
+            // Check to see if this full path points to an existing location on the filesystem.
+            if (Files.exists(configFilePath)) {
+                logger.debug("file exists in filesystem at {}", configFilePath);
+                return configFilePath.toUri().toURL();
+            }
+            String homeDirectoryPathName = System.getProperty("user.home");
+            if (homeDirectoryPathName != null) {
+                logger.debug("could not find file... checking home directory.");
+                Path configFilePathRelativeToHomeDirectory = Paths.get(homeDirectoryPathName).resolve(configFilePath);
+                if (Files.exists(configFilePathRelativeToHomeDirectory)) {
+                    logger.debug("Found config file in home directory ({})", configFilePathRelativeToHomeDirectory);
+                    return configFilePathRelativeToHomeDirectory.toUri().toURL();
+                }
+                logger.debug("Did not find config file in home directory");
+            } else {
+                logger.debug("user.home system property was not found.");
+            }
+        } catch (MalformedURLException murle) {
+            logger.debug("Unable to convert path of config file {} to a URL.", configFileName, murle);
+        }
+        logger.debug("Looking for {} in classpath...", configFilePath);
+        // When the file does not exist at the specified path in the
+        // filesystem... check to see if it exists relative to the classpath.
+        URL configFileUrl = Thread.currentThread().getContextClassLoader().getResource(configFileName);
+        if (configFileUrl != null) {
+            logger.debug("file exists in classpath at {}", configFileUrl);
+        } else {
+            logger.debug("Did not find file ({}) in classpath", configFilePath);
+        }
+        return configFileUrl;
+    }
+
+
+    /**
+     * Reloads the watched configuration file, publishing its properties only if the file did not change while it was
+     * being read.  The file is read without holding the write lock.
+     *
+     * @param configFilePath the path of the configuration file
+     * @return false if the file changed while being read and should be read again, true otherwise
+     */
+    private boolean reloadWatchedFile(final Path configFilePath) {
+        final long reloadTicket = reloadTickets.incrementAndGet();
+        final long startNanos = System.nanoTime();
+        final ConfigurationReloadEvent event = new ConfigurationReloadEvent();
+        event.begin();
+        final ConfigurationSourceLoader.Merged merged;
+        try {
+            BasicFileAttributes before = Files.readAttributes(configFilePath, BasicFileAttributes.class);
+            ConfigurationSource configFileSource = ConfigurationSources.configFile(
+                    configFilePath, Boolean.getBoolean(CONFIG_CACHE_PROPERTY_NAME)
+            );
+            merged = sourceLoader.load(configFileSource);
+            BasicFileAttributes after = Files.readAttributes(configFilePath, BasicFileAttributes.class);
+            if (before.size() != after.size() || !before.lastModifiedTime().equals(after.lastModifiedTime())) {
+                return false;
+            }
+        } catch (NoSuchFileException nsfe) {
+            logger.debug("Watched config file {} no longer exists, retaining current properties.", configFilePath);
+            reloadFinished(ConfigurationReloadResult.Outcome.NOT_FOUND, configFilePath, 0,
+                    System.nanoTime() - startNanos, event);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Unable to reload config file {}, retaining current properties.", configFilePath, e);
+            reloadFinished(ConfigurationReloadResult.Outcome.FAILED, configFilePath, 0,
+                    System.nanoTime() - startNanos, event);
+            return true;
+        }
+        final int propertyCount = merged.getEntries().size();
+        logger.debug("Reloaded {} properties after change to watched config file {}", propertyCount, configFilePath);
+        ConfigurationReloadResult.Outcome outcome = publishReload(reloadTicket, merged,
+                ConfigurationRevision.Origin.RELOAD);
+        reloadFinished(outcome, configFilePath, propertyCount, System.nanoTime() - startNanos, event);
+        return true;
+    }
+
+
+    /**
+     * Publishes properties read by a reload, unless a reload which started later has already published.
+     *
+     * @param reloadTicket the ticket taken by the reload when it started
+     * @param merged the properties read by the reload, whose entries become owned by the published snapshot
+     * @param origin the kind of reload, recorded in the history
+     * @return the outcome of the reload
+     */
+    private ConfigurationReloadResult.Outcome publishReload(final long reloadTicket,
+                                                            final ConfigurationSourceLoader.Merged merged,
+                                                            final ConfigurationRevision.Origin origin) {
+        lockWrites();
+        try {
+            if (reloadTicket < lastPublishedReloadTicket) {
+                logger.debug("Discarding properties read by reload {} which was superseded.", reloadTicket);
+                return ConfigurationReloadResult.Outcome.SUPERSEDED;
+            }
+            lastPublishedReloadTicket = reloadTicket;
+            PropertyOrigins origins = merged.getOrigins();
+            ConfigurationJournal currentJournal = journal;
+            if (currentJournal != null) {
+                origins = origins.withProgrammaticKeys(currentJournal.applyTo(merged.getEntries()));
+            }
+            publish(snapshot.successor(merged.getEntries(), origins), null, origin);
+            return ConfigurationReloadResult.Outcome.RELOADED;
+        } finally {
+            unlockWrites();
+        }
+    }
+
+
+    /**
+     * Fetches the specified polling source conditionally and, if it changed, publishes its properties merged with those
+     * last loaded from the other sources.
+     *
+     * @param source the polling source
+     * @throws IOException if the source is available but cannot be read
+     */
+    private void refreshSource(final PollingConfigurationSource source) throws IOException {
+        final long reloadTicket = reloadTickets.incrementAndGet();
+        final long startNanos = System.nanoTime();
+        final ConfigurationReloadEvent event = new ConfigurationReloadEvent();
+        event.begin();
+        final ConfigurationSourceLoader.Merged merged;
+        try {
+            merged = sourceLoader.refresh(source);
+        } catch (IOException | IllegalArgumentException e) {
+            reloadFinished(ConfigurationReloadResult.Outcome.FAILED, source.getName(), 0,
+                    System.nanoTime() - startNanos, event);
+            throw e;
+        }
+        if (merged == null) {
+            return;
+        }
+        final int propertyCount = merged.getEntries().size();
+        logger.debug("Refreshed {} properties after change to configuration source {}", propertyCount,
+                source.getName());
+        ConfigurationReloadResult.Outcome outcome = publishReload(reloadTicket, merged,
+                ConfigurationRevision.Origin.REFRESH);
+        reloadFinished(outcome, source.getName(), propertyCount, System.nanoTime() - startNanos, event);
+    }
+
+
+    /**
+     * Reports a finished reload to the metrics, if they are enabled, and to the flight recorder.
+     *
+     * @param outcome the outcome of the reload
+     * @param location the location of the configuration file, or null if it was not found
+     * @param propertyCount the number of properties read
+     * @param elapsedNanos the duration of the reload in nanoseconds
+     * @param event the flight recorder event begun when the reload started
+     */
+    private void reloadFinished(final ConfigurationReloadResult.Outcome outcome,
+                                final Object location,
+                                final int propertyCount,
+                                final long elapsedNanos,
+                                final ConfigurationReloadEvent event) {
+        if (metrics.isEnabled()) {
+            metrics.recordReload(outcome, elapsedNanos, propertyCount);
+        }
+        event.finish(location, outcome, propertyCount, snapshot.getVersion());
+    }
+
+
+    /**
+     * Creates the result of a reload which is finishing.
+     *
+     * @param outcome the outcome of the reload
+     * @param location the location of the configuration file, or null if it was not found
+     * @param propertyCount the number of properties read
+     * @param startNanos the value of {@link System#nanoTime()} when the reload started
+     * @param event the flight recorder event begun when the reload started
+     * @param failure the failure which prevented the reload, or null if it did not fail
+     * @return the result
+     */
+    private ConfigurationReloadResult reloadResult(final ConfigurationReloadResult.Outcome outcome,
+                                                   final URL location,
+                                                   final int propertyCount,
+                                                   final long startNanos,
+                                                   final ConfigurationReloadEvent event,
+                                                   final Throwable failure) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        reloadFinished(outcome, location, propertyCount, elapsedNanos, event);
+        ConfigurationReloadResult result = new ConfigurationReloadResult(
+                outcome,
+                location,
+                propertyCount,
+                snapshot.getVersion(),
+                Duration.ofNanos(elapsedNanos),
+                failure
+        );
+        logger.debug("Finished reading properties: {}", result);
+        return result;
+    }
+
+
+    /**
+     * Get the name of the config file.
+     *
+     * The config file name is determined by first searching for a system property specified by the
+     * DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME constant.  When the system property with that name exists, the value of
+     * that system property is returned as the full path name of the config file.  When the system property with that
+     * name does not exist, then a default config file name specified by the DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME
+     * constant is returned.  This default config file name only specifies the file name and NOT the full path.
+     *
+     * @return the name of the config file.
+     */
+    private String configFileName() {
+        // Check the system properties to see if there is a property which specifies the full path of a config file.
+        logger.debug(
+                "Searching system properties for a specified config file path ({})",
+                DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME
+        );
         String configFileName = System.getProperty(DEFAULT_CONFIG_FILE_PATH_PROPERTY_NAME);
         if (configFileName != null) {
             logger.debug(
@@ -395,16 +1594,85 @@ public class Configuration implements Serializable {
 
 
     /**
-     * Reads properties from the specified input stream.
+     * Gets the value of the property with the specified name from the current snapshot, counting the read if metrics
+     * are enabled.
      *
-     * @param inputStream the input stream to be read
-     * @throws IOException when an I/O exception occurrs
+     * @param propertyName the name of the property
+     * @return the value of the property, or null if the property does not exist
      */
-    private void readPropertiesFromInputStream(final InputStream inputStream) throws IOException {
-        Objects.requireNonNull(inputStream, "Unable to read properties from null input stream");
-        logger.debug("Reading properties from input stream.");
-        properties.load(inputStream);
-        logger.debug("Read properties from input stream: {}", properties);
+    private String readProperty(final String propertyName) {
+        String value = snapshot.getProperty(propertyName);
+        if (metrics.isEnabled()) {
+            metrics.recordRead(propertyName, value != null);
+        }
+        return value;
+    }
+
+
+    /** Acquires the write lock, timing the wait and the hold if metrics are enabled. */
+    private void lockWrites() {
+        if (!metrics.isEnabled()) {
+            writeLock.lock();
+            return;
+        }
+        long startNanos = System.nanoTime();
+        writeLock.lock();
+        long acquiredNanos = System.nanoTime();
+        metrics.recordWriteLockWait(acquiredNanos - startNanos);
+        if (writeLock.getHoldCount() == 1) {
+            writeLockAcquiredNanos = acquiredNanos;
+        }
+    }
+
+
+    /** Releases the write lock, recording how long it was held if its hold was timed. */
+    private void unlockWrites() {
+        if (writeLockAcquiredNanos != 0L && writeLock.getHoldCount() == 1) {
+            metrics.recordWriteLockHold(System.nanoTime() - writeLockAcquiredNanos);
+            writeLockAcquiredNanos = 0L;
+        }
+        writeLock.unlock();
+    }
+
+
+    /**
+     * Publishes the specified snapshot as the current snapshot.  Must be called while holding the write lock.
+     *
+     * @param nextSnapshot the snapshot to be published
+     * @param changedKeys the keys which differ from the current snapshot, or null if any key may differ
+     */
+    private void publish(final ConfigurationSnapshot nextSnapshot, final Collection<?> changedKeys) {
+        publish(nextSnapshot, changedKeys, ConfigurationRevision.Origin.WRITE);
+    }
+
+
+    /**
+     * Publishes the specified snapshot as the current snapshot, recording it in the history as originating from the
+     * specified kind of change.  Must be called while holding the write lock.
+     *
+     * @param nextSnapshot the snapshot to be published
+     * @param changedKeys the keys which differ from the current snapshot, or null if any key may differ
+     * @param origin the kind of change
+     */
+    private void publish(final ConfigurationSnapshot nextSnapshot,
+                         final Collection<?> changedKeys,
+                         final ConfigurationRevision.Origin origin) {
+        ConfigurationSnapshot previousSnapshot = snapshot;
+        snapshot = nextSnapshot;
+        history.record(previousSnapshot, nextSnapshot, changedKeys, origin);
+        ConfigurationJournal currentJournal = journal;
+        if (currentJournal != null
+                && origin != ConfigurationRevision.Origin.RELOAD
+                && origin != ConfigurationRevision.Origin.REFRESH) {
+            currentJournal.record(previousSnapshot, nextSnapshot, changedKeys);
+        }
+        if (changedKeys == null) {
+            parsedValues.invalidateAll();
+        } else {
+            parsedValues.invalidate(changedKeys);
+        }
+        changeNotifier.published(previousSnapshot, nextSnapshot, changedKeys);
+        logger.debug("Published configuration snapshot {}", nextSnapshot);
     }
 
 
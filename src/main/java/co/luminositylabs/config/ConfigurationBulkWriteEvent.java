@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * The Java Flight Recorder event emitted for each write of several configuration properties at once, such as
+ * {@link Configuration#putAll} and {@link Configuration#update}.
+ *
+ * @author Phillip Ross
+ */
+@Name("co.luminositylabs.config.BulkWrite")
+@Label("Configuration Bulk Write")
+@Category({"Luminosity Labs", "Configuration"})
+@Description("Writing several configuration properties as one snapshot, including waiting for the write lock")
+final class ConfigurationBulkWriteEvent extends Event {
+
+    /** The name of the method which wrote the properties. */
+    @Label("Operation")
+    private String operation;
+
+    /** The number of properties changed, including those depending on them through placeholders. */
+    @Label("Changed Properties")
+    private int changedCount;
+
+    /** The version of the published snapshot, or of the current snapshot if nothing was published. */
+    @Label("Version")
+    private long version;
+
+
+    /**
+     * Ends the event and commits it if it is enabled.
+     *
+     * @param writeOperation the name of the method which wrote the properties
+     * @param writeChangedCount the number of properties changed
+     * @param writeVersion the version of the published snapshot
+     */
+    void finish(final String writeOperation, final int writeChangedCount, final long writeVersion) {
+        end();
+        if (shouldCommit()) {
+            operation = writeOperation;
+            changedCount = writeChangedCount;
+            version = writeVersion;
+            commit();
+        }
+    }
+
+
+}
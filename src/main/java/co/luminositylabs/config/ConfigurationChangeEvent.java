@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+
+/**
+ * Describes the differences between two snapshots of a configuration.
+ * <p>
+ * Events are delivered to {@link ConfigurationListener listeners} and fired as CDI events after the properties of a
+ * {@link Configuration} change.  Several changes published in quick succession may be coalesced into a single event
+ * spanning all of them, in which case the previous snapshot is the snapshot preceding the first change.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationChangeEvent {
+
+    /** The snapshot before the changes. */
+    private final ConfigurationSnapshot previousSnapshot;
+
+    /** The snapshot after the changes. */
+    private final ConfigurationSnapshot snapshot;
+
+    /** The keys present after the changes but not before. */
+    private final Set<Object> addedKeys;
+
+    /** The keys present before the changes but not after. */
+    private final Set<Object> removedKeys;
+
+    /** The keys present before and after the changes whose values differ. */
+    private final Set<Object> changedKeys;
+
+
+    /**
+     * Instantiates a new change event which takes ownership of the specified key sets.
+     *
+     * @param previousSnapshot the snapshot before the changes
+     * @param snapshot the snapshot after the changes
+     * @param addedKeys the keys present after the changes but not before
+     * @param removedKeys the keys present before the changes but not after
+     * @param changedKeys the keys present before and after the changes whose values differ
+     */
+    private ConfigurationChangeEvent(final ConfigurationSnapshot previousSnapshot,
+                                     final ConfigurationSnapshot snapshot,
+                                     final Set<Object> addedKeys,
+                                     final Set<Object> removedKeys,
+                                     final Set<Object> changedKeys) {
+        this.previousSnapshot = previousSnapshot;
+        this.snapshot = snapshot;
+        this.addedKeys = Collections.unmodifiableSet(addedKeys);
+        this.removedKeys = Collections.unmodifiableSet(removedKeys);
+        this.changedKeys = Collections.unmodifiableSet(changedKeys);
+    }
+
+
+    /**
+     * Computes the differences between two snapshots.
+     *
+     * @param previousSnapshot the snapshot before the changes
+     * @param snapshot the snapshot after the changes
+     * @param candidateKeys the only keys which may differ between the snapshots, or null if any key may differ
+     * @return the event describing the differences
+     */
+    static ConfigurationChangeEvent between(final ConfigurationSnapshot previousSnapshot,
+                                            final ConfigurationSnapshot snapshot,
+                                            final Collection<?> candidateKeys) {
+        Set<Object> addedKeys = new HashSet<>();
+        Set<Object> removedKeys = new HashSet<>();
+        Set<Object> changedKeys = new HashSet<>();
+        if (candidateKeys == null) {
+            for (Object key : snapshot.keySet()) {
+                classify(key, previousSnapshot, snapshot, addedKeys, removedKeys, changedKeys);
+            }
+            for (Object key : previousSnapshot.keySet()) {
+                if (!snapshot.containsKey(key)) {
+                    removedKeys.add(key);
+                }
+            }
+        } else {
+            for (Object key : candidateKeys) {
+                classify(key, previousSnapshot, snapshot, addedKeys, removedKeys, changedKeys);
+            }
+        }
+        return new ConfigurationChangeEvent(previousSnapshot, snapshot, addedKeys, removedKeys, changedKeys);
+    }
+
+
+    /**
+     * Classifies the difference of a single key between two snapshots.
+     *
+     * @param key the key
+     * @param previousSnapshot the snapshot before the changes
+     * @param snapshot the snapshot after the changes
+     * @param addedKeys the set collecting added keys
+     * @param removedKeys the set collecting removed keys
+     * @param changedKeys the set collecting changed keys
+     */
+    private static void classify(final Object key,
+                                 final ConfigurationSnapshot previousSnapshot,
+                                 final ConfigurationSnapshot snapshot,
+                                 final Set<Object> addedKeys,
+                                 final Set<Object> removedKeys,
+                                 final Set<Object> changedKeys) {
+        Object previousValue = previousSnapshot.get(key);
+        Object value = snapshot.get(key);
+        if (previousValue == null) {
+            if (value != null) {
+                addedKeys.add(key);
+            }
+        } else if (value == null) {
+            removedKeys.add(key);
+        } else if (!previousValue.equals(value)) {
+            changedKeys.add(key);
+        }
+    }
+
+
+    /**
+     * Creates an event describing only the differences of keys which are strings beginning with the specified prefix.
+     *
+     * @param prefix the prefix
+     * @return the filtered event
+     */
+    public ConfigurationChangeEvent withPrefix(final String prefix) {
+        Objects.requireNonNull(prefix);
+        return new ConfigurationChangeEvent(
+                previousSnapshot,
+                snapshot,
+                filter(addedKeys, prefix),
+                filter(removedKeys, prefix),
+                filter(changedKeys, prefix)
+        );
+    }
+
+
+    /**
+     * Filters the specified keys by prefix.
+     *
+     * @param keys the keys
+     * @param prefix the prefix
+     * @return the keys which are strings beginning with the prefix
+     */
+    private static Set<Object> filter(final Set<Object> keys, final String prefix) {
+        Set<Object> filteredKeys = new HashSet<>();
+        for (Object key : keys) {
+            if (key instanceof String && ((String)key).startsWith(prefix)) {
+                filteredKeys.add(key);
+            }
+        }
+        return filteredKeys;
+    }
+
+
+    /**
+     * Gets the snapshot before the changes.
+     *
+     * @return the previous snapshot
+     */
+    public ConfigurationSnapshot getPreviousSnapshot() {
+        return previousSnapshot;
+    }
+
+
+    /**
+     * Gets the snapshot after the changes.
+     *
+     * @return the snapshot
+     */
+    public ConfigurationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+
+    /**
+     * Gets the keys present after the changes but not before.
+     *
+     * @return the added keys
+     */
+    public Set<Object> getAddedKeys() {
+        return addedKeys;
+    }
+
+
+    /**
+     * Gets the keys present before the changes but not after.
+     *
+     * @return the removed keys
+     */
+    public Set<Object> getRemovedKeys() {
+        return removedKeys;
+    }
+
+
+    /**
+     * Gets the keys present before and after the changes whose values differ.
+     *
+     * @return the changed keys
+     */
+    public Set<Object> getChangedKeys() {
+        return changedKeys;
+    }
+
+
+    /**
+     * Determines whether the specified key was added, removed or changed.
+     *
+     * @param key the key
+     * @return true if the key was affected, false otherwise
+     */
+    public boolean isAffected(final Object key) {
+        return addedKeys.contains(key) || removedKeys.contains(key) || changedKeys.contains(key);
+    }
+
+
+    /**
+     * Determines whether this event describes no differences.
+     *
+     * @return true if no key was added, removed or changed, false otherwise
+     */
+    public boolean isEmpty() {
+        return addedKeys.isEmpty() && removedKeys.isEmpty() && changedKeys.isEmpty();
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationChangeEvent{previousVersion=" + previousSnapshot.getVersion()
+                + ", version=" + snapshot.getVersion()
+                + ", added=" + addedKeys
+                + ", removed=" + removedKeys
+                + ", changed=" + changedKeys
+                + '}';
+    }
+
+
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+
+/**
+ * Notifies listeners of configuration changes without delaying the writers which publish them.
+ * <p>
+ * Writers merely record that a snapshot was published.  A single dispatch task at a time runs on the listener
+ * executor, computes the differences between the oldest snapshot not yet reported and the newest snapshot, and
+ * notifies the listeners.  Changes published while a dispatch is pending are therefore coalesced into one event,
+ * and events are always delivered in order.
+ *
+ * @author Phillip Ross
+ */
+final class ConfigurationChangeNotifier implements Serializable {
+
+    private static final long serialVersionUID = 2710873461962301466L;
+
+    /** The static logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationChangeNotifier.class);
+
+    /** The registered listeners. */
+    private final transient CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    /** The executor which runs the dispatch task. */
+    private transient volatile Executor executor = ForkJoinPool.commonPool();
+
+    /** The sink which fires CDI events, or null if CDI events are not fired. */
+    private transient volatile Consumer<ConfigurationChangeEvent> eventSink;
+
+    /** The oldest snapshot not yet reported, or null if no change is pending; guarded by this notifier. */
+    private transient ConfigurationSnapshot pendingPreviousSnapshot;
+
+    /** The newest snapshot not yet reported; guarded by this notifier. */
+    private transient ConfigurationSnapshot pendingSnapshot;
+
+    /** The keys changed by the pending changes; guarded by this notifier. */
+    private transient Set<Object> pendingKeys;
+
+    /** Whether any pending change may have changed keys which are not recorded; guarded by this notifier. */
+    private transient boolean pendingFullDiff;
+
+    /** Whether a dispatch task is scheduled or running; guarded by this notifier. */
+    private transient boolean dispatchScheduled;
+
+
+    /**
+     * Registers a listener.
+     *
+     * @param prefix the prefix of the keys the listener is interested in, or null for all keys
+     * @param listener the listener
+     */
+    void addListener(final String prefix, final ConfigurationListener listener) {
+        registrations.add(new Registration(prefix, Objects.requireNonNull(listener)));
+    }
+
+
+    /**
+     * Unregisters every registration of a listener.
+     *
+     * @param listener the listener
+     */
+    void removeListener(final ConfigurationListener listener) {
+        registrations.removeIf(registration -> registration.listener == listener);
+    }
+
+
+    /**
+     * Sets the executor which runs the dispatch task.
+     *
+     * @param executor the executor
+     */
+    void setExecutor(final Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+
+    /**
+     * Sets the sink which fires CDI events.
+     *
+     * @param eventSink the sink, or null if CDI events should not be fired
+     */
+    void setEventSink(final Consumer<ConfigurationChangeEvent> eventSink) {
+        this.eventSink = eventSink;
+    }
+
+
+    /**
+     * Records that a snapshot was published, scheduling a dispatch task if none is pending.  Must be called in
+     * publication order.
+     *
+     * @param previousSnapshot the snapshot replaced by the published snapshot
+     * @param snapshot the published snapshot
+     * @param changedKeys the keys which differ between the snapshots, or null if any key may differ
+     */
+    void published(final ConfigurationSnapshot previousSnapshot,
+                   final ConfigurationSnapshot snapshot,
+                   final Collection<?> changedKeys) {
+        if (registrations.isEmpty() && eventSink == null) {
+            return;
+        }
+        boolean schedule;
+        synchronized (this) {
+            if (pendingPreviousSnapshot == null) {
+                pendingPreviousSnapshot = previousSnapshot;
+                pendingKeys = new HashSet<>();
+                pendingFullDiff = false;
+            }
+            pendingSnapshot = snapshot;
+            if (changedKeys == null) {
+                pendingFullDiff = true;
+            } else if (!pendingFullDiff) {
+                pendingKeys.addAll(changedKeys);
+            }
+            schedule = !dispatchScheduled;
+            dispatchScheduled = true;
+        }
+        if (schedule) {
+            try {
+                executor.execute(this::dispatch);
+            } catch (RejectedExecutionException ree) {
+                logger.warn("Listener executor rejected configuration change dispatch.", ree);
+                synchronized (this) {
+                    dispatchScheduled = false;
+                }
+            }
+        }
+    }
+
+
+    /** Reports pending changes until none remain. */
+    private void dispatch() {
+        while (true) {
+            ConfigurationSnapshot previousSnapshot;
+            ConfigurationSnapshot snapshot;
+            Set<Object> changedKeys = null;
+            synchronized (this) {
+                if (pendingPreviousSnapshot == null) {
+                    dispatchScheduled = false;
+                    return;
+                }
+                previousSnapshot = pendingPreviousSnapshot;
+                snapshot = pendingSnapshot;
+                if (!pendingFullDiff) {
+                    changedKeys = pendingKeys;
+                }
+                pendingPreviousSnapshot = null;
+                pendingSnapshot = null;
+                pendingKeys = null;
+            }
+            try {
+                ConfigurationChangeEvent event = ConfigurationChangeEvent.between(
+                        previousSnapshot, snapshot, changedKeys
+                );
+                if (!event.isEmpty()) {
+                    deliver(event);
+                }
+            } catch (RuntimeException re) {
+                logger.warn("Error occurred while computing configuration changes.", re);
+            }
+        }
+    }
+
+
+    /**
+     * Delivers an event to the registered listeners and fires it as a CDI event.
+     *
+     * @param event the event
+     */
+    private void deliver(final ConfigurationChangeEvent event) {
+        logger.debug("Delivering {}", event);
+        for (Registration registration : registrations) {
+            ConfigurationChangeEvent filteredEvent = event;
+            if (registration.prefix != null) {
+                filteredEvent = event.withPrefix(registration.prefix);
+            }
+            if (!filteredEvent.isEmpty()) {
+                try {
+                    registration.listener.configurationChanged(filteredEvent);
+                } catch (RuntimeException re) {
+                    logger.warn("Configuration listener {} failed.", registration.listener, re);
+                }
+            }
+        }
+        Consumer<ConfigurationChangeEvent> currentEventSink = eventSink;
+        if (currentEventSink != null) {
+            try {
+                currentEventSink.accept(event);
+            } catch (RuntimeException re) {
+                logger.warn("Configuration change event observer failed.", re);
+            }
+        }
+    }
+
+
+    /**
+     * Replaces a deserialized notifier with a notifier without listeners, since listeners are not serialized.
+     *
+     * @return a notifier without listeners
+     */
+    private Object readResolve() {
+        return new ConfigurationChangeNotifier();
+    }
+
+
+    /** A listener along with the prefix of the keys it is interested in. */
+    private static final class Registration {
+
+        /** The prefix of the keys the listener is interested in, or null for all keys. */
+        private final String prefix;
+
+        /** The listener. */
+        private final ConfigurationListener listener;
+
+
+        /**
+         * Instantiates a new registration.
+         *
+         * @param prefix the prefix of the keys the listener is interested in, or null for all keys
+         * @param listener the listener
+         */
+        Registration(final String prefix, final ConfigurationListener listener) {
+            this.prefix = prefix;
+            this.listener = listener;
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * The differences between the properties of two versions of a {@link Configuration} retained by its
+ * {@link ConfigurationHistory}.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationDiff {
+
+    /** The version the differences are relative to. */
+    private final long fromVersion;
+
+    /** The version compared with the former version. */
+    private final long toVersion;
+
+    /** The values at the former version of the keys which differ, keyed by key, without the added keys. */
+    private final Map<Object, Object> fromValues;
+
+    /** The values at the latter version of the keys which differ, keyed by key, without the removed keys. */
+    private final Map<Object, Object> toValues;
+
+
+    /**
+     * Instantiates a new diff.
+     *
+     * @param fromVersion the version the differences are relative to
+     * @param toVersion the version compared with the former version
+     * @param fromValues the values at the former version of the keys which differ, which must not be modified
+     *                   afterwards
+     * @param toValues the values at the latter version of the keys which differ, which must not be modified afterwards
+     */
+    ConfigurationDiff(final long fromVersion,
+                      final long toVersion,
+                      final Map<Object, Object> fromValues,
+                      final Map<Object, Object> toValues) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.fromValues = fromValues;
+        this.toValues = toValues;
+    }
+
+
+    /**
+     * Gets the version the differences are relative to.
+     *
+     * @return the version
+     */
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+
+    /**
+     * Gets the version compared with the former version.
+     *
+     * @return the version
+     */
+    public long getToVersion() {
+        return toVersion;
+    }
+
+
+    /**
+     * Gets the keys which exist at the latter version but not at the former.
+     *
+     * @return a read-only set of the keys
+     */
+    public Set<Object> getAddedKeys() {
+        return keysOnlyIn(toValues, fromValues);
+    }
+
+
+    /**
+     * Gets the keys which exist at the former version but not at the latter.
+     *
+     * @return a read-only set of the keys
+     */
+    public Set<Object> getRemovedKeys() {
+        return keysOnlyIn(fromValues, toValues);
+    }
+
+
+    /**
+     * Gets the keys which exist at both versions with different values.
+     *
+     * @return a read-only set of the keys
+     */
+    public Set<Object> getChangedKeys() {
+        Set<Object> changedKeys = new HashSet<>(fromValues.keySet());
+        changedKeys.retainAll(toValues.keySet());
+        return Collections.unmodifiableSet(changedKeys);
+    }
+
+
+    /**
+     * Gets the value of the specified key at the former version.
+     *
+     * @param key the key
+     * @return the value, or null if the key did not exist or does not differ between the versions
+     */
+    public Object getFromValue(final Object key) {
+        return fromValues.get(key);
+    }
+
+
+    /**
+     * Gets the value of the specified key at the latter version.
+     *
+     * @param key the key
+     * @return the value, or null if the key does not exist or does not differ between the versions
+     */
+    public Object getToValue(final Object key) {
+        return toValues.get(key);
+    }
+
+
+    /**
+     * Determines whether the properties are identical at both versions.
+     *
+     * @return true if no key differs, false otherwise
+     */
+    public boolean isEmpty() {
+        return fromValues.isEmpty() && toValues.isEmpty();
+    }
+
+
+    /**
+     * Gets the keys of the first values which are not keys of the second.
+     *
+     * @param values the first values
+     * @param otherValues the second values
+     * @return a read-only set of the keys
+     */
+    private static Set<Object> keysOnlyIn(final Map<Object, Object> values, final Map<Object, Object> otherValues) {
+        Set<Object> keys = new HashSet<>(values.keySet());
+        keys.removeAll(otherValues.keySet());
+        return Collections.unmodifiableSet(keys);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationDiff{fromVersion=" + fromVersion + ", toVersion=" + toVersion + ", added="
+                + getAddedKeys() + ", removed=" + getRemovedKeys() + ", changed=" + getChangedKeys() + '}';
+    }
+
+
+}
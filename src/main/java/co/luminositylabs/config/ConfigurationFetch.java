@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+
+
+/**
+ * The result of conditionally fetching a {@link PollingConfigurationSource}.
+ * <p>
+ * A fetch is made with the validator returned by the previous fetch of the same source, such as an HTTP entity tag,
+ * a modification time or a hash of the content.  When the source has not changed since, the fetch is
+ * {@link #notModified() not modified} and the source is neither parsed nor merged again.  Otherwise the fetch is
+ * {@link #modified(Map, String) modified} and carries the new properties along with the validator of the next fetch.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationFetch {
+
+    /** The result of a fetch which found the source unchanged. */
+    private static final ConfigurationFetch NOT_MODIFIED = new ConfigurationFetch(false, null, null);
+
+    /** The name of the digest algorithm hashing content. */
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+    /** Whether the source changed. */
+    private final boolean modified;
+
+    /** The properties of the source, or null if the source is not available or did not change. */
+    private final Map<?, ?> properties;
+
+    /** The validator to be passed to the next fetch, or null if the next fetch is unconditional. */
+    private final String validator;
+
+
+    /**
+     * Instantiates a new fetch result.
+     *
+     * @param modified whether the source changed
+     * @param properties the properties of the source, or null if the source is not available or did not change
+     * @param validator the validator to be passed to the next fetch, or null if the next fetch is unconditional
+     */
+    private ConfigurationFetch(final boolean modified, final Map<?, ?> properties, final String validator) {
+        this.modified = modified;
+        this.properties = properties;
+        this.validator = validator;
+    }
+
+
+    /**
+     * Gets the result of a fetch which found the source unchanged since the previous fetch.
+     *
+     * @return the result
+     */
+    public static ConfigurationFetch notModified() {
+        return NOT_MODIFIED;
+    }
+
+
+    /**
+     * Gets the result of a fetch which found the content of the source unchanged, although its validator changed, as
+     * when a file was touched without being modified.
+     *
+     * @param validator the validator to be passed to the next fetch
+     * @return the result
+     */
+    public static ConfigurationFetch notModified(final String validator) {
+        return new ConfigurationFetch(false, null, validator);
+    }
+
+
+    /**
+     * Gets the result of a fetch which found the source changed since the previous fetch, or which was unconditional.
+     *
+     * @param properties the properties of the source, which must not contain null keys or values and must not be
+     *                   modified afterwards, or null if the source is not available
+     * @param validator the validator to be passed to the next fetch, or null if the next fetch is unconditional
+     * @return the result
+     */
+    public static ConfigurationFetch modified(final Map<?, ?> properties, final String validator) {
+        return new ConfigurationFetch(true, properties, validator);
+    }
+
+
+    /**
+     * Computes a validator from the hash of the specified content, for sources which offer no cheaper means of
+     * detecting changes.
+     *
+     * @param content the content of the source
+     * @return the hash of the content, which contains only letters, digits, {@code -} and {@code _}
+     */
+    public static String contentHash(final byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance(CONTENT_HASH_ALGORITHM).digest(content);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(CONTENT_HASH_ALGORITHM + " is not supported.", nsae);
+        }
+    }
+
+
+    /**
+     * Creates a copy of this result with the specified validator.
+     *
+     * @param nextValidator the validator
+     * @return the copy
+     */
+    ConfigurationFetch withValidator(final String nextValidator) {
+        return new ConfigurationFetch(modified, properties, nextValidator);
+    }
+
+
+    /**
+     * Determines whether the source changed since the previous fetch.
+     *
+     * @return true if the source changed, or the fetch was unconditional
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+
+    /**
+     * Gets the properties of the source.
+     *
+     * @return the properties, or null if the source is not available or did not change
+     */
+    public Map<?, ?> getProperties() {
+        return properties;
+    }
+
+
+    /**
+     * Gets the validator to be passed to the next fetch.
+     *
+     * @return the validator, or null if the next fetch is unconditional or the validator did not change
+     */
+    public String getValidator() {
+        return validator;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationFetch{modified=" + modified + ", validator=" + validator + '}';
+    }
+
+
+}
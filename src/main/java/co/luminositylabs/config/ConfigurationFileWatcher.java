@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+
+/**
+ * Watches a configuration file for changes and triggers a reload once the changes settle.
+ * <p>
+ * Since a {@link WatchService} can only watch directories, the parent directory of the file is watched and events
+ * for other files are ignored.  Editors and deployment tools typically produce a burst of events for a single logical
+ * change, so a reload is only triggered after no further events for the file have arrived for the debounce interval.
+ * If the reloader reports that the file changed while it was being read, the watcher waits for another quiet period
+ * and tries again.
+ *
+ * @author Phillip Ross
+ */
+final class ConfigurationFileWatcher implements Closeable {
+
+    /** The static logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationFileWatcher.class);
+
+    /** The maximum number of consecutive attempts made to read a file which keeps changing while being read. */
+    private static final int MAX_RELOAD_ATTEMPTS = 5;
+
+    /** The watched file. */
+    private final Path file;
+
+    /** The quiet period which must elapse after the last event before a reload is triggered. */
+    private final long debounceNanos;
+
+    /** The reloader, which returns false if the file changed while it was being read. */
+    private final Predicate<Path> reloader;
+
+    /** The watch service notified of changes in the directory containing the file. */
+    private final WatchService watchService;
+
+    /** The thread waiting for and debouncing events. */
+    private final Thread thread;
+
+
+    /**
+     * Instantiates a new watcher and starts watching the specified file.
+     *
+     * @param file the file to be watched
+     * @param debounce the quiet period which must elapse after the last event before a reload is triggered
+     * @param reloader the reloader, which returns false if the file changed while it was being read
+     * @throws IOException if the directory containing the file cannot be watched
+     */
+    ConfigurationFileWatcher(final Path file, final Duration debounce, final Predicate<Path> reloader)
+            throws IOException {
+        this.file = file.toAbsolutePath();
+        this.debounceNanos = debounce.toNanos();
+        this.reloader = reloader;
+        this.watchService = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(
+                watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE
+        );
+        this.thread = new Thread(this::watch, "luminositylabs-config-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        logger.debug("Watching {} for changes with a debounce interval of {}", this.file, debounce);
+    }
+
+
+    /**
+     * Gets the watched file.
+     *
+     * @return the watched file
+     */
+    Path getFile() {
+        return file;
+    }
+
+
+    /** Stops watching the file. */
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException ioe) {
+            logger.debug("Error occurred while closing the watch service for {}", file, ioe);
+        }
+    }
+
+
+    /** Waits for changes to the file and triggers reloads until this watcher is closed. */
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (drainEvents(watchService.take())) {
+                    awaitQuietPeriod();
+                    int attempts = 1;
+                    while (!reload() && attempts < MAX_RELOAD_ATTEMPTS) {
+                        logger.debug("{} changed while being read, waiting for it to settle", file);
+                        awaitQuietPeriod();
+                        attempts++;
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException cwse) {
+            logger.debug("Watch service for {} was closed", file);
+        }
+        logger.debug("Stopped watching {}", file);
+    }
+
+
+    /**
+     * Reloads the file, logging any unexpected failure, such as one thrown by a configuration source, so that it does
+     * not end the watch.
+     *
+     * @return false if the file changed while being read and should be read again, true otherwise
+     */
+    private boolean reload() {
+        try {
+            return reloader.test(file);
+        } catch (RuntimeException re) {
+            logger.warn("Unable to reload {}, retaining current properties and watching for further changes.", file,
+                    re);
+            return true;
+        }
+    }
+
+
+    /**
+     * Waits until no events for the file have arrived for the debounce interval.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void awaitQuietPeriod() throws InterruptedException {
+        long deadline = System.nanoTime() + debounceNanos;
+        long remaining = debounceNanos;
+        while (remaining > 0) {
+            WatchKey watchKey = watchService.poll(remaining, TimeUnit.NANOSECONDS);
+            if (watchKey != null && drainEvents(watchKey)) {
+                deadline = System.nanoTime() + debounceNanos;
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+
+    /**
+     * Consumes the pending events of the specified watch key and re-arms it.
+     *
+     * @param watchKey the watch key
+     * @return true if any of the events may concern the watched file, false otherwise
+     */
+    private boolean drainEvents(final WatchKey watchKey) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                relevant = true;
+            }
+        }
+        watchKey.reset();
+        return relevant;
+    }
+
+
+}
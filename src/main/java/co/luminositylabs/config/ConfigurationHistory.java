@@ -0,0 +1,494 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+
+
+/**
+ * The bounded history of the revisions of a {@link Configuration}, supporting reads of its properties as of a retained
+ * version, differences between retained versions, and {@link Configuration#rollback(long) rollback} to a retained
+ * version.
+ * <p>
+ * Rather than retaining a snapshot per version, each revision records only the previous values of the keys it
+ * changed, and earlier versions are reconstructed from the current snapshot by undoing the revisions since.  The
+ * history therefore costs memory in proportion to the changes it spans rather than to the size of the configuration.
+ * The {@value #DEFAULT_CAPACITY} most recent revisions are retained by default; the capacity is changed with
+ * {@link #setCapacity(int)} or by setting the {@value Configuration#CONFIG_HISTORY_PROPERTY_NAME} system property
+ * before the configuration is initialized, and a capacity of zero disables the history.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationHistory implements Serializable {
+
+    /** The number of revisions retained by default. */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private static final long serialVersionUID = 4216624937420218547L;
+
+    /** The previous value of a key which did not exist. */
+    private static final Previous ABSENT = new Previous(null, null);
+
+    /** The number of revisions retained. */
+    private volatile int capacity = DEFAULT_CAPACITY;
+
+    /** The retained revisions along with the snapshot published by the latest of them. */
+    private transient volatile State state = State.EMPTY;
+
+
+    /**
+     * Gets the number of revisions retained.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * Sets the number of revisions retained, discarding the oldest revisions beyond it.
+     *
+     * @param capacity the capacity, or zero to disable the history
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public synchronized void setCapacity(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity of a configuration history must not be negative");
+        }
+        this.capacity = capacity;
+        state = state.trim(capacity);
+    }
+
+
+    /**
+     * Gets the retained revisions, from the oldest to the latest.
+     *
+     * @return a read-only list of the revisions
+     */
+    public List<ConfigurationRevision> getRevisions() {
+        Revision[] revisions = state.revisions;
+        List<ConfigurationRevision> descriptions = new ArrayList<>(revisions.length);
+        for (Revision revision : revisions) {
+            descriptions.add(revision.description);
+        }
+        return Collections.unmodifiableList(descriptions);
+    }
+
+
+    /**
+     * Gets the latest retained revision published at or before the specified version.
+     *
+     * @param version the version
+     * @return the revision, or null if the version is older than every retained revision
+     */
+    public ConfigurationRevision getRevision(final long version) {
+        Revision[] revisions = state.revisions;
+        for (int i = revisions.length - 1; i >= 0; i--) {
+            if (revisions[i].description.getVersion() <= version) {
+                return revisions[i].description;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Gets the value of the specified property as of the specified version.
+     *
+     * @param version the version, which must be retained
+     * @param propertyName the name of the property
+     * @return the value, or null if the property did not exist or was not a string
+     * @throws IllegalArgumentException if the version is not retained
+     */
+    public String getProperty(final long version, final String propertyName) {
+        State current = state;
+        Object value = current.valueAt(current.checkRetained(version), propertyName).value;
+        if (value instanceof String) {
+            return (String)value;
+        }
+        return null;
+    }
+
+
+    /**
+     * Creates a new {@code Properties} object containing the properties as of the specified version.
+     *
+     * @param version the version, which must be retained
+     * @return the properties
+     * @throws IllegalArgumentException if the version is not retained
+     */
+    public Properties getProperties(final long version) {
+        State current = state;
+        int index = current.checkRetained(version);
+        Properties properties = current.head.toProperties();
+        for (Map.Entry<Object, Previous> entry : current.previousValues(index).entrySet()) {
+            if (entry.getValue() == ABSENT) {
+                properties.remove(entry.getKey());
+            } else {
+                properties.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+        return properties;
+    }
+
+
+    /**
+     * Compares the properties as of two retained versions.
+     *
+     * @param fromVersion the version the differences are relative to
+     * @param toVersion the version compared with the former version
+     * @return the differences
+     * @throws IllegalArgumentException if either version is not retained
+     */
+    public ConfigurationDiff diff(final long fromVersion, final long toVersion) {
+        State current = state;
+        int fromIndex = current.checkRetained(fromVersion);
+        int toIndex = current.checkRetained(toVersion);
+        Set<Object> keys = new HashSet<>();
+        for (int i = Math.min(fromIndex, toIndex) + 1; i <= Math.max(fromIndex, toIndex); i++) {
+            keys.addAll(current.revisions[i].previousValues.keySet());
+        }
+        Map<Object, Object> fromValues = new HashMap<>();
+        Map<Object, Object> toValues = new HashMap<>();
+        for (Object key : keys) {
+            Object fromValue = current.valueAt(fromIndex, key).value;
+            Object toValue = current.valueAt(toIndex, key).value;
+            if (!Objects.equals(fromValue, toValue)) {
+                if (fromValue != null) {
+                    fromValues.put(key, fromValue);
+                }
+                if (toValue != null) {
+                    toValues.put(key, toValue);
+                }
+            }
+        }
+        return new ConfigurationDiff(fromVersion, toVersion, fromValues, toValues);
+    }
+
+
+    /**
+     * Records the publication of a snapshot.
+     *
+     * @param previousSnapshot the snapshot which was current before
+     * @param nextSnapshot the snapshot published
+     * @param changedKeys the keys which were added, removed or changed, or null if any key may have changed
+     * @param origin the kind of change which published the snapshot
+     */
+    synchronized void record(final ConfigurationSnapshot previousSnapshot,
+                             final ConfigurationSnapshot nextSnapshot,
+                             final Collection<?> changedKeys,
+                             final ConfigurationRevision.Origin origin) {
+        if (capacity == 0) {
+            return;
+        }
+        Map<Object, Previous> previousValues = new HashMap<>();
+        if (changedKeys == null) {
+            for (Object key : previousSnapshot.keySet()) {
+                recordPrevious(previousValues, key, previousSnapshot, nextSnapshot);
+            }
+            for (Object key : nextSnapshot.keySet()) {
+                if (!previousSnapshot.containsKey(key)) {
+                    previousValues.put(key, ABSENT);
+                }
+            }
+        } else {
+            for (Object key : changedKeys) {
+                recordPrevious(previousValues, key, previousSnapshot, nextSnapshot);
+            }
+        }
+        ConfigurationRevision description = new ConfigurationRevision(nextSnapshot.getVersion(), Instant.now(), origin,
+                Collections.unmodifiableSet(previousValues.keySet()));
+        state = state.append(nextSnapshot, new Revision(description, previousValues), capacity);
+    }
+
+
+    /**
+     * Records that a snapshot holding the same properties as the current snapshot replaced it, such as one storing them
+     * in another way, without recording a revision.  The history stays current with the snapshot, and its version is
+     * read as the version of the latest revision.
+     *
+     * @param previousSnapshot the snapshot which was current before
+     * @param nextSnapshot the snapshot replacing it, holding the same properties
+     */
+    synchronized void republished(final ConfigurationSnapshot previousSnapshot,
+                                  final ConfigurationSnapshot nextSnapshot) {
+        if (state.head == previousSnapshot) {
+            state = new State(nextSnapshot, state.revisions);
+        }
+    }
+
+
+    /**
+     * Gets the raw values, as of the specified version, of the keys which changed since, for a rollback to the version.
+     * The values of keys which did not exist are null.  The history must be current with the specified snapshot.
+     *
+     * @param version the version, which must be retained
+     * @param currentSnapshot the current snapshot of the configuration
+     * @return the raw values keyed by key
+     * @throws IllegalArgumentException if the version is not retained
+     * @throws IllegalStateException if the history does not end with the current snapshot
+     */
+    Map<Object, Object> rawValuesAt(final long version, final ConfigurationSnapshot currentSnapshot) {
+        State current = state;
+        int index = current.checkRetained(version);
+        if (current.head != currentSnapshot) {
+            throw new IllegalStateException("The configuration history is not current with snapshot "
+                    + currentSnapshot.getVersion());
+        }
+        Map<Object, Object> rawValues = new HashMap<>();
+        for (Map.Entry<Object, Previous> entry : current.previousValues(index).entrySet()) {
+            rawValues.put(entry.getKey(), entry.getValue().rawValue);
+        }
+        return rawValues;
+    }
+
+
+    /**
+     * Records the previous value of the specified key if its value, or its raw value, changed.
+     *
+     * @param previousValues the previous values recorded so far
+     * @param key the key
+     * @param previousSnapshot the snapshot which was current before
+     * @param nextSnapshot the snapshot published
+     */
+    private static void recordPrevious(final Map<Object, Previous> previousValues,
+                                       final Object key,
+                                       final ConfigurationSnapshot previousSnapshot,
+                                       final ConfigurationSnapshot nextSnapshot) {
+        Object previousValue = previousSnapshot.get(key);
+        Object previousRawValue = previousSnapshot.getRawValue(key);
+        if (Objects.equals(previousValue, nextSnapshot.get(key))
+                && Objects.equals(previousRawValue, nextSnapshot.getRawValue(key))) {
+            return;
+        }
+        if (previousValue == null) {
+            previousValues.put(key, ABSENT);
+        } else {
+            previousValues.put(key, new Previous(previousValue, previousRawValue));
+        }
+    }
+
+
+    /**
+     * Replaces a deserialized history with an empty history of the same capacity, since revisions are not serialized.
+     *
+     * @return an empty history
+     */
+    private Object readResolve() {
+        ConfigurationHistory history = new ConfigurationHistory();
+        history.capacity = capacity;
+        return history;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationHistory{capacity=" + capacity + ", revisions=" + state.revisions.length + '}';
+    }
+
+
+    /** The value and raw value of a key before a revision. */
+    private static final class Previous {
+
+        /** The value, with placeholders resolved. */
+        private final Object value;
+
+        /** The raw value, with placeholders unresolved. */
+        private final Object rawValue;
+
+
+        /**
+         * Instantiates a new previous value.
+         *
+         * @param value the value, with placeholders resolved
+         * @param rawValue the raw value, with placeholders unresolved
+         */
+        Previous(final Object value, final Object rawValue) {
+            this.value = value;
+            this.rawValue = rawValue;
+        }
+
+
+    }
+
+
+    /** A retained revision along with the previous values of the keys it changed. */
+    private static final class Revision {
+
+        /** The description of the revision. */
+        private final ConfigurationRevision description;
+
+        /** The values of the changed keys before the revision, keyed by key. */
+        private final Map<Object, Previous> previousValues;
+
+
+        /**
+         * Instantiates a new revision.
+         *
+         * @param description the description of the revision
+         * @param previousValues the values of the changed keys before the revision
+         */
+        Revision(final ConfigurationRevision description, final Map<Object, Previous> previousValues) {
+            this.description = description;
+            this.previousValues = previousValues;
+        }
+
+
+    }
+
+
+    /** The retained revisions along with the snapshot published by the latest of them. */
+    private static final class State {
+
+        /** The state retaining no revisions. */
+        static final State EMPTY = new State(null, new Revision[0]);
+
+        /**
+         * The current snapshot, holding the properties published by the latest revision, or null if no revision is
+         * retained.
+         */
+        private final ConfigurationSnapshot head;
+
+        /** The retained revisions, from the oldest to the latest. */
+        private final Revision[] revisions;
+
+
+        /**
+         * Instantiates a new state.
+         *
+         * @param head the current snapshot, holding the properties published by the latest revision
+         * @param revisions the retained revisions, from the oldest to the latest
+         */
+        State(final ConfigurationSnapshot head, final Revision[] revisions) {
+            this.head = head;
+            this.revisions = revisions;
+        }
+
+
+        /**
+         * Creates the state which also retains the specified revision, discarding the oldest revisions beyond the
+         * specified capacity.
+         *
+         * @param nextHead the snapshot published by the revision
+         * @param revision the revision
+         * @param capacity the number of revisions retained
+         * @return the new state
+         */
+        State append(final ConfigurationSnapshot nextHead, final Revision revision, final int capacity) {
+            Revision[] nextRevisions = Arrays.copyOf(revisions, revisions.length + 1);
+            nextRevisions[revisions.length] = revision;
+            return new State(nextHead, nextRevisions).trim(capacity);
+        }
+
+
+        /**
+         * Creates the state which retains at most the specified number of the latest revisions.  The previous values
+         * of the oldest retained revision are discarded, since no older version can be reconstructed, and only its
+         * changed keys are kept.
+         *
+         * @param capacity the number of revisions retained
+         * @return the new state, or this state if it retains no more revisions than the capacity
+         */
+        State trim(final int capacity) {
+            if (capacity == 0) {
+                return EMPTY;
+            }
+            if (revisions.length == 0 || (revisions.length <= capacity && revisions[0].previousValues.isEmpty())) {
+                return this;
+            }
+            Revision[] nextRevisions = Arrays.copyOfRange(revisions, Math.max(0, revisions.length - capacity),
+                    revisions.length);
+            ConfigurationRevision oldest = nextRevisions[0].description;
+            nextRevisions[0] = new Revision(new ConfigurationRevision(oldest.getVersion(), oldest.getTimestamp(),
+                    oldest.getOrigin(), Set.copyOf(oldest.getChangedKeys())), Collections.emptyMap());
+            return new State(head, nextRevisions);
+        }
+
+
+        /**
+         * Finds the latest revision published at or before the specified version.
+         *
+         * @param version the version
+         * @return the index of the revision
+         * @throws IllegalArgumentException if the version is not retained
+         */
+        int checkRetained(final long version) {
+            if (head != null && version <= head.getVersion()) {
+                for (int i = revisions.length - 1; i >= 0; i--) {
+                    if (revisions[i].description.getVersion() <= version) {
+                        return i;
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Configuration version " + version + " is not retained in the history");
+        }
+
+
+        /**
+         * Gets the value of the specified key as of the specified revision, which is its value before the first later
+         * revision changing it, or its current value if no later revision changed it.
+         *
+         * @param index the index of the revision
+         * @param key the key
+         * @return the value and raw value, whose value is null if the key did not exist
+         */
+        Previous valueAt(final int index, final Object key) {
+            for (int i = index + 1; i < revisions.length; i++) {
+                Previous previous = revisions[i].previousValues.get(key);
+                if (previous != null) {
+                    return previous;
+                }
+            }
+            return new Previous(head.get(key), head.getRawValue(key));
+        }
+
+
+        /**
+         * Gets the values as of the specified revision of the keys which changed since.  Later revisions are undone
+         * first, so the value before the earliest change of each key prevails.
+         *
+         * @param index the index of the revision
+         * @return the values keyed by key
+         */
+        Map<Object, Previous> previousValues(final int index) {
+            Map<Object, Previous> previousValues = new HashMap<>();
+            for (int i = revisions.length - 1; i > index; i--) {
+                previousValues.putAll(revisions[i].previousValues);
+            }
+            return previousValues;
+        }
+
+
+    }
+
+
+}
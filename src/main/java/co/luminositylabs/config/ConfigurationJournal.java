@@ -0,0 +1,571 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * An append-only journal persisting the changes written to a configuration, so that they survive a restart.
+ * <p>
+ * Each change appends a record of the new value of a property, or of its removal, to an in-memory batch, so writers
+ * never wait for I/O.  A single background thread appends the batch to the journal file and forces it to the storage
+ * device at a fixed interval, so the cost of forcing is shared by every change of the interval, and a crash loses at
+ * most the changes of the last interval.  Once the journal file has grown past {@value #MIN_COMPACT_SIZE} bytes and
+ * twice the size of the snapshot file, it is compacted: the latest value of every changed property is written to a
+ * temporary file which atomically replaces the snapshot file, and the journal file is truncated.  A crash between the
+ * two only leaves changes in the journal file which the snapshot file already contains, and replaying them again is
+ * harmless.
+ * <p>
+ * The journal and snapshot files each consist of a header recording the format, followed by records.  A record
+ * consists of its length and CRC-32C checksum, followed by its kind, the property name and, unless the property was
+ * removed, its value, with each string encoded as by {@link CompiledPropertiesCache#encode(String)}.  When a journal
+ * is opened, the snapshot file and then the journal file are replayed.  A record torn by a crash while it was being
+ * appended ends the journal, which is truncated before it.  Only properties whose names and values are strings are
+ * journaled.
+ *
+ * @author Phillip Ross
+ */
+final class ConfigurationJournal implements Closeable {
+
+    /** The static logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationJournal.class);
+
+    /** The suffix appended to the name of a journal file to name its snapshot file. */
+    static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+
+    /** The smallest size in bytes of a journal file which is compacted. */
+    static final long MIN_COMPACT_SIZE = 1L << 20;
+
+    /** The size in bytes of the batch of changes beyond which it is appended before the interval elapses. */
+    static final int MAX_BATCH_SIZE = 1 << 20;
+
+    /** The value identifying a journal or snapshot file. */
+    private static final int MAGIC = 0x4C4C434A;
+
+    /** The version of the format of journal and snapshot files. */
+    private static final int FORMAT_VERSION = 1;
+
+    /** The size in bytes of the header of a journal or snapshot file. */
+    private static final int HEADER_SIZE = 8;
+
+    /** The size in bytes of the length and checksum preceding each record. */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** The kind of a record setting a property. */
+    private static final byte SET = 1;
+
+    /** The kind of a record removing a property. */
+    private static final byte REMOVE = 2;
+
+    /** The change denoting that a property was removed. */
+    private static final Object REMOVED = new Object();
+
+    /** The path of the journal file. */
+    private final Path journalPath;
+
+    /** The path of the snapshot file. */
+    private final Path snapshotPath;
+
+    /** The channel appending to the journal file, guarded by {@link #ioLock}. */
+    private final FileChannel channel;
+
+    /** The executor appending the batches of changes. */
+    private final ScheduledExecutorService flusher;
+
+    /** The lock serializing the appends and compactions of the journal file. */
+    private final Object ioLock = new Object();
+
+    /** The size in bytes of the journal file, guarded by {@link #ioLock}. */
+    private long journalSize;
+
+    /** The size in bytes of the snapshot file, guarded by {@link #ioLock}. */
+    private long snapshotSize;
+
+    /**
+     * The latest change of each changed property, mapping its name to its value or to {@link #REMOVED}.  Replaced
+     * while holding the monitor of this journal.
+     */
+    private volatile PersistentHashMap<Object> changes = PersistentHashMap.empty();
+
+    /** The records of the changes not yet appended, guarded by the monitor of this journal. */
+    private ByteArrayOutputStream batch = new ByteArrayOutputStream();
+
+    /** Whether an append of the batch has been requested before the interval elapses, guarded by the monitor. */
+    private boolean flushRequested;
+
+
+    /**
+     * Opens the specified journal file, creating it if it does not exist, replays its snapshot file and its records,
+     * and starts appending the batches of changes at the specified interval.
+     *
+     * @param journalPath the path of the journal file
+     * @param syncInterval the interval at which changes are appended and forced to the storage device
+     * @throws IOException if the journal or snapshot file cannot be read, or the journal file cannot be written
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    ConfigurationJournal(final Path journalPath, final Duration syncInterval) throws IOException {
+        if (syncInterval.isNegative() || syncInterval.isZero()) {
+            throw new IllegalArgumentException("The sync interval must be positive: " + syncInterval);
+        }
+        this.journalPath = journalPath;
+        this.snapshotPath = journalPath.resolveSibling(journalPath.getFileName() + SNAPSHOT_FILE_SUFFIX);
+        if (Files.exists(snapshotPath)) {
+            ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+            if (replay(snapshot, snapshotPath) != snapshot.limit()) {
+                throw new IOException("Corrupt configuration journal snapshot file " + snapshotPath);
+            }
+            snapshotSize = snapshot.limit();
+        }
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            journalSize = recover();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        logger.debug("Replayed changes to {} properties from configuration journal {}", changes.size(), journalPath);
+        long intervalNanos = syncInterval.toNanos();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "luminositylabs-config-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushLogged, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Gets the path of the journal file.
+     *
+     * @return the path
+     */
+    Path getPath() {
+        return journalPath;
+    }
+
+
+    /**
+     * Gets the number of properties whose changes are journaled.
+     *
+     * @return the number of changed properties, including removed properties
+     */
+    int getChangeCount() {
+        return changes.size();
+    }
+
+
+    /**
+     * Applies the journaled changes to the specified entries.
+     *
+     * @param entries the entries, which are modified in place
+     * @return the keys of the entries which were added, removed or changed
+     */
+    Set<Object> applyTo(final Map<Object, Object> entries) {
+        Set<Object> changedKeys = new HashSet<>();
+        changes.forEach((key, value) -> {
+            if (value == REMOVED) {
+                if (entries.remove(key) != null) {
+                    changedKeys.add(key);
+                }
+            } else if (!value.equals(entries.put(key, value))) {
+                changedKeys.add(key);
+            }
+        });
+        return changedKeys;
+    }
+
+
+    /**
+     * Records the changes between two successive snapshots in the batch of changes to be appended.  Properties whose
+     * unresolved values did not change, such as those whose placeholders were merely resolved again, are not recorded.
+     *
+     * @param previous the snapshot being replaced
+     * @param next the snapshot replacing it
+     * @param changedKeys the keys which differ between the snapshots, or null if any key may differ
+     */
+    synchronized void record(final ConfigurationSnapshot previous,
+                             final ConfigurationSnapshot next,
+                             final Collection<?> changedKeys) {
+        Collection<?> keys = changedKeys;
+        if (keys == null) {
+            Set<Object> allKeys = new HashSet<>(previous.keySet());
+            allKeys.addAll(next.keySet());
+            keys = allKeys;
+        }
+        for (Object key : keys) {
+            Object value = next.getRawValue(key);
+            if (Objects.equals(value, previous.getRawValue(key))) {
+                continue;
+            }
+            if (!(key instanceof String) || (value != null && !(value instanceof String))) {
+                logger.debug("Not journaling property {} whose name or value is not a string", key);
+            } else if (value == null) {
+                append(encodeRecord(REMOVE, (String)key, null));
+                changes = changes.with((String)key, REMOVED);
+            } else {
+                append(encodeRecord(SET, (String)key, (String)value));
+                changes = changes.with((String)key, value);
+            }
+        }
+    }
+
+
+    /**
+     * Appends the batch of changes to the journal file and forces it to the storage device, compacting the journal
+     * file if it has grown large enough.  If the batch cannot be appended, it is retained to be appended again.
+     *
+     * @throws IOException if the batch cannot be appended
+     */
+    void flush() throws IOException {
+        synchronized (ioLock) {
+            if (!channel.isOpen()) {
+                return;
+            }
+            byte[] records;
+            PersistentHashMap<Object> state;
+            synchronized (this) {
+                records = batch.toByteArray();
+                batch = new ByteArrayOutputStream();
+                flushRequested = false;
+                state = changes;
+            }
+            if (records.length == 0) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            long position = journalSize;
+            try {
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                channel.force(false);
+            } catch (IOException ioe) {
+                retain(records);
+                throw ioe;
+            }
+            journalSize = position;
+            if (journalSize >= Math.max(MIN_COMPACT_SIZE, 2 * snapshotSize)) {
+                compact(state);
+            }
+        }
+    }
+
+
+    /**
+     * Stops appending at the interval, appends the remaining batch of changes and closes the journal file.
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        synchronized (ioLock) {
+            try {
+                flush();
+            } catch (IOException ioe) {
+                logger.warn("Unable to append changes to configuration journal {}, they are lost.", journalPath, ioe);
+            }
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                logger.warn("Unable to close configuration journal {}", journalPath, ioe);
+            }
+        }
+    }
+
+
+    /**
+     * Adds a record to the batch of changes, requesting that the batch be appended without waiting for the interval
+     * to elapse if it has grown large.  Must be called while holding the monitor of this journal.
+     *
+     * @param record the record
+     */
+    private void append(final byte[] record) {
+        batch.write(record, 0, record.length);
+        if (batch.size() >= MAX_BATCH_SIZE && !flushRequested) {
+            flushRequested = true;
+            try {
+                flusher.execute(this::flushLogged);
+            } catch (RejectedExecutionException ree) {
+                logger.debug("Configuration journal {} is closing, appending the batch when it closes.", journalPath);
+            }
+        }
+    }
+
+
+    /**
+     * Returns records which could not be appended to the front of the batch, so that they are appended again in
+     * order, and discards any part of them which was appended.  Must be called while holding {@link #ioLock}.
+     *
+     * @param records the records
+     */
+    private void retain(final byte[] records) {
+        try {
+            channel.truncate(journalSize);
+        } catch (IOException ioe) {
+            logger.debug("Unable to truncate configuration journal {}", journalPath, ioe);
+        }
+        synchronized (this) {
+            ByteArrayOutputStream retained = new ByteArrayOutputStream(records.length + batch.size());
+            retained.write(records, 0, records.length);
+            retained.write(batch.toByteArray(), 0, batch.size());
+            batch = retained;
+        }
+    }
+
+
+    /** Appends the batch of changes, logging any failure. */
+    private void flushLogged() {
+        try {
+            flush();
+        } catch (IOException ioe) {
+            logger.warn("Unable to append changes to configuration journal {}, retrying at the next interval.",
+                    journalPath, ioe);
+        }
+    }
+
+
+    /**
+     * Writes the specified changes to the snapshot file, replacing it atomically, and truncates the journal file.
+     * Must be called while holding {@link #ioLock}, with changes including every record of the journal file.  If the
+     * snapshot file cannot be written, the journal file is left to be compacted after a later append.
+     *
+     * @param state the changes
+     */
+    private void compact(final PersistentHashMap<Object> state) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write(header(), 0, HEADER_SIZE);
+        state.forEach((key, value) -> {
+            byte[] record;
+            if (value == REMOVED) {
+                record = encodeRecord(REMOVE, key, null);
+            } else {
+                record = encodeRecord(SET, key, (String)value);
+            }
+            content.write(record, 0, record.length);
+        });
+        Path temporaryPath = null;
+        try {
+            temporaryPath = Files.createTempFile(snapshotPath.toAbsolutePath().getParent(),
+                    snapshotPath.getFileName() + ".", ".tmp");
+            try (FileChannel snapshotChannel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content.toByteArray());
+                while (buffer.hasRemaining()) {
+                    snapshotChannel.write(buffer);
+                }
+                snapshotChannel.force(true);
+            }
+            Files.move(temporaryPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory();
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            logger.warn("Unable to compact configuration journal {}", journalPath, e);
+            CompiledPropertiesCache.deleteQuietly(temporaryPath);
+            return;
+        }
+        snapshotSize = content.size();
+        try {
+            channel.truncate(HEADER_SIZE);
+            channel.force(false);
+            journalSize = HEADER_SIZE;
+            logger.debug("Compacted changes to {} properties into configuration journal snapshot {}", state.size(),
+                    snapshotPath);
+        } catch (IOException ioe) {
+            logger.warn("Unable to truncate compacted configuration journal {}", journalPath, ioe);
+        }
+    }
+
+
+    /**
+     * Forces the directory of the snapshot file to the storage device, so that its replacement survives a crash.  Not
+     * every platform allows a directory to be opened, in which case the rename is left to the file system.
+     */
+    private void forceDirectory() {
+        try (FileChannel directory = FileChannel.open(snapshotPath.toAbsolutePath().getParent(),
+                StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ioe) {
+            logger.debug("Unable to force directory of configuration journal snapshot {}", snapshotPath, ioe);
+        }
+    }
+
+
+    /**
+     * Replays the journal file, writing its header if it is empty and truncating any torn record at its end.
+     *
+     * @return the size of the journal file in bytes
+     * @throws IOException if the journal file cannot be read or written, or is not a configuration journal
+     */
+    private long recover() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.wrap(header());
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(false);
+            return HEADER_SIZE;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Configuration journal " + journalPath + " is too large to be replayed");
+        }
+        ByteBuffer content = ByteBuffer.allocate((int)size);
+        while (content.hasRemaining()) {
+            if (channel.read(content, content.position()) < 0) {
+                throw new IOException("Configuration journal " + journalPath + " was truncated while being read");
+            }
+        }
+        content.flip();
+        int validSize = replay(content, journalPath);
+        if (validSize < size) {
+            logger.warn("Truncating {} bytes torn from the end of configuration journal {}", size - validSize,
+                    journalPath);
+            channel.truncate(validSize);
+            channel.force(false);
+        }
+        return validSize;
+    }
+
+
+    /**
+     * Replays the records of a journal or snapshot file into the changes, up to the first record which is torn.
+     *
+     * @param content the content of the file
+     * @param path the path of the file
+     * @return the number of bytes of the file preceding the first torn record, or the size of the file if none is torn
+     * @throws IOException if the file is not a configuration journal or snapshot
+     */
+    private int replay(final ByteBuffer content, final Path path) throws IOException {
+        if (content.remaining() < HEADER_SIZE
+                || content.getInt() != MAGIC
+                || content.getInt() != FORMAT_VERSION) {
+            throw new IOException("Not a configuration journal: " + path);
+        }
+        PersistentHashMap<Object> replayed = changes;
+        while (content.remaining() >= RECORD_HEADER_SIZE) {
+            int start = content.position();
+            int length = content.getInt();
+            int checksum = content.getInt();
+            if (length <= 0 || length > content.remaining()) {
+                content.position(start);
+                break;
+            }
+            ByteBuffer record = content.slice(content.position(), length);
+            if (CompiledPropertiesCache.checksum(record) != checksum) {
+                logger.debug("Torn record at offset {} of configuration journal {}", start, path);
+                content.position(start);
+                break;
+            }
+            try {
+                byte kind = record.get();
+                String key = decode(record);
+                if (kind == SET) {
+                    replayed = replayed.with(key, decode(record));
+                } else if (kind == REMOVE) {
+                    replayed = replayed.with(key, REMOVED);
+                } else {
+                    throw new IllegalArgumentException("Unknown record kind " + kind);
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                logger.debug("Unreadable record at offset {} of configuration journal {}", start, path, e);
+                content.position(start);
+                break;
+            }
+            content.position(start + RECORD_HEADER_SIZE + length);
+        }
+        changes = replayed;
+        return content.position();
+    }
+
+
+    /**
+     * Decodes a string encoded by {@link CompiledPropertiesCache#encode(String)}.
+     *
+     * @param buffer the buffer positioned at the string, which is advanced past it
+     * @return the string
+     * @throws BufferUnderflowException if the buffer ends before the string
+     */
+    private static String decode(final ByteBuffer buffer) {
+        int length = buffer.getInt();
+        int encodedLength = CompiledPropertiesCache.encodedLength(length);
+        if (encodedLength > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] characters = new byte[encodedLength];
+        buffer.get(characters);
+        return new String(characters, CompiledPropertiesCache.charset(length));
+    }
+
+
+    /**
+     * Encodes a record, preceded by its length and checksum.
+     *
+     * @param kind the kind of the record
+     * @param key the property name
+     * @param value the property value, or null if the property was removed
+     * @return the encoded record
+     */
+    private static byte[] encodeRecord(final byte kind, final String key, final String value) {
+        byte[] encodedKey = CompiledPropertiesCache.encode(key);
+        byte[] encodedValue = new byte[0];
+        if (value != null) {
+            encodedValue = CompiledPropertiesCache.encode(value);
+        }
+        ByteBuffer record = ByteBuffer.allocate(1 + encodedKey.length + encodedValue.length);
+        record.put(kind).put(encodedKey).put(encodedValue).flip();
+        return ByteBuffer.allocate(RECORD_HEADER_SIZE + record.remaining())
+                .putInt(record.remaining())
+                .putInt(CompiledPropertiesCache.checksum(record))
+                .put(record)
+                .array();
+    }
+
+
+    /**
+     * Encodes the header of a journal or snapshot file.
+     *
+     * @return the encoded header
+     */
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).array();
+    }
+
+
+}
@@ -0,0 +1,343 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The metrics of a {@link Configuration}, counting the reads of each property, lookups of missing properties, the time
+ * writers wait for and hold the write lock, and the duration and size of reloads.
+ * <p>
+ * Metrics are disabled by default, in which case the only cost to a read or write is checking whether they are
+ * enabled.  They are enabled with {@link #setEnabled(boolean)}, or by setting the
+ * {@value Configuration#CONFIG_METRICS_PROPERTY_NAME} system property to {@code true} before the configuration is
+ * initialized.  Counts are kept in {@link LongAdder}s, so concurrent readers counting the same property do not contend
+ * with each other.  At most {@value #MAX_TRACKED_KEYS} distinct properties are counted individually, so lookups of
+ * arbitrary names cannot grow the metrics without bound; reads of further properties are only counted in the totals.
+ * <p>
+ * Independently of these metrics, reloads and bulk writes are reported to Java Flight Recorder as
+ * {@code co.luminositylabs.config.Reload} and {@code co.luminositylabs.config.BulkWrite} events when a recording
+ * enables them.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationMetrics implements Serializable {
+
+    /** The maximum number of distinct properties whose reads, and lookups when missing, are counted individually. */
+    public static final int MAX_TRACKED_KEYS = 10_000;
+
+    private static final long serialVersionUID = 3306480938613718545L;
+
+    /** Whether metrics are being recorded. */
+    private volatile boolean enabled;
+
+    /** The number of reads of each property which existed, keyed by property name. */
+    private final transient ConcurrentHashMap<String, LongAdder> readCounts = new ConcurrentHashMap<>();
+
+    /** The number of lookups of each property which did not exist, keyed by property name. */
+    private final transient ConcurrentHashMap<String, LongAdder> missCounts = new ConcurrentHashMap<>();
+
+    /** The number of reads of all properties. */
+    private final transient LongAdder reads = new LongAdder();
+
+    /** The number of lookups of properties which did not exist. */
+    private final transient LongAdder misses = new LongAdder();
+
+    /** The time writers waited to acquire the write lock. */
+    private final transient LatencyHistogram writeLockWait = new LatencyHistogram();
+
+    /** The time writers held the write lock. */
+    private final transient LatencyHistogram writeLockHold = new LatencyHistogram();
+
+    /** The durations of reloads which published properties. */
+    private final transient LatencyHistogram reloadDurations = new LatencyHistogram();
+
+    /** The number of reloads which failed to read the configuration. */
+    private final transient LongAdder reloadFailures = new LongAdder();
+
+    /** The number of properties read by the latest reload which published properties. */
+    private transient volatile int lastReloadPropertyCount;
+
+
+    /** Instantiates new, disabled metrics. */
+    ConfigurationMetrics() {
+    }
+
+
+    /**
+     * Determines whether metrics are being recorded.
+     *
+     * @return true if metrics are being recorded
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Enables or disables recording metrics.  Metrics already recorded are retained.
+     *
+     * @param enabled whether metrics are to be recorded
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+
+    /** Discards all metrics recorded so far. */
+    public void reset() {
+        readCounts.clear();
+        missCounts.clear();
+        reads.reset();
+        misses.reset();
+        writeLockWait.reset();
+        writeLockHold.reset();
+        reloadDurations.reset();
+        reloadFailures.reset();
+        lastReloadPropertyCount = 0;
+    }
+
+
+    /**
+     * Records a read of the specified key.
+     *
+     * @param key the key
+     * @param found whether the key existed
+     */
+    void recordRead(final Object key, final boolean found) {
+        reads.increment();
+        if (!found) {
+            misses.increment();
+        }
+        if (key instanceof String) {
+            ConcurrentHashMap<String, LongAdder> counts = missCounts;
+            if (found) {
+                counts = readCounts;
+            }
+            LongAdder count = counts.get(key);
+            if (count == null && counts.size() < MAX_TRACKED_KEYS) {
+                count = counts.computeIfAbsent((String)key, k -> new LongAdder());
+            }
+            if (count != null) {
+                count.increment();
+            }
+        }
+    }
+
+
+    /**
+     * Records the time a writer waited to acquire the write lock.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    void recordWriteLockWait(final long nanos) {
+        writeLockWait.record(nanos);
+    }
+
+
+    /**
+     * Records the time a writer held the write lock.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    void recordWriteLockHold(final long nanos) {
+        writeLockHold.record(nanos);
+    }
+
+
+    /**
+     * Records a finished reload.
+     *
+     * @param outcome the outcome of the reload
+     * @param nanos the duration of the reload in nanoseconds
+     * @param propertyCount the number of properties read
+     */
+    void recordReload(final ConfigurationReloadResult.Outcome outcome, final long nanos, final int propertyCount) {
+        if (outcome == ConfigurationReloadResult.Outcome.FAILED) {
+            reloadFailures.increment();
+        } else if (outcome == ConfigurationReloadResult.Outcome.RELOADED) {
+            reloadDurations.record(nanos);
+            lastReloadPropertyCount = propertyCount;
+        }
+    }
+
+
+    /**
+     * Gets the number of reads of all properties, including lookups of properties which did not exist.
+     *
+     * @return the number of reads
+     */
+    public long getReadCount() {
+        return reads.sum();
+    }
+
+
+    /**
+     * Gets the number of reads of the specified property while it existed.
+     *
+     * @param propertyName the name of the property
+     * @return the number of reads, or zero if the reads of the property were not counted
+     */
+    public long getReadCount(final String propertyName) {
+        return sum(readCounts.get(propertyName));
+    }
+
+
+    /**
+     * Gets the number of reads of each property counted individually while it existed.
+     *
+     * @return an unmodifiable copy of the counts keyed by property name
+     */
+    public Map<String, Long> getReadCounts() {
+        return copyCounts(readCounts);
+    }
+
+
+    /**
+     * Gets the number of lookups of properties which did not exist.
+     *
+     * @return the number of lookups
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+
+    /**
+     * Gets the number of lookups of each property counted individually while it did not exist.
+     *
+     * @return an unmodifiable copy of the counts keyed by property name
+     */
+    public Map<String, Long> getMissCounts() {
+        return copyCounts(missCounts);
+    }
+
+
+    /**
+     * Gets the histogram of the time writers waited to acquire the write lock.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getWriteLockWait() {
+        return writeLockWait;
+    }
+
+
+    /**
+     * Gets the histogram of the time writers held the write lock.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getWriteLockHold() {
+        return writeLockHold;
+    }
+
+
+    /**
+     * Gets the histogram of the durations of reloads which published properties.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram getReloadDurations() {
+        return reloadDurations;
+    }
+
+
+    /**
+     * Gets the number of properties read by the latest reload which published properties.
+     *
+     * @return the number of properties
+     */
+    public int getLastReloadPropertyCount() {
+        return lastReloadPropertyCount;
+    }
+
+
+    /**
+     * Gets the number of reloads which failed to read the configuration.
+     *
+     * @return the number of reloads
+     */
+    public long getReloadFailureCount() {
+        return reloadFailures.sum();
+    }
+
+
+    /**
+     * Sums the specified counter.
+     *
+     * @param count the counter, or null
+     * @return the sum, or zero if the counter is null
+     */
+    private static long sum(final LongAdder count) {
+        if (count == null) {
+            return 0L;
+        }
+        return count.sum();
+    }
+
+
+    /**
+     * Copies the specified counts.
+     *
+     * @param counts the counts
+     * @return an unmodifiable copy of the counts
+     */
+    private static Map<String, Long> copyCounts(final Map<String, LongAdder> counts) {
+        Map<String, Long> copy = new HashMap<>();
+        counts.forEach((propertyName, count) -> copy.put(propertyName, count.sum()));
+        return Collections.unmodifiableMap(copy);
+    }
+
+
+    /**
+     * Replaces deserialized metrics with empty metrics, enabled if the serialized metrics were, since recorded metrics
+     * are not serialized.
+     *
+     * @return empty metrics
+     */
+    private Object readResolve() {
+        ConfigurationMetrics metrics = new ConfigurationMetrics();
+        metrics.setEnabled(enabled);
+        return metrics;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationMetrics{"
+                + "enabled=" + enabled
+                + ", reads=" + reads.sum()
+                + ", misses=" + misses.sum()
+                + ", writeLockWait=" + writeLockWait
+                + ", writeLockHold=" + writeLockHold
+                + ", reloads=" + reloadDurations
+                + ", reloadFailures=" + reloadFailures.sum()
+                + ", lastReloadPropertyCount=" + lastReloadPropertyCount
+                + '}';
+    }
+
+
+}
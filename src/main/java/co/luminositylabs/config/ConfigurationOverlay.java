@@ -0,0 +1,480 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+
+
+/**
+ * A view of a base {@link Configuration} with some of its properties overridden, such as the configuration of one
+ * tenant of an application serving many.
+ * <p>
+ * An overlay holds only its overrides, in a {@link PersistentHashMap}, and reads every other property from the current
+ * snapshot of the base configuration, so changes to the base configuration are visible through every overlay without
+ * copying, and the memory of an overlay grows with the number of its overrides rather than the number of properties.
+ * Overlays {@link #copy(String) copied} from one another share their overrides until they change them, so tenants
+ * created from a common template cost only the overrides in which they differ from it.
+ * <p>
+ * Reads never lock.  An override may also {@link #removeProperty(String) remove} a property of the base
+ * configuration from the overlay.  Overrides are taken literally: their placeholders are not resolved.  The
+ * placeholders of base properties referring to an overridden property, directly or indirectly, are resolved again
+ * against the overrides, following the dependencies recorded by the base snapshot.  Those values are computed on the
+ * first read after the overrides or the base snapshot change and kept until the next change, so they add to the
+ * memory of the overlay only for the properties depending on its overrides.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationOverlay {
+
+    /** The override denoting that a property of the base configuration is removed from the overlay. */
+    private static final Object REMOVED = new Object();
+
+    /** The base configuration. */
+    private final Configuration base;
+
+    /** The name of the overlay. */
+    private final String name;
+
+    /** The overrides, mapping each overridden property name to its value or to {@link #REMOVED}. */
+    private volatile PersistentHashMap<Object> overrides;
+
+    /** The base properties resolved again against the overrides, or null until first needed. */
+    private volatile Resolution resolution;
+
+
+    /**
+     * Instantiates a new overlay.
+     *
+     * @param base the base configuration
+     * @param name the name of the overlay
+     * @param overrides the initial overrides
+     */
+    ConfigurationOverlay(final Configuration base, final String name, final PersistentHashMap<Object> overrides) {
+        if (base == null || name == null) {
+            throw new IllegalArgumentException("The base configuration and the name of an overlay must not be null");
+        }
+        this.base = base;
+        this.name = name;
+        this.overrides = overrides;
+    }
+
+
+    /**
+     * Gets the name of the overlay, such as the identifier of the tenant it belongs to.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Gets the base configuration of the overlay.
+     *
+     * @return the base configuration
+     */
+    public Configuration getBase() {
+        return base;
+    }
+
+
+    /**
+     * Gets the value of the specified property, which is its override if it is overridden, or otherwise its value in
+     * the base configuration.
+     *
+     * @param propertyName the name of the property
+     * @return the value, or null if the property does not exist or is removed from the overlay
+     */
+    public String getProperty(final String propertyName) {
+        Resolution current = resolve();
+        Object override = current.overrides.get(propertyName);
+        if (override == null) {
+            Object dependent = current.dependents.get(propertyName);
+            if (dependent != null) {
+                return (String)dependent;
+            }
+            return base.getProperty(propertyName);
+        }
+        if (override == REMOVED) {
+            return null;
+        }
+        return (String)override;
+    }
+
+
+    /**
+     * Gets the value of the specified property, or the specified default value if the property does not exist.
+     *
+     * @param propertyName the name of the property
+     * @param defaultValue the value returned if the property does not exist or is removed from the overlay
+     * @return the value
+     */
+    public String getProperty(final String propertyName, final String defaultValue) {
+        String value = getProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+
+    /**
+     * Gets the value of the specified property converted by the specified converter.
+     *
+     * @param propertyName the name of the property
+     * @param converter the converter applied to the value
+     * @param defaultValue the value returned if the property does not exist or is removed from the overlay
+     * @param <T> the type of the converted value
+     * @return the converted value
+     */
+    public <T> T getProperty(final String propertyName,
+                             final Function<String, ? extends T> converter,
+                             final T defaultValue) {
+        String value = getProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        return converter.apply(value);
+    }
+
+
+    /**
+     * Overrides the value of the specified property.
+     *
+     * @param propertyName the name of the property
+     * @param propertyValue the value
+     * @throws NullPointerException if the name or value is null
+     */
+    public synchronized void setProperty(final String propertyName, final String propertyValue) {
+        overrides = overrides.with(propertyName, propertyValue);
+    }
+
+
+    /**
+     * Removes the specified property from the overlay, hiding its value in the base configuration.
+     *
+     * @param propertyName the name of the property
+     */
+    public synchronized void removeProperty(final String propertyName) {
+        overrides = overrides.with(propertyName, REMOVED);
+    }
+
+
+    /**
+     * Discards the override of the specified property, if any, so that the overlay reads its value from the base
+     * configuration again.
+     *
+     * @param propertyName the name of the property
+     */
+    public synchronized void resetProperty(final String propertyName) {
+        overrides = overrides.without(propertyName);
+    }
+
+
+    /** Discards every override, so that the overlay reads every property from the base configuration. */
+    public synchronized void resetProperties() {
+        overrides = PersistentHashMap.empty();
+    }
+
+
+    /**
+     * Determines whether the specified property is overridden or removed by the overlay.
+     *
+     * @param propertyName the name of the property
+     * @return true if the property is overridden or removed, false otherwise
+     */
+    public boolean isOverridden(final String propertyName) {
+        return overrides.get(propertyName) != null;
+    }
+
+
+    /**
+     * Gets the number of properties overridden or removed by the overlay.
+     *
+     * @return the number of overrides
+     */
+    public int getOverrideCount() {
+        return overrides.size();
+    }
+
+
+    /**
+     * Gets a copy of the overridden values of properties, excluding the properties removed from the overlay.
+     *
+     * @return the overridden values keyed by property name
+     */
+    public Map<String, String> getOverrides() {
+        Map<String, String> copy = new HashMap<>();
+        overrides.forEach((propertyName, override) -> {
+            if (override != REMOVED) {
+                copy.put(propertyName, (String)override);
+            }
+        });
+        return copy;
+    }
+
+
+    /**
+     * Gets a read-only map view of the properties of the overlay.  Nothing is copied: every operation reads the current
+     * overrides and the current snapshot of the base configuration, and an iterator reads those current when it was
+     * created for its whole lifetime.  Iteration returns the properties of the base configuration in name order,
+     * followed by the properties only the overlay defines.
+     *
+     * @return the view
+     */
+    public Map<String, String> getPropertiesView() {
+        return new OverlayView();
+    }
+
+
+    /**
+     * Creates an overlay of the same base configuration with the same overrides as this overlay, which share memory
+     * until either overlay changes them.
+     *
+     * @param copyName the name of the new overlay
+     * @return the new overlay
+     */
+    public ConfigurationOverlay copy(final String copyName) {
+        return new ConfigurationOverlay(base, copyName, overrides);
+    }
+
+
+    /**
+     * Gets the base properties resolved again against the current overrides and base snapshot, resolving them if either
+     * changed since they were last resolved.
+     *
+     * @return the resolution
+     */
+    private Resolution resolve() {
+        PersistentHashMap<Object> currentOverrides = overrides;
+        ConfigurationSnapshot snapshot = base.getSnapshot();
+        Resolution current = resolution;
+        if (current != null && current.overrides == currentOverrides && current.snapshot == snapshot) {
+            return current;
+        }
+        Map<Object, Object> dependents = Collections.emptyMap();
+        if (currentOverrides.size() > 0) {
+            Set<String> overriddenNames = new HashSet<>();
+            currentOverrides.forEach((propertyName, override) -> overriddenNames.add(propertyName));
+            dependents = snapshot.resolveDependents(overriddenNames, key -> {
+                if (key instanceof String) {
+                    Object override = currentOverrides.get((String)key);
+                    if (override == REMOVED) {
+                        return null;
+                    }
+                    if (override != null) {
+                        return override;
+                    }
+                }
+                return snapshot.get(key);
+            });
+        }
+        current = new Resolution(snapshot, currentOverrides, dependents);
+        resolution = current;
+        return current;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationOverlay{name=" + name + ", overrides=" + overrides.size() + '}';
+    }
+
+
+    /** The base properties depending on the overrides of an overlay, resolved again against them. */
+    private static final class Resolution {
+
+        /** The base snapshot against which the properties were resolved. */
+        private final ConfigurationSnapshot snapshot;
+
+        /** The overrides against which the properties were resolved. */
+        private final PersistentHashMap<Object> overrides;
+
+        /** The resolved values of the base properties depending on the overrides, keyed by property name. */
+        private final Map<Object, Object> dependents;
+
+
+        /**
+         * Instantiates a new resolution.
+         *
+         * @param snapshot the base snapshot against which the properties were resolved
+         * @param overrides the overrides against which the properties were resolved
+         * @param dependents the resolved values of the base properties depending on the overrides
+         */
+        Resolution(final ConfigurationSnapshot snapshot,
+                   final PersistentHashMap<Object> overrides,
+                   final Map<Object, Object> dependents) {
+            this.snapshot = snapshot;
+            this.overrides = overrides;
+            this.dependents = dependents;
+        }
+
+
+    }
+
+
+    /** A read-only map view of the properties of the overlay. */
+    private final class OverlayView extends AbstractMap<String, String> {
+
+
+        /** {@inheritDoc} */
+        @Override
+        public int size() {
+            Resolution current = resolve();
+            Map<String, String> baseProperties = current.snapshot.getPropertiesView();
+            int[] size = {baseProperties.size()};
+            current.overrides.forEach((propertyName, override) -> {
+                boolean inBase = baseProperties.containsKey(propertyName);
+                if (override == REMOVED && inBase) {
+                    size[0]--;
+                } else if (override != REMOVED && !inBase) {
+                    size[0]++;
+                }
+            });
+            return size[0];
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean containsKey(final Object key) {
+            return get(key) != null;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public String get(final Object key) {
+            if (key instanceof String) {
+                return getProperty((String)key);
+            }
+            return null;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new OverlayIterator(resolve());
+                }
+
+                @Override
+                public int size() {
+                    return OverlayView.this.size();
+                }
+            };
+        }
+
+
+    }
+
+
+    /** An iterator over the properties of an overlay, given the base properties and overrides at its creation. */
+    private static final class OverlayIterator implements Iterator<Map.Entry<String, String>> {
+
+        /** The iterator over the base properties. */
+        private final Iterator<Map.Entry<String, String>> baseIterator;
+
+        /** The overrides. */
+        private final PersistentHashMap<Object> overrides;
+
+        /** The resolved values of the base properties depending on the overrides. */
+        private final Map<Object, Object> dependents;
+
+        /** The properties defined only by the overlay, returned after the base properties. */
+        private final Iterator<Map.Entry<String, String>> addedIterator;
+
+        /** The next entry, or null if it has not been found yet. */
+        private Map.Entry<String, String> next;
+
+
+        /**
+         * Instantiates a new iterator.
+         *
+         * @param resolution the base snapshot and overrides, with the base properties resolved against them
+         */
+        OverlayIterator(final Resolution resolution) {
+            Map<String, String> baseProperties = resolution.snapshot.getPropertiesView();
+            this.baseIterator = baseProperties.entrySet().iterator();
+            this.overrides = resolution.overrides;
+            this.dependents = resolution.dependents;
+            List<Map.Entry<String, String>> added = new ArrayList<>();
+            overrides.forEach((propertyName, override) -> {
+                if (override != REMOVED && !baseProperties.containsKey(propertyName)) {
+                    added.add(new AbstractMap.SimpleImmutableEntry<>(propertyName, (String)override));
+                }
+            });
+            this.addedIterator = Collections.unmodifiableList(added).iterator();
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasNext() {
+            while (next == null && baseIterator.hasNext()) {
+                Map.Entry<String, String> baseEntry = baseIterator.next();
+                Object override = overrides.get(baseEntry.getKey());
+                if (override == null) {
+                    next = baseEntry;
+                    Object dependent = dependents.get(baseEntry.getKey());
+                    if (dependent != null) {
+                        next = new AbstractMap.SimpleImmutableEntry<>(baseEntry.getKey(), (String)dependent);
+                    }
+                } else if (override != REMOVED) {
+                    next = new AbstractMap.SimpleImmutableEntry<>(baseEntry.getKey(), (String)override);
+                }
+            }
+            if (next == null && addedIterator.hasNext()) {
+                next = addedIterator.next();
+            }
+            return next != null;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> entry = next;
+            next = null;
+            return entry;
+        }
+
+
+    }
+
+
+}
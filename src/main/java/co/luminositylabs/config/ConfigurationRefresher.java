@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Polls {@link PollingConfigurationSource polling sources} periodically, each at its own interval.
+ * <p>
+ * A single timer thread schedules the polls, and each poll runs on a virtual thread of its own, so that any number of
+ * sources can be polled, and a poll blocked on a slow server delays neither the other sources nor the timer.  Each
+ * interval is randomized by up to {@value #JITTER} of its length, so that many nodes started together do not poll a
+ * shared server in lockstep.  While the polls of a source fail, its interval doubles with each failure, up to
+ * {@code 2^}{@value #MAX_BACKOFF_SHIFT} times the configured interval, and returns to normal after a successful poll.
+ *
+ * @author Phillip Ross
+ */
+final class ConfigurationRefresher implements Closeable {
+
+    /** The static logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationRefresher.class);
+
+    /** The largest fraction by which a poll interval is randomly lengthened or shortened. */
+    static final double JITTER = 0.2d;
+
+    /** The largest number of times a poll interval is doubled while the polls of a source fail. */
+    static final int MAX_BACKOFF_SHIFT = 6;
+
+    /** The longest delay, in nanoseconds, before a poll interval is randomized, so that randomizing cannot overflow. */
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE / 2;
+
+    /** The poller refreshing a source. */
+    private final Poller poller;
+
+    /** The executor timing the polls. */
+    private final ScheduledExecutorService scheduler;
+
+    /** The executor running each poll on a virtual thread of its own. */
+    private final ExecutorService pollExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /** Whether this refresher has been closed. */
+    private volatile boolean closed;
+
+
+    /**
+     * Instantiates a new refresher and schedules the first poll of each of the specified sources.
+     *
+     * @param sources the polling sources
+     * @param poller the poller refreshing a source
+     */
+    ConfigurationRefresher(final List<PollingConfigurationSource> sources, final Poller poller) {
+        this.poller = poller;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "luminositylabs-config-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (PollingConfigurationSource source : sources) {
+            schedule(source, 0);
+        }
+    }
+
+
+    /** Stops polling, interrupting polls in progress. */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        pollExecutor.shutdownNow();
+    }
+
+
+    /**
+     * Schedules the next poll of the specified source.
+     *
+     * @param source the source
+     * @param failures the number of consecutive polls of the source which failed
+     */
+    private void schedule(final PollingConfigurationSource source, final int failures) {
+        long delayNanos = delayNanos(source.getPollInterval(), failures);
+        try {
+            scheduler.schedule(() -> pollExecutor.execute(() -> poll(source, failures)), delayNanos,
+                    TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ree) {
+            logger.debug("Refresher was closed, not polling configuration source {} again.", source.getName());
+        }
+    }
+
+
+    /**
+     * Polls the specified source and schedules its next poll.
+     *
+     * @param source the source
+     * @param failures the number of consecutive polls of the source which failed before this one
+     */
+    private void poll(final PollingConfigurationSource source, final int failures) {
+        if (closed) {
+            return;
+        }
+        int nextFailures = 0;
+        try {
+            poller.poll(source);
+        } catch (IOException | RuntimeException e) {
+            nextFailures = failures + 1;
+            logger.warn("Unable to refresh configuration source {}, retaining current properties.", source.getName(),
+                    e);
+        }
+        if (!closed) {
+            schedule(source, nextFailures);
+        }
+    }
+
+
+    /**
+     * Computes the delay before the next poll of a source.
+     *
+     * @param interval the poll interval of the source
+     * @param failures the number of consecutive polls of the source which failed
+     * @return the delay in nanoseconds, randomized by up to {@link #JITTER} of its length
+     */
+    static long delayNanos(final Duration interval, final int failures) {
+        int shift = Math.min(failures, MAX_BACKOFF_SHIFT);
+        long baseNanos = MAX_DELAY_NANOS;
+        if (interval.compareTo(Duration.ofNanos(MAX_DELAY_NANOS >> shift)) <= 0) {
+            baseNanos = Math.max(interval.toNanos(), 1L) << shift;
+        }
+        double jitter = JITTER * (2.0d * ThreadLocalRandom.current().nextDouble() - 1.0d);
+        return baseNanos + (long)(baseNanos * jitter);
+    }
+
+
+    /** Refreshes a polling source. */
+    @FunctionalInterface
+    interface Poller {
+
+
+        /**
+         * Fetches the specified source conditionally and publishes its properties if it changed.
+         *
+         * @param source the source
+         * @throws IOException if the source is available but cannot be read
+         */
+        void poll(PollingConfigurationSource source) throws IOException;
+
+
+    }
+
+
+}
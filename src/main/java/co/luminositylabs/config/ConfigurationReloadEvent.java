@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * The Java Flight Recorder event emitted for each reload of the configuration properties.
+ *
+ * @author Phillip Ross
+ */
+@Name("co.luminositylabs.config.Reload")
+@Label("Configuration Reload")
+@Category({"Luminosity Labs", "Configuration"})
+@Description("Reading and publishing the configuration properties")
+final class ConfigurationReloadEvent extends Event {
+
+    /** The location of the configuration file, or null if it was not found. */
+    @Label("Location")
+    private String location;
+
+    /** The outcome of the reload. */
+    @Label("Outcome")
+    private String outcome;
+
+    /** The number of properties read. */
+    @Label("Property Count")
+    private int propertyCount;
+
+    /** The version of the current snapshot when the reload finished. */
+    @Label("Version")
+    private long version;
+
+
+    /**
+     * Ends the event and commits it if it is enabled.
+     *
+     * @param reloadLocation the location of the configuration file, or null if it was not found
+     * @param reloadOutcome the outcome of the reload
+     * @param reloadPropertyCount the number of properties read
+     * @param currentVersion the version of the current snapshot
+     */
+    void finish(final Object reloadLocation,
+                final ConfigurationReloadResult.Outcome reloadOutcome,
+                final int reloadPropertyCount,
+                final long currentVersion) {
+        end();
+        if (shouldCommit()) {
+            if (reloadLocation != null) {
+                location = reloadLocation.toString();
+            }
+            outcome = reloadOutcome.name();
+            propertyCount = reloadPropertyCount;
+            version = currentVersion;
+            commit();
+        }
+    }
+
+
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.net.URL;
+import java.time.Duration;
+
+
+/**
+ * The outcome of reloading the configuration properties.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationReloadResult {
+
+    /** The possible outcomes of a reload. */
+    public enum Outcome {
+
+        /** The properties were read and published. */
+        RELOADED,
+
+        /** The configuration file was not found, and the current properties were retained. */
+        NOT_FOUND,
+
+        /** The configuration file could not be read, and the current properties were retained. */
+        FAILED,
+
+        /** The properties were read but not published, because a reload which started later already published. */
+        SUPERSEDED
+
+    }
+
+    /** The outcome of the reload. */
+    private final Outcome outcome;
+
+    /** The location of the configuration file, or null if it was not found. */
+    private final URL location;
+
+    /** The number of properties read. */
+    private final int propertyCount;
+
+    /** The version of the snapshot published, or the version retained if nothing was published. */
+    private final long version;
+
+    /** The time taken by the reload. */
+    private final Duration elapsed;
+
+    /** The failure which prevented the reload, or null if it did not fail. */
+    private final Throwable failure;
+
+
+    /**
+     * Instantiates a new reload result.
+     *
+     * @param outcome the outcome of the reload
+     * @param location the location of the configuration file, or null if it was not found
+     * @param propertyCount the number of properties read
+     * @param version the version of the snapshot published, or the version retained if nothing was published
+     * @param elapsed the time taken by the reload
+     * @param failure the failure which prevented the reload, or null if it did not fail
+     */
+    ConfigurationReloadResult(final Outcome outcome,
+                              final URL location,
+                              final int propertyCount,
+                              final long version,
+                              final Duration elapsed,
+                              final Throwable failure) {
+        this.outcome = outcome;
+        this.location = location;
+        this.propertyCount = propertyCount;
+        this.version = version;
+        this.elapsed = elapsed;
+        this.failure = failure;
+    }
+
+
+    /**
+     * Gets the outcome of the reload.
+     *
+     * @return the outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+
+    /**
+     * Determines whether the reload published the properties it read.
+     *
+     * @return true if the properties were published, false otherwise
+     */
+    public boolean isReloaded() {
+        return outcome == Outcome.RELOADED;
+    }
+
+
+    /**
+     * Gets the location of the configuration file.
+     *
+     * @return the location, or null if the configuration file was not found
+     */
+    public URL getLocation() {
+        return location;
+    }
+
+
+    /**
+     * Gets the number of properties read.
+     *
+     * @return the number of properties
+     */
+    public int getPropertyCount() {
+        return propertyCount;
+    }
+
+
+    /**
+     * Gets the version of the snapshot published by the reload, or the version of the snapshot which was current
+     * when the reload finished if nothing was published.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+
+    /**
+     * Gets the time taken by the reload, including locating, reading and publishing the properties.
+     *
+     * @return the time taken
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+
+    /**
+     * Gets the failure which prevented the reload.
+     *
+     * @return the failure, or null if the reload did not fail
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationReloadResult{outcome=" + outcome
+                + ", location=" + location
+                + ", propertyCount=" + propertyCount
+                + ", version=" + version
+                + ", elapsed=" + elapsed
+                + '}';
+    }
+
+
+}
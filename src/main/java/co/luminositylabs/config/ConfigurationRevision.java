@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.time.Instant;
+import java.util.Set;
+
+
+/**
+ * A revision of the properties of a {@link Configuration} retained by its {@link ConfigurationHistory}, describing the
+ * snapshot published by a write, reload or rollback.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationRevision {
+
+    /** The version of the snapshot published by the revision. */
+    private final long version;
+
+    /** The time at which the snapshot was published. */
+    private final Instant timestamp;
+
+    /** The kind of change which published the snapshot. */
+    private final Origin origin;
+
+    /** The keys whose values were added, removed or changed by the revision. */
+    private final Set<Object> changedKeys;
+
+
+    /**
+     * Instantiates a new revision.
+     *
+     * @param version the version of the snapshot published by the revision
+     * @param timestamp the time at which the snapshot was published
+     * @param origin the kind of change which published the snapshot
+     * @param changedKeys the keys whose values were added, removed or changed, which must not be modified afterwards
+     */
+    ConfigurationRevision(final long version, final Instant timestamp, final Origin origin,
+                          final Set<Object> changedKeys) {
+        this.version = version;
+        this.timestamp = timestamp;
+        this.origin = origin;
+        this.changedKeys = changedKeys;
+    }
+
+
+    /**
+     * Gets the version of the snapshot published by the revision.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+
+    /**
+     * Gets the time at which the snapshot was published.
+     *
+     * @return the timestamp
+     */
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+
+    /**
+     * Gets the kind of change which published the snapshot.
+     *
+     * @return the origin
+     */
+    public Origin getOrigin() {
+        return origin;
+    }
+
+
+    /**
+     * Gets the keys whose values were added, removed or changed by the revision, including the keys of properties
+     * whose placeholders resolved differently as a result.
+     *
+     * @return a read-only set of the keys
+     */
+    public Set<Object> getChangedKeys() {
+        return changedKeys;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationRevision{version=" + version + ", timestamp=" + timestamp + ", origin=" + origin
+                + ", changedKeys=" + changedKeys.size() + '}';
+    }
+
+
+    /** The kinds of changes which publish snapshots. */
+    public enum Origin {
+
+        /** A write through the API of the configuration. */
+        WRITE,
+
+        /** A reload of the configuration file and sources. */
+        RELOAD,
+
+        /** A refresh of a changed polling source. */
+        REFRESH,
+
+        /** Changes received from the peers of a {@link ConfigurationSync}. */
+        SYNC,
+
+        /** A rollback to a previous revision. */
+        ROLLBACK
+
+    }
+
+
+}
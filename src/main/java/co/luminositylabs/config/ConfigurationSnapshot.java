@@ -0,0 +1,487 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+
+/**
+ * An immutable, versioned view of the configuration properties at a single point in time.
+ * <p>
+ * Snapshots are never modified after construction, so they may be read from any number of
+ * threads without locking.  The {@link Configuration} bean publishes a new snapshot through a
+ * single volatile reference each time its properties are written.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationSnapshot implements Serializable {
+
+    private static final long serialVersionUID = -3160417312474093568L;
+
+    /** The snapshot which contains no properties. */
+    static final ConfigurationSnapshot EMPTY = new ConfigurationSnapshot(
+            0L,
+            new HashMap<>(),
+            PrefixIndex.EMPTY,
+            PropertyOrigins.NONE,
+            Interpolation.NONE,
+            ConfigurationStorageMode.STANDARD
+    );
+
+    /** The version of this snapshot, incremented for every snapshot published by a configuration. */
+    private final long version;
+
+    /** The property entries of this snapshot, never modified after construction. */
+    private final Map<Object, Object> entries;
+
+    /** The sorted index of the string property names of this snapshot. */
+    private final PrefixIndex prefixIndex;
+
+    /** The sources the properties of this snapshot came from. */
+    private final PropertyOrigins origins;
+
+    /** The unresolved values of the properties containing placeholders, and the dependencies between properties. */
+    private final Interpolation interpolation;
+
+    /** The way in which the entries of this snapshot, and of its successors, are stored. */
+    private final ConfigurationStorageMode storageMode;
+
+
+    /**
+     * Instantiates a new snapshot which takes ownership of the specified entries.
+     *
+     * @param version the version of the snapshot
+     * @param entries the entries, which must not be modified by the caller afterwards
+     * @param prefixIndex the sorted index of the string property names of the entries
+     * @param origins the sources the properties came from
+     * @param interpolation the interpolation which resolved the entries
+     * @param storageMode the way in which the entries are stored
+     */
+    private ConfigurationSnapshot(final long version,
+                                  final Map<Object, Object> entries,
+                                  final PrefixIndex prefixIndex,
+                                  final PropertyOrigins origins,
+                                  final Interpolation interpolation,
+                                  final ConfigurationStorageMode storageMode) {
+        this.version = version;
+        this.entries = entries;
+        this.prefixIndex = prefixIndex;
+        this.origins = origins;
+        this.interpolation = interpolation;
+        this.storageMode = storageMode;
+    }
+
+
+    /**
+     * Creates the snapshot which succeeds this snapshot, taking ownership of the specified entries which were all set
+     * programmatically.
+     *
+     * @param nextEntries the entries of the new snapshot, which must not be modified by the caller afterwards
+     * @return the new snapshot
+     */
+    ConfigurationSnapshot successor(final Map<Object, Object> nextEntries) {
+        return successor(nextEntries, PropertyOrigins.NONE);
+    }
+
+
+    /**
+     * Creates the snapshot which succeeds this snapshot, taking ownership of the specified entries which were loaded
+     * from sources.  The placeholders of the entries are resolved in place.
+     *
+     * @param nextEntries the entries of the new snapshot, which must not be modified by the caller afterwards
+     * @param nextOrigins the sources the entries came from
+     * @return the new snapshot
+     */
+    ConfigurationSnapshot successor(final Map<Object, Object> nextEntries, final PropertyOrigins nextOrigins) {
+        Interpolation nextInterpolation = Interpolation.of(nextEntries);
+        if (storageMode != ConfigurationStorageMode.STANDARD) {
+            return compactSuccessor(nextEntries, nextOrigins, nextInterpolation, storageMode);
+        }
+        return new ConfigurationSnapshot(
+                version + 1, nextEntries, PrefixIndex.of(nextEntries), nextOrigins, nextInterpolation, storageMode
+        );
+    }
+
+
+    /**
+     * Creates the snapshot which succeeds this snapshot without changing any entries.
+     *
+     * @return the new snapshot
+     */
+    ConfigurationSnapshot successor() {
+        return new ConfigurationSnapshot(version + 1, entries, prefixIndex, origins, interpolation, storageMode);
+    }
+
+
+    /**
+     * Creates the snapshot which succeeds this snapshot, taking ownership of the specified entries which differ from
+     * the entries of this snapshot only by the specified keys, which were set programmatically.  The placeholders of
+     * the changed entries, and of the entries depending on them, are resolved in place.
+     *
+     * @param nextEntries the entries of the new snapshot, which must not be modified by the caller afterwards
+     * @param changedKeys the keys which were added, removed or changed, to which the keys of entries depending on
+     *                    them are added
+     * @return the new snapshot
+     */
+    ConfigurationSnapshot successor(final Map<Object, Object> nextEntries, final Set<Object> changedKeys) {
+        PropertyOrigins nextOrigins = origins.withProgrammaticKeys(changedKeys);
+        Interpolation nextInterpolation = interpolation.update(nextEntries, changedKeys);
+        if (storageMode != ConfigurationStorageMode.STANDARD) {
+            return compactSuccessor(nextEntries, nextOrigins, nextInterpolation, storageMode);
+        }
+        return new ConfigurationSnapshot(
+                version + 1,
+                nextEntries,
+                prefixIndex.update(nextEntries, changedKeys),
+                nextOrigins,
+                nextInterpolation,
+                storageMode
+        );
+    }
+
+
+    /**
+     * Creates the snapshot which succeeds this snapshot, holding the same entries stored in the specified way.
+     *
+     * @param nextStorageMode the way in which the entries of the new snapshot, and of its successors, are stored
+     * @return the new snapshot
+     */
+    ConfigurationSnapshot withStorageMode(final ConfigurationStorageMode nextStorageMode) {
+        if (nextStorageMode != ConfigurationStorageMode.STANDARD) {
+            return compactSuccessor(entries, origins, interpolation, nextStorageMode);
+        }
+        Map<Object, Object> nextEntries = copyEntries();
+        return new ConfigurationSnapshot(
+                version + 1, nextEntries, PrefixIndex.of(nextEntries), origins, interpolation, nextStorageMode
+        );
+    }
+
+
+    /**
+     * Creates the snapshot which succeeds this snapshot, holding the specified entries in a {@link CompactEntries}.
+     *
+     * @param nextEntries the entries of the new snapshot, which are copied
+     * @param nextOrigins the sources the entries came from
+     * @param nextInterpolation the interpolation which resolved the entries
+     * @param nextStorageMode the compact way in which the entries are stored
+     * @return the new snapshot
+     */
+    private ConfigurationSnapshot compactSuccessor(final Map<Object, Object> nextEntries,
+                                                   final PropertyOrigins nextOrigins,
+                                                   final Interpolation nextInterpolation,
+                                                   final ConfigurationStorageMode nextStorageMode) {
+        CompactEntries compactEntries = CompactEntries.of(
+                nextEntries, nextStorageMode == ConfigurationStorageMode.COMPACT_OFF_HEAP
+        );
+        return new ConfigurationSnapshot(
+                version + 1,
+                compactEntries,
+                compactEntries.prefixIndex(),
+                nextOrigins,
+                nextInterpolation,
+                nextStorageMode
+        );
+    }
+
+
+    /**
+     * Creates a mutable copy of the entries of this snapshot, suitable for building a successor.
+     *
+     * @return a copy of the entries
+     */
+    Map<Object, Object> copyEntries() {
+        return new HashMap<>(entries);
+    }
+
+
+    /**
+     * Gets the version of this snapshot.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+
+    /**
+     * Gets the way in which the properties of this snapshot are stored.
+     *
+     * @return the storage mode
+     */
+    public ConfigurationStorageMode getStorageMode() {
+        return storageMode;
+    }
+
+
+    /**
+     * Gets the number of properties in this snapshot.
+     *
+     * @return the number of properties
+     */
+    public int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * Determines whether this snapshot contains a property with the specified key.
+     *
+     * @param key the key
+     * @return true if the property exists, false otherwise
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(final Object key) {
+        return entries.containsKey(Objects.requireNonNull(key));
+    }
+
+
+    /**
+     * Gets the name of the source the specified property came from, such as the location of a configuration file.
+     *
+     * @param key the key of the property
+     * @return the name of the source, or null if the property does not exist or was set programmatically
+     * @throws NullPointerException if the specified key is null
+     * @see ConfigurationSource#getName()
+     */
+    public String getOrigin(final Object key) {
+        if (!entries.containsKey(Objects.requireNonNull(key))) {
+            return null;
+        }
+        return origins.origin(key);
+    }
+
+
+    /**
+     * Gets the value of the specified property as it was set, before its placeholders were resolved.
+     *
+     * @param key the key of the property
+     * @return the unresolved value, or {@code null} if this snapshot contains no mapping for the key
+     * @throws NullPointerException if the specified key is null
+     */
+    public Object getRawValue(final Object key) {
+        String template = interpolation.template(Objects.requireNonNull(key));
+        if (template != null) {
+            return template;
+        }
+        return entries.get(key);
+    }
+
+
+    /**
+     * Resolves again the placeholders of the properties depending on the specified overridden properties, as done by
+     * an overlay of this snapshot.
+     *
+     * @param overriddenNames the names of the overridden properties
+     * @param values the function giving the value of a property, taking the overrides into account
+     * @return the resolved values of the properties depending on the overridden properties, keyed by property
+     */
+    Map<Object, Object> resolveDependents(final Set<String> overriddenNames, final Function<Object, Object> values) {
+        return interpolation.resolveDependents(overriddenNames, values);
+    }
+
+
+    /**
+     * Gets the property value with the specified name, following the semantics of
+     * {@link java.util.Properties#getProperty(String)}.
+     *
+     * @param propertyName the name of the property to get
+     * @return the value of the property, or {@code null} if the property does not exist or is not a string
+     */
+    public String getProperty(final String propertyName) {
+        Object value = entries.get(Objects.requireNonNull(propertyName));
+        if (value instanceof String) {
+            return (String)value;
+        }
+        return null;
+    }
+
+
+    /**
+     * Gets the property value with the specified name.
+     * If the property does not exist, the specified default value is returned.
+     *
+     * @param propertyName the name of the property to get
+     * @param defaultValue the value returned if the property does not exist
+     * @return the value of the property retrieved
+     */
+    public String getProperty(final String propertyName, final String defaultValue) {
+        String value = getProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value;
+    }
+
+
+    /**
+     * Gets the value to which the specified key is mapped.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value, or {@code null} if this snapshot contains no mapping for the key
+     * @throws NullPointerException if the specified key is null
+     */
+    public Object get(final Object key) {
+        return entries.get(Objects.requireNonNull(key));
+    }
+
+
+    /**
+     * Gets the value to which the specified key is mapped, or the specified default value.
+     *
+     * @param key the key whose associated value is to be returned
+     * @param defaultValue the value to be returned if the associated property value is null
+     * @return the value, or {@code defaultValue} if this snapshot contains no mapping for the key
+     * @throws NullPointerException if the specified key is null
+     */
+    public Object getOrDefault(final Object key, final Object defaultValue) {
+        return entries.getOrDefault(Objects.requireNonNull(key), defaultValue);
+    }
+
+
+    /**
+     * Gets the string properties whose names begin with the specified prefix.
+     *
+     * @param prefix the prefix
+     * @return a new {@code Properties} object containing the matching properties
+     */
+    public Properties getPropertiesWithPrefix(final String prefix) {
+        Properties propertiesWithPrefix = new Properties();
+        int first = prefixIndex.first(prefix);
+        int end = prefixIndex.end(prefix, first);
+        for (int position = first; position < end; position++) {
+            String name = prefixIndex.name(position);
+            propertiesWithPrefix.put(name, entries.get(name));
+        }
+        return propertiesWithPrefix;
+    }
+
+
+    /**
+     * Gets a read-only map view of the string properties of this snapshot whose names begin with the specified
+     * prefix.  The view allocates nothing proportional to the number of properties in this snapshot.
+     *
+     * @param prefix the prefix
+     * @return the view
+     */
+    public Map<String, String> getPropertiesWithPrefixView(final String prefix) {
+        return new PrefixView(() -> this, prefix);
+    }
+
+
+    /**
+     * Gets a read-only map view of the string properties of this snapshot, ordered by name.  Unlike
+     * {@link #toProperties()}, nothing is copied, and since the snapshot never changes, the view is always consistent.
+     *
+     * @return the view
+     */
+    public Map<String, String> getPropertiesView() {
+        return getPropertiesWithPrefixView("");
+    }
+
+
+    /**
+     * Performs the specified action for each string property of this snapshot in name order.  No objects are
+     * allocated per property unless the properties are stored in a compact {@link #getStorageMode() storage mode}.
+     *
+     * @param action the action to be performed for each property
+     */
+    public void forEach(final BiConsumer<? super String, ? super String> action) {
+        forEachWithPrefix("", action);
+    }
+
+
+    /**
+     * Performs the specified action for each string property of this snapshot whose name begins with the specified
+     * prefix, in name order.  No objects are allocated per property unless the properties are stored in a compact
+     * {@link #getStorageMode() storage mode}.
+     *
+     * @param prefix the prefix
+     * @param action the action to be performed for each matching property
+     */
+    public void forEachWithPrefix(final String prefix, final BiConsumer<? super String, ? super String> action) {
+        Objects.requireNonNull(action);
+        int first = prefixIndex.first(prefix);
+        int end = prefixIndex.end(prefix, first);
+        for (int position = first; position < end; position++) {
+            String name = prefixIndex.name(position);
+            action.accept(name, (String)entries.get(name));
+        }
+    }
+
+
+    /**
+     * Creates a stream of the string properties of this snapshot in name order.  Entries are created one at a time
+     * as the stream is consumed, and the stream splits evenly when run in parallel.
+     *
+     * @return the stream
+     */
+    public Stream<Map.Entry<String, String>> stream() {
+        return getPropertiesView().entrySet().stream();
+    }
+
+
+    /**
+     * Creates a new, independent {@code Properties} object containing the properties of this snapshot.
+     *
+     * @return the properties
+     */
+    public Properties toProperties() {
+        Properties properties = new Properties();
+        properties.putAll(entries);
+        return properties;
+    }
+
+
+    /**
+     * Gets an unmodifiable view of the keys of this snapshot.
+     *
+     * @return the keys
+     */
+    Set<Object> keySet() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+
+    /**
+     * Gets the sorted index of the string property names of this snapshot.
+     *
+     * @return the index
+     */
+    PrefixIndex prefixIndex() {
+        return prefixIndex;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationSnapshot{version=" + version + ", size=" + entries.size() + '}';
+    }
+
+
+}
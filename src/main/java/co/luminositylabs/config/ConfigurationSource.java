@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.IOException;
+import java.util.Map;
+
+
+/**
+ * A source of configuration properties which is layered with other sources.
+ * <p>
+ * When a {@link Configuration} reads its properties, it loads every source once, independent sources in parallel, and
+ * merges them into a single flat snapshot.  A property present in several sources takes its value from the source
+ * with the highest ordinal, and when ordinals are equal, from the source registered last.  The configuration file
+ * located by {@link Configuration#readProperties()} is a source with the ordinal
+ * {@link ConfigurationSources#CONFIG_FILE_ORDINAL}.  Lookups never consult the sources themselves.
+ * <p>
+ * Sources are registered through {@link Configuration#addSource(ConfigurationSource)}, or discovered with
+ * {@link java.util.ServiceLoader} when the configuration is initialized.  Sources discovered through the service
+ * loader must have a public no-argument constructor.  Common sources are created by {@link ConfigurationSources}.
+ *
+ * @author Phillip Ross
+ */
+public interface ConfigurationSource {
+
+
+    /**
+     * Gets the name of this source, which is reported as the origin of the properties it provides.
+     *
+     * @return the name
+     * @see ConfigurationSnapshot#getOrigin(Object)
+     */
+    String getName();
+
+
+    /**
+     * Gets the ordinal of this source.  Sources with higher ordinals take precedence over sources with lower
+     * ordinals.
+     *
+     * @return the ordinal
+     */
+    int getOrdinal();
+
+
+    /**
+     * Loads the properties of this source.  This method may be called concurrently with the loading of other sources,
+     * and the returned map is neither modified nor retained.
+     *
+     * @return the properties, which must not contain null keys or values, or null if this source is not available
+     * @throws IOException if the source is available but cannot be read
+     */
+    Map<?, ?> load() throws IOException;
+
+
+}
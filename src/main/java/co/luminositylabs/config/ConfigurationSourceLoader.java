@@ -0,0 +1,491 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Loads the registered configuration sources along with the configuration file and merges them into flat entries.
+ * <p>
+ * All sources are loaded once per reload, independent sources in parallel, and merged in a single pass from the
+ * highest precedence to the lowest, so that each key is stored once and lookups never consult the sources.
+ * <p>
+ * {@link PollingConfigurationSource Polling sources} are fetched conditionally, using the validator of their previous
+ * fetch, and their latest properties are retained.  While a polling source is registered, the properties of the other
+ * sources are retained too, so that a changed polling source can be {@link #refresh refreshed} by merging its new
+ * properties with the retained ones, without loading any other source again.
+ *
+ * @author Phillip Ross
+ */
+final class ConfigurationSourceLoader implements Serializable {
+
+    private static final long serialVersionUID = -1856372018816441519L;
+
+    /** The static logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationSourceLoader.class);
+
+    /** The load factor of the merged entries. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** The registered sources, in registration order. */
+    private final transient CopyOnWriteArrayList<ConfigurationSource> sources = new CopyOnWriteArrayList<>();
+
+    /** The executor which loads sources in parallel. */
+    private transient volatile Executor executor = ForkJoinPool.commonPool();
+
+    /** The latest fetch of each polling source, holding its latest properties and validator. */
+    private final transient ConcurrentHashMap<PollingConfigurationSource, ConfigurationFetch> fetches =
+            new ConcurrentHashMap<>();
+
+    /** The sources and properties of the latest load, retained only while a polling source is registered. */
+    private final transient AtomicReference<Loaded> lastLoad = new AtomicReference<>();
+
+
+    /**
+     * Registers a source.
+     *
+     * @param source the source
+     */
+    void addSource(final ConfigurationSource source) {
+        sources.add(Objects.requireNonNull(source));
+    }
+
+
+    /**
+     * Unregisters a source.
+     *
+     * @param source the source
+     * @return true if the source was registered, false otherwise
+     */
+    boolean removeSource(final ConfigurationSource source) {
+        if (source instanceof PollingConfigurationSource) {
+            fetches.remove(source);
+        }
+        return sources.remove(source);
+    }
+
+
+    /**
+     * Gets the registered sources in registration order.
+     *
+     * @return an unmodifiable list of the sources
+     */
+    List<ConfigurationSource> getSources() {
+        return Collections.unmodifiableList(new ArrayList<>(sources));
+    }
+
+
+    /**
+     * Determines whether any source is registered.
+     *
+     * @return true if a source is registered, false otherwise
+     */
+    boolean hasSources() {
+        return !sources.isEmpty();
+    }
+
+
+    /**
+     * Sets the executor which loads sources in parallel.
+     *
+     * @param executor the executor
+     */
+    void setExecutor(final Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+
+    /** Registers the sources provided through the service loader of the thread context class loader. */
+    void discoverSources() {
+        try {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            for (ConfigurationSource source : ServiceLoader.load(ConfigurationSource.class, classLoader)) {
+                logger.debug("Discovered configuration source {}", source.getName());
+                addSource(source);
+            }
+        } catch (ServiceConfigurationError sce) {
+            logger.warn("Unable to discover configuration sources.", sce);
+        }
+    }
+
+
+    /**
+     * Loads the configuration file and the registered sources and merges their properties.
+     *
+     * @param configFileSource the source of the configuration file, or null if it was not found
+     * @return the merged properties, or null if no source is available
+     * @throws IOException if an available source cannot be read
+     * @throws IllegalArgumentException if a properties file contains a malformed unicode escape
+     */
+    Merged load(final ConfigurationSource configFileSource) throws IOException {
+        List<ConfigurationSource> layers = new ArrayList<>();
+        if (configFileSource != null) {
+            layers.add(configFileSource);
+        }
+        layers.addAll(sources);
+        List<Map<?, ?>> loaded = loadAll(layers);
+        boolean retained = false;
+        for (ConfigurationSource layer : layers) {
+            retained |= layer instanceof PollingConfigurationSource;
+        }
+        if (retained) {
+            lastLoad.set(new Loaded(layers, loaded));
+        } else {
+            lastLoad.set(null);
+        }
+        return merge(layers, loaded, !retained);
+    }
+
+
+    /**
+     * Fetches the specified polling source conditionally and, if it changed, merges its new properties with the
+     * properties of the other sources retained from the latest load.
+     * <p>
+     * The retained load is only replaced if no other load replaced it while the source was being fetched.  Otherwise
+     * the new properties are merged with those of the newer load instead, so that a refresh never reverts the sources
+     * read by a reload which completed meanwhile.
+     *
+     * @param source the polling source
+     * @return the merged properties, or null if the source did not change, was not part of the latest load, or no
+     *         source is available
+     * @throws IOException if the source is available but cannot be read
+     * @throws IllegalArgumentException if a properties file contains a malformed unicode escape
+     */
+    Merged refresh(final PollingConfigurationSource source) throws IOException {
+        Loaded loadedLast = lastLoad.get();
+        if (loadedLast == null || !loadedLast.layers.contains(source)) {
+            logger.debug("Configuration source {} has not been loaded yet and cannot be refreshed.", source.getName());
+            return null;
+        }
+        if (!fetchLogged(source)) {
+            return null;
+        }
+        while (true) {
+            loadedLast = lastLoad.get();
+            if (loadedLast == null || !loadedLast.layers.contains(source)) {
+                logger.debug("Configuration source {} is no longer loaded and is not refreshed.", source.getName());
+                return null;
+            }
+            List<Map<?, ?>> loaded = new ArrayList<>(loadedLast.properties);
+            for (int i = 0; i < loadedLast.layers.size(); i++) {
+                ConfigurationFetch fetch = fetches.get(loadedLast.layers.get(i));
+                if (fetch != null) {
+                    loaded.set(i, fetch.getProperties());
+                }
+            }
+            if (lastLoad.compareAndSet(loadedLast, new Loaded(loadedLast.layers, loaded))) {
+                return merge(loadedLast.layers, loaded, false);
+            }
+            logger.debug("Sources were loaded while refreshing {}, merging with the newer load.", source.getName());
+        }
+    }
+
+
+    /**
+     * Merges the properties loaded from the specified sources.
+     *
+     * @param layers the sources
+     * @param loaded the properties of each source, null for those which are not available
+     * @param ownable whether the properties of a single available source may become owned by the merged properties
+     * @return the merged properties, or null if no source is available
+     */
+    private Merged merge(final List<ConfigurationSource> layers, final List<Map<?, ?>> loaded, final boolean ownable) {
+        List<Integer> precedence = new ArrayList<>();
+        int base = -1;
+        int totalSize = 0;
+        for (int i = 0; i < layers.size(); i++) {
+            Map<?, ?> entries = loaded.get(i);
+            if (entries != null) {
+                precedence.add(i);
+                totalSize += entries.size();
+                if (base < 0 || entries.size() > loaded.get(base).size()) {
+                    base = i;
+                }
+            }
+        }
+        if (precedence.isEmpty()) {
+            return null;
+        }
+        // Later registrations take precedence over earlier ones with the same ordinal.
+        precedence.sort(Comparator.comparingInt((Integer i) -> layers.get(i).getOrdinal())
+                .thenComparingInt(i -> i)
+                .reversed());
+        if (precedence.size() == 1) {
+            return single(layers.get(base), loaded.get(base), ownable);
+        }
+        Map<Object, Object> mergedEntries = new HashMap<>((int)(totalSize / LOAD_FACTOR) + 1);
+        Map<Object, String> originExceptions = new HashMap<>();
+        for (int i : precedence) {
+            String origin = layers.get(i).getName();
+            for (Map.Entry<?, ?> entry : loaded.get(i).entrySet()) {
+                if (mergedEntries.putIfAbsent(entry.getKey(), entry.getValue()) == null && i != base) {
+                    originExceptions.put(entry.getKey(), origin);
+                }
+            }
+        }
+        return new Merged(mergedEntries, new PropertyOrigins(layers.get(base).getName(), originExceptions));
+    }
+
+
+    /**
+     * Creates the merged properties of a single available source, without copying them if the source allows it.
+     *
+     * @param source the source
+     * @param entries the properties loaded from the source
+     * @param ownable whether the properties may become owned by the merged properties
+     * @return the merged properties
+     */
+    @SuppressWarnings("unchecked")
+    private static Merged single(final ConfigurationSource source, final Map<?, ?> entries, final boolean ownable) {
+        Map<Object, Object> mergedEntries;
+        if (ownable
+                && source instanceof ConfigurationSources.Source
+                && ((ConfigurationSources.Source)source).loadsOwnedMaps()) {
+            mergedEntries = (Map<Object, Object>)entries;
+        } else {
+            mergedEntries = new HashMap<>(entries);
+        }
+        return new Merged(mergedEntries, new PropertyOrigins(source.getName(), Collections.emptyMap()));
+    }
+
+
+    /**
+     * Loads the specified sources, the first on the calling thread and the others in parallel using the executor.
+     *
+     * @param layers the sources
+     * @return the properties of each source, null for those which are not available
+     * @throws IOException if an available source cannot be read
+     */
+    private List<Map<?, ?>> loadAll(final List<ConfigurationSource> layers) throws IOException {
+        List<CompletableFuture<Map<?, ?>>> futures = new ArrayList<>();
+        Executor currentExecutor = executor;
+        for (int i = 1; i < layers.size(); i++) {
+            ConfigurationSource source = layers.get(i);
+            futures.add(CompletableFuture.supplyAsync(() -> loadUnchecked(source), currentExecutor));
+        }
+        List<Map<?, ?>> loaded = new ArrayList<>();
+        if (!layers.isEmpty()) {
+            loaded.add(loadLogged(layers.get(0)));
+        }
+        for (CompletableFuture<Map<?, ?>> future : futures) {
+            try {
+                loaded.add(future.join());
+            } catch (CompletionException ce) {
+                Throwable cause = ce.getCause();
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException)cause).getCause();
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                throw ce;
+            }
+        }
+        return loaded;
+    }
+
+
+    /**
+     * Loads a source, wrapping an {@link IOException} so the source can be loaded by a {@link CompletableFuture}.
+     *
+     * @param source the source
+     * @return the properties, or null if the source is not available
+     */
+    private Map<?, ?> loadUnchecked(final ConfigurationSource source) {
+        try {
+            return loadLogged(source);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+
+    /**
+     * Loads a source, fetching a polling source conditionally.
+     *
+     * @param source the source
+     * @return the properties, or null if the source is not available
+     * @throws IOException if the source is available but cannot be read
+     */
+    private Map<?, ?> loadLogged(final ConfigurationSource source) throws IOException {
+        if (source instanceof PollingConfigurationSource) {
+            PollingConfigurationSource pollingSource = (PollingConfigurationSource)source;
+            fetchLogged(pollingSource);
+            ConfigurationFetch fetch = fetches.get(pollingSource);
+            if (fetch == null) {
+                return null;
+            }
+            return fetch.getProperties();
+        }
+        Map<?, ?> entries;
+        try {
+            entries = source.load();
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Configuration source {} could not be loaded.", source.getName(), e);
+            throw e;
+        }
+        if (entries == null) {
+            logger.debug("Configuration source {} is not available.", source.getName());
+        } else {
+            logger.debug("Loaded {} properties from configuration source {}", entries.size(), source.getName());
+        }
+        return entries;
+    }
+
+
+    /**
+     * Fetches a polling source conditionally, using the validator of its previous fetch, and retains the result.
+     *
+     * @param source the polling source
+     * @return true if the source changed, false if it did not
+     * @throws IOException if the source is available but cannot be read
+     */
+    private boolean fetchLogged(final PollingConfigurationSource source) throws IOException {
+        ConfigurationFetch previous = fetches.get(source);
+        String validator = null;
+        if (previous != null) {
+            validator = previous.getValidator();
+        }
+        ConfigurationFetch fetch;
+        try {
+            fetch = source.fetch(validator);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Configuration source {} could not be fetched.", source.getName(), e);
+            throw e;
+        }
+        if (fetch.isModified() || previous == null) {
+            fetches.put(source, fetch);
+            if (fetch.getProperties() == null) {
+                logger.debug("Configuration source {} is not available.", source.getName());
+            } else {
+                logger.debug("Fetched {} properties from configuration source {}", fetch.getProperties().size(),
+                        source.getName());
+            }
+            return true;
+        }
+        if (fetch.getValidator() != null && !fetch.getValidator().equals(validator)) {
+            fetches.put(source, previous.withValidator(fetch.getValidator()));
+        }
+        logger.debug("Configuration source {} did not change.", source.getName());
+        return false;
+    }
+
+
+    /**
+     * Replaces a deserialized loader with a loader without sources, since sources are not serialized.
+     *
+     * @return a loader without sources
+     */
+    private Object readResolve() {
+        return new ConfigurationSourceLoader();
+    }
+
+
+    /** The sources of a load along with the properties loaded from each of them. */
+    private static final class Loaded {
+
+        /** The sources, in the order they were loaded. */
+        private final List<ConfigurationSource> layers;
+
+        /** The properties of each source, null for those which were not available. */
+        private final List<Map<?, ?>> properties;
+
+
+        /**
+         * Instantiates a new load.
+         *
+         * @param layers the sources, in the order they were loaded
+         * @param properties the properties of each source, null for those which were not available
+         */
+        Loaded(final List<ConfigurationSource> layers, final List<Map<?, ?>> properties) {
+            this.layers = layers;
+            this.properties = properties;
+        }
+
+
+    }
+
+
+    /** The properties merged from the available sources. */
+    static final class Merged {
+
+        /** The merged entries. */
+        private final Map<Object, Object> entries;
+
+        /** The sources the merged entries came from. */
+        private final PropertyOrigins origins;
+
+
+        /**
+         * Instantiates new merged properties.
+         *
+         * @param entries the merged entries
+         * @param origins the sources the merged entries came from
+         */
+        Merged(final Map<Object, Object> entries, final PropertyOrigins origins) {
+            this.entries = entries;
+            this.origins = origins;
+        }
+
+
+        /**
+         * Gets the merged entries.
+         *
+         * @return the entries
+         */
+        Map<Object, Object> getEntries() {
+            return entries;
+        }
+
+
+        /**
+         * Gets the sources the merged entries came from.
+         *
+         * @return the origins
+         */
+        PropertyOrigins getOrigins() {
+            return origins;
+        }
+
+
+    }
+
+
+}
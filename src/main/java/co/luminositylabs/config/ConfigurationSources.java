@@ -0,0 +1,639 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * Creates common {@link ConfigurationSource configuration sources}.
+ * <p>
+ * The default ordinals place system properties above environment variables, environment variables above
+ * configuration files, and configuration files above defaults on the classpath.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationSources {
+
+    /** The static logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationSources.class);
+
+    /** The default ordinal of the system properties source. */
+    public static final int SYSTEM_PROPERTIES_ORDINAL = 400;
+
+    /** The default ordinal of the environment variables source. */
+    public static final int ENVIRONMENT_VARIABLES_ORDINAL = 300;
+
+    /** The ordinal of the configuration file located by a configuration, and the default ordinal of file sources. */
+    public static final int CONFIG_FILE_ORDINAL = 200;
+
+    /** The default ordinal of classpath resource sources. */
+    public static final int CLASSPATH_ORDINAL = 100;
+
+    /** The timeout, in milliseconds, of connecting to and reading from a URL polled for properties. */
+    private static final int URL_TIMEOUT_MILLIS = 10_000;
+
+    /** The separator of the parts of the validator of a polled file. */
+    private static final String VALIDATOR_SEPARATOR = "/";
+
+    /** The separator of the parts of the validator of a polled URL. */
+    private static final String HTTP_VALIDATOR_SEPARATOR = "\n";
+
+    /** The validator of a polled file which was not found. */
+    private static final String NOT_FOUND_VALIDATOR = "not-found";
+
+
+    /** Prevents instantiation of this utility class. */
+    private ConfigurationSources() {
+    }
+
+
+    /**
+     * Creates a source of the system properties with the default ordinal.
+     *
+     * @return the source
+     */
+    public static ConfigurationSource systemProperties() {
+        return systemProperties(SYSTEM_PROPERTIES_ORDINAL);
+    }
+
+
+    /**
+     * Creates a source of the system properties.
+     *
+     * @param ordinal the ordinal of the source
+     * @return the source
+     */
+    public static ConfigurationSource systemProperties(final int ordinal) {
+        return new Source("system properties", ordinal, false, System::getProperties);
+    }
+
+
+    /**
+     * Creates a source of the environment variables with the default ordinal.
+     *
+     * @return the source
+     */
+    public static ConfigurationSource environmentVariables() {
+        return environmentVariables(ENVIRONMENT_VARIABLES_ORDINAL);
+    }
+
+
+    /**
+     * Creates a source of the environment variables.
+     *
+     * @param ordinal the ordinal of the source
+     * @return the source
+     */
+    public static ConfigurationSource environmentVariables(final int ordinal) {
+        return new Source("environment variables", ordinal, false, System::getenv);
+    }
+
+
+    /**
+     * Creates a source of a properties file with the default ordinal.  The source is not available while the file
+     * does not exist.
+     *
+     * @param path the path of the file
+     * @return the source
+     */
+    public static ConfigurationSource file(final Path path) {
+        return file(path, CONFIG_FILE_ORDINAL);
+    }
+
+
+    /**
+     * Creates a source of a properties file.  The source is not available while the file does not exist.
+     *
+     * @param path the path of the file
+     * @param ordinal the ordinal of the source
+     * @return the source
+     */
+    public static ConfigurationSource file(final Path path, final int ordinal) {
+        Objects.requireNonNull(path);
+        return new Source(path.toUri().toString(), ordinal, true, () -> {
+            try {
+                return PropertiesParser.parse(path);
+            } catch (NoSuchFileException nsfe) {
+                return null;
+            }
+        });
+    }
+
+
+    /**
+     * Creates a {@link PollingConfigurationSource polling source} of a properties file, such as one on a shared mount,
+     * with the default ordinal of files.  The source is not available while the file does not exist.
+     *
+     * @param path the path of the file
+     * @param pollInterval the interval between polls of the file
+     * @return the source
+     * @see #polling(Path, Duration, int)
+     */
+    public static PollingConfigurationSource polling(final Path path, final Duration pollInterval) {
+        return polling(path, pollInterval, CONFIG_FILE_ORDINAL);
+    }
+
+
+    /**
+     * Creates a {@link PollingConfigurationSource polling source} of a properties file, such as one on a shared mount.
+     * The source is not available while the file does not exist.
+     * <p>
+     * A poll reads the file only if its size or modification time changed, and parses it only if the hash of its
+     * content changed too.
+     *
+     * @param path the path of the file
+     * @param pollInterval the interval between polls of the file
+     * @param ordinal the ordinal of the source
+     * @return the source
+     */
+    public static PollingConfigurationSource polling(final Path path, final Duration pollInterval, final int ordinal) {
+        Objects.requireNonNull(path);
+        return new PollingSource(path.toUri().toString(), ordinal, pollInterval, validator -> fetch(path, validator));
+    }
+
+
+    /**
+     * Creates a {@link PollingConfigurationSource polling source} of a properties file at a URL, such as one served by
+     * a configuration server, with the default ordinal of files.  The source is not available while the server
+     * responds that the file does not exist.
+     *
+     * @param location the location of the file
+     * @param pollInterval the interval between polls of the file
+     * @return the source
+     * @see #polling(URL, Duration, int)
+     */
+    public static PollingConfigurationSource polling(final URL location, final Duration pollInterval) {
+        return polling(location, pollInterval, CONFIG_FILE_ORDINAL);
+    }
+
+
+    /**
+     * Creates a {@link PollingConfigurationSource polling source} of a properties file at a URL, such as one served by
+     * a configuration server.  The source is not available while the server responds that the file does not exist.
+     * <p>
+     * A poll of an HTTP location is a conditional request carrying the entity tag and modification time of the
+     * previous response, so that a server supporting either responds without content if the file did not change.
+     * Content is parsed only if its hash changed, whatever the protocol of the location.
+     *
+     * @param location the location of the file
+     * @param pollInterval the interval between polls of the file
+     * @param ordinal the ordinal of the source
+     * @return the source
+     */
+    public static PollingConfigurationSource polling(final URL location, final Duration pollInterval,
+                                                     final int ordinal) {
+        Objects.requireNonNull(location);
+        return new PollingSource(location.toString(), ordinal, pollInterval, validator -> fetch(location, validator));
+    }
+
+
+    /**
+     * Creates a source of a properties file on the classpath of the thread context class loader with the default
+     * ordinal.  The source is not available if the resource does not exist.
+     *
+     * @param resourceName the name of the resource
+     * @return the source
+     */
+    public static ConfigurationSource classpath(final String resourceName) {
+        return classpath(resourceName, CLASSPATH_ORDINAL);
+    }
+
+
+    /**
+     * Creates a source of a properties file on the classpath of the thread context class loader.  The source is not
+     * available if the resource does not exist.
+     *
+     * @param resourceName the name of the resource
+     * @param ordinal the ordinal of the source
+     * @return the source
+     */
+    public static ConfigurationSource classpath(final String resourceName, final int ordinal) {
+        Objects.requireNonNull(resourceName);
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return new Source("classpath:" + resourceName, ordinal, true, () -> {
+            URL resource = classLoader.getResource(resourceName);
+            if (resource == null) {
+                return null;
+            }
+            return load(resource);
+        });
+    }
+
+
+    /**
+     * Creates the source of the configuration file located by a configuration.
+     *
+     * @param location the location of the configuration file
+     * @param compiled whether a file on the filesystem is loaded through its {@link CompiledPropertiesCache}
+     * @return the source
+     */
+    static ConfigurationSource configFile(final URL location, final boolean compiled) {
+        Path path = toFilePath(location);
+        if (path != null) {
+            return configFile(path, compiled);
+        }
+        return new Source(location.toString(), CONFIG_FILE_ORDINAL, true, () -> load(location));
+    }
+
+
+    /**
+     * Creates the source of the configuration file located by a configuration on the filesystem.  Unlike a source
+     * created by {@link #file(Path)}, loading fails with a {@link NoSuchFileException} if the file does not exist.
+     *
+     * @param path the path of the configuration file
+     * @param compiled whether the file is loaded through its {@link CompiledPropertiesCache}
+     * @return the source
+     */
+    static ConfigurationSource configFile(final Path path, final boolean compiled) {
+        String name = path.toUri().toString();
+        if (compiled) {
+            return new Source(name, CONFIG_FILE_ORDINAL, true, () -> CompiledPropertiesCache.load(path));
+        }
+        return new Source(name, CONFIG_FILE_ORDINAL, true, () -> PropertiesParser.parse(path));
+    }
+
+
+    /**
+     * Loads a properties file from the specified location.  Files are read directly through a file channel, while
+     * other locations, such as entries of archives, are read through a stream.
+     *
+     * @param location the location
+     * @return the properties, in a mutable map owned by the caller
+     * @throws IOException if the location cannot be read
+     * @throws IllegalArgumentException if the file contains a malformed unicode escape
+     */
+    static Map<Object, Object> load(final URL location) throws IOException {
+        Path path = toFilePath(location);
+        if (path != null) {
+            return PropertiesParser.parse(path);
+        }
+        try (InputStream inputStream = location.openStream()) {
+            return PropertiesParser.parse(inputStream);
+        }
+    }
+
+
+    /**
+     * Fetches a properties file conditionally.  The validator holds the size and modification time of the file along
+     * with the hash of its content, separated by slashes.
+     *
+     * @param path the path of the file
+     * @param validator the validator of the previous fetch, or null
+     * @return the result of the fetch
+     * @throws IOException if the file exists but cannot be read
+     * @throws IllegalArgumentException if the file contains a malformed unicode escape
+     */
+    static ConfigurationFetch fetch(final Path path, final String validator) throws IOException {
+        String stamp;
+        byte[] content;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            stamp = attributes.size() + VALIDATOR_SEPARATOR + attributes.lastModifiedTime().toMillis()
+                    + VALIDATOR_SEPARATOR;
+            if (validator != null && validator.startsWith(stamp)) {
+                return ConfigurationFetch.notModified();
+            }
+            content = Files.readAllBytes(path);
+        } catch (NoSuchFileException nsfe) {
+            return fetchNotFound(validator);
+        }
+        return fetchContent(content, stamp, validator);
+    }
+
+
+    /**
+     * Fetches a properties file at a URL conditionally.  The validator holds the entity tag and modification time of
+     * the previous HTTP response, each empty if the response had none, along with the hash of the content, separated by
+     * line breaks, which cannot occur in HTTP headers.
+     *
+     * @param location the location of the file
+     * @param validator the validator of the previous fetch, or null
+     * @return the result of the fetch
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file contains a malformed unicode escape
+     */
+    static ConfigurationFetch fetch(final URL location, final String validator) throws IOException {
+        URLConnection connection = location.openConnection();
+        connection.setConnectTimeout(URL_TIMEOUT_MILLIS);
+        connection.setReadTimeout(URL_TIMEOUT_MILLIS);
+        String stamp = "";
+        if (connection instanceof HttpURLConnection) {
+            HttpURLConnection httpConnection = (HttpURLConnection)connection;
+            if (validator != null && !NOT_FOUND_VALIDATOR.equals(validator)) {
+                String[] parts = validator.split(HTTP_VALIDATOR_SEPARATOR, -1);
+                if (!parts[0].isEmpty()) {
+                    httpConnection.setRequestProperty("If-None-Match", parts[0]);
+                }
+                if (parts.length > 1 && !parts[1].isEmpty()) {
+                    httpConnection.setRequestProperty("If-Modified-Since", parts[1]);
+                }
+            }
+            int responseCode = httpConnection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                httpConnection.disconnect();
+                return ConfigurationFetch.notModified();
+            }
+            if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_GONE) {
+                httpConnection.disconnect();
+                return fetchNotFound(validator);
+            }
+            stamp = headerValue(httpConnection, "ETag") + HTTP_VALIDATOR_SEPARATOR
+                    + headerValue(httpConnection, "Last-Modified") + HTTP_VALIDATOR_SEPARATOR;
+        }
+        byte[] content;
+        try (InputStream inputStream = connection.getInputStream()) {
+            content = inputStream.readAllBytes();
+        }
+        return fetchContent(content, stamp, validator);
+    }
+
+
+    /**
+     * Creates the result of a fetch which found the content of a properties file, which is parsed only if its hash
+     * differs from the hash ending the previous validator.
+     *
+     * @param content the content of the file
+     * @param stamp the prefix of the validator identifying the version of the file without hashing it
+     * @param validator the validator of the previous fetch, or null
+     * @return the result of the fetch
+     * @throws IllegalArgumentException if the file contains a malformed unicode escape
+     */
+    private static ConfigurationFetch fetchContent(final byte[] content, final String stamp, final String validator) {
+        String hash = ConfigurationFetch.contentHash(content);
+        String nextValidator = stamp + hash;
+        if (validator != null && validator.endsWith(hash)) {
+            return ConfigurationFetch.notModified(nextValidator);
+        }
+        return ConfigurationFetch.modified(PropertiesParser.parse(content, content.length), nextValidator);
+    }
+
+
+    /**
+     * Creates the result of a fetch which found that a properties file does not exist.
+     *
+     * @param validator the validator of the previous fetch, or null
+     * @return the result of the fetch
+     */
+    private static ConfigurationFetch fetchNotFound(final String validator) {
+        if (NOT_FOUND_VALIDATOR.equals(validator)) {
+            return ConfigurationFetch.notModified();
+        }
+        return ConfigurationFetch.modified(null, NOT_FOUND_VALIDATOR);
+    }
+
+
+    /**
+     * Gets the value of the specified header of an HTTP response.
+     *
+     * @param connection the connection which received the response
+     * @param name the name of the header
+     * @return the value, or an empty string if the response has no such header
+     */
+    private static String headerValue(final HttpURLConnection connection, final String name) {
+        String value = connection.getHeaderField(name);
+        if (value == null) {
+            return "";
+        }
+        return value;
+    }
+
+
+    /**
+     * Converts the specified location of a file to a filesystem path.
+     *
+     * @param location the location of the file, or null
+     * @return the filesystem path, or null if the location is null or does not refer to the default filesystem
+     */
+    static Path toFilePath(final URL location) {
+        if (location == null || !"file".equals(location.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(location.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            logger.debug("Unable to convert location {} to a path.", location, e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Loads the properties of a source.
+     */
+    @FunctionalInterface
+    interface Loader {
+
+
+        /**
+         * Loads the properties.
+         *
+         * @return the properties, or null if the source is not available
+         * @throws IOException if the source is available but cannot be read
+         */
+        Map<?, ?> load() throws IOException;
+
+
+    }
+
+
+    /**
+     * Fetches the properties of a polling source conditionally.
+     */
+    @FunctionalInterface
+    interface Fetcher {
+
+
+        /**
+         * Fetches the properties unless they have not changed since the fetch which returned the specified validator.
+         *
+         * @param validator the validator of the previous fetch, or null to fetch unconditionally
+         * @return the result of the fetch
+         * @throws IOException if the source is available but cannot be read
+         */
+        ConfigurationFetch fetch(String validator) throws IOException;
+
+
+    }
+
+
+    /** A polling source whose properties are fetched by a fetcher. */
+    static final class PollingSource implements PollingConfigurationSource {
+
+        /** The name of the source. */
+        private final String name;
+
+        /** The ordinal of the source. */
+        private final int ordinal;
+
+        /** The interval between polls of the source. */
+        private final Duration pollInterval;
+
+        /** The fetcher of the properties. */
+        private final Fetcher fetcher;
+
+
+        /**
+         * Instantiates a new polling source.
+         *
+         * @param name the name of the source
+         * @param ordinal the ordinal of the source
+         * @param pollInterval the interval between polls of the source
+         * @param fetcher the fetcher of the properties
+         */
+        PollingSource(final String name, final int ordinal, final Duration pollInterval, final Fetcher fetcher) {
+            if (pollInterval.isNegative() || pollInterval.isZero()) {
+                throw new IllegalArgumentException("The poll interval must be positive: " + pollInterval);
+            }
+            this.name = name;
+            this.ordinal = ordinal;
+            this.pollInterval = pollInterval;
+            this.fetcher = fetcher;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public String getName() {
+            return name;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public int getOrdinal() {
+            return ordinal;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Duration getPollInterval() {
+            return pollInterval;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public ConfigurationFetch fetch(final String validator) throws IOException {
+            return fetcher.fetch(validator);
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return "PollingConfigurationSource{name=" + name + ", ordinal=" + ordinal + ", pollInterval="
+                    + pollInterval + '}';
+        }
+
+
+    }
+
+
+    /** A source whose properties are loaded by a loader. */
+    static final class Source implements ConfigurationSource {
+
+        /** The name of the source. */
+        private final String name;
+
+        /** The ordinal of the source. */
+        private final int ordinal;
+
+        /** Whether the loader returns a new mutable map which may be published without being copied. */
+        private final boolean loadsOwnedMaps;
+
+        /** The loader of the properties. */
+        private final Loader loader;
+
+
+        /**
+         * Instantiates a new source.
+         *
+         * @param name the name of the source
+         * @param ordinal the ordinal of the source
+         * @param loadsOwnedMaps whether the loader returns a new mutable map which may be published without copying
+         * @param loader the loader of the properties
+         */
+        Source(final String name, final int ordinal, final boolean loadsOwnedMaps, final Loader loader) {
+            this.name = name;
+            this.ordinal = ordinal;
+            this.loadsOwnedMaps = loadsOwnedMaps;
+            this.loader = loader;
+        }
+
+
+        /**
+         * Determines whether the maps loaded by this source are new mutable maps which may be published without being
+         * copied.
+         *
+         * @return true if loaded maps are owned by the caller, false otherwise
+         */
+        boolean loadsOwnedMaps() {
+            return loadsOwnedMaps;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public String getName() {
+            return name;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public int getOrdinal() {
+            return ordinal;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Map<?, ?> load() throws IOException {
+            return loader.load();
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return "ConfigurationSource{name=" + name + ", ordinal=" + ordinal + '}';
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+/**
+ * The ways in which a {@link Configuration} may store the properties of its snapshots.
+ *
+ * @author Phillip Ross
+ * @see Configuration#setStorageMode(ConfigurationStorageMode)
+ */
+public enum ConfigurationStorageMode {
+
+    /**
+     * Properties are stored in a hash map, and property names in a sorted array.  Reads are fastest, and iterating
+     * the properties allocates nothing per property.
+     */
+    STANDARD,
+
+    /**
+     * Properties are stored in flat arrays with a far smaller footprint per property.  Property names are split into
+     * a prefix, up to and including their last dot, and a remainder, and each distinct prefix, remainder and value is
+     * stored once.  Reads by name remain allocation free, but iterating the properties creates each name it visits.
+     */
+    COMPACT,
+
+    /**
+     * Properties are stored as with {@link #COMPACT}, except that the distinct values are encoded in memory outside of
+     * the heap, which then only holds their offsets.  Each read of a value decodes a new string.
+     */
+    COMPACT_OFF_HEAP
+
+}
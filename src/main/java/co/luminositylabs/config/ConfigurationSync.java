@@ -0,0 +1,369 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Keeps the properties of a {@link Configuration} in sync with the configurations of other nodes of a cluster.
+ * <p>
+ * Properties changed on one node, whether set programmatically or by a reload, are sent to the other nodes as deltas
+ * holding only the changed properties.  Changes made in quick succession are batched into a single delta sent after
+ * the {@link #setBatchDelay(Duration) batch delay}.  Each change is stamped with the time of a hybrid logical clock and
+ * the identifier of its node, and conflicting changes of the same property are resolved by the last writer winning:
+ * every node keeps the change with the latest stamp, so the nodes converge on the same properties whatever order the
+ * changes arrive in.  A local change which has not been sent yet always wins over a remote change received meanwhile.
+ * <p>
+ * The properties a node holds when it starts syncing are considered its initial properties, which are not sent and
+ * lose against any change.  A node starting later than its peers requests the latest change of every property from
+ * them, so it catches up with the changes it missed without the peers sending their entire configurations.
+ * <p>
+ * Only properties whose names and values are strings are synced, and values are synced as they were set, before their
+ * placeholders are resolved.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationSync implements AutoCloseable {
+
+    /** The static logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationSync.class);
+
+    /** The default delay after a change before the batch of changes made meanwhile is sent. */
+    public static final Duration DEFAULT_BATCH_DELAY = Duration.ofMillis(50L);
+
+    /** The configuration kept in sync. */
+    private final Configuration configuration;
+
+    /** The transport exchanging messages with the other nodes. */
+    private final ConfigurationSyncTransport transport;
+
+    /** The identifier of this node, which must be unique within the cluster. */
+    private final String nodeId;
+
+    /** The listener of the changes of the configuration. */
+    private final ConfigurationListener listener = this::configurationChanged;
+
+    /** The delay after a change before the batch of changes made meanwhile is sent. */
+    private volatile Duration batchDelay = DEFAULT_BATCH_DELAY;
+
+    /** The latest change known of each property, including the initial properties and removals. */
+    private final Map<String, ConfigurationSyncMessage.Change> changes = new HashMap<>();
+
+    /** The local changes which have not been sent yet. */
+    private Map<String, ConfigurationSyncMessage.Change> pendingChanges = new LinkedHashMap<>();
+
+    /** Whether sending the pending changes has been scheduled. */
+    private boolean flushScheduled;
+
+    /** The latest time of the hybrid logical clock, in milliseconds. */
+    private long clock;
+
+    /** Whether this node has started syncing. */
+    private boolean started;
+
+    /** Whether this node has stopped syncing. */
+    private boolean closed;
+
+
+    /**
+     * Instantiates a new sync of the specified configuration, which starts when {@link #start()} is called.
+     *
+     * @param configuration the configuration kept in sync
+     * @param transport the transport exchanging messages with the other nodes
+     * @param nodeId the identifier of this node, which must be unique within the cluster
+     */
+    public ConfigurationSync(final Configuration configuration,
+                             final ConfigurationSyncTransport transport,
+                             final String nodeId) {
+        this.configuration = Objects.requireNonNull(configuration);
+        this.transport = Objects.requireNonNull(transport);
+        this.nodeId = Objects.requireNonNull(nodeId);
+    }
+
+
+    /**
+     * Gets the identifier of this node.
+     *
+     * @return the identifier
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+
+    /**
+     * Sets the delay after a change before the batch of changes made meanwhile is sent.
+     *
+     * @param batchDelay the delay, which may be zero
+     * @throws IllegalArgumentException if the delay is negative
+     */
+    public void setBatchDelay(final Duration batchDelay) {
+        if (batchDelay.isNegative()) {
+            throw new IllegalArgumentException("The batch delay must not be negative: " + batchDelay);
+        }
+        this.batchDelay = batchDelay;
+    }
+
+
+    /**
+     * Starts syncing: records the current properties as the initial properties of this node, connects to the
+     * transport, and requests the changes known to the other nodes.
+     *
+     * @throws IllegalStateException if this sync has already been started
+     */
+    public void start() {
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("Configuration sync of node " + nodeId + " was already started.");
+            }
+            started = true;
+            configuration.addListener(listener);
+            ConfigurationSnapshot snapshot = configuration.getSnapshot();
+            snapshot.forEach((propertyName, value) -> changes.put(
+                    propertyName,
+                    new ConfigurationSyncMessage.Change(rawValue(snapshot, propertyName), 0L, "")
+            ));
+        }
+        transport.connect(nodeId, this::received);
+        transport.broadcast(new ConfigurationSyncMessage(
+                ConfigurationSyncMessage.Kind.JOIN, nodeId, Collections.emptyMap()
+        ));
+        logger.debug("Started configuration sync of node {}", nodeId);
+    }
+
+
+    /**
+     * Sends the pending local changes to the other nodes immediately, rather than after the batch delay.
+     */
+    public void flush() {
+        Map<String, ConfigurationSyncMessage.Change> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+            batch = pendingChanges;
+            pendingChanges = new LinkedHashMap<>();
+        }
+        try {
+            transport.broadcast(new ConfigurationSyncMessage(ConfigurationSyncMessage.Kind.DELTA, nodeId, batch));
+            logger.debug("Node {} sent {} changed properties", nodeId, batch.size());
+        } catch (RuntimeException re) {
+            logger.warn("Node {} was unable to send {} changed properties, retrying with the next batch.", nodeId,
+                    batch.size(), re);
+            synchronized (this) {
+                batch.forEach(pendingChanges::putIfAbsent);
+            }
+        }
+    }
+
+
+    /**
+     * Stops syncing after sending the pending local changes.  Changes made afterwards are neither sent nor received.
+     */
+    @Override
+    public void close() {
+        configuration.removeListener(listener);
+        flush();
+        synchronized (this) {
+            closed = true;
+        }
+        transport.disconnect(nodeId);
+        logger.debug("Stopped configuration sync of node {}", nodeId);
+    }
+
+
+    /**
+     * Stamps the properties changed locally and schedules sending them.
+     *
+     * @param event the event describing the changes
+     */
+    private void configurationChanged(final ConfigurationChangeEvent event) {
+        ConfigurationSnapshot snapshot = event.getSnapshot();
+        List<Object> keys = new ArrayList<>(event.getAddedKeys());
+        keys.addAll(event.getChangedKeys());
+        keys.addAll(event.getRemovedKeys());
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (Object key : keys) {
+                if (key instanceof String) {
+                    recordLocalChange((String)key, rawValue(snapshot, (String)key));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Receives a message from another node.
+     *
+     * @param message the message
+     */
+    private void received(final ConfigurationSyncMessage message) {
+        if (message.getKind() == ConfigurationSyncMessage.Kind.JOIN) {
+            Map<String, ConfigurationSyncMessage.Change> known = new LinkedHashMap<>();
+            synchronized (this) {
+                changes.forEach((propertyName, change) -> {
+                    if (change.getTimestamp() != 0L) {
+                        known.put(propertyName, change);
+                    }
+                });
+            }
+            logger.debug("Node {} sending {} changed properties to joining node {}", nodeId, known.size(),
+                    message.getSender());
+            transport.send(message.getSender(), new ConfigurationSyncMessage(
+                    ConfigurationSyncMessage.Kind.SNAPSHOT, nodeId, known
+            ));
+        } else {
+            apply(message.getChanges());
+        }
+    }
+
+
+    /**
+     * Applies the specified remote changes which win over the changes known locally, as a single update of the
+     * configuration.
+     *
+     * @param remoteChanges the remote changes keyed by property name
+     */
+    private void apply(final Map<String, ConfigurationSyncMessage.Change> remoteChanges) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (ConfigurationSyncMessage.Change change : remoteChanges.values()) {
+                clock = Math.max(clock, change.getTimestamp());
+            }
+        }
+        configuration.update(update -> {
+            synchronized (this) {
+                for (Map.Entry<String, ConfigurationSyncMessage.Change> entry : remoteChanges.entrySet()) {
+                    applyChange(update, entry.getKey(), entry.getValue());
+                }
+            }
+        }, ConfigurationRevision.Origin.SYNC);
+    }
+
+
+    /**
+     * Stages the specified remote change of a property, if it wins over the change known locally.  Must be called while
+     * holding the monitor of this sync, from the mutator of a configuration update.
+     *
+     * @param update the configuration update
+     * @param propertyName the name of the property
+     * @param change the remote change
+     */
+    private void applyChange(final ConfigurationUpdate update,
+                             final String propertyName,
+                             final ConfigurationSyncMessage.Change change) {
+        ConfigurationSyncMessage.Change known = changes.get(propertyName);
+        if (known != null && !change.supersedes(known)) {
+            return;
+        }
+        String value = rawValue(update.getSnapshot(), propertyName);
+        if (!Objects.equals(value, knownValue(known))) {
+            // The property was changed locally since the latest change known, and that change is later still.
+            recordLocalChange(propertyName, value);
+            return;
+        }
+        changes.put(propertyName, change);
+        pendingChanges.remove(propertyName);
+        if (change.getValue() == null) {
+            update.remove(propertyName);
+        } else {
+            update.put(propertyName, change.getValue());
+        }
+    }
+
+
+    /**
+     * Stamps a local change of the specified property, unless its value is the latest known, and schedules sending it.
+     * Must be called while holding the monitor of this sync.
+     *
+     * @param propertyName the name of the property
+     * @param value the local value of the property, or null if it was removed
+     */
+    private void recordLocalChange(final String propertyName, final String value) {
+        ConfigurationSyncMessage.Change known = changes.get(propertyName);
+        if (Objects.equals(value, knownValue(known))) {
+            return;
+        }
+        clock = Math.max(clock + 1L, System.currentTimeMillis());
+        ConfigurationSyncMessage.Change change = new ConfigurationSyncMessage.Change(value, clock, nodeId);
+        changes.put(propertyName, change);
+        pendingChanges.put(propertyName, change);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            CompletableFuture.delayedExecutor(batchDelay.toNanos(), TimeUnit.NANOSECONDS).execute(this::flush);
+        }
+    }
+
+
+    /**
+     * Gets the value of the specified change.
+     *
+     * @param change the change, or null if no change is known
+     * @return the value, or null if the change removed the property or no change is known
+     */
+    private static String knownValue(final ConfigurationSyncMessage.Change change) {
+        if (change == null) {
+            return null;
+        }
+        return change.getValue();
+    }
+
+
+    /**
+     * Gets the value of the specified property as it was set, before its placeholders were resolved.
+     *
+     * @param snapshot the snapshot holding the property
+     * @param propertyName the name of the property
+     * @return the value, or null if the property does not exist or its value is not a string
+     */
+    private static String rawValue(final ConfigurationSnapshot snapshot, final String propertyName) {
+        Object value = snapshot.getRawValue(propertyName);
+        if (value instanceof String) {
+            return (String)value;
+        }
+        return null;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationSync{nodeId=" + nodeId + '}';
+    }
+
+
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * A message exchanged by the {@link ConfigurationSync} instances of a cluster through a
+ * {@link ConfigurationSyncTransport}.
+ * <p>
+ * Messages carry {@link Change changes} of individual properties, each stamped with the time and node it was made
+ * at, rather than whole configurations.  Messages are immutable and serializable, so transports may send them with
+ * Java serialization.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationSyncMessage implements Serializable {
+
+    private static final long serialVersionUID = -2147207424843815604L;
+
+    /** The kinds of messages. */
+    public enum Kind {
+
+        /** The properties changed on the sending node since its previous delta. */
+        DELTA,
+
+        /** The sending node joined the cluster and requests the changes known to its peers. */
+        JOIN,
+
+        /** The latest change of each property known to the sending node, sent in reply to a join. */
+        SNAPSHOT
+
+    }
+
+    /** The kind of the message. */
+    private final Kind kind;
+
+    /** The identifier of the node which sent the message. */
+    private final String sender;
+
+    /** The changes carried by the message, keyed by property name. */
+    private final Map<String, Change> changes;
+
+
+    /**
+     * Instantiates a new message.
+     *
+     * @param kind the kind of the message
+     * @param sender the identifier of the node which sent the message
+     * @param changes the changes carried by the message, keyed by property name, which are copied
+     */
+    ConfigurationSyncMessage(final Kind kind, final String sender, final Map<String, Change> changes) {
+        this.kind = Objects.requireNonNull(kind);
+        this.sender = Objects.requireNonNull(sender);
+        this.changes = Collections.unmodifiableMap(new LinkedHashMap<>(changes));
+    }
+
+
+    /**
+     * Gets the kind of the message.
+     *
+     * @return the kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+
+    /**
+     * Gets the identifier of the node which sent the message.
+     *
+     * @return the identifier
+     */
+    public String getSender() {
+        return sender;
+    }
+
+
+    /**
+     * Gets the changes carried by the message.
+     *
+     * @return an unmodifiable map of the changes keyed by property name
+     */
+    public Map<String, Change> getChanges() {
+        return changes;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationSyncMessage{"
+                + "kind=" + kind
+                + ", sender=" + sender
+                + ", changes=" + changes.size()
+                + '}';
+    }
+
+
+    /**
+     * A change of a property, stamped with the time and node it was made at.
+     * <p>
+     * Of two changes of the same property, the one with the later timestamp wins, and a tie is broken by the node
+     * identifier, so every node picks the same winner regardless of the order changes arrive in.
+     */
+    public static final class Change implements Serializable {
+
+        private static final long serialVersionUID = 6093170612818389733L;
+
+        /** The value of the property, or null if the change removed it. */
+        private final String value;
+
+        /** The timestamp of the change, in milliseconds of a hybrid logical clock, or 0 for an initial value. */
+        private final long timestamp;
+
+        /** The identifier of the node the change was made at. */
+        private final String nodeId;
+
+
+        /**
+         * Instantiates a new change.
+         *
+         * @param value the value of the property, or null if the change removed it
+         * @param timestamp the timestamp of the change
+         * @param nodeId the identifier of the node the change was made at
+         */
+        Change(final String value, final long timestamp, final String nodeId) {
+            this.value = value;
+            this.timestamp = timestamp;
+            this.nodeId = Objects.requireNonNull(nodeId);
+        }
+
+
+        /**
+         * Gets the value of the property.
+         *
+         * @return the value, or null if the change removed the property
+         */
+        public String getValue() {
+            return value;
+        }
+
+
+        /**
+         * Gets the timestamp of the change.
+         *
+         * @return the timestamp in milliseconds of a hybrid logical clock, or 0 for the initial value of a property
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+
+        /**
+         * Gets the identifier of the node the change was made at.
+         *
+         * @return the identifier
+         */
+        public String getNodeId() {
+            return nodeId;
+        }
+
+
+        /**
+         * Determines whether this change wins over the specified change of the same property.
+         *
+         * @param other the other change
+         * @return true if this change was made later, or at the same time at a node with a greater identifier
+         */
+        public boolean supersedes(final Change other) {
+            if (timestamp != other.timestamp) {
+                return timestamp > other.timestamp;
+            }
+            return nodeId.compareTo(other.nodeId) > 0;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return "Change{"
+                    + "value=" + value
+                    + ", timestamp=" + timestamp
+                    + ", nodeId=" + nodeId
+                    + '}';
+        }
+
+
+    }
+
+
+}
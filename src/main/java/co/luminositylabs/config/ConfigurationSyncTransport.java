@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.util.function.Consumer;
+
+
+/**
+ * The means by which the {@link ConfigurationSync} instances of a cluster exchange messages.
+ * <p>
+ * Transports need not preserve the order of messages, nor deliver them exactly once, since applying changes is
+ * idempotent and their order is decided by their stamps.  A lost delta is recovered by the next change of the same
+ * property or when a node rejoins.  {@link LoopbackSyncTransport} connects instances within a single JVM.
+ *
+ * @author Phillip Ross
+ */
+public interface ConfigurationSyncTransport {
+
+
+    /**
+     * Connects the specified node, which receives the messages sent to it or broadcast by other nodes.
+     *
+     * @param nodeId the identifier of the node
+     * @param receiver the receiver of the messages, which may be invoked concurrently
+     */
+    void connect(String nodeId, Consumer<ConfigurationSyncMessage> receiver);
+
+
+    /**
+     * Disconnects the specified node, which receives no further messages.
+     *
+     * @param nodeId the identifier of the node
+     */
+    void disconnect(String nodeId);
+
+
+    /**
+     * Sends the specified message to every connected node other than its sender.
+     *
+     * @param message the message
+     */
+    void broadcast(ConfigurationSyncMessage message);
+
+
+    /**
+     * Sends the specified message to the specified node, if it is connected.
+     *
+     * @param nodeId the identifier of the node
+     * @param message the message
+     */
+    void send(String nodeId, ConfigurationSyncMessage message);
+
+
+}
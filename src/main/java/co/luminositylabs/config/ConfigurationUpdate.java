@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+
+/**
+ * The changes made by one {@link Configuration#update update} of a configuration, which are published together as a
+ * single snapshot.
+ * <p>
+ * An update stages puts and removes against the snapshot it was started from.  Nothing is visible to readers of the
+ * configuration until the mutator passed to {@link Configuration#update} or {@link Configuration#compareAndUpdate}
+ * returns, at which point all of the staged changes are published atomically, or none of them are if the mutator
+ * throws.  An update may only be used by the mutator it was passed to.
+ *
+ * @author Phillip Ross
+ */
+public final class ConfigurationUpdate {
+
+    /** The snapshot the changes are made against. */
+    private final ConfigurationSnapshot base;
+
+    /** The staged changes in the order they were made, where a null value removes the key. */
+    private final Map<Object, Object> changes = new LinkedHashMap<>();
+
+    /** Whether the mutator the update was passed to has returned. */
+    private boolean closed;
+
+
+    /**
+     * Instantiates a new update of the specified snapshot.
+     *
+     * @param base the snapshot the changes are made against
+     */
+    ConfigurationUpdate(final ConfigurationSnapshot base) {
+        this.base = base;
+    }
+
+
+    /**
+     * Gets the snapshot the changes are made against, which does not reflect the staged changes.
+     *
+     * @return the snapshot
+     */
+    public ConfigurationSnapshot getSnapshot() {
+        return base;
+    }
+
+
+    /**
+     * Stages setting the specified property to the specified value.
+     *
+     * @param propertyName the property name to be set
+     * @param propertyValue the property value to set the property to
+     * @return this update
+     * @throws NullPointerException if the name or value is null
+     */
+    public ConfigurationUpdate setProperty(final String propertyName, final String propertyValue) {
+        return put(propertyName, propertyValue);
+    }
+
+
+    /**
+     * Stages setting the specified key to the specified value.
+     *
+     * @param key the key
+     * @param value the value
+     * @return this update
+     * @throws NullPointerException if the key or value is null
+     */
+    public ConfigurationUpdate put(final Object key, final Object value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        checkOpen();
+        changes.put(key, value);
+        return this;
+    }
+
+
+    /**
+     * Stages setting each of the specified keys to its value.
+     *
+     * @param map the keys and values
+     * @return this update
+     * @throws NullPointerException if the map, or any of its keys or values, is null
+     */
+    public ConfigurationUpdate putAll(final Map<?, ?> map) {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            Objects.requireNonNull(entry.getKey());
+            Objects.requireNonNull(entry.getValue());
+        }
+        checkOpen();
+        changes.putAll(map);
+        return this;
+    }
+
+
+    /**
+     * Stages removing the specified key.  Removing a key which does not exist changes nothing.
+     *
+     * @param key the key
+     * @return this update
+     * @throws NullPointerException if the key is null
+     */
+    public ConfigurationUpdate remove(final Object key) {
+        Objects.requireNonNull(key);
+        checkOpen();
+        changes.put(key, null);
+        return this;
+    }
+
+
+    /**
+     * Gets the value of the specified key as staged by this update, or as held by the snapshot the update was started
+     * from if the update has not changed it.  Staged values have not had their placeholders resolved yet.
+     *
+     * @param key the key
+     * @return the value, or null if the key does not exist or is staged to be removed
+     */
+    public Object get(final Object key) {
+        checkOpen();
+        if (changes.containsKey(key)) {
+            return changes.get(key);
+        }
+        return base.get(key);
+    }
+
+
+    /**
+     * Determines whether any changes have been staged.
+     *
+     * @return true if no changes have been staged
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+
+    /**
+     * Closes this update to further changes and creates the snapshot succeeding its base snapshot with the staged
+     * changes applied.  Does not need the write lock, since snapshots are immutable.
+     *
+     * @param changedKeys the set to which the keys changed by the successor are added
+     * @return the successor, or the base snapshot if nothing was changed
+     */
+    ConfigurationSnapshot apply(final Set<Object> changedKeys) {
+        closed = true;
+        Map<Object, Object> nextEntries = null;
+        for (Map.Entry<Object, Object> change : changes.entrySet()) {
+            Object key = change.getKey();
+            Object value = change.getValue();
+            if (value != null || base.containsKey(key)) {
+                if (nextEntries == null) {
+                    nextEntries = base.copyEntries();
+                }
+                if (value == null) {
+                    nextEntries.remove(key);
+                } else {
+                    nextEntries.put(key, value);
+                }
+                changedKeys.add(key);
+            }
+        }
+        if (nextEntries == null) {
+            return base;
+        }
+        return base.successor(nextEntries, changedKeys);
+    }
+
+
+    /**
+     * Closes this update to further changes without applying them.
+     */
+    void close() {
+        closed = true;
+    }
+
+
+    /**
+     * Checks that the mutator this update was passed to has not returned.
+     *
+     * @throws IllegalStateException if the mutator has returned
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The configuration update has already been applied.");
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "ConfigurationUpdate{"
+                + "baseVersion=" + base.getVersion()
+                + ", changes=" + changes.keySet()
+                + '}';
+    }
+
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+
+/**
+ * The shared converters used to convert string property values into typed values.
+ * <p>
+ * Converters are shared instances because {@link ParsedValueCache} distinguishes converted values by the identity of
+ * the converter which produced them.  All converters ignore leading and trailing whitespace.
+ *
+ * @author Phillip Ross
+ */
+final class Converters {
+
+    /** Converts a value to an {@code Integer} using {@link Integer#valueOf(String)}. */
+    static final Function<String, Integer> INTEGER = value -> Integer.valueOf(value.trim());
+
+    /** Converts a value to a {@code Long} using {@link Long#valueOf(String)}. */
+    static final Function<String, Long> LONG = value -> Long.valueOf(value.trim());
+
+    /** Converts a value to a {@code Double} using {@link Double#valueOf(String)}. */
+    static final Function<String, Double> DOUBLE = value -> Double.valueOf(value.trim());
+
+    /** Converts a value to a {@code Boolean} using {@link Boolean#valueOf(String)}. */
+    static final Function<String, Boolean> BOOLEAN = value -> Boolean.valueOf(value.trim());
+
+    /** Converts an ISO-8601 value such as {@code PT30S} to a {@code Duration} using {@link Duration#parse}. */
+    static final Function<String, Duration> DURATION = Converters::toDuration;
+
+    /** Converts a comma separated value to an unmodifiable list of its trimmed, non-empty elements. */
+    static final Function<String, List<String>> LIST = Converters::toList;
+
+    /** The enum converters, one shared instance per enum type. */
+    private static final ClassValue<Function<String, ?>> ENUM_CONVERTERS = new ClassValue<Function<String, ?>>() {
+        @Override
+        protected Function<String, ?> computeValue(final Class<?> type) {
+            return value -> toEnum(type, value);
+        }
+    };
+
+
+    /** Prevents instantiation of this utility class. */
+    private Converters() {
+    }
+
+
+    /**
+     * Gets the shared converter for the specified enum type, which converts a value using
+     * {@link Enum#valueOf(Class, String)}.
+     *
+     * @param enumType the enum type
+     * @param <E> the enum type
+     * @return the converter
+     */
+    @SuppressWarnings("unchecked")
+    static <E extends Enum<E>> Function<String, E> forEnum(final Class<E> enumType) {
+        return (Function<String, E>)ENUM_CONVERTERS.get(enumType);
+    }
+
+
+    /**
+     * Converts an ISO-8601 duration value.
+     *
+     * @param value the value
+     * @return the duration
+     * @throws IllegalArgumentException if the value is not a valid ISO-8601 duration
+     */
+    private static Duration toDuration(final String value) {
+        try {
+            return Duration.parse(value.trim());
+        } catch (DateTimeParseException dtpe) {
+            throw new IllegalArgumentException("Invalid duration: " + value, dtpe);
+        }
+    }
+
+
+    /**
+     * Converts a comma separated value.
+     *
+     * @param value the value
+     * @return the trimmed, non-empty elements
+     */
+    private static List<String> toList(final String value) {
+        List<String> elements = new ArrayList<>();
+        for (String element : value.split(",")) {
+            String trimmedElement = element.trim();
+            if (!trimmedElement.isEmpty()) {
+                elements.add(trimmedElement);
+            }
+        }
+        return Collections.unmodifiableList(elements);
+    }
+
+
+    /**
+     * Converts a value to a constant of the specified enum type.
+     *
+     * @param type the enum type
+     * @param value the value
+     * @return the enum constant
+     * @throws IllegalArgumentException if the enum type has no constant with the specified name
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object toEnum(final Class<?> type, final String value) {
+        return Enum.valueOf((Class)type, value.trim());
+    }
+
+
+}
@@ -0,0 +1,616 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+
+/**
+ * Resolves {@code ${name}} placeholders in property values when a snapshot is built, and records the dependencies
+ * between properties so that a change only re-resolves the properties depending on it.
+ * <p>
+ * A placeholder is replaced by the value of the named string property, and {@code ${name:fallback}} is replaced by
+ * the fallback when the property does not exist.  Names and fallbacks may themselves contain placeholders.  A
+ * placeholder preceded by a backslash is not resolved, the backslash being removed.  A placeholder which cannot be
+ * resolved and has no fallback is left as it is.  Properties whose placeholders refer to each other in a cycle, and
+ * the properties referring to them directly or indirectly, keep their values unresolved.
+ * <p>
+ * Snapshot entries hold resolved values, so reads never interpolate.  This object keeps the unresolved values of the
+ * properties containing placeholders, along with the names each of them looked up when it was last resolved.
+ * Instances are immutable.
+ *
+ * @author Phillip Ross
+ */
+final class Interpolation implements Serializable {
+
+    private static final long serialVersionUID = -6120598314487254218L;
+
+    /** The static logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(Interpolation.class);
+
+    /** The interpolation of entries without placeholders. */
+    static final Interpolation NONE = new Interpolation(
+            Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptySet()
+    );
+
+    /** The beginning of a placeholder. */
+    private static final String PLACEHOLDER_START = "${";
+
+    /** The end of a placeholder. */
+    private static final char PLACEHOLDER_END = '}';
+
+    /** The separator of the name and fallback of a placeholder. */
+    private static final char FALLBACK_SEPARATOR = ':';
+
+    /** The character which prevents the resolution of a following placeholder. */
+    private static final char ESCAPE = '\\';
+
+    /** The unresolved values of the properties containing placeholders. */
+    private final Map<Object, String> templates;
+
+    /** The names looked up by each property containing placeholders when it was last resolved. */
+    private final Map<Object, Set<String>> references;
+
+    /** The properties containing placeholders which looked up each name when they were last resolved. */
+    private final Map<String, Set<Object>> dependents;
+
+    /** The properties left unresolved because their placeholders refer to a cycle. */
+    private final Set<Object> cyclicKeys;
+
+
+    /**
+     * Instantiates a new interpolation which takes ownership of the specified maps and set.
+     *
+     * @param templates the unresolved values of the properties containing placeholders
+     * @param references the names looked up by each property containing placeholders
+     * @param dependents the properties containing placeholders which looked up each name
+     * @param cyclicKeys the properties left unresolved because their placeholders refer to a cycle
+     */
+    private Interpolation(final Map<Object, String> templates,
+                          final Map<Object, Set<String>> references,
+                          final Map<String, Set<Object>> dependents,
+                          final Set<Object> cyclicKeys) {
+        this.templates = templates;
+        this.references = references;
+        this.dependents = dependents;
+        this.cyclicKeys = cyclicKeys;
+    }
+
+
+    /**
+     * Resolves the placeholders of all specified entries, replacing their values with the resolved values.
+     *
+     * @param entries the entries, whose values are unresolved on entry and resolved on return
+     * @return the interpolation of the entries
+     */
+    static Interpolation of(final Map<Object, Object> entries) {
+        Map<Object, String> templates = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            if (isTemplate(entry.getValue())) {
+                templates.put(entry.getKey(), (String)entry.getValue());
+            }
+        }
+        if (templates.isEmpty()) {
+            return NONE;
+        }
+        Resolver resolver = new Resolver(
+                entries, templates, new HashMap<>(), new HashMap<>(), new HashSet<>(), templates.keySet()
+        );
+        return resolver.resolveAll();
+    }
+
+
+    /**
+     * Resolves the placeholders of the specified changed entries and of the entries depending on them, replacing their
+     * values with the resolved values.  The values of all other entries must already be resolved.
+     *
+     * @param nextEntries the entries, whose changed values are unresolved on entry, and all values resolved on return
+     * @param changedKeys the keys whose values changed, to which the keys of the re-resolved entries are added
+     * @return the interpolation of the entries
+     */
+    Interpolation update(final Map<Object, Object> nextEntries, final Set<Object> changedKeys) {
+        boolean templated = !templates.isEmpty();
+        for (Object key : changedKeys) {
+            templated |= isTemplate(nextEntries.get(key));
+        }
+        if (!templated) {
+            return this;
+        }
+        Set<Object> affectedKeys = new HashSet<>(changedKeys);
+        Deque<Object> pending = new ArrayDeque<>(changedKeys);
+        while (!pending.isEmpty()) {
+            Object key = pending.remove();
+            if (key instanceof String) {
+                for (Object dependent : dependents.getOrDefault(key, Collections.emptySet())) {
+                    if (affectedKeys.add(dependent)) {
+                        pending.add(dependent);
+                    }
+                }
+            }
+        }
+        Map<Object, String> nextTemplates = new HashMap<>(templates);
+        for (Object key : changedKeys) {
+            Object value = nextEntries.get(key);
+            if (isTemplate(value)) {
+                nextTemplates.put(key, (String)value);
+            } else {
+                nextTemplates.remove(key);
+            }
+        }
+        Set<Object> unresolvedKeys = new HashSet<>();
+        for (Object key : affectedKeys) {
+            if (nextTemplates.containsKey(key)) {
+                unresolvedKeys.add(key);
+            }
+        }
+        changedKeys.addAll(affectedKeys);
+        Resolver resolver = new Resolver(
+                nextEntries,
+                nextTemplates,
+                new HashMap<>(references),
+                new HashMap<>(dependents),
+                new HashSet<>(cyclicKeys),
+                unresolvedKeys
+        );
+        for (Object key : affectedKeys) {
+            resolver.forget(key);
+        }
+        return resolver.resolveAll();
+    }
+
+
+    /**
+     * Resolves again the properties depending directly or indirectly on the specified overridden names, looking up
+     * every other name through the specified function.  The overridden properties themselves are not resolved, and
+     * this interpolation is not modified.
+     *
+     * @param overriddenNames the names of the overridden properties
+     * @param values the function giving the value of a property, taking the overrides into account
+     * @return the resolved values of the properties depending on the overridden names, keyed by property
+     */
+    Map<Object, Object> resolveDependents(final Set<String> overriddenNames, final Function<Object, Object> values) {
+        Set<Object> affectedKeys = new HashSet<>();
+        Deque<Object> pending = new ArrayDeque<>(overriddenNames);
+        while (!pending.isEmpty()) {
+            Object key = pending.remove();
+            if (key instanceof String) {
+                for (Object dependent : dependents.getOrDefault(key, Collections.emptySet())) {
+                    if (!overriddenNames.contains(dependent) && affectedKeys.add(dependent)) {
+                        pending.add(dependent);
+                    }
+                }
+            }
+        }
+        if (affectedKeys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<Object> nextCyclicKeys = new HashSet<>(cyclicKeys);
+        nextCyclicKeys.removeAll(overriddenNames);
+        Map<Object, Object> resolved = new HashMap<>();
+        Resolver resolver = new Resolver(
+                new OverlaidEntries(resolved, values),
+                templates,
+                new HashMap<>(),
+                new HashMap<>(),
+                nextCyclicKeys,
+                affectedKeys
+        );
+        for (Object key : affectedKeys) {
+            resolver.forget(key);
+        }
+        resolver.resolvePending();
+        return resolved;
+    }
+
+
+    /**
+     * Gets the unresolved value of the specified property.
+     *
+     * @param key the key of the property
+     * @return the unresolved value, or null if the value of the property contains no placeholders
+     */
+    String template(final Object key) {
+        return templates.get(key);
+    }
+
+
+    /**
+     * Determines whether the specified value contains a placeholder.
+     *
+     * @param value the value
+     * @return true if the value is a string containing a placeholder, false otherwise
+     */
+    private static boolean isTemplate(final Object value) {
+        return value instanceof String && ((String)value).contains(PLACEHOLDER_START);
+    }
+
+
+    /** Resolves the placeholders of a set of entries, recording the names each of them looks up. */
+    private static final class Resolver {
+
+        /** The entries whose values are resolved. */
+        private final Map<Object, Object> entries;
+
+        /** The unresolved values of all properties containing placeholders. */
+        private final Map<Object, String> templates;
+
+        /** The names looked up by each property containing placeholders. */
+        private final Map<Object, Set<String>> references;
+
+        /** The properties which looked up each name, whose sets are shared until copied. */
+        private final Map<String, Set<Object>> dependents;
+
+        /** The names whose sets of dependents have been copied and may be modified. */
+        private final Set<String> copiedDependents = new HashSet<>();
+
+        /** The keys of the entries still to be resolved. */
+        private final Set<Object> unresolvedKeys;
+
+        /** The keys of the entries being resolved, innermost last. */
+        private final Deque<Object> resolvingKeys = new ArrayDeque<>();
+
+        /** The keys of the entries left unresolved because they refer to a cycle. */
+        private final Set<Object> cyclicKeys;
+
+        /** The keys of the entries found to refer to a cycle by this resolver. */
+        private final Set<Object> detectedCyclicKeys = new HashSet<>();
+
+
+        /**
+         * Instantiates a new resolver which modifies the specified maps.
+         *
+         * @param entries the entries whose values are resolved
+         * @param templates the unresolved values of all properties containing placeholders
+         * @param references the names looked up by each property containing placeholders
+         * @param dependents the properties which looked up each name, whose sets are shared until copied
+         * @param cyclicKeys the keys of the entries left unresolved because they refer to a cycle
+         * @param unresolvedKeys the keys of the entries to be resolved
+         */
+        Resolver(final Map<Object, Object> entries,
+                 final Map<Object, String> templates,
+                 final Map<Object, Set<String>> references,
+                 final Map<String, Set<Object>> dependents,
+                 final Set<Object> cyclicKeys,
+                 final Set<Object> unresolvedKeys) {
+            this.entries = entries;
+            this.templates = templates;
+            this.references = references;
+            this.dependents = dependents;
+            this.cyclicKeys = cyclicKeys;
+            this.unresolvedKeys = new HashSet<>(unresolvedKeys);
+        }
+
+
+        /**
+         * Removes the recorded references of the specified property, which is about to be resolved again or no longer
+         * contains placeholders.
+         *
+         * @param key the key of the property
+         */
+        void forget(final Object key) {
+            cyclicKeys.remove(key);
+            Set<String> names = references.remove(key);
+            if (names != null) {
+                for (String name : names) {
+                    Set<Object> keys = modifiableDependents(name);
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        dependents.remove(name);
+                    }
+                }
+            }
+        }
+
+
+        /**
+         * Resolves all entries still to be resolved.
+         *
+         * @return the resulting interpolation
+         */
+        Interpolation resolveAll() {
+            resolvePending();
+            if (!detectedCyclicKeys.isEmpty()) {
+                logger.warn("Properties {} refer to a cycle of placeholders and were left unresolved.",
+                        detectedCyclicKeys);
+            }
+            if (templates.isEmpty()) {
+                return NONE;
+            }
+            return new Interpolation(templates, references, dependents, cyclicKeys);
+        }
+
+
+        /**
+         * Resolves all entries still to be resolved, without reporting the entries found to refer to a cycle.
+         */
+        void resolvePending() {
+            while (!unresolvedKeys.isEmpty()) {
+                Iterator<Object> iterator = unresolvedKeys.iterator();
+                resolve(iterator.next());
+            }
+        }
+
+
+        /**
+         * Resolves an entry still to be resolved.
+         *
+         * @param key the key of the entry
+         * @return the resolved value
+         */
+        private String resolve(final Object key) {
+            unresolvedKeys.remove(key);
+            resolvingKeys.addLast(key);
+            Set<String> names = new HashSet<>();
+            String template = templates.get(key);
+            String value = interpolate(template, names);
+            resolvingKeys.removeLast();
+            if (cyclicKeys.contains(key)) {
+                value = template;
+            }
+            entries.put(key, value);
+            references.put(key, names);
+            for (String name : names) {
+                modifiableDependents(name).add(key);
+            }
+            return value;
+        }
+
+
+        /**
+         * Looks up the resolved value of a property, resolving it first if necessary.
+         *
+         * @param name the name of the property
+         * @param names the names looked up so far, to which the name is added
+         * @return the resolved value, or null if the property does not exist, is not a string, or refers to a cycle
+         */
+        private String lookup(final String name, final Set<String> names) {
+            names.add(name);
+            if (resolvingKeys.contains(name)) {
+                markResolvingKeysCyclic();
+                return null;
+            }
+            Object value;
+            if (unresolvedKeys.contains(name)) {
+                value = resolve(name);
+            } else {
+                value = entries.get(name);
+            }
+            if (cyclicKeys.contains(name)) {
+                markResolvingKeysCyclic();
+                return null;
+            }
+            if (value instanceof String) {
+                return (String)value;
+            }
+            return null;
+        }
+
+
+        /**
+         * Marks the entries being resolved as cyclic, as each of them refers to a cycle directly or indirectly.
+         */
+        private void markResolvingKeysCyclic() {
+            cyclicKeys.addAll(resolvingKeys);
+            detectedCyclicKeys.addAll(resolvingKeys);
+        }
+
+
+        /**
+         * Replaces the placeholders of the specified text.
+         *
+         * @param text the text
+         * @param names the names looked up so far, to which the names looked up by the text are added
+         * @return the resolved text
+         */
+        private String interpolate(final String text, final Set<String> names) {
+            StringBuilder resolved = new StringBuilder(text.length());
+            int position = 0;
+            while (position < text.length()) {
+                char c = text.charAt(position);
+                if (c == ESCAPE && text.startsWith(PLACEHOLDER_START, position + 1)) {
+                    resolved.append(PLACEHOLDER_START);
+                    position += 1 + PLACEHOLDER_START.length();
+                } else if (text.startsWith(PLACEHOLDER_START, position)) {
+                    int end = placeholderEnd(text, position + PLACEHOLDER_START.length());
+                    if (end < 0) {
+                        resolved.append(text, position, text.length());
+                        break;
+                    }
+                    String expression = text.substring(position + PLACEHOLDER_START.length(), end);
+                    String value = evaluate(expression, names);
+                    if (value == null) {
+                        resolved.append(text, position, end + 1);
+                    } else {
+                        resolved.append(value);
+                    }
+                    position = end + 1;
+                } else {
+                    resolved.append(c);
+                    position++;
+                }
+            }
+            return resolved.toString();
+        }
+
+
+        /**
+         * Evaluates the expression of a placeholder.
+         *
+         * @param expression the expression, consisting of a name and an optional fallback
+         * @param names the names looked up so far, to which the names looked up by the expression are added
+         * @return the value, or null if the named property cannot be resolved and there is no fallback
+         */
+        private String evaluate(final String expression, final Set<String> names) {
+            int separator = topLevelIndexOf(expression, FALLBACK_SEPARATOR);
+            String name = expression;
+            if (separator >= 0) {
+                name = expression.substring(0, separator);
+            }
+            String value = lookup(interpolate(name, names), names);
+            if (value == null && separator >= 0) {
+                value = interpolate(expression.substring(separator + 1), names);
+            }
+            return value;
+        }
+
+
+        /**
+         * Finds the end of a placeholder, skipping nested placeholders.
+         *
+         * @param text the text containing the placeholder
+         * @param start the position following the beginning of the placeholder
+         * @return the position of the end of the placeholder, or -1 if the placeholder is not terminated
+         */
+        private static int placeholderEnd(final String text, final int start) {
+            int depth = 1;
+            int position = start;
+            while (position < text.length()) {
+                if (text.startsWith(PLACEHOLDER_START, position)) {
+                    depth++;
+                    position += PLACEHOLDER_START.length();
+                } else {
+                    if (text.charAt(position) == PLACEHOLDER_END) {
+                        depth--;
+                        if (depth == 0) {
+                            return position;
+                        }
+                    }
+                    position++;
+                }
+            }
+            return -1;
+        }
+
+
+        /**
+         * Finds the first occurrence of a character outside of nested placeholders.
+         *
+         * @param text the text
+         * @param c the character
+         * @return the position of the character, or -1 if it does not occur outside of nested placeholders
+         */
+        private static int topLevelIndexOf(final String text, final char c) {
+            int depth = 0;
+            int position = 0;
+            while (position < text.length()) {
+                if (text.startsWith(PLACEHOLDER_START, position)) {
+                    depth++;
+                    position += PLACEHOLDER_START.length();
+                } else {
+                    char current = text.charAt(position);
+                    if (current == PLACEHOLDER_END) {
+                        depth--;
+                    } else if (current == c && depth == 0) {
+                        return position;
+                    }
+                    position++;
+                }
+            }
+            return -1;
+        }
+
+
+        /**
+         * Gets the set of properties which looked up the specified name, copying it first if it is shared.
+         *
+         * @param name the name
+         * @return the modifiable set of properties
+         */
+        private Set<Object> modifiableDependents(final String name) {
+            boolean copied = !copiedDependents.add(name);
+            Set<Object> keys = dependents.get(name);
+            if (keys == null) {
+                keys = new HashSet<>();
+                dependents.put(name, keys);
+            } else if (!copied) {
+                keys = new HashSet<>(keys);
+                dependents.put(name, keys);
+            }
+            return keys;
+        }
+
+
+    }
+
+
+    /**
+     * The entries seen by a resolver re-resolving the dependents of overridden properties, which holds the re-resolved
+     * values and looks up all other values through a function.
+     */
+    private static final class OverlaidEntries extends AbstractMap<Object, Object> {
+
+        /** The re-resolved values. */
+        private final Map<Object, Object> resolved;
+
+        /** The function giving the values of the properties which are not re-resolved. */
+        private final Function<Object, Object> values;
+
+
+        /**
+         * Instantiates new entries storing the re-resolved values in the specified map.
+         *
+         * @param resolved the map receiving the re-resolved values
+         * @param values the function giving the values of the properties which are not re-resolved
+         */
+        OverlaidEntries(final Map<Object, Object> resolved, final Function<Object, Object> values) {
+            this.resolved = resolved;
+            this.values = values;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Object get(final Object key) {
+            if (resolved.containsKey(key)) {
+                return resolved.get(key);
+            }
+            return values.apply(key);
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Object put(final Object key, final Object value) {
+            return resolved.put(key, value);
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+            return resolved.entrySet();
+        }
+
+
+    }
+
+
+}
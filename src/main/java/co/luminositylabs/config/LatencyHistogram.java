@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A histogram of durations, recorded in buckets whose bounds are powers of two nanoseconds.
+ * <p>
+ * Recording a duration takes a few atomic increments and never locks, so histograms can be updated from hot paths.
+ * Percentiles are reported as the upper bound of the bucket they fall in, so they overestimate by less than a factor of
+ * two, which is enough to tell microseconds from milliseconds.  The statistics are not read atomically, so a histogram
+ * read while durations are being recorded may be slightly inconsistent.
+ *
+ * @author Phillip Ross
+ */
+public final class LatencyHistogram {
+
+    /** The number of buckets, one for each possible bit length of a non-negative {@code long}. */
+    private static final int BUCKET_COUNT = Long.SIZE;
+
+    /** The highest percentile. */
+    private static final double MAX_PERCENTILE = 100.0d;
+
+    /** The percentile reported by {@link #toString()}. */
+    private static final double REPORTED_PERCENTILE = 99.0d;
+
+    /** The counts of the durations recorded in each bucket, indexed by the bit length of the nanoseconds. */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /** The sum of the durations recorded, in nanoseconds. */
+    private final LongAdder totalNanos = new LongAdder();
+
+    /** The longest duration recorded, in nanoseconds. */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+
+    /** Instantiates a new, empty histogram. */
+    LatencyHistogram() {
+    }
+
+
+    /**
+     * Records the specified duration.
+     *
+     * @param nanos the duration in nanoseconds, where negative durations are recorded as zero
+     */
+    void record(final long nanos) {
+        long duration = Math.max(nanos, 0L);
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(duration));
+        totalNanos.add(duration);
+        if (duration > maxNanos.get()) {
+            maxNanos.accumulateAndGet(duration, Math::max);
+        }
+    }
+
+
+    /** Discards all recorded durations. */
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0L);
+        }
+        totalNanos.reset();
+        maxNanos.set(0L);
+    }
+
+
+    /**
+     * Gets the number of durations recorded.
+     *
+     * @return the number of durations
+     */
+    public long getCount() {
+        long count = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+
+    /**
+     * Gets the sum of the durations recorded.
+     *
+     * @return the sum
+     */
+    public Duration getTotal() {
+        return Duration.ofNanos(totalNanos.sum());
+    }
+
+
+    /**
+     * Gets the mean of the durations recorded.
+     *
+     * @return the mean, or zero if no durations were recorded
+     */
+    public Duration getMean() {
+        long count = getCount();
+        if (count == 0L) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(totalNanos.sum() / count);
+    }
+
+
+    /**
+     * Gets the longest duration recorded.
+     *
+     * @return the longest duration, or zero if no durations were recorded
+     */
+    public Duration getMax() {
+        return Duration.ofNanos(maxNanos.get());
+    }
+
+
+    /**
+     * Gets an upper bound of the specified percentile of the durations recorded.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket the percentile falls in, no longer than the longest duration recorded, or
+     *         zero if no durations were recorded
+     * @throws IllegalArgumentException if the percentile is not between 0 and 100
+     */
+    public Duration getPercentile(final double percentile) {
+        if (!(percentile >= 0.0d && percentile <= MAX_PERCENTILE)) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100: " + percentile);
+        }
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0L;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        if (count == 0L) {
+            return Duration.ZERO;
+        }
+        long rank = Math.max((long)Math.ceil(count * percentile / MAX_PERCENTILE), 1L);
+        long cumulative = 0L;
+        int bucket = 0;
+        while (bucket < BUCKET_COUNT - 1) {
+            cumulative += counts[bucket];
+            if (cumulative >= rank) {
+                break;
+            }
+            bucket++;
+        }
+        long upperBound = Long.MAX_VALUE;
+        if (bucket < BUCKET_COUNT - 1) {
+            upperBound = (1L << bucket) - 1L;
+        }
+        return Duration.ofNanos(Math.min(upperBound, maxNanos.get()));
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "LatencyHistogram{"
+                + "count=" + getCount()
+                + ", mean=" + getMean()
+                + ", p99=" + getPercentile(REPORTED_PERCENTILE)
+                + ", max=" + getMax()
+                + '}';
+    }
+
+
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+
+/**
+ * A {@link ConfigurationSyncTransport} connecting the {@link ConfigurationSync} instances of a single JVM, such as
+ * several configurations of a test.  Every node of the cluster connects to the same instance.
+ * <p>
+ * By default messages are delivered on the thread sending them, before {@link #broadcast} or {@link #send} returns,
+ * which makes the propagation of changes deterministic.  Messages may instead be delivered on an executor, in which
+ * case they may be delivered out of order, like on a network.
+ *
+ * @author Phillip Ross
+ */
+public final class LoopbackSyncTransport implements ConfigurationSyncTransport {
+
+    /** The static logger instance. */
+    private static final Logger logger = LoggerFactory.getLogger(LoopbackSyncTransport.class);
+
+    /** The executor delivering messages. */
+    private final Executor executor;
+
+    /** The receivers of the connected nodes, keyed by node identifier. */
+    private final Map<String, Consumer<ConfigurationSyncMessage>> receivers = new ConcurrentHashMap<>();
+
+
+    /** Instantiates a new transport delivering messages on the thread sending them. */
+    public LoopbackSyncTransport() {
+        this(Runnable::run);
+    }
+
+
+    /**
+     * Instantiates a new transport delivering messages on the specified executor.
+     *
+     * @param executor the executor delivering messages
+     */
+    public LoopbackSyncTransport(final Executor executor) {
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void connect(final String nodeId, final Consumer<ConfigurationSyncMessage> receiver) {
+        Objects.requireNonNull(receiver);
+        if (receivers.putIfAbsent(Objects.requireNonNull(nodeId), receiver) != null) {
+            throw new IllegalStateException("A node is already connected as " + nodeId);
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void disconnect(final String nodeId) {
+        receivers.remove(nodeId);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void broadcast(final ConfigurationSyncMessage message) {
+        for (Map.Entry<String, Consumer<ConfigurationSyncMessage>> entry : receivers.entrySet()) {
+            if (!entry.getKey().equals(message.getSender())) {
+                deliver(entry.getKey(), entry.getValue(), message);
+            }
+        }
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public void send(final String nodeId, final ConfigurationSyncMessage message) {
+        Consumer<ConfigurationSyncMessage> receiver = receivers.get(nodeId);
+        if (receiver != null) {
+            deliver(nodeId, receiver, message);
+        }
+    }
+
+
+    /**
+     * Delivers the specified message to the specified receiver on the executor.
+     *
+     * @param nodeId the identifier of the receiving node
+     * @param receiver the receiver
+     * @param message the message
+     */
+    private void deliver(final String nodeId,
+                         final Consumer<ConfigurationSyncMessage> receiver,
+                         final ConfigurationSyncMessage message) {
+        try {
+            executor.execute(() -> {
+                try {
+                    receiver.accept(message);
+                } catch (RuntimeException re) {
+                    logger.warn("Node {} failed to receive {}", nodeId, message, re);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            logger.warn("Executor rejected delivery of {} to node {}", message, nodeId, ree);
+        }
+    }
+
+
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.eclipse.microprofile.config.spi.ConfigSource;
+import org.eclipse.microprofile.config.spi.Converter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A MicroProfile Config {@link ConfigSource} backed by the snapshot of a {@link Configuration}, so that properties
+ * injected with {@code @ConfigProperty} and properties read from the configuration bean share a single copy.
+ * <p>
+ * Lookups read the current snapshot of the configuration without locking, and neither {@link #getPropertyNames()} nor
+ * {@link #getProperties()} copies the properties, returning read-only views of the snapshot instead.  Values converted
+ * with {@link #getValue(String, Converter)} are cached until the next snapshot is published, so repeated conversions
+ * of an unchanged property cost a lookup in the cache.
+ * <p>
+ * The source registered by {@link MicroProfileConfigSourceProvider} reads the most recently initialized
+ * configuration bean and has no properties until one is initialized.
+ *
+ * @author Phillip Ross
+ */
+public final class MicroProfileConfigSource implements ConfigSource {
+
+    /** The name of the source. */
+    public static final String NAME = "luminositylabs-config";
+
+    /** The default ordinal of the source, which is the ordinal of configuration files among configuration sources. */
+    public static final int DEFAULT_ORDINAL = ConfigurationSources.CONFIG_FILE_ORDINAL;
+
+    /** The cached value of a property whose conversion produced null. */
+    private static final Object NULL_VALUE = new Object();
+
+    /** The configuration read by this source, or null to read the default configuration. */
+    private final Configuration configuration;
+
+    /** The ordinal of this source. */
+    private final int ordinal;
+
+    /** The values converted from the current snapshot, replaced when a different snapshot is read. */
+    private volatile Conversions conversions;
+
+
+    /**
+     * Instantiates a new source reading the specified configuration, with the default ordinal.
+     *
+     * @param configuration the configuration
+     */
+    public MicroProfileConfigSource(final Configuration configuration) {
+        this(configuration, DEFAULT_ORDINAL);
+    }
+
+
+    /**
+     * Instantiates a new source reading the specified configuration.
+     *
+     * @param configuration the configuration
+     * @param ordinal the ordinal of the source
+     */
+    public MicroProfileConfigSource(final Configuration configuration, final int ordinal) {
+        if (configuration == null) {
+            throw new IllegalArgumentException("The configuration of a config source must not be null");
+        }
+        this.configuration = configuration;
+        this.ordinal = ordinal;
+    }
+
+
+    /**
+     * Instantiates a new source reading the default configuration, which is the most recently initialized
+     * {@link Configuration} bean.
+     *
+     * @param ordinal the ordinal of the source
+     */
+    MicroProfileConfigSource(final int ordinal) {
+        this.configuration = null;
+        this.ordinal = ordinal;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String getValue(final String propertyName) {
+        Configuration current = configuration();
+        if (current == null) {
+            return null;
+        }
+        return current.getProperty(propertyName);
+    }
+
+
+    /**
+     * Gets the value of the specified property converted by the specified converter.  The converted value is cached
+     * until the configuration publishes a new snapshot, so the converter should be a long-lived instance, such as one
+     * obtained from {@code Config.getConverter}, and must not depend on anything but the value it converts.
+     *
+     * @param propertyName the name of the property
+     * @param converter the converter
+     * @param <T> the type of the converted value
+     * @return the converted value, or null if the property does not exist or converts to null
+     * @throws IllegalArgumentException if the converter cannot convert the value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getValue(final String propertyName, final Converter<T> converter) {
+        Configuration current = configuration();
+        if (current == null) {
+            return null;
+        }
+        ConfigurationSnapshot snapshot = current.getSnapshot();
+        Conversions currentConversions = conversions;
+        if (currentConversions == null || currentConversions.snapshot != snapshot) {
+            currentConversions = new Conversions(snapshot);
+            conversions = currentConversions;
+        }
+        ConcurrentHashMap<String, Object> values = currentConversions.values.get(converter);
+        if (values == null) {
+            values = currentConversions.values.computeIfAbsent(converter, key -> new ConcurrentHashMap<>());
+        }
+        Object value = values.get(propertyName);
+        if (value == null) {
+            String source = snapshot.getProperty(propertyName);
+            if (source == null) {
+                return null;
+            }
+            value = converter.convert(source);
+            if (value == null) {
+                value = NULL_VALUE;
+            }
+            values.put(propertyName, value);
+        }
+        if (value == NULL_VALUE) {
+            return null;
+        }
+        return (T)value;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The names are a read-only view of the current snapshot, which is not copied.
+     */
+    @Override
+    public Set<String> getPropertyNames() {
+        return getProperties().keySet();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The properties are a read-only view of the current snapshot, which is not copied.
+     */
+    @Override
+    public Map<String, String> getProperties() {
+        Configuration current = configuration();
+        if (current == null) {
+            return Collections.emptyMap();
+        }
+        return current.getPropertiesView();
+    }
+
+
+    /**
+     * Gets the configuration read by this source.
+     *
+     * @return the configuration, or null if this source reads the default configuration and none has been initialized
+     */
+    private Configuration configuration() {
+        if (configuration != null) {
+            return configuration;
+        }
+        return ConfigKey.getDefaultConfiguration();
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "MicroProfileConfigSource{name=" + NAME + ", ordinal=" + ordinal + '}';
+    }
+
+
+    /** The values converted from a snapshot, keyed by converter and then by property name. */
+    private static final class Conversions {
+
+        /** The snapshot the values were converted from. */
+        private final ConfigurationSnapshot snapshot;
+
+        /** The converted values keyed by converter and then by property name. */
+        private final ConcurrentHashMap<Converter<?>, ConcurrentHashMap<String, Object>> values =
+                new ConcurrentHashMap<>();
+
+
+        /**
+         * Instantiates new conversions of the specified snapshot.
+         *
+         * @param snapshot the snapshot
+         */
+        Conversions(final ConfigurationSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+
+    }
+
+
+}
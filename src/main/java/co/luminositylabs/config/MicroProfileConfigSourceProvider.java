@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import org.eclipse.microprofile.config.spi.ConfigSource;
+import org.eclipse.microprofile.config.spi.ConfigSourceProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+
+
+/**
+ * Provides MicroProfile Config with a {@link MicroProfileConfigSource} reading the most recently initialized
+ * {@link Configuration} bean.  The provider is registered with {@link java.util.ServiceLoader}, so the properties of
+ * the configuration bean are available to {@code @ConfigProperty} injection without any setup.
+ * <p>
+ * The ordinal of the source is {@link MicroProfileConfigSource#DEFAULT_ORDINAL}, ranking it below system properties
+ * and environment variables but above {@code META-INF/microprofile-config.properties}, unless the
+ * {@value #CONFIG_SOURCE_ORDINAL_PROPERTY_NAME} system property specifies another ordinal.
+ *
+ * @author Phillip Ross
+ */
+public final class MicroProfileConfigSourceProvider implements ConfigSourceProvider {
+
+    /** The name of the system property specifying the ordinal of the provided source. */
+    public static final String CONFIG_SOURCE_ORDINAL_PROPERTY_NAME = "co.luminositylabs.configSourceOrdinal";
+
+    private static final Logger logger = LoggerFactory.getLogger(MicroProfileConfigSourceProvider.class);
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Iterable<ConfigSource> getConfigSources(final ClassLoader forClassLoader) {
+        int ordinal = MicroProfileConfigSource.DEFAULT_ORDINAL;
+        String ordinalProperty = System.getProperty(CONFIG_SOURCE_ORDINAL_PROPERTY_NAME);
+        if (ordinalProperty != null) {
+            try {
+                ordinal = Integer.parseInt(ordinalProperty.trim());
+            } catch (NumberFormatException nfe) {
+                logger.warn("Ignoring invalid config source ordinal {} specified by {}", ordinalProperty,
+                        CONFIG_SOURCE_ORDINAL_PROPERTY_NAME, nfe);
+            }
+        }
+        return Collections.singletonList(new MicroProfileConfigSource(ordinal));
+    }
+
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+
+/**
+ * A cache of property values which have already been converted from their string form.
+ * <p>
+ * Each cached value remembers the string it was converted from and the converter which produced it.  A cached value
+ * is only returned when the string of the lookup is equal to its string and the converter is identical, so a value
+ * converted from a stale snapshot is never returned even if it is cached after the property has changed.  Strings are
+ * compared by content rather than identity, since a snapshot storing its values off the heap decodes a new string on
+ * every read, and comparing them is far cheaper than converting them again.  Explicit invalidation therefore only
+ * serves to release memory held by values which can no longer be returned.
+ *
+ * @author Phillip Ross
+ */
+final class ParsedValueCache implements Serializable {
+
+    private static final long serialVersionUID = -1815047214564306254L;
+
+    /** The cached values keyed by property name. */
+    private final transient ConcurrentHashMap<String, ParsedValue> parsedValues = new ConcurrentHashMap<>();
+
+
+    /**
+     * Gets the converted form of the specified property value, converting and caching it if necessary.
+     *
+     * @param propertyName the name of the property
+     * @param source the string value of the property
+     * @param converter the converter, whose identity distinguishes differently converted forms of the same value
+     * @param <T> the type of the converted value
+     * @return the converted value
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(final String propertyName, final String source, final Function<String, ? extends T> converter) {
+        ParsedValue cached = parsedValues.get(propertyName);
+        if (cached != null && cached.converter == converter && cached.source.equals(source)) {
+            return (T)cached.value;
+        }
+        T value = converter.apply(source);
+        parsedValues.put(propertyName, new ParsedValue(source, converter, value));
+        return value;
+    }
+
+
+    /**
+     * Discards the cached values of the specified properties.
+     *
+     * @param propertyNames the names of the properties
+     */
+    void invalidate(final Collection<?> propertyNames) {
+        for (Object propertyName : propertyNames) {
+            if (propertyName instanceof String) {
+                parsedValues.remove(propertyName);
+            }
+        }
+    }
+
+
+    /** Discards all cached values. */
+    void invalidateAll() {
+        parsedValues.clear();
+    }
+
+
+    /**
+     * Replaces a deserialized cache with an empty cache, since cached values are not serialized.
+     *
+     * @return an empty cache
+     */
+    private Object readResolve() {
+        return new ParsedValueCache();
+    }
+
+
+    /** A converted property value along with the string and converter it was produced from. */
+    private static final class ParsedValue {
+
+        /** The string value the value was converted from. */
+        private final String source;
+
+        /** The converter which produced the value. */
+        private final Function<String, ?> converter;
+
+        /** The converted value. */
+        private final Object value;
+
+
+        /**
+         * Instantiates a new converted property value.
+         *
+         * @param source the string value the value was converted from
+         * @param converter the converter which produced the value
+         * @param value the converted value
+         */
+        ParsedValue(final String source, final Function<String, ?> converter, final Object value) {
+            this.source = source;
+            this.converter = converter;
+            this.value = value;
+        }
+
+
+    }
+
+
+}
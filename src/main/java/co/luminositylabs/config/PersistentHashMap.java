@@ -0,0 +1,607 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.util.function.BiConsumer;
+
+
+/**
+ * An immutable hash array mapped trie from string keys to non-null values.
+ * <p>
+ * Each node holds up to 32 slots selected by five bits of the hash of a key, and only allocates the slots in use,
+ * which are recorded in a bitmap.  Adding or removing a key copies only the nodes on the path to its slot, at most
+ * seven of them, and shares every other node with the original map, so many maps derived from one another cost
+ * memory in proportion to the keys in which they differ rather than to their sizes.  Keys whose hashes are equal are
+ * kept together in a collision node.
+ *
+ * @param <V> the type of the values
+ * @author Phillip Ross
+ */
+final class PersistentHashMap<V> {
+
+    /** The map which contains no keys. */
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap<>(null, 0);
+
+    /** The number of hash bits selecting a slot at each level of the trie. */
+    private static final int BITS_PER_LEVEL = 5;
+
+    /** The mask selecting the bits of a slot from a shifted hash. */
+    private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+    /** The shift beyond which no hash bits remain, so that keys with equal hashes must share a collision node. */
+    private static final int MAX_SHIFT = Integer.SIZE;
+
+    /** The root node, or null if the map is empty. */
+    private final Node root;
+
+    /** The number of keys in the map. */
+    private final int size;
+
+
+    /**
+     * Instantiates a new map.
+     *
+     * @param root the root node, or null if the map is empty
+     * @param size the number of keys in the map
+     */
+    private PersistentHashMap(final Node root, final int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+
+    /**
+     * Gets the map which contains no keys.
+     *
+     * @param <V> the type of the values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <V> PersistentHashMap<V> empty() {
+        return (PersistentHashMap<V>)EMPTY;
+    }
+
+
+    /**
+     * Gets the value of the specified key.
+     *
+     * @param key the key
+     * @return the value, or null if the map does not contain the key
+     */
+    @SuppressWarnings("unchecked")
+    V get(final String key) {
+        if (root == null) {
+            return null;
+        }
+        return (V)root.find(key, hash(key), 0);
+    }
+
+
+    /**
+     * Creates a map containing the entries of this map and the specified entry, which replaces any entry of the key.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the new map, or this map if it already maps the key to the identical value
+     */
+    PersistentHashMap<V> with(final String key, final V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("Keys and values of a persistent hash map must not be null");
+        }
+        int hash = hash(key);
+        if (root == null) {
+            return new PersistentHashMap<>(BitmapNode.of(key, hash, value, 0), 1);
+        }
+        Node nextRoot = root.put(key, hash, value, 0);
+        if (nextRoot == root) {
+            return this;
+        }
+        int nextSize = size;
+        if (root.find(key, hash, 0) == null) {
+            nextSize++;
+        }
+        return new PersistentHashMap<>(nextRoot, nextSize);
+    }
+
+
+    /**
+     * Creates a map containing the entries of this map except that of the specified key.
+     *
+     * @param key the key
+     * @return the new map, or this map if it does not contain the key
+     */
+    PersistentHashMap<V> without(final String key) {
+        if (root == null) {
+            return this;
+        }
+        Node nextRoot = root.remove(key, hash(key), 0);
+        if (nextRoot == root) {
+            return this;
+        }
+        if (nextRoot == null) {
+            return empty();
+        }
+        return new PersistentHashMap<>(nextRoot, size - 1);
+    }
+
+
+    /**
+     * Gets the number of keys in the map.
+     *
+     * @return the number of keys
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Performs the specified action for each entry of the map, in no particular order.
+     *
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(final BiConsumer<? super String, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<String, Object>)action);
+        }
+    }
+
+
+    /**
+     * Spreads the higher bits of the hash code of a key into the lower bits, which select the slots nearest the root.
+     *
+     * @param key the key
+     * @return the hash
+     */
+    private static int hash(final String key) {
+        int hashCode = key.hashCode();
+        return hashCode ^ (hashCode >>> (Integer.SIZE / 2));
+    }
+
+
+    /** A node of the trie. */
+    private abstract static class Node {
+
+
+        /**
+         * Finds the value of a key in the subtrie rooted at this node.
+         *
+         * @param key the key
+         * @param hash the hash of the key
+         * @param shift the number of hash bits consumed by the levels above this node
+         * @return the value, or null if the subtrie does not contain the key
+         */
+        abstract Object find(String key, int hash, int shift);
+
+
+        /**
+         * Creates the subtrie containing the entries of this subtrie and the specified entry.
+         *
+         * @param key the key
+         * @param hash the hash of the key
+         * @param value the value
+         * @param shift the number of hash bits consumed by the levels above this node
+         * @return the new node, or this node if it already maps the key to the identical value
+         */
+        abstract Node put(String key, int hash, Object value, int shift);
+
+
+        /**
+         * Creates the subtrie containing the entries of this subtrie except that of the specified key.
+         *
+         * @param key the key
+         * @param hash the hash of the key
+         * @param shift the number of hash bits consumed by the levels above this node
+         * @return the new node, this node if the subtrie does not contain the key, or null if the subtrie is empty
+         */
+        abstract Node remove(String key, int hash, int shift);
+
+
+        /**
+         * Performs the specified action for each entry of the subtrie.
+         *
+         * @param action the action
+         */
+        abstract void forEach(BiConsumer<String, Object> action);
+
+
+        /**
+         * Determines whether the subtrie holds a single entry, which its parent can then hold directly.
+         *
+         * @return true if the subtrie holds a single entry, false otherwise
+         */
+        abstract boolean isSingleEntry();
+
+
+        /**
+         * Gets the key of the first entry of this node.
+         *
+         * @return the key, or null if the first slot of this node holds a child node
+         */
+        abstract String firstKey();
+
+
+        /**
+         * Gets the value of the first entry of this node.
+         *
+         * @return the value
+         */
+        abstract Object firstValue();
+
+
+    }
+
+
+    /**
+     * A node whose slots are selected by bits of the hash of a key.  The entries array holds a pair of elements for
+     * each slot in use, in slot order: a key and its value, or null and a child node.
+     */
+    private static final class BitmapNode extends Node {
+
+        /** The bitmap of the slots in use. */
+        private final int bitmap;
+
+        /** The keys and values, or nulls and child nodes, of the slots in use. */
+        private final Object[] entries;
+
+
+        /**
+         * Instantiates a new node.
+         *
+         * @param bitmap the bitmap of the slots in use
+         * @param entries the keys and values, or nulls and child nodes, of the slots in use
+         */
+        BitmapNode(final int bitmap, final Object[] entries) {
+            this.bitmap = bitmap;
+            this.entries = entries;
+        }
+
+
+        /**
+         * Creates a node holding a single entry.
+         *
+         * @param key the key
+         * @param hash the hash of the key
+         * @param value the value
+         * @param shift the number of hash bits consumed by the levels above the node
+         * @return the node
+         */
+        static BitmapNode of(final String key, final int hash, final Object value, final int shift) {
+            return new BitmapNode(bit(hash, shift), new Object[] {key, value});
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        Object find(final String key, final int hash, final int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = index(bit);
+            Object slotKey = entries[index];
+            if (slotKey == null) {
+                return ((Node)entries[index + 1]).find(key, hash, shift + BITS_PER_LEVEL);
+            }
+            if (slotKey.equals(key)) {
+                return entries[index + 1];
+            }
+            return null;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        Node put(final String key, final int hash, final Object value, final int shift) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] nextEntries = new Object[entries.length + 2];
+                System.arraycopy(entries, 0, nextEntries, 0, index);
+                nextEntries[index] = key;
+                nextEntries[index + 1] = value;
+                System.arraycopy(entries, index, nextEntries, index + 2, entries.length - index);
+                return new BitmapNode(bitmap | bit, nextEntries);
+            }
+            Object slotKey = entries[index];
+            Object slotValue = entries[index + 1];
+            Object nextSlotKey = null;
+            Object nextSlotValue;
+            if (slotKey == null) {
+                Node child = (Node)slotValue;
+                nextSlotValue = child.put(key, hash, value, shift + BITS_PER_LEVEL);
+                if (nextSlotValue == child) {
+                    return this;
+                }
+            } else if (slotKey.equals(key)) {
+                if (slotValue == value) {
+                    return this;
+                }
+                nextSlotKey = slotKey;
+                nextSlotValue = value;
+            } else {
+                nextSlotValue = merge((String)slotKey, hash((String)slotKey), slotValue, key, hash, value,
+                        shift + BITS_PER_LEVEL);
+            }
+            Object[] nextEntries = entries.clone();
+            nextEntries[index] = nextSlotKey;
+            nextEntries[index + 1] = nextSlotValue;
+            return new BitmapNode(bitmap, nextEntries);
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        Node remove(final String key, final int hash, final int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Object slotKey = entries[index];
+            if (slotKey == null) {
+                Node child = (Node)entries[index + 1];
+                Node nextChild = child.remove(key, hash, shift + BITS_PER_LEVEL);
+                if (nextChild == child) {
+                    return this;
+                }
+                if (nextChild == null) {
+                    return withoutSlot(bit, index);
+                }
+                Object[] nextEntries = entries.clone();
+                if (nextChild.isSingleEntry() && nextChild.firstKey() != null) {
+                    nextEntries[index] = nextChild.firstKey();
+                    nextEntries[index + 1] = nextChild.firstValue();
+                } else {
+                    nextEntries[index + 1] = nextChild;
+                }
+                return new BitmapNode(bitmap, nextEntries);
+            }
+            if (slotKey.equals(key)) {
+                return withoutSlot(bit, index);
+            }
+            return this;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        void forEach(final BiConsumer<String, Object> action) {
+            for (int i = 0; i < entries.length; i += 2) {
+                if (entries[i] == null) {
+                    ((Node)entries[i + 1]).forEach(action);
+                } else {
+                    action.accept((String)entries[i], entries[i + 1]);
+                }
+            }
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        boolean isSingleEntry() {
+            return entries.length == 2 && entries[0] != null;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        String firstKey() {
+            return (String)entries[0];
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        Object firstValue() {
+            return entries[1];
+        }
+
+
+        /**
+         * Creates a copy of this node without the specified slot.
+         *
+         * @param bit the bit of the slot
+         * @param index the index of the slot in the entries array
+         * @return the new node, or null if the slot was the only slot in use
+         */
+        private Node withoutSlot(final int bit, final int index) {
+            if (entries.length == 2) {
+                return null;
+            }
+            Object[] nextEntries = new Object[entries.length - 2];
+            System.arraycopy(entries, 0, nextEntries, 0, index);
+            System.arraycopy(entries, index + 2, nextEntries, index, entries.length - index - 2);
+            return new BitmapNode(bitmap & ~bit, nextEntries);
+        }
+
+
+        /**
+         * Gets the index in the entries array of the key, or null, of the specified slot.
+         *
+         * @param bit the bit of the slot
+         * @return the index
+         */
+        private int index(final int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+
+        /**
+         * Gets the bit of the slot selected by the specified hash at the specified level.
+         *
+         * @param hash the hash of a key
+         * @param shift the number of hash bits consumed by the levels above
+         * @return the bit
+         */
+        private static int bit(final int hash, final int shift) {
+            return 1 << ((hash >>> shift) & LEVEL_MASK);
+        }
+
+
+        /**
+         * Creates the subtrie holding two entries whose keys differ.
+         *
+         * @param key1 the first key
+         * @param hash1 the hash of the first key
+         * @param value1 the first value
+         * @param key2 the second key
+         * @param hash2 the hash of the second key
+         * @param value2 the second value
+         * @param shift the number of hash bits consumed by the levels above the subtrie
+         * @return the root node of the subtrie
+         */
+        private static Node merge(final String key1, final int hash1, final Object value1,
+                                  final String key2, final int hash2, final Object value2,
+                                  final int shift) {
+            if (shift >= MAX_SHIFT) {
+                return new CollisionNode(new Object[] {key1, value1, key2, value2});
+            }
+            int bit1 = bit(hash1, shift);
+            int bit2 = bit(hash2, shift);
+            if (bit1 == bit2) {
+                return new BitmapNode(bit1, new Object[] {null,
+                        merge(key1, hash1, value1, key2, hash2, value2, shift + BITS_PER_LEVEL)});
+            }
+            if (Integer.compareUnsigned(bit1, bit2) < 0) {
+                return new BitmapNode(bit1 | bit2, new Object[] {key1, value1, key2, value2});
+            }
+            return new BitmapNode(bit1 | bit2, new Object[] {key2, value2, key1, value1});
+        }
+
+
+    }
+
+
+    /** A node holding the entries of keys whose hashes are equal, in a flat array of keys and values. */
+    private static final class CollisionNode extends Node {
+
+        /** The keys and values. */
+        private final Object[] entries;
+
+
+        /**
+         * Instantiates a new node.
+         *
+         * @param entries the keys and values
+         */
+        CollisionNode(final Object[] entries) {
+            this.entries = entries;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        Object find(final String key, final int hash, final int shift) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return null;
+            }
+            return entries[index + 1];
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        Node put(final String key, final int hash, final Object value, final int shift) {
+            int index = indexOf(key);
+            if (index >= 0) {
+                if (entries[index + 1] == value) {
+                    return this;
+                }
+                Object[] nextEntries = entries.clone();
+                nextEntries[index + 1] = value;
+                return new CollisionNode(nextEntries);
+            }
+            Object[] nextEntries = new Object[entries.length + 2];
+            System.arraycopy(entries, 0, nextEntries, 0, entries.length);
+            nextEntries[entries.length] = key;
+            nextEntries[entries.length + 1] = value;
+            return new CollisionNode(nextEntries);
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        Node remove(final String key, final int hash, final int shift) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            if (entries.length == 2) {
+                return null;
+            }
+            Object[] nextEntries = new Object[entries.length - 2];
+            System.arraycopy(entries, 0, nextEntries, 0, index);
+            System.arraycopy(entries, index + 2, nextEntries, index, entries.length - index - 2);
+            return new CollisionNode(nextEntries);
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        void forEach(final BiConsumer<String, Object> action) {
+            for (int i = 0; i < entries.length; i += 2) {
+                action.accept((String)entries[i], entries[i + 1]);
+            }
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        boolean isSingleEntry() {
+            return entries.length == 2;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        String firstKey() {
+            return (String)entries[0];
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        Object firstValue() {
+            return entries[1];
+        }
+
+
+        /**
+         * Finds the index of the specified key in the entries array.
+         *
+         * @param key the key
+         * @return the index, or -1 if this node does not contain the key
+         */
+        private int indexOf(final String key) {
+            for (int i = 0; i < entries.length; i += 2) {
+                if (entries[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+
+/**
+ * A {@link ConfigurationSource} which may change while the application runs, such as a configuration server or a
+ * file on a shared mount, and which can tell cheaply whether it changed.
+ * <p>
+ * Besides being loaded by every reload, the sources of a configuration which is
+ * {@link Configuration#startRefreshing() refreshing} are polled periodically, each at its own interval.  Each poll
+ * {@link #fetch(String) fetches} the source conditionally, and only when the source has changed are its new
+ * properties merged with the properties already loaded from the other sources and published.  Common polling sources
+ * are created by {@link ConfigurationSources#polling(java.nio.file.Path, Duration)} and
+ * {@link ConfigurationSources#polling(java.net.URL, Duration)}.
+ *
+ * @author Phillip Ross
+ */
+public interface PollingConfigurationSource extends ConfigurationSource {
+
+
+    /** The default interval between polls. */
+    Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(30L);
+
+
+    /**
+     * Gets the interval between polls of this source.  The actual intervals are randomized slightly so that many
+     * nodes polling the same server spread their requests, and are lengthened exponentially while polls fail.
+     *
+     * @return the interval
+     */
+    default Duration getPollInterval() {
+        return DEFAULT_POLL_INTERVAL;
+    }
+
+
+    /**
+     * Fetches the properties of this source unless they have not changed since the fetch which returned the specified
+     * validator.  This method may be called concurrently.
+     *
+     * @param validator the validator returned by the previous fetch, or null to fetch unconditionally
+     * @return the result of the fetch, which must be {@link ConfigurationFetch#modified modified} when the validator
+     *         is null
+     * @throws IOException if the source is available but cannot be read
+     */
+    ConfigurationFetch fetch(String validator) throws IOException;
+
+
+    /**
+     * Loads the properties of this source by fetching them unconditionally.
+     *
+     * @return the properties, or null if the source is not available
+     * @throws IOException if the source is available but cannot be read
+     */
+    @Override
+    default Map<?, ?> load() throws IOException {
+        return fetch(null).getProperties();
+    }
+
+
+}
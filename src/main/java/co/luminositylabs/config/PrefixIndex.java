@@ -0,0 +1,279 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An immutable, sorted index of the string property names of a snapshot.
+ * <p>
+ * Only entries whose key and value are both strings are indexed, matching the names returned by
+ * {@link java.util.Properties#stringPropertyNames()}.  Since all names sharing a prefix are contiguous in sorted
+ * order, a prefix query costs two binary searches plus the number of matches.
+ * <p>
+ * {@link #of(Map)} indexes an array of the names themselves.  Subclasses may instead derive the names from a more
+ * compact representation, as {@link CompactEntries} does.
+ *
+ * @author Phillip Ross
+ */
+abstract class PrefixIndex implements Serializable {
+
+    private static final long serialVersionUID = 5306941585410329726L;
+
+    /** The index which contains no names. */
+    static final PrefixIndex EMPTY = new SortedNames(new String[0]);
+
+    /**
+     * The divisor applied to the index size to decide when an incremental update stops paying off.  Change sets
+     * larger than {@code size / INCREMENTAL_UPDATE_DIVISOR} cause the index to be rebuilt from scratch instead.
+     */
+    private static final int INCREMENTAL_UPDATE_DIVISOR = 8;
+
+
+    /**
+     * Builds an index of the string property names of the specified entries.
+     *
+     * @param entries the entries to be indexed
+     * @return the index
+     */
+    static PrefixIndex of(final Map<Object, Object> entries) {
+        List<String> indexedNames = new ArrayList<>(entries.size());
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            if (isIndexed(entry.getKey(), entry.getValue())) {
+                indexedNames.add((String)entry.getKey());
+            }
+        }
+        String[] sortedNames = indexedNames.toArray(new String[0]);
+        Arrays.sort(sortedNames);
+        return new SortedNames(sortedNames);
+    }
+
+
+    /**
+     * Derives the index of the specified entries from this index, given the keys which differ between the entries
+     * this index was built from and the specified entries.
+     *
+     * @param nextEntries the entries to be indexed
+     * @param changedKeys the keys which were added, removed or changed
+     * @return the index
+     */
+    PrefixIndex update(final Map<Object, Object> nextEntries, final Collection<?> changedKeys) {
+        if (changedKeys.size() > size() / INCREMENTAL_UPDATE_DIVISOR) {
+            return of(nextEntries);
+        }
+        List<String> additions = new ArrayList<>();
+        List<String> removals = new ArrayList<>();
+        for (Object changedKey : changedKeys) {
+            boolean present = changedKey instanceof String && contains((String)changedKey);
+            boolean indexed = isIndexed(changedKey, nextEntries.get(changedKey));
+            if (indexed && !present) {
+                additions.add((String)changedKey);
+            } else if (present && !indexed) {
+                removals.add((String)changedKey);
+            }
+        }
+        if (additions.isEmpty() && removals.isEmpty()) {
+            return this;
+        }
+        additions.sort(null);
+        removals.sort(null);
+        String[] merged = new String[size() + additions.size() - removals.size()];
+        int mergedCount = 0;
+        int additionIndex = 0;
+        int removalIndex = 0;
+        for (int position = 0; position < size(); position++) {
+            String name = name(position);
+            while (additionIndex < additions.size() && additions.get(additionIndex).compareTo(name) < 0) {
+                merged[mergedCount++] = additions.get(additionIndex++);
+            }
+            if (removalIndex < removals.size() && removals.get(removalIndex).equals(name)) {
+                removalIndex++;
+            } else {
+                merged[mergedCount++] = name;
+            }
+        }
+        while (additionIndex < additions.size()) {
+            merged[mergedCount++] = additions.get(additionIndex++);
+        }
+        return new SortedNames(merged);
+    }
+
+
+    /**
+     * Gets the number of indexed names.
+     *
+     * @return the number of names
+     */
+    abstract int size();
+
+
+    /**
+     * Gets the name at the specified position in sorted order.
+     *
+     * @param position the position
+     * @return the name
+     */
+    abstract String name(int position);
+
+
+    /**
+     * Compares the name at the specified position with the specified string.
+     *
+     * @param position the position
+     * @param string the string
+     * @return a negative integer, zero, or a positive integer as the name is less than, equal to, or greater than the
+     *         string
+     */
+    abstract int compareName(int position, String string);
+
+
+    /**
+     * Determines whether the name at the specified position begins with the specified prefix.
+     *
+     * @param position the position
+     * @param prefix the prefix
+     * @return true if the name begins with the prefix, false otherwise
+     */
+    abstract boolean nameStartsWith(int position, String prefix);
+
+
+    /**
+     * Finds the position of the first name which begins with the specified prefix.  When no name begins with the
+     * prefix, the returned position is the position at which such a name would be inserted.
+     *
+     * @param prefix the prefix
+     * @return the position of the first matching name
+     */
+    final int first(final String prefix) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareName(middle, prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     * Finds the position following the last name which begins with the specified prefix.
+     *
+     * @param prefix the prefix
+     * @param first the position of the first matching name, as returned by {@link #first(String)}
+     * @return the position following the last matching name
+     */
+    final int end(final String prefix, final int first) {
+        int low = first;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (nameStartsWith(middle, prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     * Determines whether the specified name is indexed.
+     *
+     * @param name the name
+     * @return true if the name is indexed, false otherwise
+     */
+    final boolean contains(final String name) {
+        int position = first(name);
+        return position < size() && compareName(position, name) == 0;
+    }
+
+
+    /**
+     * Determines whether an entry with the specified key and value is indexed.
+     *
+     * @param key the key
+     * @param value the value
+     * @return true if the entry is indexed, false otherwise
+     */
+    static boolean isIndexed(final Object key, final Object value) {
+        return key instanceof String && value instanceof String;
+    }
+
+
+    /** An index holding the sorted names themselves. */
+    private static final class SortedNames extends PrefixIndex {
+
+        private static final long serialVersionUID = -2740387211915846453L;
+
+        /** The sorted property names. */
+        private final String[] names;
+
+
+        /**
+         * Instantiates a new index which takes ownership of the specified sorted names.
+         *
+         * @param names the sorted names
+         */
+        SortedNames(final String[] names) {
+            this.names = names;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        int size() {
+            return names.length;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        String name(final int position) {
+            return names[position];
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        int compareName(final int position, final String string) {
+            return names[position].compareTo(string);
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        boolean nameStartsWith(final int position, final String prefix) {
+            return names[position].startsWith(prefix);
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+
+/**
+ * A read-only map view of the string properties whose names begin with a prefix.
+ * <p>
+ * Every operation reads the snapshot returned by the snapshot supplier at the time of the call, so a view backed by
+ * a {@link Configuration} always reflects its current properties.  An iterator, a spliterator and a call to
+ * {@link #forEach(BiConsumer)} each read a single snapshot for their whole lifetime and therefore never observe a
+ * partially applied update.
+ *
+ * @author Phillip Ross
+ */
+final class PrefixView extends AbstractMap<String, String> {
+
+    /** The supplier of the snapshot backing each operation. */
+    private final Supplier<ConfigurationSnapshot> snapshotSupplier;
+
+    /** The prefix of the property names visible through this view. */
+    private final String prefix;
+
+
+    /**
+     * Instantiates a new prefix view.
+     *
+     * @param snapshotSupplier the supplier of the snapshot backing each operation
+     * @param prefix the prefix of the property names visible through this view
+     */
+    PrefixView(final Supplier<ConfigurationSnapshot> snapshotSupplier, final String prefix) {
+        this.snapshotSupplier = snapshotSupplier;
+        this.prefix = Objects.requireNonNull(prefix);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        PrefixIndex index = snapshotSupplier.get().prefixIndex();
+        int first = index.first(prefix);
+        return index.end(prefix, first) - first;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isEmpty() {
+        PrefixIndex index = snapshotSupplier.get().prefixIndex();
+        int first = index.first(prefix);
+        return first == index.size() || !index.name(first).startsWith(prefix);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(final Object key) {
+        return get(key) != null;
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public String get(final Object key) {
+        if (key instanceof String && ((String)key).startsWith(prefix)) {
+            return snapshotSupplier.get().getProperty((String)key);
+        }
+        return null;
+    }
+
+
+    /**
+     * Performs the specified action for each matching property in name order, without creating map entries.
+     *
+     * @param action the action to be performed for each property
+     */
+    @Override
+    public void forEach(final BiConsumer<? super String, ? super String> action) {
+        snapshotSupplier.get().forEachWithPrefix(prefix, action);
+    }
+
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new PrefixIterator(snapshotSupplier.get());
+            }
+
+            @Override
+            public Spliterator<Map.Entry<String, String>> spliterator() {
+                ConfigurationSnapshot splitSnapshot = snapshotSupplier.get();
+                PrefixIndex index = splitSnapshot.prefixIndex();
+                int first = index.first(prefix);
+                return new PrefixSpliterator(splitSnapshot, first, index.end(prefix, first));
+            }
+
+            @Override
+            public int size() {
+                return PrefixView.this.size();
+            }
+
+        };
+    }
+
+
+    /** An iterator over the matching entries of a single snapshot. */
+    private final class PrefixIterator implements Iterator<Map.Entry<String, String>> {
+
+        /** The snapshot being iterated. */
+        private final ConfigurationSnapshot iteratedSnapshot;
+
+        /** The position following the last matching name. */
+        private final int end;
+
+        /** The position of the next matching name. */
+        private int position;
+
+
+        /**
+         * Instantiates a new iterator over the matching entries of the specified snapshot.
+         *
+         * @param iteratedSnapshot the snapshot to be iterated
+         */
+        PrefixIterator(final ConfigurationSnapshot iteratedSnapshot) {
+            this.iteratedSnapshot = iteratedSnapshot;
+            PrefixIndex index = iteratedSnapshot.prefixIndex();
+            this.position = index.first(prefix);
+            this.end = index.end(prefix, position);
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasNext() {
+            return position < end;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Map.Entry<String, String> next() {
+            if (position >= end) {
+                throw new NoSuchElementException();
+            }
+            String name = iteratedSnapshot.prefixIndex().name(position++);
+            return new AbstractMap.SimpleImmutableEntry<>(name, iteratedSnapshot.getProperty(name));
+        }
+
+
+    }
+
+
+    /**
+     * A spliterator over a range of the matching entries of a single snapshot, which splits by halving its range so
+     * that parallel streams divide the work evenly.
+     */
+    private static final class PrefixSpliterator implements Spliterator<Map.Entry<String, String>> {
+
+        /** The characteristics of every prefix spliterator. */
+        private static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SIZED
+                | Spliterator.SUBSIZED | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+
+        /** The snapshot being traversed. */
+        private final ConfigurationSnapshot splitSnapshot;
+
+        /** The position following the last name of the range. */
+        private final int end;
+
+        /** The position of the next name of the range. */
+        private int position;
+
+
+        /**
+         * Instantiates a new spliterator over a range of the names of the specified snapshot.
+         *
+         * @param splitSnapshot the snapshot to be traversed
+         * @param position the position of the first name of the range
+         * @param end the position following the last name of the range
+         */
+        PrefixSpliterator(final ConfigurationSnapshot splitSnapshot, final int position, final int end) {
+            this.splitSnapshot = splitSnapshot;
+            this.position = position;
+            this.end = end;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean tryAdvance(final Consumer<? super Map.Entry<String, String>> action) {
+            if (position >= end) {
+                return false;
+            }
+            String name = splitSnapshot.prefixIndex().name(position++);
+            action.accept(new AbstractMap.SimpleImmutableEntry<>(name, splitSnapshot.getProperty(name)));
+            return true;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public Spliterator<Map.Entry<String, String>> trySplit() {
+            int middle = (position + end) >>> 1;
+            if (middle <= position) {
+                return null;
+            }
+            Spliterator<Map.Entry<String, String>> prefixHalf = new PrefixSpliterator(splitSnapshot, position, middle);
+            position = middle;
+            return prefixHalf;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public long estimateSize() {
+            return end - position;
+        }
+
+
+        /** {@inheritDoc} */
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS;
+        }
+
+
+    }
+
+
+}
@@ -0,0 +1,450 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * A parser of the {@code .properties} format which produces the same entries as
+ * {@link java.util.Properties#load(InputStream)} considerably faster.
+ * <p>
+ * {@code Properties.load} is synchronized, reads its input through a small buffer one character at a time, copies
+ * every logical line into a line buffer, and inserts each entry into a table which grows as it goes.  This parser
+ * instead reads the whole input into a single array, memory-mapping large files so the content is copied from the
+ * page cache once, and sizes the resulting map up front from the number of lines.  Lines are parsed in place: a line
+ * is only copied when it is continued onto the following line, and keys and values which contain no escapes are
+ * decoded with a single bulk ISO-8859-1 conversion.
+ * <p>
+ * The rules for whitespace, comments, key/value separators, escapes and continuation lines are those of
+ * {@code Properties.load}, including its treatment of malformed {@code \}{@code uxxxx} escapes, which cause an
+ * {@code IllegalArgumentException}.
+ *
+ * @author Phillip Ross
+ */
+final class PropertiesParser {
+
+    /** The size in bytes from which files are memory-mapped rather than read. */
+    private static final long MAPPING_THRESHOLD = 1L << 20;
+
+    /** The load factor of the resulting map. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** The number of hexadecimal digits of a unicode escape. */
+    private static final int UNICODE_ESCAPE_DIGITS = 4;
+
+    /** The radix of the digits of a unicode escape. */
+    private static final int HEX_RADIX = 16;
+
+    /** The number of bits represented by a hexadecimal digit. */
+    private static final int HEX_DIGIT_BITS = 4;
+
+    /** The initial size of the buffer holding continued lines. */
+    private static final int INITIAL_LINE_BUFFER_SIZE = 1024;
+
+    /** The input being parsed. */
+    private final byte[] input;
+
+    /** The length of the input. */
+    private final int inputLength;
+
+    /** The position of the next byte of input. */
+    private int inputOffset;
+
+    /** The buffer holding a logical line which spans several natural lines. */
+    private byte[] lineBuffer = new byte[INITIAL_LINE_BUFFER_SIZE];
+
+    /** The array holding the current logical line, either the input or the line buffer. */
+    private byte[] line;
+
+    /** The position of the current logical line within {@link #line}. */
+    private int lineOffset;
+
+    /** The buffer used to decode escaped keys and values. */
+    private final StringBuilder decodeBuffer = new StringBuilder();
+
+
+    /**
+     * Instantiates a new parser.
+     *
+     * @param input the input to be parsed
+     * @param inputLength the length of the input
+     */
+    private PropertiesParser(final byte[] input, final int inputLength) {
+        this.input = input;
+        this.inputLength = inputLength;
+    }
+
+
+    /**
+     * Parses the properties file at the specified path.
+     *
+     * @param path the path
+     * @return the entries, in a mutable map owned by the caller
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file contains a malformed unicode escape
+     */
+    static Map<Object, Object> parse(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer content = read(channel, path);
+            return parse(content.array(), content.limit());
+        }
+    }
+
+
+    /**
+     * Reads the whole content of the properties file open on the specified channel.
+     *
+     * @param channel the channel, positioned at the beginning of the file
+     * @param path the path of the file
+     * @return a buffer backed by an array holding the content between position zero and its limit
+     * @throws IOException if the file cannot be read
+     */
+    static ByteBuffer read(final FileChannel channel, final Path path) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Properties file is too large: " + path);
+        }
+        byte[] bytes = new byte[(int)size];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (size >= MAPPING_THRESHOLD) {
+            try {
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size).get(bytes);
+            } catch (InternalError ie) {
+                // Accessing a mapping of a file truncated after it was mapped faults.
+                throw new IOException("Properties file was truncated while being read: " + path, ie);
+            }
+            buffer.position(bytes.length);
+        } else {
+            int read = 0;
+            while (read >= 0 && buffer.hasRemaining()) {
+                read = channel.read(buffer);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+
+    /**
+     * Parses properties from the specified input stream, which is read until it is exhausted but not closed.
+     *
+     * @param inputStream the input stream
+     * @return the entries, in a mutable map owned by the caller
+     * @throws IOException if the input stream cannot be read
+     * @throws IllegalArgumentException if the input contains a malformed unicode escape
+     */
+    static Map<Object, Object> parse(final InputStream inputStream) throws IOException {
+        byte[] bytes = inputStream.readAllBytes();
+        return parse(bytes, bytes.length);
+    }
+
+
+    /**
+     * Parses properties from the specified bytes.
+     *
+     * @param bytes the bytes
+     * @param length the number of bytes to be parsed
+     * @return the entries, in a mutable map owned by the caller
+     * @throws IllegalArgumentException if the input contains a malformed unicode escape
+     */
+    static Map<Object, Object> parse(final byte[] bytes, final int length) {
+        return new PropertiesParser(bytes, length).parseEntries();
+    }
+
+
+    /**
+     * Parses all entries of the input.
+     *
+     * @return the entries
+     */
+    private Map<Object, Object> parseEntries() {
+        Map<Object, Object> entries = new HashMap<>((int)(countLines() / LOAD_FACTOR) + 1);
+        int limit = readLine();
+        while (limit >= 0) {
+            int keyLength = 0;
+            int valueStart = limit;
+            boolean hasSeparator = false;
+            boolean precedingBackslash = false;
+            while (keyLength < limit) {
+                byte c = line[lineOffset + keyLength];
+                if ((c == '=' || c == ':') && !precedingBackslash) {
+                    valueStart = keyLength + 1;
+                    hasSeparator = true;
+                    break;
+                } else if (isWhitespace(c) && !precedingBackslash) {
+                    valueStart = keyLength + 1;
+                    break;
+                }
+                precedingBackslash = c == '\\' && !precedingBackslash;
+                keyLength++;
+            }
+            while (valueStart < limit) {
+                byte c = line[lineOffset + valueStart];
+                if (!isWhitespace(c)) {
+                    if (!hasSeparator && (c == '=' || c == ':')) {
+                        hasSeparator = true;
+                    } else {
+                        break;
+                    }
+                }
+                valueStart++;
+            }
+            String key = decode(lineOffset, keyLength);
+            String value = decode(lineOffset + valueStart, limit - valueStart);
+            entries.put(key, value);
+            limit = readLine();
+        }
+        return entries;
+    }
+
+
+    /**
+     * Reads the next logical line, skipping blank lines, comment lines and leading whitespace, and joining natural
+     * lines ending with an odd number of backslashes with the following natural line.  On return, the logical line
+     * is held by {@link #line} at {@link #lineOffset}.
+     *
+     * @return the length of the logical line, or -1 if the input is exhausted
+     */
+    private int readLine() {
+        int length = 0;
+        int offset = inputOffset;
+        boolean skipWhitespace = true;
+        boolean appendedLineBegin = false;
+        boolean precedingBackslash = false;
+        boolean buffered = false;
+        line = input;
+        while (true) {
+            if (offset >= inputLength) {
+                inputOffset = offset;
+                return endOfInputLength(length, precedingBackslash);
+            }
+            byte c = input[offset++];
+            if (skipWhitespace) {
+                if (isWhitespace(c) || (!appendedLineBegin && isLineTerminator(c))) {
+                    continue;
+                }
+                skipWhitespace = false;
+                appendedLineBegin = false;
+            }
+            if (length == 0 && (c == '#' || c == '!')) {
+                offset = skipComment(offset);
+                if (offset < 0) {
+                    inputOffset = inputLength;
+                    return -1;
+                }
+                skipWhitespace = true;
+                continue;
+            }
+            if (!isLineTerminator(c)) {
+                if (buffered) {
+                    if (length == lineBuffer.length) {
+                        lineBuffer = Arrays.copyOf(lineBuffer, length * 2);
+                    }
+                    lineBuffer[length] = c;
+                } else if (length == 0) {
+                    lineOffset = offset - 1;
+                }
+                length++;
+                precedingBackslash = c == '\\' && !precedingBackslash;
+            } else if (length == 0) {
+                skipWhitespace = true;
+            } else if (offset >= inputLength) {
+                inputOffset = offset;
+                return endOfInputLength(length, precedingBackslash);
+            } else if (precedingBackslash) {
+                // The backslash is not part of the line, and the line continues on the following natural line.
+                length--;
+                if (!buffered) {
+                    if (length > lineBuffer.length) {
+                        lineBuffer = new byte[length * 2];
+                    }
+                    System.arraycopy(input, lineOffset, lineBuffer, 0, length);
+                    buffered = true;
+                    line = lineBuffer;
+                    lineOffset = 0;
+                }
+                skipWhitespace = true;
+                appendedLineBegin = true;
+                precedingBackslash = false;
+                if (c == '\r' && input[offset] == '\n') {
+                    offset++;
+                }
+            } else {
+                inputOffset = offset;
+                return length;
+            }
+        }
+    }
+
+
+    /**
+     * Gets the length of a logical line ended by the end of the input.
+     *
+     * @param length the number of bytes in the line
+     * @param precedingBackslash whether the line ends with an odd number of backslashes
+     * @return the length of the line, excluding a trailing unpaired backslash, or -1 if the line is empty
+     */
+    private static int endOfInputLength(final int length, final boolean precedingBackslash) {
+        if (length == 0) {
+            return -1;
+        }
+        if (precedingBackslash) {
+            return length - 1;
+        }
+        return length;
+    }
+
+
+    /**
+     * Skips the remainder of a comment line, including its line terminator.
+     *
+     * @param offset the position following the comment character
+     * @return the position following the line terminator, or -1 if the input ended first
+     */
+    private int skipComment(final int offset) {
+        for (int position = offset; position < inputLength; position++) {
+            if (isLineTerminator(input[position])) {
+                return position + 1;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Decodes a key or value of the current logical line, converting escapes.
+     *
+     * @param offset the position of the key or value within {@link #line}
+     * @param length the length of the key or value
+     * @return the decoded key or value
+     * @throws IllegalArgumentException if the key or value contains a malformed unicode escape
+     */
+    private String decode(final int offset, final int length) {
+        int end = offset + length;
+        int position = offset;
+        while (position < end && line[position] != '\\') {
+            position++;
+        }
+        if (position >= end - 1) {
+            return new String(line, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        decodeBuffer.setLength(0);
+        decodeBuffer.append(new String(line, offset, position - offset, StandardCharsets.ISO_8859_1));
+        while (position < end) {
+            char c = (char)(line[position++] & 0xFF);
+            if (c == '\\') {
+                c = (char)(line[position++] & 0xFF);
+                if (c == 'u') {
+                    if (position > end - UNICODE_ESCAPE_DIGITS) {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    int value = 0;
+                    for (int i = 0; i < UNICODE_ESCAPE_DIGITS; i++) {
+                        int digit = Character.digit((char)(line[position++] & 0xFF), HEX_RADIX);
+                        if (digit < 0) {
+                            throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                        }
+                        value = (value << HEX_DIGIT_BITS) + digit;
+                    }
+                    decodeBuffer.append((char)value);
+                } else {
+                    decodeBuffer.append(unescape(c));
+                }
+            } else {
+                decodeBuffer.append(c);
+            }
+        }
+        return decodeBuffer.toString();
+    }
+
+
+    /**
+     * Converts the character following a backslash to the character it represents.
+     *
+     * @param c the escaped character
+     * @return the represented character
+     */
+    private static char unescape(final char c) {
+        switch (c) {
+            case 't':
+                return '\t';
+            case 'r':
+                return '\r';
+            case 'n':
+                return '\n';
+            case 'f':
+                return '\f';
+            default:
+                return c;
+        }
+    }
+
+
+    /**
+     * Counts the natural lines of the input, which bounds the number of entries.
+     *
+     * @return the number of lines
+     */
+    private int countLines() {
+        int newlines = 0;
+        int carriageReturns = 0;
+        for (int position = 0; position < inputLength; position++) {
+            byte c = input[position];
+            if (c == '\n') {
+                newlines++;
+            } else if (c == '\r') {
+                carriageReturns++;
+            }
+        }
+        return Math.max(newlines, carriageReturns) + 1;
+    }
+
+
+    /**
+     * Determines whether the specified byte is whitespace separating keys and values.
+     *
+     * @param c the byte
+     * @return true if the byte is a space, tab or form feed, false otherwise
+     */
+    private static boolean isWhitespace(final byte c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+
+    /**
+     * Determines whether the specified byte is a line terminator.
+     *
+     * @param c the byte
+     * @return true if the byte is a carriage return or line feed, false otherwise
+     */
+    private static boolean isLineTerminator(final byte c) {
+        return c == '\r' || c == '\n';
+    }
+
+
+}
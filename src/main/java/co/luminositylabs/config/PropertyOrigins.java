@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2016 Luminosity Labs LLC. All rights reserved.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership.  The ASF
+ * licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package co.luminositylabs.config;
+
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Records the source each property of a snapshot came from.
+ * <p>
+ * Most properties usually come from a single source, so rather than recording an origin for every property, a base
+ * origin is recorded along with the exceptions to it.  A configuration loaded from one source therefore records no
+ * per-property state at all.  Instances are immutable.
+ *
+ * @author Phillip Ross
+ */
+final class PropertyOrigins implements Serializable {
+
+    private static final long serialVersionUID = 5179243017613325761L;
+
+    /** The origins of a snapshot whose properties were all set programmatically. */
+    static final PropertyOrigins NONE = new PropertyOrigins(null, Collections.emptyMap());
+
+    /** The origin of every property which is not an exception, or null if such properties were set programmatically. */
+    private final String baseOrigin;
+
+    /** The origins of the properties which did not come from the base origin, null for those set programmatically. */
+    private final Map<Object, String> exceptions;
+
+
+    /**
+     * Instantiates new origins which take ownership of the specified exceptions.
+     *
+     * @param baseOrigin the origin of every property which is not an exception, or null
+     * @param exceptions the origins of the properties which did not come from the base origin
+     */
+    PropertyOrigins(final String baseOrigin, final Map<Object, String> exceptions) {
+        this.baseOrigin = baseOrigin;
+        this.exceptions = exceptions;
+    }
+
+
+    /**
+     * Gets the origin of a property which is present in the snapshot.
+     *
+     * @param key the key of the property
+     * @return the origin, or null if the property was set programmatically
+     */
+    String origin(final Object key) {
+        if (exceptions.containsKey(key)) {
+            return exceptions.get(key);
+        }
+        return baseOrigin;
+    }
+
+
+    /**
+     * Creates the origins which result from setting the specified properties programmatically.
+     *
+     * @param keys the keys of the properties set programmatically
+     * @return the resulting origins
+     */
+    PropertyOrigins withProgrammaticKeys(final Collection<?> keys) {
+        if (baseOrigin == null && exceptions.isEmpty()) {
+            return this;
+        }
+        Map<Object, String> nextExceptions = new HashMap<>(exceptions);
+        for (Object key : keys) {
+            nextExceptions.put(key, null);
+        }
+        return new PropertyOrigins(baseOrigin, nextExceptions);
+    }
+
+
+}
@@ -17,6 +17,10 @@
 package co.luminositylabs.config;
 
 
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.eclipse.microprofile.config.spi.ConfigSource;
+import org.eclipse.microprofile.config.spi.ConfigSourceProvider;
+import org.eclipse.microprofile.config.spi.Converter;
 import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.testng.Arquillian;
 import org.jboss.shrinkwrap.api.Archive;
@@ -31,20 +35,61 @@ import org.slf4j.LoggerFactory;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import jakarta.enterprise.inject.spi.Extension;
 import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 
 public class ConfigurationTest extends Arquillian {
 
     private static final Logger logger = LoggerFactory.getLogger(ConfigurationTest.class);
 
+    private static final ConfigKey<Integer> POOL_SIZE = ConfigKey.ofInt("pool.size", 10);
+
     @Inject
     private Configuration configuration;
 
+    @Inject
+    @ConfigValue(value = "injected.poolSize", defaultValue = "10")
+    private int injectedPoolSize;
+
+    @Inject
+    @ConfigValue(value = "injected.timeout", defaultValue = "PT30S")
+    private Supplier<Duration> injectedTimeout;
+
+    @Inject
+    @ConfigValue("injected.name")
+    private Provider<String> injectedName;
+
+    @Inject
+    @ConfigValue(value = "injected.maxConnections", defaultValue = "5")
+    private Provider<Integer> injectedMaxConnections;
+
 
     @Deployment
     public static Archive<?> createDeployment() {
@@ -63,6 +108,8 @@ public class ConfigurationTest extends Arquillian {
                 .addAsLibraries(tng)
                 .addPackage(Configuration.class.getPackage())
                 .addAsResource("co.luminositylabs.config.properties")
+                .addAsServiceProvider(ConfigSourceProvider.class, MicroProfileConfigSourceProvider.class)
+                .addAsServiceProvider(Extension.class, ConfigValueExtension.class)
                 .addAsManifestResource(EmptyAsset.INSTANCE, "beans.xml");
         logger.debug("deployable jar content: {}", jar.toString(true));
         return jar;
@@ -114,6 +161,184 @@ public class ConfigurationTest extends Arquillian {
     }
 
 
+    @Test
+    public void testConfigurationGetPropertiesWithPrefixView() {
+        cleanProperties();
+        Map<String, String> view = configuration.getPropertiesWithPrefixView("view.");
+        Assert.assertTrue(view.isEmpty());
+
+        configuration.setProperty("view.b", "2");
+        configuration.setProperty("view.a", "1");
+        configuration.setProperty("viewer.c", "3");
+        Assert.assertEquals(view.size(), 2);
+        Assert.assertEquals(view.get("view.a"), "1");
+        Assert.assertNull(view.get("viewer.c"));
+        Assert.assertEquals(view.keySet().iterator().next(), "view.a");
+        Assert.assertEquals(configuration.getPropertiesWithPrefix("view").size(), 3);
+        Assert.assertThrows(UnsupportedOperationException.class, () -> view.put("view.c", "3"));
+    }
+
+
+    @Test
+    public void testConfigurationReadOnlyViews() {
+        cleanProperties();
+        configuration.setProperty("views.b", "2");
+        configuration.setProperty("views.a", "1");
+        configuration.setProperty("other", "3");
+        configuration.put("views.object", new Object());
+        Map<String, String> view = configuration.getPropertiesView();
+        configuration.setProperty("views.c", "4");
+        Assert.assertEquals(view.size(), 3);
+        Assert.assertNull(view.get("views.c"));
+        Assert.assertEquals(String.join(",", view.keySet()), "other,views.a,views.b");
+        Assert.assertThrows(UnsupportedOperationException.class, () -> view.remove("other"));
+
+        StringBuilder visited = new StringBuilder();
+        configuration.forEachWithPrefix("views.", (name, value) -> visited.append(name + '=' + value + ';'));
+        Assert.assertEquals(visited.toString(), "views.a=1;views.b=2;views.c=4;");
+        AtomicInteger count = new AtomicInteger();
+        configuration.forEach((name, value) -> count.incrementAndGet());
+        Assert.assertEquals(count.get(), 4);
+        Assert.assertEquals(configuration.stream().parallel().map(Map.Entry::getValue).reduce("", String::concat),
+                "3124");
+    }
+
+
+    @Test
+    public void testPlaceholderInterpolation() {
+        cleanProperties();
+        Properties properties = new Properties();
+        properties.setProperty("db.host", "localhost");
+        properties.setProperty("db.name", "${app.name}-db");
+        properties.setProperty("db.url", "jdbc:postgresql://${db.host}:${db.port:5432}/${db.name}");
+        properties.setProperty("app.name", "shop");
+        properties.setProperty("escaped", "\\${db.host}");
+        properties.setProperty("unresolved", "${missing}");
+        properties.setProperty("cycle.a", "${cycle.b}");
+        properties.setProperty("cycle.b", "${cycle.a}");
+        configuration.setProperties(properties);
+        Assert.assertEquals(configuration.getProperty("db.url"), "jdbc:postgresql://localhost:5432/shop-db");
+        Assert.assertEquals(configuration.getRawProperty("db.url"), properties.getProperty("db.url"));
+        Assert.assertEquals(configuration.getProperty("escaped"), "${db.host}");
+        Assert.assertEquals(configuration.getProperty("unresolved"), "${missing}");
+        Assert.assertEquals(configuration.getProperty("cycle.a"), "${cycle.b}");
+
+        configuration.setProperty("app.name", "cart");
+        configuration.setProperty("db.port", "6432");
+        Assert.assertEquals(configuration.getProperty("db.url"), "jdbc:postgresql://localhost:6432/cart-db");
+        configuration.setProperty("cycle.b", "b");
+        Assert.assertEquals(configuration.getProperty("cycle.a"), "b");
+    }
+
+
+    @Test
+    public void testCompactStorageMode() {
+        cleanProperties();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("tenant.1.db.host", "db.internal");
+        properties.put("tenant.2.db.host", "db.internal");
+        properties.put("tenant.2.db.url", "jdbc:postgresql://${tenant.2.db.host}/app");
+        properties.put("tenant.2.enabled", "true");
+        properties.put("object", new Object());
+        configuration.putAll(properties);
+        try {
+            for (ConfigurationStorageMode storageMode : ConfigurationStorageMode.values()) {
+                configuration.setStorageMode(storageMode);
+                Assert.assertEquals(configuration.getStorageMode(), storageMode);
+                Assert.assertEquals(configuration.getProperty("tenant.2.db.url"), "jdbc:postgresql://db.internal/app");
+                Assert.assertEquals(configuration.getPropertiesWithPrefix("tenant.2.").size(), 3);
+                Assert.assertEquals(String.join(",", configuration.getPropertiesView().keySet()),
+                        "tenant.1.db.host,tenant.2.db.host,tenant.2.db.url,tenant.2.enabled");
+                Assert.assertNotNull(configuration.get("object"));
+                Assert.assertNull(configuration.getProperty("tenant.3.db.host"));
+
+                ConfigKey<List<String>> urlKey = ConfigKey.ofList("tenant.2.db.url");
+                List<String> url = urlKey.get(configuration);
+                Assert.assertSame(configuration.getListProperty("tenant.2.db.url"),
+                        configuration.getListProperty("tenant.2.db.url"));
+                configuration.setProperty("tenant.1.db.host", "db.unrelated");
+                Assert.assertSame(urlKey.get(configuration), url);
+                configuration.setProperty("tenant.1.db.host", "db.internal");
+
+                configuration.setProperty("tenant.2.db.host", storageMode.name());
+                Assert.assertEquals(configuration.getProperty("tenant.2.db.url"),
+                        "jdbc:postgresql://" + storageMode.name() + "/app");
+                Assert.assertEquals(configuration.getSnapshot().getStorageMode(), storageMode);
+                configuration.setProperty("tenant.2.db.host", "db.internal");
+            }
+        } finally {
+            configuration.setStorageMode(ConfigurationStorageMode.STANDARD);
+        }
+    }
+
+
+    @Test
+    public void testAtomicUpdate() {
+        cleanProperties();
+        configuration.setProperty("pool.min", "1");
+        configuration.setProperty("pool.max", "10");
+        configuration.setProperty("pool.legacy", "true");
+        long version = configuration.getSnapshot().getVersion();
+
+        ConfigurationSnapshot published = configuration.update(update -> update
+                .setProperty("pool.min", "5")
+                .setProperty("pool.max", "50")
+                .remove("pool.legacy"));
+        Assert.assertEquals(published.getVersion(), version + 1);
+        Assert.assertEquals(configuration.getProperty("pool.min"), "5");
+        Assert.assertEquals(configuration.getProperty("pool.max"), "50");
+        Assert.assertNull(configuration.getProperty("pool.legacy"));
+
+        try {
+            configuration.update(update -> {
+                update.setProperty("pool.min", "0");
+                throw new IllegalArgumentException("rejected");
+            });
+            Assert.fail("The mutator exception was not propagated.");
+        } catch (IllegalArgumentException iae) {
+            Assert.assertEquals(configuration.getProperty("pool.min"), "5");
+        }
+
+        Assert.assertNull(configuration.compareAndUpdate(version, update -> update.setProperty("pool.max", "20")));
+        Assert.assertEquals(configuration.getProperty("pool.max"), "50");
+        published = configuration.compareAndUpdate(
+                published.getVersion(), update -> update.setProperty("pool.max", "20")
+        );
+        Assert.assertNotNull(published);
+        Assert.assertEquals(configuration.getSnapshot(), published);
+        Assert.assertEquals(configuration.getProperty("pool.max"), "20");
+    }
+
+
+    @Test
+    public void testMetrics() {
+        cleanProperties();
+        ConfigurationMetrics metrics = configuration.getMetrics();
+        metrics.reset();
+        configuration.setProperty("metrics.read", "1");
+        configuration.getProperty("metrics.read");
+        Assert.assertEquals(metrics.getReadCount("metrics.read"), 0L);
+
+        metrics.setEnabled(true);
+        try {
+            configuration.getProperty("metrics.read");
+            configuration.getIntProperty("metrics.read", 0);
+            configuration.getProperty("metrics.missing", "default");
+            configuration.putAll(Collections.singletonMap("metrics.written", "2"));
+            Assert.assertEquals(metrics.getReadCount("metrics.read"), 2L);
+            Assert.assertEquals(metrics.getReadCount(), 3L);
+            Assert.assertEquals(metrics.getMissCount(), 1L);
+            Assert.assertEquals(metrics.getMissCounts(), Collections.singletonMap("metrics.missing", 1L));
+            Assert.assertEquals(metrics.getWriteLockWait().getCount(), 1L);
+            Assert.assertEquals(metrics.getWriteLockHold().getCount(), 1L);
+            Assert.assertTrue(metrics.getWriteLockHold().getPercentile(100.0d).compareTo(Duration.ZERO) >= 0);
+        } finally {
+            metrics.setEnabled(false);
+            metrics.reset();
+        }
+    }
+
+
     @Test
     public void testStandaloneProperties() {
         Properties properties = new Properties();
@@ -157,6 +382,552 @@ public class ConfigurationTest extends Arquillian {
     }
 
 
+    @Test
+    public void testTypedProperties() {
+        cleanProperties();
+        configuration.setProperty("typed.int", " 42 ");
+        configuration.setProperty("typed.long", "9000000000");
+        configuration.setProperty("typed.double", "0.5");
+        configuration.setProperty("typed.boolean", "true");
+        configuration.setProperty("typed.duration", "PT30S");
+        configuration.setProperty("typed.enum", "SECONDS");
+        configuration.setProperty("typed.list", "a, b,,c");
+        Assert.assertEquals(configuration.getIntProperty("typed.int", 0), 42);
+        Assert.assertEquals(configuration.getLongProperty("typed.long", 0L), 9000000000L);
+        Assert.assertEquals(configuration.getDoubleProperty("typed.double", 0d), 0.5d);
+        Assert.assertTrue(configuration.getBooleanProperty("typed.boolean", false));
+        Assert.assertEquals(configuration.getDurationProperty("typed.duration", null), Duration.ofSeconds(30));
+        Assert.assertEquals(
+                configuration.getEnumProperty("typed.enum", TimeUnit.class, null), TimeUnit.SECONDS
+        );
+        Assert.assertEquals(configuration.getListProperty("typed.list"), Arrays.asList("a", "b", "c"));
+        Assert.assertSame(configuration.getListProperty("typed.list"), configuration.getListProperty("typed.list"));
+        Assert.assertEquals(configuration.getIntProperty("typed.missing", 7), 7);
+        Assert.assertTrue(configuration.getListProperty("typed.missing").isEmpty());
+
+        configuration.setProperty("typed.int", "43");
+        Assert.assertEquals(configuration.getIntProperty("typed.int", 0), 43);
+        configuration.setProperty("typed.int", "forty-four");
+        Assert.assertThrows(NumberFormatException.class, () -> configuration.getIntProperty("typed.int", 0));
+    }
+
+
+    @Test
+    public void testConfigKey() {
+        cleanProperties();
+        Assert.assertEquals(POOL_SIZE.get(), Integer.valueOf(10));
+        Assert.assertEquals(POOL_SIZE.get(configuration), Integer.valueOf(10));
+        configuration.setProperty(POOL_SIZE.getName(), "20");
+        Assert.assertEquals(POOL_SIZE.get(), Integer.valueOf(20));
+        configuration.setProperty("unrelated", "x");
+        Assert.assertEquals(POOL_SIZE.get(), Integer.valueOf(20));
+        configuration.setProperties(new Properties());
+        Assert.assertEquals(POOL_SIZE.get(configuration), Integer.valueOf(10));
+    }
+
+
+    @Test
+    public void testConfigurationListener() throws Exception {
+        cleanProperties();
+        configuration.setProperty("listener.changed", "before");
+        configuration.setProperty("listener.removed", "x");
+        BlockingQueue<ConfigurationChangeEvent> events = new LinkedBlockingQueue<>();
+        ConfigurationListener listener = events::add;
+        configuration.addListener("listener.", listener);
+        try {
+            Properties properties = new Properties();
+            properties.setProperty("listener.changed", "after");
+            properties.setProperty("listener.added", "y");
+            properties.setProperty("unrelated", "z");
+            configuration.setProperties(properties);
+            ConfigurationChangeEvent event = events.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(event);
+            Assert.assertEquals(event.getAddedKeys(), Collections.singleton("listener.added"));
+            Assert.assertEquals(event.getRemovedKeys(), Collections.singleton("listener.removed"));
+            Assert.assertEquals(event.getChangedKeys(), Collections.singleton("listener.changed"));
+            Assert.assertEquals(event.getSnapshot().getProperty("listener.changed"), "after");
+            Assert.assertEquals(event.getPreviousSnapshot().getProperty("listener.changed"), "before");
+        } finally {
+            configuration.removeListener(listener);
+        }
+    }
+
+
+    @Test
+    public void testLayeredConfigurationSources() throws Exception {
+        Path file = Files.createTempFile("configuration-layer", ".properties");
+        Files.write(file, "testProperty2=fromLayer\nlayer.only=x\n".getBytes(StandardCharsets.ISO_8859_1));
+        ConfigurationSource fileSource = ConfigurationSources.file(file, ConfigurationSources.CONFIG_FILE_ORDINAL + 1);
+        ConfigurationSource missingSource = ConfigurationSources.classpath("missing.properties");
+        try {
+            configuration.addSource(fileSource);
+            configuration.addSource(missingSource);
+            Assert.assertEquals(configuration.getSources(), Arrays.asList(fileSource, missingSource));
+            ConfigurationReloadResult result = configuration.reload();
+            Assert.assertTrue(result.isReloaded());
+            Assert.assertEquals(result.getPropertyCount(), 3);
+            Assert.assertEquals(configuration.getProperty("testProperty1"), "1");
+            Assert.assertEquals(configuration.getProperty("testProperty2"), "fromLayer");
+            Assert.assertEquals(configuration.getOrigin("testProperty2"), fileSource.getName());
+            Assert.assertEquals(configuration.getOrigin("layer.only"), fileSource.getName());
+            Assert.assertNotEquals(configuration.getOrigin("testProperty1"), fileSource.getName());
+            configuration.setProperty("layer.only", "y");
+            Assert.assertNull(configuration.getOrigin("layer.only"));
+        } finally {
+            configuration.removeSource(fileSource);
+            configuration.removeSource(missingSource);
+            Files.delete(file);
+            configuration.reload();
+        }
+        Assert.assertEquals(configuration.getProperty("testProperty2"), "2");
+        Assert.assertNull(configuration.getProperty("layer.only"));
+    }
+
+
+    @Test
+    public void testReloadAsync() throws Exception {
+        cleanProperties();
+        ConfigurationReloadResult result = configuration.reloadAsync().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(result.getOutcome(), ConfigurationReloadResult.Outcome.RELOADED);
+        Assert.assertEquals(result.getPropertyCount(), 2);
+        Assert.assertEquals(result.getVersion(), configuration.getSnapshot().getVersion());
+        Assert.assertNotNull(result.getLocation());
+        Assert.assertNotNull(result.getElapsed());
+        Assert.assertNull(result.getFailure());
+        Assert.assertEquals(configuration.getProperty("testProperty1"), "1");
+    }
+
+
+    @Test
+    public void testConfigurationFileWatcherDebouncesChanges() throws Exception {
+        Path directory = Files.createTempDirectory("configuration-watch");
+        Path file = directory.resolve("watched.properties");
+        Files.write(file, "watched=0\n".getBytes(StandardCharsets.ISO_8859_1));
+        AtomicInteger reloads = new AtomicInteger();
+        CountDownLatch reloaded = new CountDownLatch(1);
+        try (ConfigurationFileWatcher watcher = new ConfigurationFileWatcher(file, Duration.ofMillis(250), path -> {
+            reloads.incrementAndGet();
+            reloaded.countDown();
+            return true;
+        })) {
+            for (int i = 1; i <= 5; i++) {
+                Files.write(file, ("watched=" + i + "\n").getBytes(StandardCharsets.ISO_8859_1));
+            }
+            Assert.assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+            Thread.sleep(500);
+            Assert.assertEquals(reloads.get(), 1);
+            Assert.assertEquals(watcher.getFile(), file.toAbsolutePath());
+        }
+    }
+
+
+    @Test
+    public void testConfigurationFileWatcherSurvivesFailedReload() throws Exception {
+        Path directory = Files.createTempDirectory("configuration-watch");
+        Path file = directory.resolve("watched.properties");
+        Files.write(file, "watched=0\n".getBytes(StandardCharsets.ISO_8859_1));
+        AtomicInteger reloads = new AtomicInteger();
+        CountDownLatch failed = new CountDownLatch(1);
+        CountDownLatch reloaded = new CountDownLatch(1);
+        try (ConfigurationFileWatcher watcher = new ConfigurationFileWatcher(file, Duration.ofMillis(50), path -> {
+            if (reloads.incrementAndGet() == 1) {
+                failed.countDown();
+                throw new IllegalStateException("failing source");
+            }
+            reloaded.countDown();
+            return true;
+        })) {
+            Files.write(file, "watched=1\n".getBytes(StandardCharsets.ISO_8859_1));
+            Assert.assertTrue(failed.await(10, TimeUnit.SECONDS));
+            Files.write(file, "watched=2\n".getBytes(StandardCharsets.ISO_8859_1));
+            Assert.assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(watcher.getFile(), file.toAbsolutePath());
+        }
+    }
+
+
+    @Test
+    public void testPollingRefresh() throws Exception {
+        Path file = Files.createTempFile("configuration-polled", ".properties");
+        Files.write(file, "polled=1\n".getBytes(StandardCharsets.ISO_8859_1));
+        PollingConfigurationSource pollingSource = ConfigurationSources.polling(file, Duration.ofMillis(50),
+                ConfigurationSources.CONFIG_FILE_ORDINAL + 1);
+        try {
+            configuration.addSource(pollingSource);
+            configuration.reload();
+            Assert.assertEquals(configuration.getProperty("polled"), "1");
+            Assert.assertTrue(configuration.startRefreshing());
+            Assert.assertTrue(configuration.isRefreshing());
+            long version = configuration.getSnapshot().getVersion();
+            Thread.sleep(250);
+            Assert.assertEquals(configuration.getSnapshot().getVersion(), version);
+
+            Files.write(file, "polled=22\n".getBytes(StandardCharsets.ISO_8859_1));
+            awaitProperty(configuration, "polled", "22");
+            Assert.assertEquals(configuration.getProperty("testProperty1"), "1");
+            Assert.assertEquals(configuration.getOrigin("polled"), pollingSource.getName());
+        } finally {
+            configuration.stopRefreshing();
+            configuration.removeSource(pollingSource);
+            Files.delete(file);
+            configuration.reload();
+        }
+        Assert.assertFalse(configuration.isRefreshing());
+        Assert.assertNull(configuration.getProperty("polled"));
+    }
+
+
+    @Test
+    public void testRefreshDoesNotRevertNewerReload() throws Exception {
+        Path file = Files.createTempFile("configuration-layer", ".properties");
+        Files.write(file, "layer=1\n".getBytes(StandardCharsets.ISO_8859_1));
+        AtomicInteger polledValue = new AtomicInteger(1);
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger blockedFetches = new AtomicInteger(1);
+        PollingConfigurationSource pollingSource = new PollingConfigurationSource() {
+            @Override
+            public ConfigurationFetch fetch(final String validator) throws IOException {
+                if (validator != null && blockedFetches.getAndDecrement() == 1) {
+                    fetching.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return ConfigurationFetch.modified(Collections.singletonMap("polled", polledValue.toString()),
+                        polledValue.toString());
+            }
+
+            @Override
+            public String getName() {
+                return "blocking";
+            }
+
+            @Override
+            public int getOrdinal() {
+                return ConfigurationSources.CONFIG_FILE_ORDINAL + 1;
+            }
+        };
+        ConfigurationSourceLoader loader = new ConfigurationSourceLoader();
+        loader.addSource(pollingSource);
+        try {
+            ConfigurationSource fileSource = ConfigurationSources.file(file);
+            Assert.assertEquals(loader.load(fileSource).getEntries().get("layer"), "1");
+
+            polledValue.set(2);
+            CompletableFuture<ConfigurationSourceLoader.Merged> refresh = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return loader.refresh(pollingSource);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+            Assert.assertTrue(fetching.await(10, TimeUnit.SECONDS));
+            Files.write(file, "layer=2\n".getBytes(StandardCharsets.ISO_8859_1));
+            Assert.assertEquals(loader.load(fileSource).getEntries().get("layer"), "2");
+            release.countDown();
+            Map<Object, Object> refreshed = refresh.get(10, TimeUnit.SECONDS).getEntries();
+            Assert.assertEquals(refreshed.get("layer"), "2");
+            Assert.assertEquals(refreshed.get("polled"), "2");
+
+            polledValue.set(3);
+            Assert.assertEquals(loader.refresh(pollingSource).getEntries().get("layer"), "2");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+
+    @Test
+    public void testMicroProfileConfigSource() {
+        configuration.setProperty("mp.value", "42");
+        MicroProfileConfigSource configSource = new MicroProfileConfigSource(configuration, 250);
+        Assert.assertEquals(configSource.getOrdinal(), 250);
+        Assert.assertEquals(configSource.getValue("mp.value"), "42");
+        Assert.assertTrue(configSource.getPropertyNames().contains("mp.value"));
+        AtomicInteger conversions = new AtomicInteger();
+        Converter<Integer> converter = value -> {
+            conversions.incrementAndGet();
+            return Integer.valueOf(value);
+        };
+        Assert.assertEquals(configSource.getValue("mp.value", converter), Integer.valueOf(42));
+        Assert.assertEquals(configSource.getValue("mp.value", converter), Integer.valueOf(42));
+        Assert.assertEquals(conversions.get(), 1);
+        configuration.setProperty("mp.value", "43");
+        Assert.assertEquals(configSource.getValue("mp.value", converter), Integer.valueOf(43));
+        Assert.assertEquals(conversions.get(), 2);
+        configuration.update(update -> update.remove("mp.value"));
+        Assert.assertNull(configSource.getValue("mp.value", converter));
+
+        boolean registered = false;
+        for (ConfigSource source : ConfigProvider.getConfig().getConfigSources()) {
+            registered |= MicroProfileConfigSource.NAME.equals(source.getName());
+        }
+        Assert.assertTrue(registered);
+    }
+
+
+    @Test
+    public void testConfigValueInjection() {
+        Assert.assertEquals(injectedPoolSize, 10);
+        Assert.assertEquals(injectedTimeout.get(), Duration.ofSeconds(30));
+        configuration.setProperty("injected.timeout", "PT5S");
+        configuration.setProperty("injected.name", "first");
+        Assert.assertEquals(injectedTimeout.get(), Duration.ofSeconds(5));
+        Assert.assertEquals(injectedName.get(), "first");
+        configuration.setProperty("injected.name", "second");
+        Assert.assertEquals(injectedName.get(), "second");
+        Assert.assertEquals(injectedMaxConnections.get(), Integer.valueOf(5));
+        configuration.setProperty("injected.maxConnections", "50");
+        Assert.assertEquals(injectedMaxConnections.get(), Integer.valueOf(50));
+        configuration.update(update -> update.remove("injected.timeout").remove("injected.name")
+                .remove("injected.maxConnections"));
+        Assert.assertEquals(injectedTimeout.get(), Duration.ofSeconds(30));
+        Assert.assertEquals(injectedMaxConnections.get(), Integer.valueOf(5));
+        Assert.assertThrows(IllegalStateException.class, () -> injectedName.get());
+    }
+
+
+    @Test
+    public void testConfigurationOverlay() {
+        configuration.setProperty("tenant.shared", "base");
+        configuration.setProperty("tenant.hidden", "base");
+        ConfigurationOverlay overlay = configuration.overlay("tenant-1");
+        overlay.setProperty("tenant.shared", "overridden");
+        overlay.setProperty("tenant.only", "1");
+        overlay.removeProperty("tenant.hidden");
+        Assert.assertEquals(overlay.getProperty("tenant.shared"), "overridden");
+        Assert.assertEquals(overlay.getProperty("tenant.only"), "1");
+        Assert.assertNull(overlay.getProperty("tenant.hidden"));
+        Assert.assertEquals(overlay.getProperty("testProperty1"), configuration.getProperty("testProperty1"));
+        Assert.assertNull(configuration.getProperty("tenant.only"));
+        Assert.assertEquals(overlay.getOverrideCount(), 3);
+
+        configuration.setProperty("tenant.added", "base");
+        Assert.assertEquals(overlay.getProperty("tenant.added"), "base");
+        Map<String, String> view = overlay.getPropertiesView();
+        Assert.assertEquals(view.size(), configuration.getPropertiesView().size());
+        Assert.assertEquals(view.get("tenant.shared"), "overridden");
+        Assert.assertFalse(view.containsKey("tenant.hidden"));
+
+        ConfigurationOverlay copy = overlay.copy("tenant-2");
+        copy.resetProperty("tenant.shared");
+        Assert.assertEquals(copy.getProperty("tenant.shared"), "base");
+        Assert.assertEquals(overlay.getProperty("tenant.shared"), "overridden");
+    }
+
+
+    @Test
+    public void testConfigurationOverlayResolvesDependentPlaceholders() {
+        configuration.setProperty("tenant.db.host", "base-host");
+        configuration.setProperty("tenant.db.url", "jdbc:pg://${tenant.db.host}/app");
+        configuration.setProperty("tenant.db.pool", "${tenant.db.url}?pool=1");
+        ConfigurationOverlay overlay = configuration.overlay("tenant-3");
+        overlay.setProperty("tenant.db.host", "tenant-host");
+        Assert.assertEquals(overlay.getProperty("tenant.db.url"), "jdbc:pg://tenant-host/app");
+        Assert.assertEquals(overlay.getProperty("tenant.db.pool"), "jdbc:pg://tenant-host/app?pool=1");
+        Assert.assertEquals(overlay.getPropertiesView().get("tenant.db.url"), "jdbc:pg://tenant-host/app");
+        Assert.assertTrue(overlay.getPropertiesView().entrySet().contains(
+                new AbstractMap.SimpleImmutableEntry<>("tenant.db.pool", "jdbc:pg://tenant-host/app?pool=1")));
+        Assert.assertEquals(configuration.getProperty("tenant.db.url"), "jdbc:pg://base-host/app");
+
+        configuration.setProperty("tenant.db.url", "jdbc:mysql://${tenant.db.host}/app");
+        Assert.assertEquals(overlay.getProperty("tenant.db.url"), "jdbc:mysql://tenant-host/app");
+        overlay.resetProperty("tenant.db.host");
+        Assert.assertEquals(overlay.getProperty("tenant.db.url"), "jdbc:mysql://base-host/app");
+    }
+
+
+    @Test
+    public void testHistoryAndRollback() {
+        configuration.setProperty("history.host", "a");
+        configuration.setProperty("history.url", "http://${history.host}/");
+        long goodVersion = configuration.getSnapshot().getVersion();
+        configuration.update(update -> update.setProperty("history.host", "b").setProperty("history.bad", "1"));
+        long badVersion = configuration.getSnapshot().getVersion();
+
+        ConfigurationHistory history = configuration.getHistory();
+        Assert.assertEquals(history.getProperty(goodVersion, "history.url"), "http://a/");
+        Assert.assertNull(history.getProperty(goodVersion, "history.bad"));
+        ConfigurationDiff diff = history.diff(goodVersion, badVersion);
+        Assert.assertEquals(diff.getAddedKeys(), Collections.singleton("history.bad"));
+        Assert.assertTrue(diff.getChangedKeys().contains("history.url"));
+        Assert.assertEquals(diff.getFromValue("history.host"), "a");
+        Assert.assertEquals(history.getRevision(badVersion).getOrigin(), ConfigurationRevision.Origin.WRITE);
+
+        ConfigurationSnapshot rolledBack = configuration.rollback(goodVersion);
+        Assert.assertEquals(rolledBack.getVersion(), badVersion + 1);
+        Assert.assertEquals(configuration.getProperty("history.url"), "http://a/");
+        Assert.assertNull(configuration.getProperty("history.bad"));
+        Assert.assertEquals(history.getRevision(rolledBack.getVersion()).getOrigin(),
+                ConfigurationRevision.Origin.ROLLBACK);
+        Assert.assertThrows(IllegalArgumentException.class, () -> configuration.rollback(-1L));
+
+        configuration.setProperty("history.host", "c");
+        try {
+            configuration.setStorageMode(ConfigurationStorageMode.COMPACT);
+            Assert.assertEquals(configuration.getHistory().getProperty(configuration.getSnapshot().getVersion(),
+                    "history.host"), "c");
+            configuration.rollback(goodVersion);
+            Assert.assertEquals(configuration.getProperty("history.host"), "a");
+        } finally {
+            configuration.setStorageMode(ConfigurationStorageMode.STANDARD);
+        }
+    }
+
+
+    @Test
+    public void testSnapshotIsImmutableAndVersioned() {
+        cleanProperties();
+        configuration.setProperty("snapshot1", "before");
+        ConfigurationSnapshot before = configuration.getSnapshot();
+        configuration.setProperty("snapshot1", "after");
+        configuration.setProperty("snapshot2", "added");
+        ConfigurationSnapshot after = configuration.getSnapshot();
+        Assert.assertEquals(before.getProperty("snapshot1"), "before");
+        Assert.assertFalse(before.containsKey("snapshot2"));
+        Assert.assertEquals(after.getProperty("snapshot1"), "after");
+        Assert.assertEquals(after.getProperty("snapshot2"), "added");
+        Assert.assertEquals(after.getVersion(), before.getVersion() + 2);
+        Assert.assertEquals(configuration.putIfAbsent("snapshot1", "ignored"), "after");
+        Assert.assertSame(configuration.getSnapshot(), after);
+    }
+
+
+    @Test
+    public void testPropertiesParserMatchesPropertiesLoad() throws Exception {
+        String content = "# comment\n"
+                + "  ! another comment\r\n"
+                + "plain=value\n"
+                + "spaced   :   value with spaces  \n"
+                + "key\\ with\\=escapes = tab\\there\\u00e9\n"
+                + "continued = first, \\\n"
+                + "            second, \\\r\n"
+                + "            third\n"
+                + "empty\n"
+                + "\\#notAComment = x\n"
+                + "trailing = backslash\\";
+        byte[] bytes = content.getBytes(StandardCharsets.ISO_8859_1);
+        Properties expected = new Properties();
+        expected.load(new ByteArrayInputStream(bytes));
+        Assert.assertEquals(PropertiesParser.parse(bytes, bytes.length), new HashMap<>(expected));
+        Path file = Files.createTempFile("configuration-parser", ".properties");
+        try {
+            Files.write(file, bytes);
+            Assert.assertEquals(PropertiesParser.parse(file), new HashMap<>(expected));
+        } finally {
+            Files.delete(file);
+        }
+        byte[] malformed = "bad=\\u12g4".getBytes(StandardCharsets.ISO_8859_1);
+        Assert.assertThrows(IllegalArgumentException.class, () -> PropertiesParser.parse(malformed, malformed.length));
+    }
+
+
+    @Test
+    public void testCompiledPropertiesCache() throws Exception {
+        Path file = Files.createTempFile("configuration-cache", ".properties");
+        Path cacheFile = CompiledPropertiesCache.cachePath(file);
+        try {
+            Files.write(file, "greeting = h\\u00e9llo\nwide = \\u4e2d\nempty =\n".getBytes(
+                    StandardCharsets.ISO_8859_1));
+            Map<Object, Object> expected = PropertiesParser.parse(file);
+            Assert.assertEquals(CompiledPropertiesCache.load(file), expected);
+            Assert.assertTrue(Files.exists(cacheFile));
+            Assert.assertEquals(CompiledPropertiesCache.load(file), expected);
+
+            FileTime modifiedTime = Files.getLastModifiedTime(file);
+            Files.write(file, "greeting = hallo\nwide = \\u4e2d\nempty =\n".getBytes(StandardCharsets.ISO_8859_1));
+            Files.setLastModifiedTime(file, modifiedTime);
+            Assert.assertEquals(CompiledPropertiesCache.load(file).get("greeting"), "hallo");
+
+            Files.write(cacheFile, new byte[] {1, 2, 3});
+            Assert.assertEquals(CompiledPropertiesCache.load(file).get("greeting"), "hallo");
+        } finally {
+            Files.deleteIfExists(cacheFile);
+            Files.delete(file);
+        }
+    }
+
+
+    @Test
+    public void testChangeJournal() throws Exception {
+        Path directory = Files.createTempDirectory("configuration-journal");
+        Path journalFile = directory.resolve("changes.journal");
+        Configuration journaled = new Configuration();
+        journaled.setProperty("journal.removed", "1");
+        Assert.assertTrue(journaled.startJournaling(journalFile, Duration.ofMillis(50)));
+        journaled.setProperty("journal.set", "a");
+        journaled.putAll(Collections.singletonMap("journal.wide", "\u4e2d"));
+        journaled.update(update -> update.remove("journal.removed"));
+        Assert.assertTrue(journaled.flushJournal());
+        journaled.setProperty("journal.set", "b");
+        journaled.stopJournaling();
+        Assert.assertFalse(journaled.isJournaling());
+        long journalSize = Files.size(journalFile);
+        Files.write(journalFile, new byte[] {0, 0, 0, 64, 1}, StandardOpenOption.APPEND);
+
+        Configuration restarted = new Configuration();
+        restarted.setProperty("journal.removed", "1");
+        Assert.assertTrue(restarted.startJournaling(journalFile, Duration.ofMillis(50)));
+        try {
+            Assert.assertEquals(Files.size(journalFile), journalSize);
+            Assert.assertEquals(restarted.getProperty("journal.set"), "b");
+            Assert.assertEquals(restarted.getProperty("journal.wide"), "\u4e2d");
+            Assert.assertNull(restarted.getProperty("journal.removed"));
+        } finally {
+            restarted.stopJournaling();
+            Files.deleteIfExists(directory.resolve("changes.journal" + ConfigurationJournal.SNAPSHOT_FILE_SUFFIX));
+            Files.delete(journalFile);
+            Files.delete(directory);
+        }
+    }
+
+
+    @Test
+    public void testClusterSync() throws Exception {
+        LoopbackSyncTransport transport = new LoopbackSyncTransport();
+        Configuration first = new Configuration();
+        Configuration second = new Configuration();
+        first.setProperty("cluster.shared", "initial");
+        second.setProperty("cluster.shared", "initial");
+        try (ConfigurationSync firstSync = new ConfigurationSync(first, transport, "first");
+             ConfigurationSync secondSync = new ConfigurationSync(second, transport, "second")) {
+            firstSync.setBatchDelay(Duration.ZERO);
+            secondSync.setBatchDelay(Duration.ZERO);
+            firstSync.start();
+            secondSync.start();
+
+            first.update(update -> update.setProperty("cluster.shared", "changed").setProperty("cluster.added", "1"));
+            awaitProperty(second, "cluster.added", "1");
+            Assert.assertEquals(second.getProperty("cluster.shared"), "changed");
+            second.update(update -> update.remove("cluster.added"));
+            awaitProperty(first, "cluster.added", null);
+
+            Configuration late = new Configuration();
+            late.setProperty("cluster.shared", "initial");
+            try (ConfigurationSync lateSync = new ConfigurationSync(late, transport, "late")) {
+                lateSync.start();
+                Assert.assertEquals(late.getProperty("cluster.shared"), "changed");
+                Assert.assertNull(late.getProperty("cluster.added"));
+            }
+        }
+    }
+
+
+    private static void awaitProperty(final Configuration configuration,
+                                      final String propertyName,
+                                      final String expectedValue) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!Objects.equals(configuration.getProperty(propertyName), expectedValue)
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(configuration.getProperty(propertyName), expectedValue);
+    }
+
+
     public void cleanProperties() {
         logger.debug("Clearing properties from configuration.");
         Assert.assertNotNull(configuration);